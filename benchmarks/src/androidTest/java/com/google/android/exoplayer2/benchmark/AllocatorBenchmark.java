@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.StripedAllocator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks allocating and releasing buffer segments from several threads at once, as happens
+ * when multiple renderers' sample queues are fed in parallel.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class AllocatorBenchmark {
+
+  private static final int THREAD_COUNT = 4;
+  private static final int ALLOCATIONS_PER_BATCH = 16;
+  private static final int BATCHES_PER_THREAD = 64;
+
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() {
+    executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+  }
+
+  @Test
+  public void defaultAllocator() throws Exception {
+    benchmark(
+        "DefaultAllocator",
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
+  }
+
+  @Test
+  public void stripedAllocator() throws Exception {
+    benchmark(
+        "StripedAllocator",
+        new StripedAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE));
+  }
+
+  private void benchmark(String name, Allocator allocator) throws Exception {
+    Benchmark.run(
+        name + " x" + THREAD_COUNT + " threads",
+        /* bytesPerOperation= */ 0,
+        () -> {
+          List<Future<?>> futures = new ArrayList<>();
+          for (int i = 0; i < THREAD_COUNT; i++) {
+            futures.add(executorService.submit(() -> allocateAndRelease(allocator)));
+          }
+          for (Future<?> future : futures) {
+            future.get();
+          }
+        });
+  }
+
+  private static void allocateAndRelease(Allocator allocator) {
+    Allocation[] allocations = new Allocation[ALLOCATIONS_PER_BATCH];
+    for (int i = 0; i < BATCHES_PER_THREAD; i++) {
+      for (int j = 0; j < ALLOCATIONS_PER_BATCH; j++) {
+        allocations[j] = allocator.allocate();
+      }
+      allocator.release(allocations);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import com.google.android.exoplayer2.util.Log;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Runs benchmarked operations and reports their cost.
+ *
+ * <p>An operation is first run repeatedly for {@link #WARMUP_DURATION_MS}, so that it's compiled
+ * before it's measured. It's then run in {@link #SAMPLE_COUNT} samples of at least {@link
+ * #MIN_SAMPLE_DURATION_MS} each, and the median time per operation is reported, along with the
+ * resulting throughput for operations that process a known number of bytes. Finally, the
+ * allocations made by the operation on the calling thread are counted over a separate run, since
+ * counting them slows the operation down.
+ *
+ * <p>Results are written to logcat with the tag {@code "Benchmark"}.
+ */
+public final class Benchmark {
+
+  /** A benchmarked operation. */
+  public interface Operation {
+
+    /** Runs the operation once. */
+    void run() throws Exception;
+  }
+
+  /** The cost of an operation. */
+  public static final class Result {
+
+    /** The name of the operation. */
+    public final String name;
+    /** The median duration of the operation, in nanoseconds. */
+    public final double nanosPerOperation;
+    /**
+     * The throughput of the operation in megabytes per second, or 0 if the operation doesn't
+     * process a known number of bytes.
+     */
+    public final double megabytesPerSecond;
+    /** The number of objects allocated by the operation on the calling thread. */
+    public final double allocationsPerOperation;
+    /** The number of bytes allocated by the operation on the calling thread. */
+    public final double allocatedBytesPerOperation;
+
+    private Result(
+        String name,
+        double nanosPerOperation,
+        double megabytesPerSecond,
+        double allocationsPerOperation,
+        double allocatedBytesPerOperation) {
+      this.name = name;
+      this.nanosPerOperation = nanosPerOperation;
+      this.megabytesPerSecond = megabytesPerSecond;
+      this.allocationsPerOperation = allocationsPerOperation;
+      this.allocatedBytesPerOperation = allocatedBytesPerOperation;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s: %.0f ns/op, %.2f MB/s, %.1f allocs/op, %.0f allocated bytes/op",
+          name,
+          nanosPerOperation,
+          megabytesPerSecond,
+          allocationsPerOperation,
+          allocatedBytesPerOperation);
+    }
+  }
+
+  /** The duration for which an operation is run before it's measured. */
+  public static final long WARMUP_DURATION_MS = 2_000;
+  /** The number of measured samples. */
+  public static final int SAMPLE_COUNT = 15;
+  /** The minimum duration of each measured sample. */
+  public static final long MIN_SAMPLE_DURATION_MS = 100;
+
+  private static final String TAG = "Benchmark";
+
+  private Benchmark() {}
+
+  /**
+   * Benchmarks an operation.
+   *
+   * @param name The name of the operation.
+   * @param bytesPerOperation The number of bytes processed by each run of the operation, or 0 if
+   *     the operation's throughput shouldn't be reported.
+   * @param operation The operation.
+   * @return The cost of the operation.
+   * @throws Exception If the operation fails.
+   */
+  public static Result run(String name, long bytesPerOperation, Operation operation)
+      throws Exception {
+    // Warm up, and find how many operations make up a sample.
+    long warmupEndTimeMs = SystemClock.elapsedRealtime() + WARMUP_DURATION_MS;
+    int warmupOperationCount = 0;
+    do {
+      operation.run();
+      warmupOperationCount++;
+    } while (SystemClock.elapsedRealtime() < warmupEndTimeMs);
+    int operationsPerSample =
+        (int) Math.max(1, warmupOperationCount * MIN_SAMPLE_DURATION_MS / WARMUP_DURATION_MS);
+
+    double[] sampleNanosPerOperation = new double[SAMPLE_COUNT];
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      long startTimeNs = System.nanoTime();
+      for (int j = 0; j < operationsPerSample; j++) {
+        operation.run();
+      }
+      sampleNanosPerOperation[i] =
+          (double) (System.nanoTime() - startTimeNs) / operationsPerSample;
+    }
+    Arrays.sort(sampleNanosPerOperation);
+    double nanosPerOperation = sampleNanosPerOperation[SAMPLE_COUNT / 2];
+    double megabytesPerSecond =
+        bytesPerOperation > 0 ? bytesPerOperation * 1000 / nanosPerOperation : 0;
+
+    long[] allocations = countAllocations(operation, operationsPerSample);
+    Result result =
+        new Result(
+            name,
+            nanosPerOperation,
+            megabytesPerSecond,
+            (double) allocations[0] / operationsPerSample,
+            (double) allocations[1] / operationsPerSample);
+    Log.i(TAG, result.toString());
+    return result;
+  }
+
+  /**
+   * Returns the number of objects and bytes allocated on the calling thread by running {@code
+   * operation} {@code operationCount} times.
+   */
+  @SuppressWarnings("deprecation") // The allocation counting APIs are the only ones available.
+  private static long[] countAllocations(Operation operation, int operationCount)
+      throws Exception {
+    Debug.resetThreadAllocCount();
+    Debug.resetThreadAllocSize();
+    Debug.startAllocCounting();
+    try {
+      for (int i = 0; i < operationCount; i++) {
+        operation.run();
+      }
+    } finally {
+      Debug.stopAllocCounting();
+    }
+    return new long[] {Debug.getThreadAllocCount(), Debug.getThreadAllocSize()};
+  }
+}
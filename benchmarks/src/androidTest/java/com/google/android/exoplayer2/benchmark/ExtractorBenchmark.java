@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import static org.junit.Assert.assertNotNull;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.DummyExtractorOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.MappedExtractorInput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Benchmarks extracting media end-to-end with the extractors created by {@link
+ * DefaultExtractorsFactory}, reading from memory.
+ */
+@RunWith(Parameterized.class)
+public final class ExtractorBenchmark {
+
+  // At least one asset for each extractor created by DefaultExtractorsFactory.
+  @Parameters(name = "{0}")
+  public static List<String> assets() {
+    return Arrays.asList(
+        "mkv/sample.mkv",
+        "mp4/sample_fragmented.mp4",
+        "mp4/sample.mp4",
+        "mp3/bear.mp3",
+        "ts/sample.adts",
+        "ts/sample.ac3",
+        "ts/sample.ts",
+        "ts/bbb_2500ms.ts",
+        "flv/sample.flv",
+        "ogg/bear.opus",
+        "ogg/bear_vorbis.ogg",
+        "ts/sample.ps",
+        "wav/sample.wav",
+        "amr/sample_nb.amr",
+        "ts/sample.ac4",
+        "flac/bear.flac");
+  }
+
+  @Parameter public String asset;
+
+  private byte[] data;
+  private Class<? extends Extractor> extractorClass;
+
+  @Before
+  public void setUp() throws Exception {
+    data =
+        TestUtil.getByteArray(InstrumentationRegistry.getInstrumentation().getContext(), asset);
+    for (Extractor extractor : new DefaultExtractorsFactory().createExtractors()) {
+      if (extractor.sniff(createInput(data, /* position= */ 0))) {
+        extractorClass = extractor.getClass();
+        break;
+      }
+    }
+    assertNotNull("No extractor for " + asset, extractorClass);
+  }
+
+  @Test
+  public void extract() throws Exception {
+    Benchmark.run(
+        extractorClass.getSimpleName() + " " + asset,
+        data.length,
+        () -> extract(extractorClass.newInstance(), data));
+  }
+
+  private static void extract(Extractor extractor, byte[] data)
+      throws IOException, InterruptedException {
+    extractor.init(new DummyExtractorOutput());
+    PositionHolder positionHolder = new PositionHolder();
+    ExtractorInput input = createInput(data, /* position= */ 0);
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, positionHolder);
+      if (result == Extractor.RESULT_SEEK) {
+        input = createInput(data, positionHolder.position);
+      }
+    }
+    extractor.release();
+  }
+
+  private static ExtractorInput createInput(byte[] data, long position) {
+    ByteBuffer buffer = ByteBuffer.wrap(data, (int) position, data.length - (int) position);
+    return new MappedExtractorInput(buffer, position, data.length);
+  }
+}
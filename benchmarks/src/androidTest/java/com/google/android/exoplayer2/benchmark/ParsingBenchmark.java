@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.exoplayer2.metadata.id3.Id3Decoder;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.NalUnitUtil;
+import com.google.android.exoplayer2.util.ParsableBitArray;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Benchmarks the parsing utilities used by extractors. */
+@RunWith(AndroidJUnit4.class)
+public final class ParsingBenchmark {
+
+  private static final int DATA_LENGTH = 1024 * 1024;
+  private static final int BITS_PER_READ = 13;
+
+  @Test
+  public void parsableByteArrayReadInt() throws Exception {
+    ParsableByteArray data = new ParsableByteArray(TestUtil.buildTestData(DATA_LENGTH));
+    Benchmark.run(
+        "ParsableByteArray.readInt",
+        DATA_LENGTH,
+        () -> {
+          data.setPosition(0);
+          while (data.bytesLeft() >= 4) {
+            data.readInt();
+          }
+        });
+  }
+
+  @Test
+  public void parsableByteArrayReadLine() throws Exception {
+    StringBuilder lines = new StringBuilder();
+    while (lines.length() < DATA_LENGTH) {
+      lines.append("#EXTINF:6.006,\nsegment").append(lines.length()).append(".ts\n");
+    }
+    byte[] bytes = Util.getUtf8Bytes(lines.toString());
+    ParsableByteArray data = new ParsableByteArray(bytes);
+    Benchmark.run(
+        "ParsableByteArray.readLine",
+        bytes.length,
+        () -> {
+          data.setPosition(0);
+          while (data.readLine() != null) {}
+        });
+  }
+
+  @Test
+  public void parsableBitArrayReadBits() throws Exception {
+    ParsableBitArray data = new ParsableBitArray(TestUtil.buildTestData(DATA_LENGTH));
+    Benchmark.run(
+        "ParsableBitArray.readBits",
+        DATA_LENGTH,
+        () -> {
+          data.setPosition(0);
+          while (data.bitsLeft() >= BITS_PER_READ) {
+            data.readBits(BITS_PER_READ);
+          }
+        });
+  }
+
+  @Test
+  public void nalUnitUtilFindNalUnit() throws Exception {
+    byte[] data = getAsset("ts/bbb_2500ms.ts");
+    boolean[] prefixFlags = new boolean[3];
+    Benchmark.run(
+        "NalUnitUtil.findNalUnit",
+        data.length,
+        () -> {
+          NalUnitUtil.clearPrefixFlags(prefixFlags);
+          int offset = 0;
+          while (offset < data.length) {
+            offset = NalUnitUtil.findNalUnit(data, offset, data.length, prefixFlags) + 3;
+          }
+        });
+  }
+
+  @Test
+  public void nalUnitUtilUnescapeStream() throws Exception {
+    byte[] data = getAsset("ts/bbb_2500ms.ts");
+    byte[] scratch = new byte[data.length];
+    Benchmark.run(
+        "NalUnitUtil.unescapeStream",
+        data.length,
+        () -> {
+          System.arraycopy(data, 0, scratch, 0, data.length);
+          NalUnitUtil.unescapeStream(scratch, scratch.length);
+        });
+  }
+
+  @Test
+  public void id3DecoderDecode() throws Exception {
+    byte[] data = getAsset("mp3/bear.mp3");
+    // The file starts with an ID3v2 tag, whose size is a 28 bit synchsafe integer.
+    assertThat(Arrays.copyOf(data, 3)).isEqualTo(Util.getUtf8Bytes("ID3"));
+    int tagSize =
+        10 + ((data[6] & 0x7F) << 21 | (data[7] & 0x7F) << 14 | (data[8] & 0x7F) << 7
+            | (data[9] & 0x7F));
+    Id3Decoder decoder = new Id3Decoder();
+    Benchmark.run("Id3Decoder.decode", tagSize, () -> decoder.decode(data, tagSize));
+  }
+
+  private static byte[] getAsset(String fileName) throws Exception {
+    Context context = InstrumentationRegistry.getInstrumentation().getContext();
+    return TestUtil.getByteArray(context, fileName);
+  }
+}
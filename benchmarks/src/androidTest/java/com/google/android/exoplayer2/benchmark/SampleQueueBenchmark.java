@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Benchmarks seeking within the samples buffered by a {@link SampleQueue}. */
+@RunWith(AndroidJUnit4.class)
+public final class SampleQueueBenchmark {
+
+  private static final int SAMPLE_COUNT = 10_000;
+  private static final int SAMPLE_SIZE = 16;
+  private static final int KEYFRAME_INTERVAL = 30;
+  private static final long SAMPLE_DURATION_US = 33_333;
+  private static final int SEEKS_PER_OPERATION = 100;
+
+  private SampleQueue sampleQueue;
+
+  @Before
+  public void setUp() {
+    sampleQueue =
+        new SampleQueue(
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            DrmSessionManager.getDummyDrmSessionManager());
+    sampleQueue.format(
+        Format.createSampleFormat(
+            /* id= */ null, MimeTypes.VIDEO_H264, /* subsampleOffsetUs= */ 0));
+    ParsableByteArray sampleData = new ParsableByteArray(SAMPLE_SIZE);
+    for (int i = 0; i < SAMPLE_COUNT; i++) {
+      sampleData.setPosition(0);
+      sampleQueue.sampleData(sampleData, SAMPLE_SIZE);
+      sampleQueue.sampleMetadata(
+          /* timeUs= */ i * SAMPLE_DURATION_US,
+          i % KEYFRAME_INTERVAL == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0,
+          SAMPLE_SIZE,
+          /* offset= */ 0,
+          /* cryptoData= */ null);
+    }
+  }
+
+  @After
+  public void tearDown() {
+    sampleQueue.release();
+  }
+
+  @Test
+  public void seekTo() throws Exception {
+    long durationUs = SAMPLE_COUNT * SAMPLE_DURATION_US;
+    Benchmark.run(
+        "SampleQueue.seekTo x" + SEEKS_PER_OPERATION,
+        /* bytesPerOperation= */ 0,
+        () -> {
+          for (int i = 0; i < SEEKS_PER_OPERATION; i++) {
+            // Stride through the buffer so that consecutive seeks land far apart.
+            long timeUs = (i * 7919L * SAMPLE_DURATION_US) % durationUs;
+            sampleQueue.seekTo(timeUs, /* allowTimeBeyondBuffer= */ false);
+          }
+        });
+  }
+}
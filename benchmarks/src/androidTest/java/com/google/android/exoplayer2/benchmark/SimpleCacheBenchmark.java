@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.benchmark;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadataMutations;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks writing and reading unrelated keys of a {@link SimpleCache} from several threads at
+ * once, as happens when multiple downloads or players share a cache.
+ *
+ * <p>The baseline wraps the cache in a {@link SingleMonitorCache}, which serializes every operation
+ * on one monitor as {@link SimpleCache} did before its keys were given their own locks.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleCacheBenchmark {
+
+  private static final int THREAD_COUNT = 4;
+  private static final int DATA_LENGTH = 4 * 1024;
+  private static final int READS_PER_WRITE = 8;
+
+  private byte[] data;
+  private File cacheDir;
+  private ExoDatabaseProvider databaseProvider;
+  private SimpleCache simpleCache;
+  private ExecutorService executorService;
+
+  @Before
+  public void setUp() throws Exception {
+    Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+    data = TestUtil.buildTestData(DATA_LENGTH);
+    cacheDir = Util.createTempDirectory(context, "ExoPlayerBenchmark");
+    databaseProvider = new ExoDatabaseProvider(context);
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+    executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+  }
+
+  @After
+  public void tearDown() {
+    executorService.shutdown();
+    simpleCache.release();
+    databaseProvider.close();
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void keyLocks() throws Exception {
+    benchmark("SimpleCache", simpleCache);
+  }
+
+  @Test
+  public void singleMonitor() throws Exception {
+    benchmark("SimpleCache (single monitor)", new SingleMonitorCache(simpleCache));
+  }
+
+  private void benchmark(String name, Cache cache) throws Exception {
+    Benchmark.run(
+        name + " x" + THREAD_COUNT + " threads",
+        /* bytesPerOperation= */ (long) THREAD_COUNT * DATA_LENGTH * (1 + READS_PER_WRITE),
+        () -> {
+          List<Future<?>> futures = new ArrayList<>();
+          for (int i = 0; i < THREAD_COUNT; i++) {
+            String key = "key" + i;
+            futures.add(
+                executorService.submit(
+                    () -> {
+                      writeAndRead(cache, key);
+                      return null;
+                    }));
+          }
+          for (Future<?> future : futures) {
+            future.get();
+          }
+        });
+  }
+
+  /**
+   * Writes {@link #data} to a key that no other thread uses, reads it back, and removes it again.
+   */
+  private void writeAndRead(Cache cache, String key) throws Exception {
+    CacheSpan holeSpan =
+        Assertions.checkNotNull(cache.startReadWriteNonBlocking(key, /* position= */ 0));
+    File file = cache.startFile(key, /* position= */ 0, DATA_LENGTH);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+    cache.commitFile(file, DATA_LENGTH);
+    cache.releaseHoleSpan(holeSpan);
+
+    CacheSpan cachedSpan = holeSpan;
+    for (int i = 0; i < READS_PER_WRITE; i++) {
+      Assertions.checkState(cache.isCached(key, /* position= */ 0, DATA_LENGTH));
+      cachedSpan = Assertions.checkNotNull(cache.startReadWriteNonBlocking(key, /* position= */ 0));
+    }
+    cache.removeSpan(cachedSpan);
+  }
+
+  /**
+   * A {@link Cache} that serializes every operation of a wrapped cache on one monitor. Blocked
+   * {@link #startReadWrite(String, long)} calls wait on the monitor, and are woken whenever a
+   * write lock may have been released.
+   */
+  private static final class SingleMonitorCache implements Cache {
+
+    private final Cache cache;
+
+    public SingleMonitorCache(Cache cache) {
+      this.cache = cache;
+    }
+
+    @Override
+    public synchronized long getUid() {
+      return cache.getUid();
+    }
+
+    @Override
+    public synchronized void release() {
+      cache.release();
+    }
+
+    @Override
+    public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      return cache.addListener(key, listener);
+    }
+
+    @Override
+    public synchronized void removeListener(String key, Listener listener) {
+      cache.removeListener(key, listener);
+    }
+
+    @Override
+    public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+      return cache.getCachedSpans(key);
+    }
+
+    @Override
+    public synchronized Set<String> getKeys() {
+      return cache.getKeys();
+    }
+
+    @Override
+    public synchronized long getCacheSpace() {
+      return cache.getCacheSpace();
+    }
+
+    @Override
+    public synchronized CacheSpan startReadWrite(String key, long position)
+        throws InterruptedException, CacheException {
+      while (true) {
+        @Nullable CacheSpan span = cache.startReadWriteNonBlocking(key, position);
+        if (span != null) {
+          return span;
+        }
+        wait();
+      }
+    }
+
+    @Override
+    @Nullable
+    public synchronized CacheSpan startReadWriteNonBlocking(String key, long position)
+        throws CacheException {
+      return cache.startReadWriteNonBlocking(key, position);
+    }
+
+    @Override
+    public synchronized File startFile(String key, long position, long length)
+        throws CacheException {
+      return cache.startFile(key, position, length);
+    }
+
+    @Override
+    public synchronized void commitFile(File file, long length) throws CacheException {
+      cache.commitFile(file, length);
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
+      cache.releaseHoleSpan(holeSpan);
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void removeSpan(CacheSpan span) throws CacheException {
+      cache.removeSpan(span);
+    }
+
+    @Override
+    public synchronized boolean isCached(String key, long position, long length) {
+      return cache.isCached(key, position, length);
+    }
+
+    @Override
+    public synchronized long getCachedLength(String key, long position, long length) {
+      return cache.getCachedLength(key, position, length);
+    }
+
+    @Override
+    public synchronized void applyContentMetadataMutations(
+        String key, ContentMetadataMutations mutations) throws CacheException {
+      cache.applyContentMetadataMutations(key, mutations);
+    }
+
+    @Override
+    public synchronized ContentMetadata getContentMetadata(String key) {
+      return cache.getContentMetadata(key);
+    }
+  }
+}
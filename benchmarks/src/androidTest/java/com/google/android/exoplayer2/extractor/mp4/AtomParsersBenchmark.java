@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.benchmark.Benchmark;
+import com.google.android.exoplayer2.extractor.GaplessInfoHolder;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Benchmarks parsing the sample tables of an MP4 file's moov atom. */
+@RunWith(AndroidJUnit4.class)
+public final class AtomParsersBenchmark {
+
+  private static final String ASSET = "mp4/sample.mp4";
+
+  private Atom.ContainerAtom moov;
+  private int moovSize;
+
+  @Before
+  public void setUp() throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(InstrumentationRegistry.getInstrumentation().getContext(), ASSET);
+    ParsableByteArray input = new ParsableByteArray(data);
+    while (input.bytesLeft() > 0) {
+      int atomPosition = input.getPosition();
+      int atomSize = input.readInt();
+      int atomType = input.readInt();
+      if (atomType == Atom.TYPE_moov) {
+        moovSize = atomSize;
+        moov = parseContainerAtom(data, atomType, atomPosition, atomSize);
+        break;
+      }
+      input.setPosition(atomPosition + atomSize);
+    }
+    assertThat(moov).isNotNull();
+  }
+
+  @Test
+  public void parseStbl() throws Exception {
+    Benchmark.run(
+        "AtomParsers.parseStbl " + ASSET,
+        moovSize,
+        () -> parseSampleTables(/* compact= */ false));
+  }
+
+  @Test
+  public void parseCompactStbl() throws Exception {
+    Benchmark.run(
+        "AtomParsers.parseCompactStbl " + ASSET,
+        moovSize,
+        () -> parseSampleTables(/* compact= */ true));
+  }
+
+  private void parseSampleTables(boolean compact) throws ParserException {
+    Atom.LeafAtom mvhd = moov.getLeafAtomOfType(Atom.TYPE_mvhd);
+    for (Atom.ContainerAtom trak : moov.containerChildren) {
+      if (trak.type != Atom.TYPE_trak) {
+        continue;
+      }
+      Track track =
+          AtomParsers.parseTrak(
+              trak,
+              mvhd,
+              /* duration= */ C.TIME_UNSET,
+              /* drmInitData= */ null,
+              /* ignoreEditLists= */ false,
+              /* isQuickTime= */ false);
+      if (track == null) {
+        continue;
+      }
+      Atom.ContainerAtom stbl =
+          trak.getContainerAtomOfType(Atom.TYPE_mdia)
+              .getContainerAtomOfType(Atom.TYPE_minf)
+              .getContainerAtomOfType(Atom.TYPE_stbl);
+      if (compact) {
+        AtomParsers.parseCompactStbl(track, stbl, new GaplessInfoHolder());
+      } else {
+        AtomParsers.parseStbl(track, stbl, new GaplessInfoHolder());
+      }
+    }
+  }
+
+  private static Atom.ContainerAtom parseContainerAtom(
+      byte[] data, int type, int position, int size) {
+    Atom.ContainerAtom containerAtom = new Atom.ContainerAtom(type, position + size);
+    ParsableByteArray input = new ParsableByteArray(data, position + size);
+    input.setPosition(position + Atom.HEADER_SIZE);
+    while (input.bytesLeft() >= Atom.HEADER_SIZE) {
+      int childPosition = input.getPosition();
+      int childSize = input.readInt();
+      int childType = input.readInt();
+      if (isContainerAtom(childType)) {
+        containerAtom.add(parseContainerAtom(data, childType, childPosition, childSize));
+      } else {
+        byte[] childData = new byte[childSize];
+        System.arraycopy(data, childPosition, childData, 0, childSize);
+        containerAtom.add(new Atom.LeafAtom(childType, new ParsableByteArray(childData)));
+      }
+      input.setPosition(childPosition + childSize);
+    }
+    return containerAtom;
+  }
+
+  private static boolean isContainerAtom(int type) {
+    return type == Atom.TYPE_trak
+        || type == Atom.TYPE_mdia
+        || type == Atom.TYPE_minf
+        || type == Atom.TYPE_stbl
+        || type == Atom.TYPE_edts;
+  }
+}
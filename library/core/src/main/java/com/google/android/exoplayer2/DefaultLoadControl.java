@@ -15,12 +15,16 @@
  */
 package com.google.android.exoplayer2;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.SpillingAllocator;
+import com.google.android.exoplayer2.upstream.TargetBufferAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.io.File;
 
 /**
  * The default {@link LoadControl} implementation.
@@ -50,6 +54,18 @@ public class DefaultLoadControl implements LoadControl {
    */
   public static final int DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 5000;
 
+  /**
+   * The duration of media that must be buffered for playback to start or resume following a user
+   * action such as a seek during low latency live playback, in milliseconds.
+   */
+  public static final int LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_MS = 500;
+
+  /**
+   * The duration of media that must be buffered for playback to resume after a rebuffer during low
+   * latency live playback, in milliseconds.
+   */
+  public static final int LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS = 1000;
+
   /**
    * The default target buffer size in bytes. The value ({@link C#LENGTH_UNSET}) means that the load
    * control will calculate the target buffer size based on the selected tracks.
@@ -65,6 +81,13 @@ public class DefaultLoadControl implements LoadControl {
   /** The default for whether the back buffer is retained from the previous keyframe. */
   public static final boolean DEFAULT_RETAIN_BACK_BUFFER_FROM_KEYFRAME = false;
 
+  /**
+   * The default number of bytes behind the playback position that each track keeps in memory when
+   * spilling the back buffer to disk.
+   */
+  public static final int DEFAULT_BACK_BUFFER_SPILL_HOT_WINDOW_BYTES =
+      16 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
+
   /** A default size in bytes for a video buffer. */
   public static final int DEFAULT_VIDEO_BUFFER_SIZE = 500 * C.DEFAULT_BUFFER_SEGMENT_SIZE;
 
@@ -87,7 +110,7 @@ public class DefaultLoadControl implements LoadControl {
   /** Builder for {@link DefaultLoadControl}. */
   public static final class Builder {
 
-    private DefaultAllocator allocator;
+    private TargetBufferAllocator allocator;
     private int minBufferMs;
     private int maxBufferMs;
     private int bufferForPlaybackMs;
@@ -96,6 +119,8 @@ public class DefaultLoadControl implements LoadControl {
     private boolean prioritizeTimeOverSizeThresholds;
     private int backBufferDurationMs;
     private boolean retainBackBufferFromKeyframe;
+    @Nullable private File backBufferSpillDirectory;
+    private int maxBackBufferSpillBytesPerTrack;
     private boolean createDefaultLoadControlCalled;
 
     /** Constructs a new instance. */
@@ -111,18 +136,25 @@ public class DefaultLoadControl implements LoadControl {
     }
 
     /**
-     * Sets the {@link DefaultAllocator} used by the loader.
+     * Sets the {@link TargetBufferAllocator} used by the loader. Defaults to a {@link
+     * DefaultAllocator}.
      *
-     * @param allocator The {@link DefaultAllocator}.
+     * @param allocator The {@link TargetBufferAllocator}.
      * @return This builder, for convenience.
      * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
      */
-    public Builder setAllocator(DefaultAllocator allocator) {
+    public Builder setAllocator(TargetBufferAllocator allocator) {
       Assertions.checkState(!createDefaultLoadControlCalled);
       this.allocator = allocator;
       return this;
     }
 
+    /** @deprecated Use {@link #setAllocator(TargetBufferAllocator)} instead. */
+    @Deprecated
+    public Builder setAllocator(DefaultAllocator allocator) {
+      return setAllocator((TargetBufferAllocator) allocator);
+    }
+
     /**
      * Sets the buffer duration parameters.
      *
@@ -161,6 +193,25 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Sets the buffer durations for low latency live playback. During such playback only the few
+     * seconds of media between the playback position and the live edge can be buffered, so the
+     * default durations required to start and resume playback would add to the latency or can't be
+     * reached at all. This sets them to {@link #LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_MS} and {@link
+     * #LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS}, and keeps the minimum and maximum
+     * buffer durations, which are never reached, so that loading continues up to the live edge.
+     *
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
+     */
+    public Builder setLowLatencyLiveBufferDurations() {
+      return setBufferDurationsMs(
+          minBufferMs,
+          maxBufferMs,
+          LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_MS,
+          LOW_LATENCY_LIVE_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS);
+    }
+
     /**
      * Sets the target buffer size in bytes. If set to {@link C#LENGTH_UNSET}, the target buffer
      * size will be calculated based on the selected tracks.
@@ -208,6 +259,26 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Sets a directory to which the back buffer is spilled, allowing a long back buffer to be
+     * retained without holding it in memory. Only the most recently played {@link
+     * #DEFAULT_BACK_BUFFER_SPILL_HOT_WINDOW_BYTES} of each track are kept in memory. The allocator
+     * is wrapped in a {@link SpillingAllocator} when the load control is created.
+     *
+     * @param directory The directory in which spill files are created, or {@code null} to keep the
+     *     back buffer in memory.
+     * @param maxSpillBytesPerTrack The maximum number of bytes that each track can spill.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #createDefaultLoadControl()} has already been called.
+     */
+    public Builder setBackBufferSpill(@Nullable File directory, int maxSpillBytesPerTrack) {
+      Assertions.checkState(!createDefaultLoadControlCalled);
+      assertGreaterOrEqual(maxSpillBytesPerTrack, 1, "maxSpillBytesPerTrack", "1");
+      this.backBufferSpillDirectory = directory;
+      this.maxBackBufferSpillBytesPerTrack = maxSpillBytesPerTrack;
+      return this;
+    }
+
     /** Creates a {@link DefaultLoadControl}. */
     public DefaultLoadControl createDefaultLoadControl() {
       Assertions.checkState(!createDefaultLoadControlCalled);
@@ -215,6 +286,14 @@ public class DefaultLoadControl implements LoadControl {
       if (allocator == null) {
         allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
       }
+      if (backBufferSpillDirectory != null) {
+        allocator =
+            new SpillingAllocator(
+                allocator,
+                backBufferSpillDirectory,
+                maxBackBufferSpillBytesPerTrack,
+                DEFAULT_BACK_BUFFER_SPILL_HOT_WINDOW_BYTES);
+      }
       return new DefaultLoadControl(
               allocator,
               minBufferMs,
@@ -228,7 +307,7 @@ public class DefaultLoadControl implements LoadControl {
     }
   }
 
-  private final DefaultAllocator allocator;
+  private final TargetBufferAllocator allocator;
 
   private final long minBufferUs;
   private final long maxBufferUs;
@@ -286,7 +365,7 @@ public class DefaultLoadControl implements LoadControl {
   }
 
   protected DefaultLoadControl(
-          DefaultAllocator allocator,
+          TargetBufferAllocator allocator,
           int minBufferMs,
           int maxBufferMs,
           int bufferForPlaybackMs,
@@ -364,7 +443,13 @@ public class DefaultLoadControl implements LoadControl {
 
   @Override
   public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
-    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+    int totalBytesAllocated = allocator.getTotalBytesAllocated();
+    if (isAllocationLimitReached(totalBytesAllocated)) {
+      // The allocator's share of a memory budget is a hard limit, regardless of buffer durations.
+      isBuffering = false;
+      return false;
+    }
+    boolean targetBufferSizeReached = totalBytesAllocated >= targetBufferBytes;
     long minBufferUs = this.minBufferUs;
     if (playbackSpeed > 1) {
       // The playback speed is faster than real time, so scale up the minimum required media
@@ -388,10 +473,12 @@ public class DefaultLoadControl implements LoadControl {
           long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
     bufferedDurationUs = Util.getPlayoutDurationForMediaDuration(bufferedDurationUs, playbackSpeed);
     long minBufferDurationUs = rebuffering ? bufferForPlaybackAfterRebufferUs : bufferForPlaybackUs;
+    int totalBytesAllocated = allocator.getTotalBytesAllocated();
     return minBufferDurationUs <= 0
             || bufferedDurationUs >= minBufferDurationUs
-            || (!prioritizeTimeOverSizeThresholds
-            && allocator.getTotalBytesAllocated() >= targetBufferBytes);
+            || (!prioritizeTimeOverSizeThresholds && totalBytesAllocated >= targetBufferBytes)
+            // Loading won't continue, so start playback with whatever is buffered.
+            || (totalBytesAllocated > 0 && isAllocationLimitReached(totalBytesAllocated));
   }
 
   /**
@@ -413,6 +500,11 @@ public class DefaultLoadControl implements LoadControl {
     return targetBufferSize;
   }
 
+  private boolean isAllocationLimitReached(int totalBytesAllocated) {
+    int allocationLimitBytes = allocator.getAllocationLimitBytes();
+    return allocationLimitBytes != C.LENGTH_UNSET && totalBytesAllocated >= allocationLimitBytes;
+  }
+
   private void reset(boolean resetAllocator) {
     targetBufferBytes =
             targetBufferBytesOverwrite == C.LENGTH_UNSET
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * Holds the live offset of a {@link Player} at a target by adjusting the playback speed.
+ *
+ * <p>The live offset is the difference between the current wall-clock time and the wall-clock time
+ * of the playback position, as given by {@link Timeline.Window#windowStartTimeMs}. It can only be
+ * controlled for live windows that define their start time, such as DASH live streams and HLS live
+ * streams with {@code EXT-X-PROGRAM-DATE-TIME} tags. The device clock is assumed to be in sync
+ * with the clock of the server.
+ *
+ * <p>The target live offset is either an override, or the offset of the default position of the
+ * live window from its end, which reflects the presentation delay defined by the manifest. While
+ * the player is playing, the playback speed is periodically set in proportion to the difference
+ * between the current and the target live offset, within a small range around real-time playback
+ * so that audio time stretching remains unnoticeable.
+ *
+ * <p>Low live offsets require the player to start and resume playback with little media buffered,
+ * for example by using a {@link DefaultLoadControl} built with {@link
+ * DefaultLoadControl.Builder#setLowLatencyLiveBufferDurations()}.
+ */
+public final class LivePlaybackSpeedController implements Player.EventListener {
+
+  /** The default minimum playback speed. */
+  public static final float DEFAULT_MIN_PLAYBACK_SPEED = 0.97f;
+  /** The default maximum playback speed. */
+  public static final float DEFAULT_MAX_PLAYBACK_SPEED = 1.03f;
+  /**
+   * The default proportional control factor, which is the change in playback speed per second of
+   * difference between the current and the target live offset.
+   */
+  public static final float DEFAULT_PROPORTIONAL_CONTROL_FACTOR = 0.1f;
+  /** The default interval between playback speed updates, in milliseconds. */
+  public static final long DEFAULT_UPDATE_INTERVAL_MS = 1000;
+
+  /**
+   * Playback speeds are rounded to multiples of the inverse of this value, which avoids frequent
+   * playback parameter changes while the live offset is close to its target.
+   */
+  private static final float PLAYBACK_SPEED_STEPS_PER_UNIT = 100f;
+
+  /** Builder for {@link LivePlaybackSpeedController} instances. */
+  public static final class Builder {
+
+    private long targetLiveOffsetOverrideMs;
+    private float minPlaybackSpeed;
+    private float maxPlaybackSpeed;
+    private float proportionalControlFactor;
+    private long updateIntervalMs;
+    private Clock clock;
+
+    /** Creates a builder with the default parameters. */
+    public Builder() {
+      targetLiveOffsetOverrideMs = C.TIME_UNSET;
+      minPlaybackSpeed = DEFAULT_MIN_PLAYBACK_SPEED;
+      maxPlaybackSpeed = DEFAULT_MAX_PLAYBACK_SPEED;
+      proportionalControlFactor = DEFAULT_PROPORTIONAL_CONTROL_FACTOR;
+      updateIntervalMs = DEFAULT_UPDATE_INTERVAL_MS;
+      clock = Clock.DEFAULT;
+    }
+
+    /**
+     * Sets the target live offset, overriding the one derived from the manifest.
+     *
+     * @param targetLiveOffsetOverrideMs The target live offset in milliseconds, or {@link
+     *     C#TIME_UNSET} to use the target live offset derived from the manifest.
+     * @return This builder.
+     */
+    public Builder setTargetLiveOffsetOverrideMs(long targetLiveOffsetOverrideMs) {
+      Assertions.checkArgument(
+          targetLiveOffsetOverrideMs == C.TIME_UNSET || targetLiveOffsetOverrideMs >= 0);
+      this.targetLiveOffsetOverrideMs = targetLiveOffsetOverrideMs;
+      return this;
+    }
+
+    /**
+     * Sets the range of playback speeds used to adjust the live offset.
+     *
+     * @param minPlaybackSpeed The minimum playback speed. Must be in the range (0, 1].
+     * @param maxPlaybackSpeed The maximum playback speed. Must be at least 1.
+     * @return This builder.
+     */
+    public Builder setPlaybackSpeedRange(float minPlaybackSpeed, float maxPlaybackSpeed) {
+      Assertions.checkArgument(0 < minPlaybackSpeed && minPlaybackSpeed <= 1f);
+      Assertions.checkArgument(maxPlaybackSpeed >= 1f);
+      this.minPlaybackSpeed = minPlaybackSpeed;
+      this.maxPlaybackSpeed = maxPlaybackSpeed;
+      return this;
+    }
+
+    /**
+     * Sets the proportional control factor, which is the change in playback speed per second of
+     * difference between the current and the target live offset.
+     *
+     * @param proportionalControlFactor The proportional control factor. Must be positive.
+     * @return This builder.
+     */
+    public Builder setProportionalControlFactor(float proportionalControlFactor) {
+      Assertions.checkArgument(proportionalControlFactor > 0);
+      this.proportionalControlFactor = proportionalControlFactor;
+      return this;
+    }
+
+    /**
+     * Sets the interval between playback speed updates.
+     *
+     * @param updateIntervalMs The interval between playback speed updates, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setUpdateIntervalMs(long updateIntervalMs) {
+      Assertions.checkArgument(updateIntervalMs > 0);
+      this.updateIntervalMs = updateIntervalMs;
+      return this;
+    }
+
+    /**
+     * Sets the {@link Clock} used to determine the wall-clock time and to schedule updates. Should
+     * only be set for testing purposes.
+     *
+     * @param clock The {@link Clock}.
+     * @return This builder.
+     */
+    public Builder setClock(Clock clock) {
+      this.clock = clock;
+      return this;
+    }
+
+    /**
+     * Builds a controller for the given player. The controller must be started with {@link
+     * LivePlaybackSpeedController#start()}.
+     *
+     * @param player The {@link Player} whose live offset is controlled.
+     * @return The built {@link LivePlaybackSpeedController}.
+     */
+    public LivePlaybackSpeedController build(Player player) {
+      return new LivePlaybackSpeedController(
+          player,
+          targetLiveOffsetOverrideMs,
+          minPlaybackSpeed,
+          maxPlaybackSpeed,
+          proportionalControlFactor,
+          updateIntervalMs,
+          clock);
+    }
+  }
+
+  private final Player player;
+  private final long targetLiveOffsetOverrideUs;
+  private final float minPlaybackSpeed;
+  private final float maxPlaybackSpeed;
+  private final float proportionalControlFactor;
+  private final long updateIntervalMs;
+  private final Clock clock;
+  private final HandlerWrapper handler;
+  private final Runnable updateRunnable;
+  private final Timeline.Window window;
+
+  @Nullable private Object targetLiveOffsetWindowUid;
+  private long targetLiveOffsetFromManifestUs;
+  private boolean isSpeedAdjusted;
+  private boolean started;
+
+  private LivePlaybackSpeedController(
+      Player player,
+      long targetLiveOffsetOverrideMs,
+      float minPlaybackSpeed,
+      float maxPlaybackSpeed,
+      float proportionalControlFactor,
+      long updateIntervalMs,
+      Clock clock) {
+    this.player = player;
+    this.targetLiveOffsetOverrideUs = C.msToUs(targetLiveOffsetOverrideMs);
+    this.minPlaybackSpeed = minPlaybackSpeed;
+    this.maxPlaybackSpeed = maxPlaybackSpeed;
+    this.proportionalControlFactor = proportionalControlFactor;
+    this.updateIntervalMs = updateIntervalMs;
+    this.clock = clock;
+    handler = clock.createHandler(player.getApplicationLooper(), /* callback= */ null);
+    updateRunnable = this::onUpdate;
+    window = new Timeline.Window();
+    targetLiveOffsetFromManifestUs = C.TIME_UNSET;
+  }
+
+  /**
+   * Starts controlling the live offset. Must be called on the application thread of the player.
+   */
+  public void start() {
+    if (started) {
+      return;
+    }
+    started = true;
+    player.addListener(this);
+    handler.post(updateRunnable);
+  }
+
+  /**
+   * Stops controlling the live offset, and resets the playback speed if it has been adjusted. Must
+   * be called on the application thread of the player.
+   */
+  public void stop() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    player.removeListener(this);
+    handler.removeCallbacksAndMessages(/* token= */ null);
+    setPlaybackSpeed(1f);
+  }
+
+  /**
+   * Returns the target live offset of the current window in microseconds, or {@link C#TIME_UNSET}
+   * if the current window isn't a live window.
+   */
+  public long getTargetLiveOffsetUs() {
+    if (!updateCurrentLiveWindow()) {
+      return C.TIME_UNSET;
+    }
+    if (targetLiveOffsetOverrideUs != C.TIME_UNSET) {
+      return targetLiveOffsetOverrideUs;
+    }
+    // Fix the target when the window is first seen, since the default position of a live window
+    // moves in steps of whole segments as the window is updated.
+    if (!window.uid.equals(targetLiveOffsetWindowUid)) {
+      targetLiveOffsetWindowUid = window.uid;
+      targetLiveOffsetFromManifestUs =
+          window.durationUs == C.TIME_UNSET
+              ? C.TIME_UNSET
+              : window.durationUs - window.defaultPositionUs;
+    }
+    return targetLiveOffsetFromManifestUs;
+  }
+
+  /**
+   * Returns the current live offset in microseconds, or {@link C#TIME_UNSET} if the current window
+   * isn't a live window whose start time is known.
+   */
+  public long getCurrentLiveOffsetUs() {
+    if (!updateCurrentLiveWindow() || window.windowStartTimeMs == C.TIME_UNSET) {
+      return C.TIME_UNSET;
+    }
+    return C.msToUs(clock.currentTimeMillis() - window.windowStartTimeMs)
+        - C.msToUs(player.getCurrentPosition());
+  }
+
+  // Player.EventListener implementation.
+
+  @Override
+  public void onTimelineChanged(Timeline timeline, @Player.TimelineChangeReason int reason) {
+    if (reason != Player.TIMELINE_CHANGE_REASON_DYNAMIC) {
+      // New media, whose target live offset may differ.
+      targetLiveOffsetWindowUid = null;
+    }
+  }
+
+  @Override
+  public void onIsPlayingChanged(boolean isPlaying) {
+    updatePlaybackSpeed();
+  }
+
+  // Internal methods.
+
+  private void onUpdate() {
+    if (!started) {
+      return;
+    }
+    updatePlaybackSpeed();
+    handler.postDelayed(updateRunnable, updateIntervalMs);
+  }
+
+  private void updatePlaybackSpeed() {
+    float playbackSpeed = 1f;
+    if (player.isPlaying()) {
+      long targetLiveOffsetUs = getTargetLiveOffsetUs();
+      long liveOffsetUs = getCurrentLiveOffsetUs();
+      if (targetLiveOffsetUs != C.TIME_UNSET && liveOffsetUs != C.TIME_UNSET) {
+        float liveOffsetErrorSec =
+            (liveOffsetUs - targetLiveOffsetUs) / (float) C.MICROS_PER_SECOND;
+        float unroundedPlaybackSpeed = 1f + proportionalControlFactor * liveOffsetErrorSec;
+        playbackSpeed =
+            Util.constrainValue(
+                Math.round(unroundedPlaybackSpeed * PLAYBACK_SPEED_STEPS_PER_UNIT)
+                    / PLAYBACK_SPEED_STEPS_PER_UNIT,
+                minPlaybackSpeed,
+                maxPlaybackSpeed);
+      }
+    }
+    setPlaybackSpeed(playbackSpeed);
+  }
+
+  private void setPlaybackSpeed(float playbackSpeed) {
+    if (!isSpeedAdjusted && playbackSpeed == 1f) {
+      // Leave playback parameters set by the app untouched.
+      return;
+    }
+    PlaybackParameters playbackParameters = player.getPlaybackParameters();
+    if (playbackParameters.speed != playbackSpeed) {
+      player.setPlaybackParameters(
+          new PlaybackParameters(
+              playbackSpeed, playbackParameters.pitch, playbackParameters.skipSilence));
+    }
+    isSpeedAdjusted = playbackSpeed != 1f;
+  }
+
+  /**
+   * Updates {@link #window} to the current window of the player, and returns whether it's a live
+   * window.
+   */
+  private boolean updateCurrentLiveWindow() {
+    Timeline timeline = player.getCurrentTimeline();
+    if (timeline.isEmpty() || player.isPlayingAd()) {
+      return false;
+    }
+    timeline.getWindow(player.getCurrentWindowIndex(), window);
+    return window.isLive;
+  }
+}
@@ -40,6 +40,12 @@ public final class VersionTable {
   public static final int FEATURE_CACHE_CONTENT_METADATA = 1;
   /** Version of tables used for cache file metadata. */
   public static final int FEATURE_CACHE_FILE_METADATA = 2;
+  /** Version of tables used for persisted extractor seek indices. */
+  public static final int FEATURE_SEEK_INDEX = 3;
+  /** Version of tables used for persisted bandwidth priors. */
+  public static final int FEATURE_BANDWIDTH_PRIORS = 4;
+  /** Version of tables used for cache slab spans. */
+  public static final int FEATURE_CACHE_SLABS = 5;
 
   private static final String TABLE_NAME = DatabaseProvider.TABLE_PREFIX + "Versions";
 
@@ -67,7 +73,14 @@ public final class VersionTable {
 
   @Documented
   @Retention(RetentionPolicy.SOURCE)
-  @IntDef({FEATURE_OFFLINE, FEATURE_CACHE_CONTENT_METADATA, FEATURE_CACHE_FILE_METADATA})
+  @IntDef({
+    FEATURE_OFFLINE,
+    FEATURE_CACHE_CONTENT_METADATA,
+    FEATURE_CACHE_FILE_METADATA,
+    FEATURE_SEEK_INDEX,
+    FEATURE_BANDWIDTH_PRIORS,
+    FEATURE_CACHE_SLABS
+  })
   private @interface Feature {}
 
   private VersionTable() {}
@@ -220,13 +220,38 @@ public abstract class BinarySearchSeeker {
   }
 
   protected SeekOperationParams createSeekParamsForTargetTimeUs(long timeUs) {
-    return new SeekOperationParams(
+    return createSeekParamsForTargetTimeUs(
         timeUs,
-        seekMap.timeUsToTargetTime(timeUs),
         seekMap.floorTimePosition,
         seekMap.ceilingTimePosition,
         seekMap.floorBytePosition,
-        seekMap.ceilingBytePosition,
+        seekMap.ceilingBytePosition);
+  }
+
+  /**
+   * Creates the parameters of a seek operation whose search starts from the given range, rather
+   * than from the range covering the whole stream.
+   *
+   * @param timeUs The seek time, in microseconds.
+   * @param floorTimePosition The timestamp at the floor of the search range.
+   * @param ceilingTimePosition The timestamp at the ceiling of the search range.
+   * @param floorBytePosition The byte position at the floor of the search range.
+   * @param ceilingBytePosition The byte position at the ceiling of the search range.
+   * @return The parameters of the seek operation.
+   */
+  protected final SeekOperationParams createSeekParamsForTargetTimeUs(
+      long timeUs,
+      long floorTimePosition,
+      long ceilingTimePosition,
+      long floorBytePosition,
+      long ceilingBytePosition) {
+    return new SeekOperationParams(
+        timeUs,
+        seekMap.timeUsToTargetTime(timeUs),
+        floorTimePosition,
+        ceilingTimePosition,
+        floorBytePosition,
+        ceilingBytePosition,
         seekMap.approxBytesPerFrame);
   }
 
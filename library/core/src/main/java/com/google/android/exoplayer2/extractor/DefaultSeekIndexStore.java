@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A {@link SeekIndexStore} that persists seek indices in an SQLite database provided by a {@link
+ * DatabaseProvider}. The least recently used entries are removed once the number of stored seek
+ * indices exceeds a maximum.
+ */
+public final class DefaultSeekIndexStore implements SeekIndexStore {
+
+  /** The default maximum number of stored seek indices. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 256;
+
+  private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "SeekIndices";
+  private static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_KEY = "key";
+  private static final String COLUMN_SEEK_INDEX = "seek_index";
+  private static final String COLUMN_LAST_ACCESS_TIMESTAMP = "last_access_timestamp";
+
+  private static final int COLUMN_INDEX_SEEK_INDEX = 0;
+
+  private static final String WHERE_KEY_EQUALS = COLUMN_KEY + " = ?";
+
+  /** The length of the entry count at the start of an encoded seek index, in bytes. */
+  private static final int ENCODED_HEADER_LENGTH = 4;
+  /** The length of the size, offset, duration and time of each encoded entry, in bytes. */
+  private static final int ENCODED_ENTRY_LENGTH = 28;
+
+  private static final String[] COLUMNS = new String[] {COLUMN_SEEK_INDEX};
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_KEY
+          + " TEXT PRIMARY KEY NOT NULL,"
+          + COLUMN_SEEK_INDEX
+          + " BLOB NOT NULL,"
+          + COLUMN_LAST_ACCESS_TIMESTAMP
+          + " INTEGER NOT NULL)";
+
+  private final String name;
+  private final String tableName;
+  private final DatabaseProvider databaseProvider;
+  private final int maxEntryCount;
+
+  private boolean initialized;
+
+  /**
+   * Equivalent to {@code DefaultSeekIndexStore(databaseProvider, "",
+   * DEFAULT_MAX_ENTRY_COUNT)}.
+   *
+   * @param databaseProvider Provides the SQLite database in which seek indices are persisted.
+   */
+  public DefaultSeekIndexStore(DatabaseProvider databaseProvider) {
+    this(databaseProvider, /* name= */ "", DEFAULT_MAX_ENTRY_COUNT);
+  }
+
+  /**
+   * @param databaseProvider Provides the SQLite database in which seek indices are persisted.
+   * @param name The name of the store. This name is incorporated into the name of the SQLite table
+   *     in which seek indices are persisted.
+   * @param maxEntryCount The maximum number of seek indices to persist.
+   */
+  public DefaultSeekIndexStore(DatabaseProvider databaseProvider, String name, int maxEntryCount) {
+    Assertions.checkArgument(maxEntryCount > 0);
+    this.databaseProvider = databaseProvider;
+    this.name = name;
+    this.maxEntryCount = maxEntryCount;
+    tableName = TABLE_PREFIX + name;
+  }
+
+  @Override
+  @WorkerThread
+  @Nullable
+  public synchronized ChunkIndex get(String key) throws IOException {
+    ensureInitialized();
+    byte[] data;
+    try (Cursor cursor =
+        databaseProvider
+            .getReadableDatabase()
+            .query(
+                tableName,
+                COLUMNS,
+                WHERE_KEY_EQUALS,
+                new String[] {key},
+                /* groupBy= */ null,
+                /* having= */ null,
+                /* orderBy= */ null)) {
+      if (!cursor.moveToFirst()) {
+        return null;
+      }
+      data = cursor.getBlob(COLUMN_INDEX_SEEK_INDEX);
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    try {
+      ContentValues values = new ContentValues();
+      values.put(COLUMN_LAST_ACCESS_TIMESTAMP, System.currentTimeMillis());
+      databaseProvider
+          .getWritableDatabase()
+          .update(tableName, values, WHERE_KEY_EQUALS, new String[] {key});
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    return decode(data);
+  }
+
+  @Override
+  @WorkerThread
+  public synchronized void put(String key, ChunkIndex seekIndex) throws IOException {
+    ensureInitialized();
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_KEY, key);
+    values.put(COLUMN_SEEK_INDEX, encode(seekIndex));
+    values.put(COLUMN_LAST_ACCESS_TIMESTAMP, System.currentTimeMillis());
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+        writableDatabase.execSQL(
+            "DELETE FROM "
+                + tableName
+                + " WHERE "
+                + COLUMN_KEY
+                + " NOT IN (SELECT "
+                + COLUMN_KEY
+                + " FROM "
+                + tableName
+                + " ORDER BY "
+                + COLUMN_LAST_ACCESS_TIMESTAMP
+                + " DESC LIMIT "
+                + maxEntryCount
+                + ")");
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private void ensureInitialized() throws DatabaseIOException {
+    if (initialized) {
+      return;
+    }
+    try {
+      SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+      int version =
+          VersionTable.getVersion(readableDatabase, VersionTable.FEATURE_SEEK_INDEX, name);
+      if (version != TABLE_VERSION) {
+        SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+        writableDatabase.beginTransactionNonExclusive();
+        try {
+          VersionTable.setVersion(
+              writableDatabase, VersionTable.FEATURE_SEEK_INDEX, name, TABLE_VERSION);
+          writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+          writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          writableDatabase.setTransactionSuccessful();
+        } finally {
+          writableDatabase.endTransaction();
+        }
+      }
+      initialized = true;
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private static byte[] encode(ChunkIndex seekIndex) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(outputStream);
+    output.writeInt(seekIndex.length);
+    for (int i = 0; i < seekIndex.length; i++) {
+      output.writeInt(seekIndex.sizes[i]);
+      output.writeLong(seekIndex.offsets[i]);
+      output.writeLong(seekIndex.durationsUs[i]);
+      output.writeLong(seekIndex.timesUs[i]);
+    }
+    output.flush();
+    return outputStream.toByteArray();
+  }
+
+  @Nullable
+  private static ChunkIndex decode(byte[] data) throws IOException {
+    if (data.length < ENCODED_HEADER_LENGTH) {
+      return null;
+    }
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+    int length = input.readInt();
+    // Check the length against the data before allocating, as corrupt data may claim any length.
+    if (length <= 0
+        || (long) length * ENCODED_ENTRY_LENGTH != data.length - ENCODED_HEADER_LENGTH) {
+      return null;
+    }
+    int[] sizes = new int[length];
+    long[] offsets = new long[length];
+    long[] durationsUs = new long[length];
+    long[] timesUs = new long[length];
+    for (int i = 0; i < length; i++) {
+      sizes[i] = input.readInt();
+      offsets[i] = input.readLong();
+      durationsUs[i] = input.readLong();
+      timesUs[i] = input.readLong();
+    }
+    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+  }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link ExtractorInput} that reads from a {@link ByteBuffer} holding all of the remaining
+ * data, typically obtained from {@link DataSource#mapRemaining()}.
+ *
+ * <p>Unlike {@link DefaultExtractorInput}, data is not staged in a peek buffer. Peeking, skipping
+ * and advancing the peek position only move offsets into the buffer, and reads and peeks copy
+ * directly from the buffer into the target.
+ */
+public final class MappedExtractorInput implements ExtractorInput {
+
+  private final ByteBuffer data;
+  @Nullable private final DataSource dataSource;
+  private final long streamLength;
+  private final boolean endOfDataIsEndOfInput;
+
+  private long position;
+  private int readOffset;
+  private int peekOffset;
+  private boolean reachedEndOfData;
+
+  /**
+   * Equivalent to {@code MappedExtractorInput(data, position, length, true)}.
+   *
+   * @param data The buffer containing the data, from its position to its limit. The position and
+   *     limit of the buffer are not modified.
+   * @param position The position in the stream of the first byte in {@code data}.
+   * @param length The length of the stream, or {@link C#LENGTH_UNSET} if it is unknown.
+   */
+  public MappedExtractorInput(ByteBuffer data, long position, long length) {
+    this(data, position, length, /* endOfDataIsEndOfInput= */ true);
+  }
+
+  /**
+   * Equivalent to {@code MappedExtractorInput(data, null, position, length,
+   * endOfDataIsEndOfInput)}.
+   *
+   * @param data The buffer containing the data, from its position to its limit. The position and
+   *     limit of the buffer are not modified.
+   * @param position The position in the stream of the first byte in {@code data}.
+   * @param length The length of the stream, or {@link C#LENGTH_UNSET} if it is unknown.
+   * @param endOfDataIsEndOfInput Whether the end of {@code data} is the end of the input. If false,
+   *     {@code data} holds only a prefix of the remaining input, and operations that require data
+   *     beyond its end throw {@link EOFException} rather than signalling the end of the input.
+   */
+  public MappedExtractorInput(
+      ByteBuffer data, long position, long length, boolean endOfDataIsEndOfInput) {
+    this(data, /* dataSource= */ null, position, length, endOfDataIsEndOfInput);
+  }
+
+  /**
+   * @param data The buffer containing the data, from its position to its limit. The position and
+   *     limit of the buffer are not modified.
+   * @param dataSource The {@link DataSource} from which {@code data} was mapped, which is notified
+   *     as data is read or skipped, or null.
+   * @param position The position in the stream of the first byte in {@code data}.
+   * @param length The length of the stream, or {@link C#LENGTH_UNSET} if it is unknown.
+   * @param endOfDataIsEndOfInput Whether the end of {@code data} is the end of the input. If false,
+   *     {@code data} holds only a prefix of the remaining input, and operations that require data
+   *     beyond its end throw {@link EOFException} rather than signalling the end of the input.
+   */
+  public MappedExtractorInput(
+      ByteBuffer data,
+      @Nullable DataSource dataSource,
+      long position,
+      long length,
+      boolean endOfDataIsEndOfInput) {
+    this.data = data.slice();
+    this.dataSource = dataSource;
+    this.position = position;
+    this.streamLength = length;
+    this.endOfDataIsEndOfInput = endOfDataIsEndOfInput;
+  }
+
+  /** Returns whether any operation has required data beyond the end of the buffer. */
+  public boolean hasReachedEndOfData() {
+    return reachedEndOfData;
+  }
+
+  @Override
+  public int read(byte[] target, int offset, int length) throws EOFException {
+    int bytesRead = copy(readOffset, target, offset, length);
+    if (bytesRead != C.RESULT_END_OF_INPUT) {
+      commitBytesRead(bytesRead);
+    }
+    return bytesRead;
+  }
+
+  @Override
+  public boolean readFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+      throws EOFException {
+    if (!checkAvailable(readOffset, length, allowEndOfInput)) {
+      return false;
+    }
+    copy(readOffset, target, offset, length);
+    commitBytesRead(length);
+    return true;
+  }
+
+  @Override
+  public void readFully(byte[] target, int offset, int length) throws EOFException {
+    readFully(target, offset, length, false);
+  }
+
+  @Override
+  public int skip(int length) throws EOFException {
+    int bytesSkipped = Math.min(length, data.limit() - readOffset);
+    if (length > 0 && bytesSkipped == 0) {
+      return endOfData();
+    } else if (bytesSkipped < length) {
+      reachedEndOfData = true;
+    }
+    commitBytesRead(bytesSkipped);
+    return bytesSkipped;
+  }
+
+  @Override
+  public boolean skipFully(int length, boolean allowEndOfInput) throws EOFException {
+    if (!checkAvailable(readOffset, length, allowEndOfInput)) {
+      return false;
+    }
+    commitBytesRead(length);
+    return true;
+  }
+
+  @Override
+  public void skipFully(int length) throws EOFException {
+    skipFully(length, false);
+  }
+
+  @Override
+  public int peek(byte[] target, int offset, int length) throws EOFException {
+    int bytesPeeked = copy(peekOffset, target, offset, length);
+    if (bytesPeeked != C.RESULT_END_OF_INPUT) {
+      peekOffset += bytesPeeked;
+    }
+    return bytesPeeked;
+  }
+
+  @Override
+  public boolean peekFully(byte[] target, int offset, int length, boolean allowEndOfInput)
+      throws EOFException {
+    if (!checkAvailable(peekOffset, length, allowEndOfInput)) {
+      return false;
+    }
+    copy(peekOffset, target, offset, length);
+    peekOffset += length;
+    return true;
+  }
+
+  @Override
+  public void peekFully(byte[] target, int offset, int length) throws EOFException {
+    peekFully(target, offset, length, false);
+  }
+
+  @Override
+  public boolean advancePeekPosition(int length, boolean allowEndOfInput) throws EOFException {
+    if (!checkAvailable(peekOffset, length, allowEndOfInput)) {
+      return false;
+    }
+    peekOffset += length;
+    return true;
+  }
+
+  @Override
+  public void advancePeekPosition(int length) throws EOFException {
+    advancePeekPosition(length, false);
+  }
+
+  @Override
+  public void resetPeekPosition() {
+    peekOffset = readOffset;
+  }
+
+  @Override
+  public long getPeekPosition() {
+    return position + peekOffset - readOffset;
+  }
+
+  @Override
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public long getLength() {
+    return streamLength;
+  }
+
+  @Override
+  public <E extends Throwable> void setRetryPosition(long position, E e) throws E {
+    Assertions.checkArgument(position >= 0);
+    this.position = position;
+    throw e;
+  }
+
+  /**
+   * Copies data starting at {@code fromOffset} in {@link #data}.
+   *
+   * @param fromOffset The offset in {@link #data} from which to copy.
+   * @param target A target array into which data should be written.
+   * @param offset The offset into the target array at which to write.
+   * @param length The maximum number of bytes to copy.
+   * @return The number of bytes copied, or {@link C#RESULT_END_OF_INPUT} if {@code length} is
+   *     greater than zero but the end of the input has been reached.
+   * @throws EOFException If {@code length} is greater than zero and no data is available, but the
+   *     end of the data is not the end of the input.
+   */
+  private int copy(int fromOffset, byte[] target, int offset, int length) throws EOFException {
+    int bytesCopied = Math.min(length, data.limit() - fromOffset);
+    if (length > 0 && bytesCopied == 0) {
+      return endOfData();
+    } else if (bytesCopied < length) {
+      reachedEndOfData = true;
+    }
+    data.position(fromOffset);
+    data.get(target, offset, bytesCopied);
+    return bytesCopied;
+  }
+
+  /**
+   * Checks whether {@code length} bytes are available from {@code fromOffset}.
+   *
+   * @param fromOffset The offset in {@link #data} from which the data is required.
+   * @param length The number of bytes required.
+   * @param allowEndOfInput Whether encountering the end of the input having no data available is
+   *     allowed, and should result in {@code false} being returned.
+   * @return Whether the data is available.
+   * @throws EOFException If the end of input was encountered having some but not all of the data
+   *     available, or if no data was available and {@code allowEndOfInput} is false, or if the
+   *     data is not available and the end of the data is not the end of the input.
+   */
+  private boolean checkAvailable(int fromOffset, int length, boolean allowEndOfInput)
+      throws EOFException {
+    int available = data.limit() - fromOffset;
+    if (available >= length) {
+      return true;
+    }
+    reachedEndOfData = true;
+    if (available == 0 && allowEndOfInput && endOfDataIsEndOfInput) {
+      return false;
+    }
+    throw new EOFException();
+  }
+
+  /**
+   * Handles an operation that requires data when none is available.
+   *
+   * @return {@link C#RESULT_END_OF_INPUT}, if the end of the data is the end of the input.
+   * @throws EOFException If the end of the data is not the end of the input.
+   */
+  private int endOfData() throws EOFException {
+    reachedEndOfData = true;
+    if (!endOfDataIsEndOfInput) {
+      throw new EOFException();
+    }
+    return C.RESULT_END_OF_INPUT;
+  }
+
+  /**
+   * Advances the read position by the specified number of bytes, and resets the peek position.
+   *
+   * @param bytesRead The number of bytes read.
+   */
+  private void commitBytesRead(int bytesRead) {
+    readOffset += bytesRead;
+    peekOffset = readOffset;
+    position += bytesRead;
+    if (dataSource != null && bytesRead > 0) {
+      dataSource.onMappedDataConsumed(bytesRead);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+
+/**
+ * An {@link Extractor} whose seek index can be persisted in a {@link SeekIndexStore} and restored
+ * when the same media is extracted again, avoiding the reads otherwise needed to build it.
+ */
+public interface SeekIndexExtractor extends Extractor {
+
+  /**
+   * Restores a seek index previously obtained from {@link #getSeekIndex()} for the same media.
+   *
+   * <p>Must be called after {@link #init(ExtractorOutput)} and before the first call to {@link
+   * #read(ExtractorInput, PositionHolder)}.
+   *
+   * @param seekIndex The seek index to restore.
+   */
+  void setRestoredSeekIndex(ChunkIndex seekIndex);
+
+  /**
+   * Returns the seek index built so far, or null if the extractor has not built one that is worth
+   * persisting.
+   */
+  @Nullable
+  ChunkIndex getSeekIndex();
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import java.io.IOException;
+
+/**
+ * Persists the seek indices built by {@link SeekIndexExtractor SeekIndexExtractors}, so that they
+ * can be restored when the same media is opened again.
+ *
+ * <p>Keys identify a specific version of the media, and typically combine its URI or custom cache
+ * key with its length and, where available, its entity tag.
+ */
+public interface SeekIndexStore {
+
+  /**
+   * Returns the seek index stored for the given key, or null if there is none.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param key The key identifying the media.
+   * @return The stored seek index, or null.
+   * @throws IOException If an error occurs reading the seek index.
+   */
+  @WorkerThread
+  @Nullable
+  ChunkIndex get(String key) throws IOException;
+
+  /**
+   * Stores a seek index for the given key, replacing any existing one.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param key The key identifying the media.
+   * @param seekIndex The seek index to store.
+   * @throws IOException If an error occurs storing the seek index.
+   */
+  @WorkerThread
+  void put(String key, ChunkIndex seekIndex) throws IOException;
+}
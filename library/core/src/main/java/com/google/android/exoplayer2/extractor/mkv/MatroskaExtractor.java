@@ -33,6 +33,7 @@ import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.MpegAudioHeader;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexExtractor;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.util.Assertions;
@@ -59,7 +60,7 @@ import java.util.Locale;
 import java.util.UUID;
 
 /** Extracts data from the Matroska and WebM container formats. */
-public class MatroskaExtractor implements Extractor {
+public class MatroskaExtractor implements SeekIndexExtractor {
 
   /** Factory for {@link MatroskaExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new MatroskaExtractor()};
@@ -347,6 +348,10 @@ public class MatroskaExtractor implements Extractor {
   // Whether a seek map has been sent to the output.
   private boolean sentSeekMap;
 
+  // A seek index restored from a previous extraction, and the seek index built from the Cues.
+  @Nullable private ChunkIndex restoredSeekIndex;
+  @Nullable private ChunkIndex seekIndex;
+
   // Master seek entry related elements.
   private int seekEntryId;
   private long seekEntryPosition;
@@ -445,6 +450,19 @@ public class MatroskaExtractor implements Extractor {
     // Do nothing
   }
 
+  // SeekIndexExtractor implementation.
+
+  @Override
+  public final void setRestoredSeekIndex(ChunkIndex seekIndex) {
+    restoredSeekIndex = seekIndex;
+  }
+
+  @Override
+  @Nullable
+  public final ChunkIndex getSeekIndex() {
+    return seekIndex;
+  }
+
   @Override
   public final int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
@@ -613,7 +631,13 @@ public class MatroskaExtractor implements Extractor {
       case ID_CLUSTER:
         if (!sentSeekMap) {
           // We need to build cues before parsing the cluster.
-          if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
+          if (restoredSeekIndex != null) {
+            // The cues were indexed when this media was previously extracted. Use the restored
+            // index rather than seeking to read them again.
+            seekIndex = restoredSeekIndex;
+            extractorOutput.seekMap(restoredSeekIndex);
+            sentSeekMap = true;
+          } else if (seekForCuesEnabled && cuesContentPosition != C.POSITION_UNSET) {
             // We know where the Cues element is located. Seek to request it.
             seekForCues = true;
           } else {
@@ -1647,7 +1671,8 @@ public class MatroskaExtractor implements Extractor {
 
     cueTimesUs = null;
     cueClusterPositions = null;
-    return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+    seekIndex = new ChunkIndex(sizes, offsets, durationsUs, timesUs);
+    return seekIndex;
   }
 
   /**
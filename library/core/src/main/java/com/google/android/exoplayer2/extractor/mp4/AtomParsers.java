@@ -140,7 +140,7 @@ import java.util.List;
    * @return Sample table described by the stbl atom.
    * @throws ParserException Thrown if the stbl atom can't be parsed.
    */
-  public static TrackSampleTable parseStbl(
+  public static ArrayTrackSampleTable parseStbl(
       Track track, Atom.ContainerAtom stblAtom, GaplessInfoHolder gaplessInfoHolder)
       throws ParserException {
     SampleSizeBox sampleSizeBox;
@@ -157,7 +157,7 @@ import java.util.List;
 
     int sampleCount = sampleSizeBox.getSampleCount();
     if (sampleCount == 0) {
-      return new TrackSampleTable(
+      return new ArrayTrackSampleTable(
           track,
           /* offsets= */ new long[0],
           /* sizes= */ new int[0],
@@ -365,7 +365,7 @@ import java.util.List;
 
     if (track.editListDurations == null) {
       Util.scaleLargeTimestampsInPlace(timestamps, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
+      return new ArrayTrackSampleTable(
           track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
     }
 
@@ -396,7 +396,7 @@ import java.util.List;
           long editedDurationUs =
               Util.scaleLargeTimestamp(
                   track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale);
-          return new TrackSampleTable(
+          return new ArrayTrackSampleTable(
               track, offsets, sizes, maximumSize, timestamps, flags, editedDurationUs);
         }
       }
@@ -414,7 +414,7 @@ import java.util.List;
       }
       durationUs =
           Util.scaleLargeTimestamp(duration - editStartTime, C.MICROS_PER_SECOND, track.timescale);
-      return new TrackSampleTable(
+      return new ArrayTrackSampleTable(
           track, offsets, sizes, maximumSize, timestamps, flags, durationUs);
     }
 
@@ -485,7 +485,7 @@ import java.util.List;
     }
     long editedDurationUs =
         Util.scaleLargeTimestamp(pts, C.MICROS_PER_SECOND, track.movieTimescale);
-    return new TrackSampleTable(
+    return new ArrayTrackSampleTable(
         track,
         editedOffsets,
         editedSizes,
@@ -495,6 +495,247 @@ import java.util.List;
         editedDurationUs);
   }
 
+  /**
+   * Parses an stbl atom (defined in 14496-12) into a {@link CompactTrackSampleTable}, which keeps
+   * the sample table in the run-length and chunk-based form in which it's stored rather than
+   * holding the properties of every sample in arrays.
+   *
+   * <p>Only tracks without edit lists, and tracks with a single edit that can be applied by
+   * offsetting sample timestamps or using gapless playback information, can be represented in
+   * compact form. Fixed sample size raw audio, which may need to be rechunked, is not supported.
+   *
+   * @param track Track to which this sample table corresponds.
+   * @param stblAtom stbl (sample table) atom to decode.
+   * @param gaplessInfoHolder Holder to populate with gapless playback information.
+   * @return Sample table described by the stbl atom, or {@code null} if the sample table can't be
+   *     represented in compact form, in which case {@link #parseStbl} should be used instead.
+   * @throws ParserException Thrown if the stbl atom can't be parsed.
+   */
+  @Nullable
+  public static CompactTrackSampleTable parseCompactStbl(
+      Track track, Atom.ContainerAtom stblAtom, GaplessInfoHolder gaplessInfoHolder)
+      throws ParserException {
+    CompactTrackSampleTable.SampleSizes sampleSizes;
+    Atom.LeafAtom stszAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stsz);
+    if (stszAtom != null) {
+      sampleSizes = CompactTrackSampleTable.SampleSizes.fromStsz(stszAtom.data);
+    } else {
+      Atom.LeafAtom stz2Atom = stblAtom.getLeafAtomOfType(Atom.TYPE_stz2);
+      if (stz2Atom == null) {
+        throw new ParserException("Track has no sample table size information");
+      }
+      sampleSizes = CompactTrackSampleTable.SampleSizes.fromStz2(stz2Atom.data);
+    }
+    int sampleCount = sampleSizes.sampleCount;
+    if (sampleCount == 0
+        || (sampleSizes.isFixedSampleSize()
+            && MimeTypes.AUDIO_RAW.equals(track.format.sampleMimeType))) {
+      return null;
+    }
+
+    // Chunk offsets, skipping chunks without samples.
+    boolean chunkOffsetsAreLongs = false;
+    Atom.LeafAtom chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stco);
+    if (chunkOffsetsAtom == null) {
+      chunkOffsetsAreLongs = true;
+      chunkOffsetsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_co64);
+    }
+    ParsableByteArray stsc = stblAtom.getLeafAtomOfType(Atom.TYPE_stsc).data;
+    ChunkIterator chunkIterator =
+        new ChunkIterator(stsc, chunkOffsetsAtom.data, chunkOffsetsAreLongs);
+    long[] chunkOffsets = new long[chunkIterator.length];
+    int[] chunkFirstSampleIndices = new int[chunkIterator.length];
+    long[] chunkAccumulatedSizes = new long[chunkIterator.length];
+    int chunkCount = 0;
+    int chunkedSampleCount = 0;
+    long accumulatedSize = 0;
+    int maximumSize = 0;
+    while (chunkedSampleCount < sampleCount && chunkIterator.moveNext()) {
+      if (chunkIterator.numSamples == 0) {
+        continue;
+      }
+      chunkOffsets[chunkCount] = chunkIterator.offset;
+      chunkFirstSampleIndices[chunkCount] = chunkedSampleCount;
+      chunkAccumulatedSizes[chunkCount] = accumulatedSize;
+      chunkCount++;
+      int nextChunkFirstSampleIndex =
+          (int) Math.min(sampleCount, (long) chunkedSampleCount + chunkIterator.numSamples);
+      if (sampleSizes.isFixedSampleSize()) {
+        accumulatedSize += sampleSizes.getTotalSize(chunkedSampleCount, nextChunkFirstSampleIndex);
+        maximumSize = sampleSizes.get(0);
+      } else {
+        for (int i = chunkedSampleCount; i < nextChunkFirstSampleIndex; i++) {
+          int size = sampleSizes.get(i);
+          accumulatedSize += size;
+          maximumSize = Math.max(maximumSize, size);
+        }
+      }
+      chunkedSampleCount = nextChunkFirstSampleIndex;
+    }
+    if (chunkedSampleCount < sampleCount) {
+      Log.w(TAG, "Unexpected end of chunk data");
+      sampleCount = chunkedSampleCount;
+      if (sampleCount == 0) {
+        return null;
+      }
+    }
+    chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount);
+    chunkFirstSampleIndices = Arrays.copyOf(chunkFirstSampleIndices, chunkCount);
+    chunkAccumulatedSizes = Arrays.copyOf(chunkAccumulatedSizes, chunkCount);
+
+    // Runs of samples with the same duration. See parseStbl regarding signed sample deltas.
+    ParsableByteArray stts = stblAtom.getLeafAtomOfType(Atom.TYPE_stts).data;
+    stts.setPosition(Atom.FULL_HEADER_SIZE);
+    int sttsEntryCount = stts.readUnsignedIntToInt();
+    if (sttsEntryCount == 0) {
+      return null;
+    }
+    int[] durationRunFirstSampleIndices = new int[sttsEntryCount];
+    long[] durationRunFirstDecodingTimes = new long[sttsEntryCount];
+    int[] durationRunSampleDurations = new int[sttsEntryCount];
+    int durationRunCount = 0;
+    int sampleIndex = 0;
+    long decodingTime = 0;
+    while (durationRunCount < sttsEntryCount && sampleIndex < sampleCount) {
+      int runSampleCount = stts.readUnsignedIntToInt();
+      int sampleDuration =
+          durationRunCount == 0 ? stts.readUnsignedIntToInt() : stts.readInt();
+      if (runSampleCount == 0) {
+        // parseStbl keeps applying the current sample duration to all subsequent samples.
+        return null;
+      }
+      durationRunFirstSampleIndices[durationRunCount] = sampleIndex;
+      durationRunFirstDecodingTimes[durationRunCount] = decodingTime;
+      durationRunSampleDurations[durationRunCount] = sampleDuration;
+      durationRunCount++;
+      sampleIndex = (int) Math.min(sampleCount, (long) sampleIndex + runSampleCount);
+      decodingTime += (long) runSampleCount * sampleDuration;
+    }
+
+    // Runs of samples with the same composition offset, if ctts is present.
+    int[] offsetRunFirstSampleIndices = null;
+    int[] offsetRunCompositionOffsets = null;
+    Atom.LeafAtom cttsAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_ctts);
+    if (cttsAtom != null) {
+      ParsableByteArray ctts = cttsAtom.data;
+      ctts.setPosition(Atom.FULL_HEADER_SIZE);
+      int cttsEntryCount = ctts.readUnsignedIntToInt();
+      int[] firstSampleIndices = new int[cttsEntryCount];
+      int[] compositionOffsets = new int[cttsEntryCount];
+      int offsetRunCount = 0;
+      sampleIndex = 0;
+      for (int i = 0; i < cttsEntryCount && sampleIndex < sampleCount; i++) {
+        int runSampleCount = ctts.readUnsignedIntToInt();
+        int compositionOffset = ctts.readInt();
+        if (runSampleCount == 0) {
+          continue;
+        }
+        firstSampleIndices[offsetRunCount] = sampleIndex;
+        compositionOffsets[offsetRunCount] = compositionOffset;
+        offsetRunCount++;
+        sampleIndex = (int) Math.min(sampleCount, (long) sampleIndex + runSampleCount);
+      }
+      if (offsetRunCount > 0) {
+        offsetRunFirstSampleIndices = Arrays.copyOf(firstSampleIndices, offsetRunCount);
+        offsetRunCompositionOffsets = Arrays.copyOf(compositionOffsets, offsetRunCount);
+      }
+    }
+    CompactTrackSampleTable.SampleTimes sampleTimes =
+        new CompactTrackSampleTable.SampleTimes(
+            Arrays.copyOf(durationRunFirstSampleIndices, durationRunCount),
+            Arrays.copyOf(durationRunFirstDecodingTimes, durationRunCount),
+            Arrays.copyOf(durationRunSampleDurations, durationRunCount),
+            offsetRunFirstSampleIndices,
+            offsetRunCompositionOffsets);
+
+    // Indices of synchronization samples, if stss is present and not empty.
+    int[] syncSampleIndices = null;
+    Atom.LeafAtom stssAtom = stblAtom.getLeafAtomOfType(Atom.TYPE_stss);
+    if (stssAtom != null) {
+      ParsableByteArray stss = stssAtom.data;
+      stss.setPosition(Atom.FULL_HEADER_SIZE);
+      int stssEntryCount = stss.readUnsignedIntToInt();
+      if (stssEntryCount > 0) {
+        syncSampleIndices = new int[stssEntryCount];
+        for (int i = 0; i < stssEntryCount; i++) {
+          syncSampleIndices[i] = stss.readUnsignedIntToInt() - 1;
+          if (i > 0 && syncSampleIndices[i] <= syncSampleIndices[i - 1]) {
+            // parseStbl only handles synchronization samples in increasing order.
+            return null;
+          }
+        }
+      }
+    }
+
+    long duration =
+        sampleTimes.getDecodingTime(sampleCount)
+            + sampleTimes.getCompositionOffset(sampleCount - 1);
+    CompactTrackSampleTable sampleTable =
+        new CompactTrackSampleTable(
+            track,
+            sampleCount,
+            maximumSize,
+            chunkOffsets,
+            chunkFirstSampleIndices,
+            chunkAccumulatedSizes,
+            sampleSizes,
+            sampleTimes,
+            syncSampleIndices,
+            /* mediaTimeOffset= */ 0,
+            Util.scaleLargeTimestamp(duration, C.MICROS_PER_SECOND, track.timescale));
+    if (track.editListDurations == null) {
+      return sampleTable;
+    }
+    if (track.editListDurations.length != 1 || track.editListMediaTimes[0] == -1) {
+      return null;
+    }
+
+    // Apply the edit as parseStbl would if it doesn't discard any samples.
+    long editStartTime = track.editListMediaTimes[0];
+    long editEndTime =
+        editStartTime
+            + Util.scaleLargeTimestamp(
+                track.editListDurations[0], track.timescale, track.movieTimescale);
+    if (track.type == C.TRACK_TYPE_AUDIO
+        && sampleCount >= 2
+        && canApplyEditWithGaplessInfo(
+            sampleTimes, sampleCount, duration, editStartTime, editEndTime)) {
+      long paddingTimeUnits = duration - editEndTime;
+      long encoderDelay =
+          Util.scaleLargeTimestamp(
+              editStartTime - sampleTimes.getPresentationTime(0),
+              track.format.sampleRate,
+              track.timescale);
+      long encoderPadding =
+          Util.scaleLargeTimestamp(paddingTimeUnits, track.format.sampleRate, track.timescale);
+      if ((encoderDelay != 0 || encoderPadding != 0)
+          && encoderDelay <= Integer.MAX_VALUE
+          && encoderPadding <= Integer.MAX_VALUE) {
+        gaplessInfoHolder.encoderDelay = (int) encoderDelay;
+        gaplessInfoHolder.encoderPadding = (int) encoderPadding;
+        return sampleTable.copyWithMediaTimeOffset(
+            /* mediaTimeOffset= */ 0,
+            Util.scaleLargeTimestamp(
+                track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale));
+      }
+    }
+    if (track.editListDurations[0] == 0) {
+      return sampleTable.copyWithMediaTimeOffset(
+          editStartTime,
+          Util.scaleLargeTimestamp(
+              duration - editStartTime, C.MICROS_PER_SECOND, track.timescale));
+    }
+    if (track.type != C.TRACK_TYPE_AUDIO
+        && (syncSampleIndices == null || syncSampleIndices[0] == 0)
+        && sampleTimes.isInPresentationTimeRange(sampleCount, editStartTime, editEndTime)) {
+      return sampleTable.copyWithMediaTimeOffset(
+          editStartTime,
+          Util.scaleLargeTimestamp(
+              track.editListDurations[0], C.MICROS_PER_SECOND, track.movieTimescale));
+    }
+    return null;
+  }
+
   /**
    * Parses a udta atom.
    *
@@ -1405,6 +1646,26 @@ import java.util.List;
         && editEndTime <= duration;
   }
 
+  /**
+   * Returns whether it's possible to apply the specified edit to a compact sample table using
+   * gapless playback info.
+   */
+  private static boolean canApplyEditWithGaplessInfo(
+      CompactTrackSampleTable.SampleTimes sampleTimes,
+      int sampleCount,
+      long duration,
+      long editStartTime,
+      long editEndTime) {
+    int lastIndex = sampleCount - 1;
+    int latestDelayIndex = Util.constrainValue(MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    int earliestPaddingIndex =
+        Util.constrainValue(sampleCount - MAX_GAPLESS_TRIM_SIZE_SAMPLES, 0, lastIndex);
+    return sampleTimes.getPresentationTime(0) <= editStartTime
+        && editStartTime < sampleTimes.getPresentationTime(latestDelayIndex)
+        && sampleTimes.getPresentationTime(earliestPaddingIndex) < editEndTime
+        && editEndTime <= duration;
+  }
+
   private AtomParsers() {
     // Prevent instantiation.
   }
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+
+/**
+ * A {@link TrackSampleTable} that keeps the sample table in the form in which it's stored in the
+ * stbl atom, and resolves the properties of individual samples on demand.
+ *
+ * <p>Sample timestamps are held as runs of samples with the same duration (stts) and composition
+ * offset (ctts), and sample offsets as the offsets of chunks (stco/co64). Sample sizes are read
+ * from the stsz or stz2 atom data, unless all samples have the same size. Looking up the properties
+ * of a sample, or the sample at a given time, takes logarithmic time.
+ */
+/* package */ final class CompactTrackSampleTable extends TrackSampleTable {
+
+  private final long[] chunkOffsets;
+  private final int[] chunkFirstSampleIndices;
+  private final long[] chunkAccumulatedSizes;
+  private final SampleSizes sampleSizes;
+  private final SampleTimes sampleTimes;
+  @Nullable private final int[] syncSampleIndices;
+  private final long mediaTimeOffset;
+  private final boolean hasNonDecreasingTimestamps;
+
+  // Accessed on the loading thread when reading samples, and on the playback thread for seeking.
+  private int cachedOffsetSampleIndex;
+  private long cachedOffset;
+  // Accessed on the loading thread when choosing the next sample to read.
+  private int cachedPrecedingSizeSampleIndex;
+  private long cachedPrecedingSize;
+
+  /**
+   * @param track The track corresponding to this sample table.
+   * @param sampleCount The number of samples.
+   * @param maximumSize The maximum sample size in bytes.
+   * @param chunkOffsets The offsets of the chunks containing samples, in bytes.
+   * @param chunkFirstSampleIndices The index of the first sample in each chunk.
+   * @param chunkAccumulatedSizes The total size of the samples preceding each chunk, in bytes.
+   * @param sampleSizes The sample sizes.
+   * @param sampleTimes The sample timestamps.
+   * @param syncSampleIndices The sorted indices of the synchronization samples, or {@code null} if
+   *     all samples are synchronization samples.
+   * @param mediaTimeOffset The media time corresponding to a timestamp of zero, in the track
+   *     timescale.
+   * @param durationUs The duration of the track sample table in microseconds.
+   */
+  public CompactTrackSampleTable(
+      Track track,
+      int sampleCount,
+      int maximumSize,
+      long[] chunkOffsets,
+      int[] chunkFirstSampleIndices,
+      long[] chunkAccumulatedSizes,
+      SampleSizes sampleSizes,
+      SampleTimes sampleTimes,
+      @Nullable int[] syncSampleIndices,
+      long mediaTimeOffset,
+      long durationUs) {
+    super(track, sampleCount, maximumSize, durationUs);
+    this.chunkOffsets = chunkOffsets;
+    this.chunkFirstSampleIndices = chunkFirstSampleIndices;
+    this.chunkAccumulatedSizes = chunkAccumulatedSizes;
+    this.sampleSizes = sampleSizes;
+    this.sampleTimes = sampleTimes;
+    this.syncSampleIndices = syncSampleIndices;
+    this.mediaTimeOffset = mediaTimeOffset;
+    hasNonDecreasingTimestamps = sampleTimes.hasNonDecreasingPresentationTimes(sampleCount);
+    cachedOffsetSampleIndex = C.INDEX_UNSET;
+    cachedPrecedingSizeSampleIndex = C.INDEX_UNSET;
+  }
+
+  @Override
+  public synchronized long getOffset(int sampleIndex) {
+    int chunkIndex = getChunkIndex(sampleIndex);
+    int chunkFirstSampleIndex = chunkFirstSampleIndices[chunkIndex];
+    long offset;
+    if (sampleIndex == cachedOffsetSampleIndex) {
+      offset = cachedOffset;
+    } else if (sampleIndex == cachedOffsetSampleIndex + 1
+        && cachedOffsetSampleIndex >= chunkFirstSampleIndex) {
+      // Samples are usually read in order, so avoid summing the sizes of the preceding samples in
+      // the chunk.
+      offset = cachedOffset + sampleSizes.get(cachedOffsetSampleIndex);
+    } else {
+      offset =
+          chunkOffsets[chunkIndex] + sampleSizes.getTotalSize(chunkFirstSampleIndex, sampleIndex);
+    }
+    cachedOffsetSampleIndex = sampleIndex;
+    cachedOffset = offset;
+    return offset;
+  }
+
+  @Override
+  public int getSize(int sampleIndex) {
+    return sampleSizes.get(sampleIndex);
+  }
+
+  @Override
+  public long getTimestampUs(int sampleIndex) {
+    return Util.scaleLargeTimestamp(
+        sampleTimes.getPresentationTime(sampleIndex) - mediaTimeOffset,
+        C.MICROS_PER_SECOND,
+        track.timescale);
+  }
+
+  @Override
+  public int getFlags(int sampleIndex) {
+    int flags =
+        syncSampleIndices == null || Arrays.binarySearch(syncSampleIndices, sampleIndex) >= 0
+            ? C.BUFFER_FLAG_KEY_FRAME
+            : 0;
+    if (sampleIndex == sampleCount - 1) {
+      flags |= C.BUFFER_FLAG_LAST_SAMPLE;
+    }
+    return flags;
+  }
+
+  @Override
+  public int getIndexOfEarlierOrEqualSynchronizationSample(long timeUs) {
+    // Mirrors Util.binarySearchFloor, which returns the first of several equal timestamps.
+    int startIndex = getIndexOfFirstSampleAtOrAfter(timeUs);
+    if (startIndex == sampleCount || getTimestampUs(startIndex) != timeUs) {
+      startIndex--;
+    }
+    if (startIndex < 0 || syncSampleIndices == null) {
+      return startIndex < 0 ? C.INDEX_UNSET : startIndex;
+    }
+    int syncIndex =
+        Util.binarySearchFloor(
+            syncSampleIndices, startIndex, /* inclusive= */ true, /* stayInBounds= */ false);
+    return syncIndex < 0 ? C.INDEX_UNSET : syncSampleIndices[syncIndex];
+  }
+
+  @Override
+  public int getIndexOfLaterOrEqualSynchronizationSample(long timeUs) {
+    // Mirrors Util.binarySearchCeil, which returns the last of several equal timestamps.
+    int startIndex = getIndexOfFirstSampleAfter(timeUs);
+    if (startIndex > 0 && getTimestampUs(startIndex - 1) == timeUs) {
+      startIndex--;
+    }
+    if (startIndex >= sampleCount || syncSampleIndices == null) {
+      return startIndex >= sampleCount ? C.INDEX_UNSET : startIndex;
+    }
+    int syncIndex =
+        Util.binarySearchCeil(
+            syncSampleIndices, startIndex, /* inclusive= */ true, /* stayInBounds= */ false);
+    return syncIndex == syncSampleIndices.length || syncSampleIndices[syncIndex] >= sampleCount
+        ? C.INDEX_UNSET
+        : syncSampleIndices[syncIndex];
+  }
+
+  /**
+   * Returns the index of the first sample with a timestamp at or after {@code timeUs}, or {@link
+   * #sampleCount} if there is no such sample.
+   */
+  public int getIndexOfFirstSampleAtOrAfter(long timeUs) {
+    int low = 0;
+    int high = sampleCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getTimestampUs(mid) < timeUs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first sample with a timestamp after {@code timeUs}, or {@link
+   * #sampleCount} if there is no such sample.
+   */
+  public int getIndexOfFirstSampleAfter(long timeUs) {
+    int low = 0;
+    int high = sampleCount;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getTimestampUs(mid) <= timeUs) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns whether the sample timestamps never decrease from one sample to the next, as required
+   * for the sample lookups by timestamp to be exact.
+   */
+  public boolean hasNonDecreasingTimestamps() {
+    return hasNonDecreasingTimestamps;
+  }
+
+  /** Returns the total size of the samples preceding the sample with the given index, in bytes. */
+  public long getTotalSizeOfPrecedingSamples(int sampleIndex) {
+    if (sampleIndex == 0) {
+      return 0;
+    }
+    int chunkIndex = getChunkIndex(Math.min(sampleIndex, sampleCount - 1));
+    int chunkFirstSampleIndex = chunkFirstSampleIndices[chunkIndex];
+    long totalSize;
+    if (cachedPrecedingSizeSampleIndex != C.INDEX_UNSET
+        && Math.abs(sampleIndex - cachedPrecedingSizeSampleIndex)
+            < sampleIndex - chunkFirstSampleIndex) {
+      // Samples are usually read in order, so only sum the sizes of the samples between the
+      // previously requested sample and this one, rather than those preceding it in the chunk.
+      totalSize =
+          sampleIndex >= cachedPrecedingSizeSampleIndex
+              ? cachedPrecedingSize
+                  + sampleSizes.getTotalSize(cachedPrecedingSizeSampleIndex, sampleIndex)
+              : cachedPrecedingSize
+                  - sampleSizes.getTotalSize(sampleIndex, cachedPrecedingSizeSampleIndex);
+    } else {
+      totalSize =
+          chunkAccumulatedSizes[chunkIndex]
+              + sampleSizes.getTotalSize(chunkFirstSampleIndex, sampleIndex);
+    }
+    cachedPrecedingSizeSampleIndex = sampleIndex;
+    cachedPrecedingSize = totalSize;
+    return totalSize;
+  }
+
+  /**
+   * Returns a copy of this sample table with sample timestamps relative to the given media time.
+   *
+   * @param mediaTimeOffset The media time corresponding to a timestamp of zero, in the track
+   *     timescale.
+   * @param durationUs The duration of the sample table in microseconds.
+   * @return The copied sample table.
+   */
+  public CompactTrackSampleTable copyWithMediaTimeOffset(long mediaTimeOffset, long durationUs) {
+    return new CompactTrackSampleTable(
+        track,
+        sampleCount,
+        maximumSize,
+        chunkOffsets,
+        chunkFirstSampleIndices,
+        chunkAccumulatedSizes,
+        sampleSizes,
+        sampleTimes,
+        syncSampleIndices,
+        mediaTimeOffset,
+        durationUs);
+  }
+
+  private int getChunkIndex(int sampleIndex) {
+    return Util.binarySearchFloor(
+        chunkFirstSampleIndices, sampleIndex, /* inclusive= */ true, /* stayInBounds= */ true);
+  }
+
+  /** Sample sizes, read from the data of an stsz or stz2 atom. */
+  public static final class SampleSizes {
+
+    // Size fields start after the version, flags, a four byte size or field size field, and the
+    // sample count.
+    private static final int FIELDS_OFFSET = Atom.FULL_HEADER_SIZE + 8;
+
+    /** The number of samples. */
+    public final int sampleCount;
+
+    private final byte[] data;
+    private final int fixedSampleSize;
+    private final int fieldSize;
+
+    /**
+     * Creates an instance from the data of an stsz atom.
+     *
+     * @param stsz The stsz atom data.
+     * @return The sample sizes.
+     */
+    public static SampleSizes fromStsz(ParsableByteArray stsz) {
+      stsz.setPosition(Atom.FULL_HEADER_SIZE);
+      int fixedSampleSize = stsz.readUnsignedIntToInt();
+      int sampleCount = stsz.readUnsignedIntToInt();
+      return new SampleSizes(stsz.data, sampleCount, fixedSampleSize, /* fieldSize= */ 32);
+    }
+
+    /**
+     * Creates an instance from the data of an stz2 atom.
+     *
+     * @param stz2 The stz2 atom data.
+     * @return The sample sizes.
+     */
+    public static SampleSizes fromStz2(ParsableByteArray stz2) {
+      stz2.setPosition(Atom.FULL_HEADER_SIZE);
+      int fieldSize = stz2.readUnsignedIntToInt() & 0x000000FF;
+      int sampleCount = stz2.readUnsignedIntToInt();
+      return new SampleSizes(stz2.data, sampleCount, /* fixedSampleSize= */ 0, fieldSize);
+    }
+
+    private SampleSizes(byte[] data, int sampleCount, int fixedSampleSize, int fieldSize) {
+      this.data = data;
+      this.sampleCount = sampleCount;
+      this.fixedSampleSize = fixedSampleSize;
+      this.fieldSize = fieldSize;
+    }
+
+    /** Returns whether all samples have the same size. */
+    public boolean isFixedSampleSize() {
+      return fixedSampleSize != 0;
+    }
+
+    /** Returns the size of the sample with the given index, in bytes. */
+    public int get(int sampleIndex) {
+      if (fixedSampleSize != 0) {
+        return fixedSampleSize;
+      }
+      if (fieldSize == 8) {
+        return data[FIELDS_OFFSET + sampleIndex] & 0xFF;
+      } else if (fieldSize == 16) {
+        int position = FIELDS_OFFSET + sampleIndex * 2;
+        return (data[position] & 0xFF) << 8 | (data[position + 1] & 0xFF);
+      } else if (fieldSize == 4) {
+        int value = data[FIELDS_OFFSET + sampleIndex / 2] & 0xFF;
+        return sampleIndex % 2 == 0 ? value >> 4 : value & 0x0F;
+      } else {
+        int position = FIELDS_OFFSET + sampleIndex * 4;
+        return (data[position] & 0xFF) << 24
+            | (data[position + 1] & 0xFF) << 16
+            | (data[position + 2] & 0xFF) << 8
+            | (data[position + 3] & 0xFF);
+      }
+    }
+
+    /**
+     * Returns the total size of the samples with indices from {@code fromIndex} (inclusive) to
+     * {@code toIndex} (exclusive), in bytes.
+     */
+    public long getTotalSize(int fromIndex, int toIndex) {
+      if (fixedSampleSize != 0) {
+        return (long) fixedSampleSize * (toIndex - fromIndex);
+      }
+      long totalSize = 0;
+      for (int i = fromIndex; i < toIndex; i++) {
+        totalSize += get(i);
+      }
+      return totalSize;
+    }
+  }
+
+  /** Sample timestamps, held as runs of samples from the stts and ctts atoms. */
+  public static final class SampleTimes {
+
+    private final int[] durationRunFirstSampleIndices;
+    private final long[] durationRunFirstDecodingTimes;
+    private final int[] durationRunSampleDurations;
+    @Nullable private final int[] offsetRunFirstSampleIndices;
+    @Nullable private final int[] offsetRunCompositionOffsets;
+
+    /**
+     * @param durationRunFirstSampleIndices The index of the first sample in each run of samples
+     *     with the same duration. The first entry must be zero.
+     * @param durationRunFirstDecodingTimes The decoding time of the first sample in each run of
+     *     samples with the same duration, in the track timescale.
+     * @param durationRunSampleDurations The duration of the samples in each run, in the track
+     *     timescale. The last run extends to the last sample.
+     * @param offsetRunFirstSampleIndices The index of the first sample in each run of samples with
+     *     the same composition offset, or {@code null} if there are no composition offsets. The
+     *     first entry must be zero.
+     * @param offsetRunCompositionOffsets The composition offset of the samples in each run, in the
+     *     track timescale, or {@code null} if there are no composition offsets. The last run
+     *     extends to the last sample.
+     */
+    public SampleTimes(
+        int[] durationRunFirstSampleIndices,
+        long[] durationRunFirstDecodingTimes,
+        int[] durationRunSampleDurations,
+        @Nullable int[] offsetRunFirstSampleIndices,
+        @Nullable int[] offsetRunCompositionOffsets) {
+      this.durationRunFirstSampleIndices = durationRunFirstSampleIndices;
+      this.durationRunFirstDecodingTimes = durationRunFirstDecodingTimes;
+      this.durationRunSampleDurations = durationRunSampleDurations;
+      this.offsetRunFirstSampleIndices = offsetRunFirstSampleIndices;
+      this.offsetRunCompositionOffsets = offsetRunCompositionOffsets;
+    }
+
+    /**
+     * Returns the decoding time of the sample with the given index, in the track timescale. If
+     * {@code sampleIndex} is the sample count, returns the end time of the last sample.
+     */
+    public long getDecodingTime(int sampleIndex) {
+      int run = getRun(durationRunFirstSampleIndices, sampleIndex);
+      return durationRunFirstDecodingTimes[run]
+          + (long) (sampleIndex - durationRunFirstSampleIndices[run])
+              * durationRunSampleDurations[run];
+    }
+
+    /** Returns the composition offset of the given sample, in the track timescale. */
+    public int getCompositionOffset(int sampleIndex) {
+      if (offsetRunFirstSampleIndices == null || offsetRunCompositionOffsets == null) {
+        return 0;
+      }
+      return offsetRunCompositionOffsets[getRun(offsetRunFirstSampleIndices, sampleIndex)];
+    }
+
+    /** Returns the presentation time of the sample with the given index, in the track timescale. */
+    public long getPresentationTime(int sampleIndex) {
+      return getDecodingTime(sampleIndex) + getCompositionOffset(sampleIndex);
+    }
+
+    /**
+     * Returns whether the presentation time of the first sample is in {@code [minTime, maxTime)},
+     * and the presentation times of all subsequent samples are greater than that of the first
+     * sample and less than {@code maxTime}.
+     *
+     * @param sampleCount The number of samples.
+     * @param minTime The minimum presentation time, in the track timescale.
+     * @param maxTime The presentation time that all samples must precede, in the track timescale.
+     * @return Whether the presentation times are in the specified range.
+     */
+    public boolean isInPresentationTimeRange(int sampleCount, long minTime, long maxTime) {
+      long firstTime = getPresentationTime(0);
+      if (firstTime < minTime || firstTime >= maxTime) {
+        return false;
+      }
+      // Presentation times change linearly within runs of samples having both the same duration
+      // and the same composition offset, so only the first and last sample of each need checking.
+      int runStartIndex = 1;
+      while (runStartIndex < sampleCount) {
+        int runEndIndex = getRunEndIndex(sampleCount, runStartIndex);
+        long runStartTime = getPresentationTime(runStartIndex);
+        long runEndTime = getPresentationTime(runEndIndex - 1);
+        if (Math.min(runStartTime, runEndTime) <= firstTime
+            || Math.max(runStartTime, runEndTime) >= maxTime) {
+          return false;
+        }
+        runStartIndex = runEndIndex;
+      }
+      return true;
+    }
+
+    /**
+     * Returns whether the presentation times of the samples never decrease from one sample to the
+     * next.
+     *
+     * @param sampleCount The number of samples.
+     * @return Whether the presentation times are non-decreasing.
+     */
+    public boolean hasNonDecreasingPresentationTimes(int sampleCount) {
+      // As above, only the first and last sample of each run need checking.
+      long previousTime = Long.MIN_VALUE;
+      int runStartIndex = 0;
+      while (runStartIndex < sampleCount) {
+        int runEndIndex = getRunEndIndex(sampleCount, runStartIndex);
+        long runStartTime = getPresentationTime(runStartIndex);
+        long runEndTime = getPresentationTime(runEndIndex - 1);
+        if (runStartTime < previousTime || runEndTime < runStartTime) {
+          return false;
+        }
+        previousTime = runEndTime;
+        runStartIndex = runEndIndex;
+      }
+      return true;
+    }
+
+    /**
+     * Returns the index following the last sample of the run of samples starting at {@code
+     * runStartIndex} that have both the same duration and the same composition offset.
+     */
+    private int getRunEndIndex(int sampleCount, int runStartIndex) {
+      return Math.min(
+          sampleCount,
+          Math.min(
+              getNextRunStartIndex(durationRunFirstSampleIndices, runStartIndex),
+              offsetRunFirstSampleIndices != null
+                  ? getNextRunStartIndex(offsetRunFirstSampleIndices, runStartIndex)
+                  : Integer.MAX_VALUE));
+    }
+
+    private static int getRun(int[] runFirstSampleIndices, int sampleIndex) {
+      return Util.binarySearchFloor(
+          runFirstSampleIndices, sampleIndex, /* inclusive= */ true, /* stayInBounds= */ true);
+    }
+
+    private static int getNextRunStartIndex(int[] runFirstSampleIndices, int sampleIndex) {
+      int nextRun = getRun(runFirstSampleIndices, sampleIndex) + 1;
+      return nextRun < runFirstSampleIndices.length
+          ? runFirstSampleIndices[nextRun]
+          : Integer.MAX_VALUE;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.extractor.mp4;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.ParserException;
@@ -52,19 +53,26 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new Mp4Extractor()};
 
   /**
-   * Flags controlling the behavior of the extractor. Possible flag value is {@link
-   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS}.
+   * Flags controlling the behavior of the extractor. Possible flag values are {@link
+   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS} and {@link #FLAG_COMPACT_SAMPLE_TABLES}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
   @IntDef(
       flag = true,
-      value = {FLAG_WORKAROUND_IGNORE_EDIT_LISTS})
+      value = {FLAG_WORKAROUND_IGNORE_EDIT_LISTS, FLAG_COMPACT_SAMPLE_TABLES})
   public @interface Flags {}
   /**
    * Flag to ignore any edit lists in the stream.
    */
   public static final int FLAG_WORKAROUND_IGNORE_EDIT_LISTS = 1;
+  /**
+   * Flag to keep sample tables in the compact form in which they're stored in the stream, rather
+   * than holding the offset, size, timestamp and flags of every sample in arrays. This reduces the
+   * time taken to prepare and the memory used by long streams. Tracks whose edit lists can't be
+   * applied to a compact sample table are parsed as if the flag were not set.
+   */
+  public static final int FLAG_COMPACT_SAMPLE_TABLES = 1 << 1;
 
   /** Parser states. */
   @Documented
@@ -115,7 +123,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
   // Extractor outputs.
   private ExtractorOutput extractorOutput;
   private Mp4Track[] tracks;
-  private long[][] accumulatedSampleSizes;
+  @Nullable private long[][] accumulatedSampleSizes;
+  @Nullable private CompactTrackSampleTable[] compactSampleTables;
   private int firstVideoTrackIndex;
   private long durationUs;
   private boolean isQuickTime;
@@ -226,14 +235,14 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == C.INDEX_UNSET) {
         return new SeekPoints(SeekPoint.START);
       }
-      long sampleTimeUs = sampleTable.timestampsUs[sampleIndex];
+      long sampleTimeUs = sampleTable.getTimestampUs(sampleIndex);
       firstTimeUs = sampleTimeUs;
-      firstOffset = sampleTable.offsets[sampleIndex];
+      firstOffset = sampleTable.getOffset(sampleIndex);
       if (sampleTimeUs < timeUs && sampleIndex < sampleTable.sampleCount - 1) {
         int secondSampleIndex = sampleTable.getIndexOfLaterOrEqualSynchronizationSample(timeUs);
         if (secondSampleIndex != C.INDEX_UNSET && secondSampleIndex != sampleIndex) {
-          secondTimeUs = sampleTable.timestampsUs[secondSampleIndex];
-          secondOffset = sampleTable.offsets[secondSampleIndex];
+          secondTimeUs = sampleTable.getTimestampUs(secondSampleIndex);
+          secondOffset = sampleTable.getOffset(secondSampleIndex);
         }
       }
     } else {
@@ -402,8 +411,9 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
 
     boolean ignoreEditLists = (flags & FLAG_WORKAROUND_IGNORE_EDIT_LISTS) != 0;
+    boolean compactSampleTables = (flags & FLAG_COMPACT_SAMPLE_TABLES) != 0;
     ArrayList<TrackSampleTable> trackSampleTables =
-        getTrackSampleTables(moov, gaplessInfoHolder, ignoreEditLists);
+        getTrackSampleTables(moov, gaplessInfoHolder, ignoreEditLists, compactSampleTables);
 
     int trackCount = trackSampleTables.size();
     for (int i = 0; i < trackCount; i++) {
@@ -438,14 +448,23 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     this.firstVideoTrackIndex = firstVideoTrackIndex;
     this.durationUs = durationUs;
     this.tracks = tracks.toArray(new Mp4Track[0]);
-    accumulatedSampleSizes = calculateAccumulatedSampleSizes(this.tracks);
+    TrackSampleTable[] sampleTables = new TrackSampleTable[this.tracks.length];
+    for (int i = 0; i < sampleTables.length; i++) {
+      sampleTables[i] = this.tracks[i].sampleTable;
+    }
+    this.compactSampleTables = getOrderedCompactSampleTables(sampleTables);
+    accumulatedSampleSizes =
+        this.compactSampleTables == null ? calculateAccumulatedSampleSizes(sampleTables) : null;
 
     extractorOutput.endTracks();
     extractorOutput.seekMap(this);
   }
 
   private ArrayList<TrackSampleTable> getTrackSampleTables(
-      ContainerAtom moov, GaplessInfoHolder gaplessInfoHolder, boolean ignoreEditLists)
+      ContainerAtom moov,
+      GaplessInfoHolder gaplessInfoHolder,
+      boolean ignoreEditLists,
+      boolean compactSampleTables)
       throws ParserException {
     ArrayList<TrackSampleTable> trackSampleTables = new ArrayList<>();
     for (int i = 0; i < moov.containerChildren.size(); i++) {
@@ -468,7 +487,13 @@ public final class Mp4Extractor implements Extractor, SeekMap {
           atom.getContainerAtomOfType(Atom.TYPE_mdia)
               .getContainerAtomOfType(Atom.TYPE_minf)
               .getContainerAtomOfType(Atom.TYPE_stbl);
-      TrackSampleTable trackSampleTable = AtomParsers.parseStbl(track, stblAtom, gaplessInfoHolder);
+      TrackSampleTable trackSampleTable = null;
+      if (compactSampleTables) {
+        trackSampleTable = AtomParsers.parseCompactStbl(track, stblAtom, gaplessInfoHolder);
+      }
+      if (trackSampleTable == null) {
+        trackSampleTable = AtomParsers.parseStbl(track, stblAtom, gaplessInfoHolder);
+      }
       if (trackSampleTable.sampleCount == 0) {
         continue;
       }
@@ -505,8 +530,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     Mp4Track track = tracks[sampleTrackIndex];
     TrackOutput trackOutput = track.trackOutput;
     int sampleIndex = track.sampleIndex;
-    long position = track.sampleTable.offsets[sampleIndex];
-    int sampleSize = track.sampleTable.sizes[sampleIndex];
+    long position = track.sampleTable.getOffset(sampleIndex);
+    int sampleSize = track.sampleTable.getSize(sampleIndex);
     long skipAmount = position - inputPosition + sampleBytesRead;
     if (skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE) {
       positionHolder.position = position;
@@ -571,8 +596,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         sampleCurrentNalBytesRemaining -= writtenBytes;
       }
     }
-    trackOutput.sampleMetadata(track.sampleTable.timestampsUs[sampleIndex],
-        track.sampleTable.flags[sampleIndex], sampleSize, 0, null);
+    trackOutput.sampleMetadata(track.sampleTable.getTimestampUs(sampleIndex),
+        track.sampleTable.getFlags(sampleIndex), sampleSize, 0, null);
     track.sampleIndex++;
     sampleTrackIndex = C.INDEX_UNSET;
     sampleBytesRead = 0;
@@ -608,8 +633,8 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       if (sampleIndex == track.sampleTable.sampleCount) {
         continue;
       }
-      long sampleOffset = track.sampleTable.offsets[sampleIndex];
-      long sampleAccumulatedBytes = accumulatedSampleSizes[trackIndex][sampleIndex];
+      long sampleOffset = track.sampleTable.getOffset(sampleIndex);
+      long sampleAccumulatedBytes = getAccumulatedSampleSize(trackIndex, sampleIndex);
       long skipAmount = sampleOffset - inputPosition;
       boolean requiresReload = skipAmount < 0 || skipAmount >= RELOAD_MINIMUM_SEEK_DISTANCE;
       if ((!requiresReload && preferredRequiresReload)
@@ -632,6 +657,20 @@ public final class Mp4Extractor implements Extractor, SeekMap {
         : minAccumulatedBytesTrackIndex;
   }
 
+  /**
+   * Returns the accumulated size of all samples which need to be read before the specified sample
+   * can be used.
+   *
+   * <p>If all tracks have compact sample tables with non-decreasing timestamps, the size is
+   * calculated when needed rather than looked up.
+   */
+  private long getAccumulatedSampleSize(int trackIndex, int sampleIndex) {
+    if (compactSampleTables != null) {
+      return calculateAccumulatedSampleSize(compactSampleTables, trackIndex, sampleIndex);
+    }
+    return Assertions.checkNotNull(accumulatedSampleSizes)[trackIndex][sampleIndex];
+  }
+
   /**
    * Updates every track's sample index to point its latest sync sample before/at {@code timeUs}.
    */
@@ -673,25 +712,79 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     }
   }
 
+  /**
+   * Returns the sample tables cast to {@link CompactTrackSampleTable}, or {@code null} if any of
+   * them is not a {@link CompactTrackSampleTable} with non-decreasing timestamps.
+   */
+  @Nullable
+  /* package */ static CompactTrackSampleTable[] getOrderedCompactSampleTables(
+      TrackSampleTable[] sampleTables) {
+    CompactTrackSampleTable[] orderedSampleTables =
+        new CompactTrackSampleTable[sampleTables.length];
+    for (int i = 0; i < sampleTables.length; i++) {
+      if (!(sampleTables[i] instanceof CompactTrackSampleTable)) {
+        return null;
+      }
+      orderedSampleTables[i] = (CompactTrackSampleTable) sampleTables[i];
+      if (!orderedSampleTables[i].hasNonDecreasingTimestamps()) {
+        return null;
+      }
+    }
+    return orderedSampleTables;
+  }
+
+  /**
+   * Calculates the accumulated size of all samples which need to be read before the specified
+   * sample can be used, as {@link #calculateAccumulatedSampleSizes(TrackSampleTable[])} would.
+   *
+   * <p>That method interleaves the samples by timestamp, reading samples with equal timestamps from
+   * the track with the highest index first. As the timestamps of each track are non-decreasing,
+   * the specified sample is therefore preceded by the samples of earlier tracks with lower
+   * timestamps, and by the samples of later tracks with lower or equal timestamps.
+   *
+   * @param sampleTables The sample tables of all tracks, whose timestamps must be non-decreasing.
+   * @param trackIndex The index of the track of the sample.
+   * @param sampleIndex The index of the sample in its track.
+   * @return The accumulated size of the samples preceding the specified sample, in bytes.
+   */
+  /* package */ static long calculateAccumulatedSampleSize(
+      CompactTrackSampleTable[] sampleTables, int trackIndex, int sampleIndex) {
+    long timeUs = sampleTables[trackIndex].getTimestampUs(sampleIndex);
+    long accumulatedSampleSize = 0;
+    for (int i = 0; i < sampleTables.length; i++) {
+      CompactTrackSampleTable sampleTable = sampleTables[i];
+      int precedingSampleCount;
+      if (i == trackIndex) {
+        precedingSampleCount = sampleIndex;
+      } else if (i < trackIndex) {
+        precedingSampleCount = sampleTable.getIndexOfFirstSampleAtOrAfter(timeUs);
+      } else {
+        precedingSampleCount = sampleTable.getIndexOfFirstSampleAfter(timeUs);
+      }
+      accumulatedSampleSize += sampleTable.getTotalSizeOfPrecedingSamples(precedingSampleCount);
+    }
+    return accumulatedSampleSize;
+  }
+
   /**
    * For each sample of each track, calculates accumulated size of all samples which need to be read
    * before this sample can be used.
    */
-  private static long[][] calculateAccumulatedSampleSizes(Mp4Track[] tracks) {
-    long[][] accumulatedSampleSizes = new long[tracks.length][];
-    int[] nextSampleIndex = new int[tracks.length];
-    long[] nextSampleTimesUs = new long[tracks.length];
-    boolean[] tracksFinished = new boolean[tracks.length];
-    for (int i = 0; i < tracks.length; i++) {
-      accumulatedSampleSizes[i] = new long[tracks[i].sampleTable.sampleCount];
-      nextSampleTimesUs[i] = tracks[i].sampleTable.timestampsUs[0];
+  /* package */ static long[][] calculateAccumulatedSampleSizes(TrackSampleTable[] sampleTables) {
+    long[][] accumulatedSampleSizes = new long[sampleTables.length][];
+    int[] nextSampleIndex = new int[sampleTables.length];
+    long[] nextSampleTimesUs = new long[sampleTables.length];
+    boolean[] tracksFinished = new boolean[sampleTables.length];
+    for (int i = 0; i < sampleTables.length; i++) {
+      accumulatedSampleSizes[i] = new long[sampleTables[i].sampleCount];
+      nextSampleTimesUs[i] = sampleTables[i].getTimestampUs(0);
     }
     long accumulatedSampleSize = 0;
     int finishedTracks = 0;
-    while (finishedTracks < tracks.length) {
+    while (finishedTracks < sampleTables.length) {
       long minTimeUs = Long.MAX_VALUE;
       int minTimeTrackIndex = -1;
-      for (int i = 0; i < tracks.length; i++) {
+      for (int i = 0; i < sampleTables.length; i++) {
         if (!tracksFinished[i] && nextSampleTimesUs[i] <= minTimeUs) {
           minTimeTrackIndex = i;
           minTimeUs = nextSampleTimesUs[i];
@@ -699,11 +792,11 @@ public final class Mp4Extractor implements Extractor, SeekMap {
       }
       int trackSampleIndex = nextSampleIndex[minTimeTrackIndex];
       accumulatedSampleSizes[minTimeTrackIndex][trackSampleIndex] = accumulatedSampleSize;
-      accumulatedSampleSize += tracks[minTimeTrackIndex].sampleTable.sizes[trackSampleIndex];
+      accumulatedSampleSize += sampleTables[minTimeTrackIndex].getSize(trackSampleIndex);
       nextSampleIndex[minTimeTrackIndex] = ++trackSampleIndex;
       if (trackSampleIndex < accumulatedSampleSizes[minTimeTrackIndex].length) {
         nextSampleTimesUs[minTimeTrackIndex] =
-            tracks[minTimeTrackIndex].sampleTable.timestampsUs[trackSampleIndex];
+            sampleTables[minTimeTrackIndex].getTimestampUs(trackSampleIndex);
       } else {
         tracksFinished[minTimeTrackIndex] = true;
         finishedTracks++;
@@ -727,7 +820,7 @@ public final class Mp4Extractor implements Extractor, SeekMap {
     if (sampleIndex == C.INDEX_UNSET) {
       return offset;
     }
-    long sampleOffset = sampleTable.offsets[sampleIndex];
+    long sampleOffset = sampleTable.getOffset(sampleIndex);
     return Math.min(sampleOffset, offset);
   }
 
@@ -30,6 +30,9 @@ import java.io.IOException;
  * duration to interpolate the PCR value of the seeking position. Then it performs binary search
  * within the stream to find a packets whose PCR value is within {@link #SEEK_TOLERANCE_US} from the
  * target PCR.
+ *
+ * <p>If a {@link TsPcrIndex} is provided, each search starts from the range between the indexed
+ * points surrounding the target, rather than from the whole stream.
  */
 /* package */ final class TsBinarySearchSeeker extends BinarySearchSeeker {
 
@@ -37,8 +40,16 @@ import java.io.IOException;
   private static final int MINIMUM_SEARCH_RANGE_BYTES = 5 * TsExtractor.TS_PACKET_SIZE;
   private static final int TIMESTAMP_SEARCH_BYTES = 600 * TsExtractor.TS_PACKET_SIZE;
 
+  private final TsPcrIndex pcrIndex;
+  private final long streamDurationUs;
+  private final long inputLength;
+
   public TsBinarySearchSeeker(
-      TimestampAdjuster pcrTimestampAdjuster, long streamDurationUs, long inputLength, int pcrPid) {
+      TimestampAdjuster pcrTimestampAdjuster,
+      TsPcrIndex pcrIndex,
+      long streamDurationUs,
+      long inputLength,
+      int pcrPid) {
     super(
         new DefaultSeekTimestampConverter(),
         new TsPcrSeeker(pcrPid, pcrTimestampAdjuster),
@@ -49,6 +60,32 @@ import java.io.IOException;
         /* ceilingBytePosition= */ inputLength,
         /* approxBytesPerFrame= */ TsExtractor.TS_PACKET_SIZE,
         MINIMUM_SEARCH_RANGE_BYTES);
+    this.pcrIndex = pcrIndex;
+    this.streamDurationUs = streamDurationUs;
+    this.inputLength = inputLength;
+  }
+
+  @Override
+  protected SeekOperationParams createSeekParamsForTargetTimeUs(long timeUs) {
+    if (pcrIndex.size() == 0) {
+      return super.createSeekParamsForTargetTimeUs(timeUs);
+    }
+    int floorIndex = pcrIndex.getFloorIndex(timeUs);
+    int ceilingIndex = floorIndex == C.INDEX_UNSET ? 0 : floorIndex + 1;
+    long floorTimeUs = 0;
+    long floorBytePosition = 0;
+    if (floorIndex != C.INDEX_UNSET) {
+      floorTimeUs = pcrIndex.getTimeUs(floorIndex);
+      floorBytePosition = pcrIndex.getPosition(floorIndex);
+    }
+    long ceilingTimeUs = streamDurationUs + 1;
+    long ceilingBytePosition = inputLength;
+    if (ceilingIndex < pcrIndex.size()) {
+      ceilingTimeUs = pcrIndex.getTimeUs(ceilingIndex);
+      ceilingBytePosition = pcrIndex.getPosition(ceilingIndex);
+    }
+    return createSeekParamsForTargetTimeUs(
+        timeUs, floorTimeUs, ceilingTimeUs, floorBytePosition, ceilingBytePosition);
   }
 
   /**
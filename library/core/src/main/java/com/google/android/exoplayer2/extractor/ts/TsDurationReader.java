@@ -48,15 +48,30 @@ import java.io.IOException;
   private long firstPcrValue;
   private long lastPcrValue;
   private long durationUs;
+  private long knownDurationUs;
 
   /* package */ TsDurationReader() {
     pcrTimestampAdjuster = new TimestampAdjuster(/* firstSampleTimestampUs= */ 0);
     firstPcrValue = C.TIME_UNSET;
     lastPcrValue = C.TIME_UNSET;
     durationUs = C.TIME_UNSET;
+    knownDurationUs = C.TIME_UNSET;
     packetBuffer = new ParsableByteArray();
   }
 
+  /**
+   * Sets the duration of the stream, if it is known from a previous extraction. The PCR value at
+   * the end of the stream is then not read. The first PCR value is still read, to initialize the
+   * {@link #getPcrTimestampAdjuster() PCR timestamp adjuster}.
+   *
+   * <p>Must be called before {@link #readDuration(ExtractorInput, PositionHolder, int)}.
+   *
+   * @param durationUs The duration of the stream, in microseconds.
+   */
+  public void setKnownDurationUs(long durationUs) {
+    knownDurationUs = durationUs;
+  }
+
   /** Returns true if a TS duration has been read. */
   public boolean isDurationReadFinished() {
     return isDurationRead;
@@ -82,11 +97,13 @@ import java.io.IOException;
     if (pcrPid <= 0) {
       return finishReadDuration(input);
     }
-    if (!isLastPcrValueRead) {
-      return readLastPcrValue(input, seekPositionHolder, pcrPid);
-    }
-    if (lastPcrValue == C.TIME_UNSET) {
-      return finishReadDuration(input);
+    if (knownDurationUs == C.TIME_UNSET) {
+      if (!isLastPcrValueRead) {
+        return readLastPcrValue(input, seekPositionHolder, pcrPid);
+      }
+      if (lastPcrValue == C.TIME_UNSET) {
+        return finishReadDuration(input);
+      }
     }
     if (!isFirstPcrValueRead) {
       return readFirstPcrValue(input, seekPositionHolder, pcrPid);
@@ -96,6 +113,10 @@ import java.io.IOException;
     }
 
     long minPcrPositionUs = pcrTimestampAdjuster.adjustTsTimestamp(firstPcrValue);
+    if (knownDurationUs != C.TIME_UNSET) {
+      durationUs = knownDurationUs;
+      return finishReadDuration(input);
+    }
     long maxPcrPositionUs = pcrTimestampAdjuster.adjustTsTimestamp(lastPcrValue);
     durationUs = maxPcrPositionUs - minPcrPositionUs;
     return finishReadDuration(input);
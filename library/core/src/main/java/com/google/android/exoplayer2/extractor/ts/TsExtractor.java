@@ -21,13 +21,16 @@ import android.util.SparseArray;
 import android.util.SparseBooleanArray;
 import android.util.SparseIntArray;
 import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexExtractor;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.extractor.ts.DefaultTsPayloadReaderFactory.Flags;
@@ -51,7 +54,7 @@ import java.util.List;
 /**
  * Extracts data from the MPEG-2 TS container format.
  */
-public final class TsExtractor implements Extractor {
+public final class TsExtractor implements SeekIndexExtractor {
 
   /** Factory for {@link TsExtractor} instances. */
   public static final ExtractorsFactory FACTORY = () -> new Extractor[] {new TsExtractor()};
@@ -121,6 +124,8 @@ public final class TsExtractor implements Extractor {
 
   // Accessed only by the loading thread.
   private TsBinarySearchSeeker tsBinarySearchSeeker;
+  private TsPcrIndex pcrIndex;
+  private long seekableInputLength;
   private ExtractorOutput output;
   private int remainingPmts;
   private boolean tracksEnded;
@@ -179,6 +184,8 @@ public final class TsExtractor implements Extractor {
     tsPayloadReaders = new SparseArray<>();
     continuityCounters = new SparseIntArray();
     durationReader = new TsDurationReader();
+    pcrIndex = new TsPcrIndex();
+    seekableInputLength = C.LENGTH_UNSET;
     pcrPid = -1;
     resetPayloadReaders();
   }
@@ -247,6 +254,26 @@ public final class TsExtractor implements Extractor {
     // Do nothing
   }
 
+  // SeekIndexExtractor implementation.
+
+  @Override
+  public void setRestoredSeekIndex(ChunkIndex seekIndex) {
+    if (mode == MODE_HLS || seekIndex.length == 0) {
+      return;
+    }
+    pcrIndex = TsPcrIndex.fromChunkIndex(seekIndex);
+    durationReader.setKnownDurationUs(seekIndex.getDurationUs());
+  }
+
+  @Override
+  @Nullable
+  public ChunkIndex getSeekIndex() {
+    if (tsBinarySearchSeeker == null) {
+      return null;
+    }
+    return pcrIndex.toChunkIndex(durationReader.getDurationUs(), seekableInputLength);
+  }
+
   @Override
   public @ReadResult int read(ExtractorInput input, PositionHolder seekPosition)
       throws IOException, InterruptedException {
@@ -298,6 +325,10 @@ public final class TsExtractor implements Extractor {
     boolean adaptationFieldExists = (tsPacketHeader & 0x20) != 0;
     boolean payloadExists = (tsPacketHeader & 0x10) != 0;
 
+    if (pid == pcrPid && adaptationFieldExists && tsBinarySearchSeeker != null) {
+      maybeIndexPcr(input, /* startOfPacket= */ endOfPacket - TS_PACKET_SIZE);
+    }
+
     TsPayloadReader payloadReader = payloadExists ? tsPayloadReaders.get(pid) : null;
     if (payloadReader == null) {
       tsPacketBuffer.setPosition(endOfPacket);
@@ -358,9 +389,11 @@ public final class TsExtractor implements Extractor {
         tsBinarySearchSeeker =
             new TsBinarySearchSeeker(
                 durationReader.getPcrTimestampAdjuster(),
+                pcrIndex,
                 durationReader.getDurationUs(),
                 inputLength,
                 pcrPid);
+        seekableInputLength = inputLength;
         output.seekMap(tsBinarySearchSeeker.getSeekMap());
       } else {
         output.seekMap(new SeekMap.Unseekable(durationReader.getDurationUs()));
@@ -368,6 +401,21 @@ public final class TsExtractor implements Extractor {
     }
   }
 
+  /**
+   * Adds the PCR carried by the packet at {@code startOfPacket} in {@link #tsPacketBuffer} to
+   * {@link #pcrIndex}, if it has one. The position of {@link #tsPacketBuffer} is left unchanged.
+   */
+  private void maybeIndexPcr(ExtractorInput input, int startOfPacket) {
+    int position = tsPacketBuffer.getPosition();
+    long pcrValue = TsUtil.readPcrFromPacket(tsPacketBuffer, startOfPacket, pcrPid);
+    tsPacketBuffer.setPosition(position);
+    if (pcrValue != C.TIME_UNSET) {
+      long pcrTimeUs = durationReader.getPcrTimestampAdjuster().adjustTsTimestamp(pcrValue);
+      long packetPosition = input.getPosition() - tsPacketBuffer.limit() + startOfPacket;
+      pcrIndex.maybeAdd(pcrTimeUs, packetPosition);
+    }
+  }
+
   private boolean fillBufferWithAtLeastOnePacket(ExtractorInput input)
       throws IOException, InterruptedException {
     byte[] data = tsPacketBuffer.data;
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.util.LongArray;
+
+/**
+ * An index of PCR timestamps and the positions of the packets carrying them, in increasing order of
+ * both timestamp and position.
+ *
+ * <p>The index is populated as a TS stream is read sequentially, keeping at most one point per
+ * {@link #MIN_POINT_INTERVAL_US}, and can be converted to and from a {@link ChunkIndex} so that it
+ * can be persisted. Usage is not thread-safe.
+ */
+/* package */ final class TsPcrIndex {
+
+  /** The minimum interval between indexed points, in microseconds. */
+  public static final long MIN_POINT_INTERVAL_US = 1_000_000;
+
+  private final LongArray timesUs;
+  private final LongArray positions;
+
+  public TsPcrIndex() {
+    timesUs = new LongArray();
+    positions = new LongArray();
+  }
+
+  /**
+   * Creates an index holding the points of a {@link ChunkIndex} previously obtained from {@link
+   * #toChunkIndex(long, long)}.
+   *
+   * @param chunkIndex The {@link ChunkIndex}.
+   * @return The index.
+   */
+  public static TsPcrIndex fromChunkIndex(ChunkIndex chunkIndex) {
+    TsPcrIndex index = new TsPcrIndex();
+    for (int i = 0; i < chunkIndex.length; i++) {
+      index.maybeAdd(chunkIndex.timesUs[i], chunkIndex.offsets[i]);
+    }
+    return index;
+  }
+
+  /** Returns the number of indexed points. */
+  public int size() {
+    return timesUs.size();
+  }
+
+  /** Returns the PCR timestamp of the point at the given index, in microseconds. */
+  public long getTimeUs(int index) {
+    return timesUs.get(index);
+  }
+
+  /** Returns the position of the packet of the point at the given index, in bytes. */
+  public long getPosition(int index) {
+    return positions.get(index);
+  }
+
+  /**
+   * Adds a point, if it follows the last indexed point by at least {@link #MIN_POINT_INTERVAL_US}
+   * and lies after it in the stream.
+   *
+   * @param timeUs The adjusted PCR timestamp, in microseconds.
+   * @param position The position of the packet carrying the PCR, in bytes.
+   */
+  public void maybeAdd(long timeUs, long position) {
+    int size = timesUs.size();
+    if (size > 0
+        && (timeUs < timesUs.get(size - 1) + MIN_POINT_INTERVAL_US
+            || position <= positions.get(size - 1))) {
+      return;
+    }
+    timesUs.add(timeUs);
+    positions.add(position);
+  }
+
+  /**
+   * Returns the index of the last point whose timestamp is less than or equal to {@code timeUs},
+   * or {@link C#INDEX_UNSET} if there is no such point.
+   */
+  public int getFloorIndex(long timeUs) {
+    int low = 0;
+    int high = timesUs.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (timesUs.get(mid) <= timeUs) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high >= 0 ? high : C.INDEX_UNSET;
+  }
+
+  /**
+   * Returns a {@link ChunkIndex} holding the indexed points, or null if the index is empty.
+   *
+   * @param durationUs The duration of the stream, in microseconds.
+   * @param inputLength The length of the stream, in bytes.
+   */
+  @Nullable
+  public ChunkIndex toChunkIndex(long durationUs, long inputLength) {
+    int size = timesUs.size();
+    if (size == 0) {
+      return null;
+    }
+    int[] sizes = new int[size];
+    long[] offsets = new long[size];
+    long[] durationsUs = new long[size];
+    long[] pointTimesUs = new long[size];
+    for (int i = 0; i < size; i++) {
+      pointTimesUs[i] = timesUs.get(i);
+      offsets[i] = positions.get(i);
+      long nextTimeUs = i < size - 1 ? timesUs.get(i + 1) : durationUs;
+      long nextPosition = i < size - 1 ? positions.get(i + 1) : inputLength;
+      durationsUs[i] = Math.max(0, nextTimeUs - pointTimesUs[i]);
+      sizes[i] = (int) Math.min(Integer.MAX_VALUE, Math.max(0, nextPosition - offsets[i]));
+    }
+    return new ChunkIndex(sizes, offsets, durationsUs, pointTimesUs);
+  }
+}
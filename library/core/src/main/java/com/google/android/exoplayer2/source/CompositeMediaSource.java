@@ -291,6 +291,32 @@ public abstract class CompositeMediaSource<T> extends BaseMediaSource {
       }
     }
 
+    @Override
+    public void onLoadHedged(
+        int windowIndex,
+        @Nullable MediaPeriodId mediaPeriodId,
+        LoadEventInfo loadEventData,
+        MediaLoadData mediaLoadData,
+        long hedgeDelayMs) {
+      if (maybeUpdateEventDispatcher(windowIndex, mediaPeriodId)) {
+        eventDispatcher.loadHedged(
+            loadEventData, maybeUpdateMediaLoadData(mediaLoadData), hedgeDelayMs);
+      }
+    }
+
+    @Override
+    public void onLoadHedgeCompleted(
+        int windowIndex,
+        @Nullable MediaPeriodId mediaPeriodId,
+        LoadEventInfo loadEventData,
+        MediaLoadData mediaLoadData,
+        boolean hedgeWon) {
+      if (maybeUpdateEventDispatcher(windowIndex, mediaPeriodId)) {
+        eventDispatcher.loadHedgeCompleted(
+            loadEventData, maybeUpdateMediaLoadData(mediaLoadData), hedgeWon);
+      }
+    }
+
     @Override
     public void onReadingStarted(int windowIndex, MediaPeriodId mediaPeriodId) {
       if (maybeUpdateEventDispatcher(windowIndex, mediaPeriodId)) {
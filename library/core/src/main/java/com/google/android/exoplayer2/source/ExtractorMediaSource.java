@@ -340,7 +340,9 @@ public final class ExtractorMediaSource extends CompositeMediaSource<Void> {
             loadableLoadErrorHandlingPolicy,
             customCacheKey,
             continueLoadingCheckIntervalBytes,
-            tag);
+            tag,
+            /* seekIndexStore= */ null,
+            /* parallelConnectionCount= */ 1);
   }
 
   @Override
@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.MappedExtractorInput;
+import com.google.android.exoplayer2.extractor.amr.AmrExtractor;
+import com.google.android.exoplayer2.extractor.flac.FlacExtractor;
+import com.google.android.exoplayer2.extractor.flv.FlvExtractor;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.mp4.FragmentedMp4Extractor;
+import com.google.android.exoplayer2.extractor.mp4.Mp4Extractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.extractor.ts.PsExtractor;
+import com.google.android.exoplayer2.extractor.wav.WavExtractor;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Selects the {@link Extractor} for a progressive stream by sniffing.
+ *
+ * <p>A prefix of the stream is peeked once, and extractors are sniffed against the prefix rather
+ * than against the input itself. An extractor is only sniffed against the input if its result may
+ * depend on data beyond the end of the prefix.
+ *
+ * <p>Extractors are sniffed in the order in which they're provided, except that the extractor
+ * previously selected for the same {@link Uri} is sniffed first, followed by extractors matching
+ * the MIME type in the response headers or the file extension of the {@link Uri}. If the previously
+ * selected extractor no longer matches, for example because the content at the {@link Uri} has
+ * changed, the remaining extractors are sniffed as if it had never been selected.
+ *
+ * <p>Only extractors that sniff an unambiguous signature are sniffed early because of a MIME type
+ * or file extension. Extractors that sniff by searching for a sync word (MP3, ADTS, AC-3, AC-4 and
+ * TS) may also match data in other formats, so they keep their place in the order in which they're
+ * provided, and a misleading MIME type or file extension can't change which extractor is selected.
+ */
+/* package */ final class ExtractorSniffer {
+
+  /**
+   * The length of the prefix against which extractors are sniffed. {@link
+   * com.google.android.exoplayer2.extractor.mp3.Mp3Extractor} peeks furthest: it searches the first
+   * 16 KiB after any ID3 tag for a frame header, and then peeks up to three further frames of up to
+   * 4 KiB each, so it can accept or reject most streams without sniffing the input itself.
+   */
+  private static final int SNIFF_PREFIX_LENGTH = 32 * 1024;
+  private static final int MAX_CACHED_DECISIONS = 32;
+
+  private static final int RANK_CACHED = 2;
+  private static final int RANK_HINTED = 1;
+  private static final int RANK_DEFAULT = 0;
+
+  private static final Map<String, Class<?>[]> HINTED_EXTRACTOR_CLASSES = new HashMap<>();
+
+  static {
+    addHint(
+        new Class<?>[] {Mp4Extractor.class, FragmentedMp4Extractor.class},
+        MimeTypes.VIDEO_MP4,
+        MimeTypes.AUDIO_MP4,
+        MimeTypes.APPLICATION_MP4,
+        "mp4",
+        "m4a",
+        "m4v",
+        "mov",
+        "3gp");
+    addHint(
+        new Class<?>[] {MatroskaExtractor.class},
+        MimeTypes.VIDEO_WEBM,
+        MimeTypes.AUDIO_WEBM,
+        MimeTypes.APPLICATION_WEBM,
+        "video/x-matroska",
+        "audio/x-matroska",
+        "webm",
+        "mkv",
+        "mka");
+    addHint(new Class<?>[] {PsExtractor.class}, "video/mp2p", "ps", "mpg", "mpeg");
+    addHint(new Class<?>[] {FlvExtractor.class}, "video/x-flv", "flv");
+    addHint(
+        new Class<?>[] {OggExtractor.class},
+        "audio/ogg",
+        "video/ogg",
+        "application/ogg",
+        "ogg",
+        "oga",
+        "opus");
+    addHint(new Class<?>[] {WavExtractor.class}, "audio/wav", "audio/x-wav", "wav");
+    addHint(new Class<?>[] {AmrExtractor.class}, "audio/amr", "amr");
+    addHint(new Class<?>[] {FlacExtractor.class}, MimeTypes.AUDIO_FLAC, "audio/x-flac", "flac");
+  }
+
+  // Guarded by the class lock.
+  private static final LinkedHashMap<String, Class<?>> cachedDecisions =
+      new LinkedHashMap<String, Class<?>>(
+          /* initialCapacity= */ 16, /* loadFactor= */ 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+          return size() > MAX_CACHED_DECISIONS;
+        }
+      };
+
+  private final Extractor[] extractors;
+
+  /** @param extractors The extractors to choose from, in order of preference. */
+  public ExtractorSniffer(Extractor[] extractors) {
+    this.extractors = extractors;
+  }
+
+  /**
+   * Returns the extractor that can read {@code input}, or {@code null} if none of the extractors
+   * can read it. The peek position of {@code input} is reset before returning.
+   *
+   * @param input The {@link ExtractorInput} to sniff.
+   * @param uri The {@link Uri} of the data.
+   * @param responseHeaders The response headers associated with the data.
+   * @return The selected extractor, or {@code null}.
+   * @throws IOException If an error occurs reading from the input.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  @Nullable
+  public Extractor sniff(ExtractorInput input, Uri uri, Map<String, List<String>> responseHeaders)
+      throws IOException, InterruptedException {
+    Extractor[] rankedExtractors = rankExtractors(uri, responseHeaders);
+    byte[] prefix = new byte[SNIFF_PREFIX_LENGTH];
+    int prefixLength = peekPrefix(input, prefix);
+    boolean prefixIsWholeInput = prefixLength < prefix.length;
+    for (Extractor extractor : rankedExtractors) {
+      if (sniff(extractor, input, prefix, prefixLength, prefixIsWholeInput)) {
+        synchronized (ExtractorSniffer.class) {
+          cachedDecisions.put(uri.toString(), extractor.getClass());
+        }
+        return extractor;
+      }
+    }
+    synchronized (ExtractorSniffer.class) {
+      cachedDecisions.remove(uri.toString());
+    }
+    return null;
+  }
+
+  private Extractor[] rankExtractors(Uri uri, Map<String, List<String>> responseHeaders) {
+    @Nullable Class<?> cachedClass;
+    synchronized (ExtractorSniffer.class) {
+      cachedClass = cachedDecisions.get(uri.toString());
+    }
+    @Nullable Class<?>[] mimeTypeHint = null;
+    @Nullable String mimeType = getContentType(responseHeaders);
+    if (mimeType != null) {
+      mimeTypeHint = HINTED_EXTRACTOR_CLASSES.get(mimeType);
+    }
+    @Nullable Class<?>[] extensionHint = null;
+    @Nullable String extension = getExtension(uri);
+    if (extension != null) {
+      extensionHint = HINTED_EXTRACTOR_CLASSES.get(extension);
+    }
+
+    Extractor[] rankedExtractors = new Extractor[extractors.length];
+    int rankedCount = 0;
+    for (int rank = RANK_CACHED; rank >= RANK_DEFAULT; rank--) {
+      for (Extractor extractor : extractors) {
+        Class<?> extractorClass = extractor.getClass();
+        int extractorRank =
+            extractorClass == cachedClass
+                ? RANK_CACHED
+                : contains(mimeTypeHint, extractorClass) || contains(extensionHint, extractorClass)
+                    ? RANK_HINTED
+                    : RANK_DEFAULT;
+        if (extractorRank == rank) {
+          rankedExtractors[rankedCount++] = extractor;
+        }
+      }
+    }
+    return rankedExtractors;
+  }
+
+  private static boolean sniff(
+      Extractor extractor,
+      ExtractorInput input,
+      byte[] prefix,
+      int prefixLength,
+      boolean prefixIsWholeInput)
+      throws IOException, InterruptedException {
+    MappedExtractorInput prefixInput =
+        new MappedExtractorInput(
+            ByteBuffer.wrap(prefix, /* offset= */ 0, prefixLength),
+            input.getPosition(),
+            input.getLength(),
+            /* endOfDataIsEndOfInput= */ prefixIsWholeInput);
+    boolean sniffed;
+    try {
+      sniffed = extractor.sniff(prefixInput);
+    } catch (EOFException e) {
+      sniffed = false;
+    }
+    if (prefixIsWholeInput || !prefixInput.hasReachedEndOfData()) {
+      if (sniffed) {
+        // Some extractors skip data they've sniffed past (e.g. ID3 tags), and expect the input to
+        // be positioned accordingly. The skipped data is still held in the input's peek buffer.
+        int bytesSkipped = (int) (prefixInput.getPosition() - input.getPosition());
+        input.skipFully(bytesSkipped);
+      }
+      return sniffed;
+    }
+    // The result may depend on data beyond the end of the prefix.
+    try {
+      return extractor.sniff(input);
+    } catch (EOFException e) {
+      return false;
+    } finally {
+      input.resetPeekPosition();
+    }
+  }
+
+  /**
+   * Peeks up to {@code prefix.length} bytes from {@code input}, and resets its peek position.
+   *
+   * @return The number of bytes peeked, which is less than {@code prefix.length} only if the end of
+   *     the input was reached.
+   */
+  private static int peekPrefix(ExtractorInput input, byte[] prefix)
+      throws IOException, InterruptedException {
+    int prefixLength = 0;
+    try {
+      while (prefixLength < prefix.length) {
+        int bytesPeeked = input.peek(prefix, prefixLength, prefix.length - prefixLength);
+        if (bytesPeeked == C.RESULT_END_OF_INPUT) {
+          break;
+        }
+        prefixLength += bytesPeeked;
+      }
+    } finally {
+      input.resetPeekPosition();
+    }
+    return prefixLength;
+  }
+
+  @Nullable
+  private static String getContentType(Map<String, List<String>> responseHeaders) {
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      if ("Content-Type".equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+        String contentType = header.getValue().get(0);
+        int parametersIndex = contentType.indexOf(';');
+        if (parametersIndex != C.INDEX_UNSET) {
+          contentType = contentType.substring(0, parametersIndex);
+        }
+        return Util.toLowerInvariant(contentType.trim());
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static String getExtension(Uri uri) {
+    @Nullable String lastPathSegment = uri.getLastPathSegment();
+    if (lastPathSegment == null) {
+      return null;
+    }
+    int extensionIndex = lastPathSegment.lastIndexOf('.');
+    return extensionIndex == C.INDEX_UNSET
+        ? null
+        : Util.toLowerInvariant(lastPathSegment.substring(extensionIndex + 1));
+  }
+
+  private static boolean contains(@Nullable Class<?>[] classes, Class<?> extractorClass) {
+    if (classes == null) {
+      return false;
+    }
+    for (Class<?> candidate : classes) {
+      if (candidate == extractorClass) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void addHint(Class<?>[] extractorClasses, String... mimeTypesAndExtensions) {
+    for (String key : mimeTypesAndExtensions) {
+      HINTED_EXTRACTOR_CLASSES.put(key, extractorClasses);
+    }
+  }
+}
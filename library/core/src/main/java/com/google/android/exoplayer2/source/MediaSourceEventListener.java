@@ -260,6 +260,46 @@ public interface MediaSourceEventListener {
       IOException error,
       boolean wasCanceled) {}
 
+  /**
+   * Called when a load has not received a response within its hedge delay, and a duplicate
+   * (hedged) request is started. The load continues with whichever request responds first.
+   *
+   * @param windowIndex The window index in the timeline of the media source this load belongs to.
+   * @param mediaPeriodId The {@link MediaPeriodId} this load belongs to. Null if the load does not
+   *     belong to a specific media period.
+   * @param loadEventInfo The {@link LoadEventInfo} corresponding to the event. The value of {@link
+   *     LoadEventInfo#loadDurationMs} is the time since the start of the original request, and
+   *     {@link LoadEventInfo#responseHeaders} will be empty.
+   * @param mediaLoadData The {@link MediaLoadData} defining the data being loaded.
+   * @param hedgeDelayMs The time for which the original request was allowed to respond before the
+   *     hedged request was started, in milliseconds.
+   */
+  default void onLoadHedged(
+      int windowIndex,
+      @Nullable MediaPeriodId mediaPeriodId,
+      LoadEventInfo loadEventInfo,
+      MediaLoadData mediaLoadData,
+      long hedgeDelayMs) {}
+
+  /**
+   * Called when one of the requests of a hedged load has responded.
+   *
+   * @param windowIndex The window index in the timeline of the media source this load belongs to.
+   * @param mediaPeriodId The {@link MediaPeriodId} this load belongs to. Null if the load does not
+   *     belong to a specific media period.
+   * @param loadEventInfo The {@link LoadEventInfo} corresponding to the event. The value of {@link
+   *     LoadEventInfo#loadDurationMs} is the time taken for the first response, measured from the
+   *     start of the original request.
+   * @param mediaLoadData The {@link MediaLoadData} defining the data being loaded.
+   * @param hedgeWon Whether the hedged request responded before the original request.
+   */
+  default void onLoadHedgeCompleted(
+      int windowIndex,
+      @Nullable MediaPeriodId mediaPeriodId,
+      LoadEventInfo loadEventInfo,
+      MediaLoadData mediaLoadData,
+      boolean hedgeWon) {}
+
   /**
    * Called when a media period is first being read from.
    *
@@ -650,6 +690,104 @@ public interface MediaSourceEventListener {
       }
     }
 
+    /** Dispatches {@link #onLoadHedged(int, MediaPeriodId, LoadEventInfo, MediaLoadData, long)}. */
+    public void loadHedged(
+        DataSpec dataSpec,
+        int dataType,
+        int trackType,
+        @Nullable Format trackFormat,
+        int trackSelectionReason,
+        @Nullable Object trackSelectionData,
+        long mediaStartTimeUs,
+        long mediaEndTimeUs,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        long hedgeDelayMs) {
+      loadHedged(
+          new LoadEventInfo(
+              dataSpec,
+              dataSpec.uri,
+              /* responseHeaders= */ Collections.emptyMap(),
+              elapsedRealtimeMs,
+              loadDurationMs,
+              /* bytesLoaded= */ 0),
+          new MediaLoadData(
+              dataType,
+              trackType,
+              trackFormat,
+              trackSelectionReason,
+              trackSelectionData,
+              adjustMediaTime(mediaStartTimeUs),
+              adjustMediaTime(mediaEndTimeUs)),
+          hedgeDelayMs);
+    }
+
+    /** Dispatches {@link #onLoadHedged(int, MediaPeriodId, LoadEventInfo, MediaLoadData, long)}. */
+    public void loadHedged(
+        LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData, long hedgeDelayMs) {
+      for (ListenerAndHandler listenerAndHandler : listenerAndHandlers) {
+        MediaSourceEventListener listener = listenerAndHandler.listener;
+        postOrRun(
+            listenerAndHandler.handler,
+            () ->
+                listener.onLoadHedged(
+                    windowIndex, mediaPeriodId, loadEventInfo, mediaLoadData, hedgeDelayMs));
+      }
+    }
+
+    /**
+     * Dispatches {@link #onLoadHedgeCompleted(int, MediaPeriodId, LoadEventInfo, MediaLoadData,
+     * boolean)}.
+     */
+    public void loadHedgeCompleted(
+        DataSpec dataSpec,
+        Uri uri,
+        Map<String, List<String>> responseHeaders,
+        int dataType,
+        int trackType,
+        @Nullable Format trackFormat,
+        int trackSelectionReason,
+        @Nullable Object trackSelectionData,
+        long mediaStartTimeUs,
+        long mediaEndTimeUs,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        boolean hedgeWon) {
+      loadHedgeCompleted(
+          new LoadEventInfo(
+              dataSpec,
+              uri,
+              responseHeaders,
+              elapsedRealtimeMs,
+              loadDurationMs,
+              /* bytesLoaded= */ 0),
+          new MediaLoadData(
+              dataType,
+              trackType,
+              trackFormat,
+              trackSelectionReason,
+              trackSelectionData,
+              adjustMediaTime(mediaStartTimeUs),
+              adjustMediaTime(mediaEndTimeUs)),
+          hedgeWon);
+    }
+
+    /**
+     * Dispatches {@link #onLoadHedgeCompleted(int, MediaPeriodId, LoadEventInfo, MediaLoadData,
+     * boolean)}.
+     */
+    public void loadHedgeCompleted(
+        LoadEventInfo loadEventInfo, MediaLoadData mediaLoadData, boolean hedgeWon) {
+      for (ListenerAndHandler listenerAndHandler : listenerAndHandlers) {
+        MediaSourceEventListener listener = listenerAndHandler.listener;
+        postOrRun(
+            listenerAndHandler.handler,
+            () ->
+                listener.onLoadHedgeCompleted(
+                    windowIndex, mediaPeriodId, loadEventInfo, mediaLoadData, hedgeWon));
+      }
+    }
+
     /** Dispatches {@link #onReadingStarted(int, MediaPeriodId)}. */
     public void readingStarted() {
       MediaPeriodId mediaPeriodId = Assertions.checkNotNull(this.mediaPeriodId);
@@ -25,11 +25,15 @@ import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.SeekParameters;
 import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.DefaultExtractorInput;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.MappedExtractorInput;
 import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekIndexExtractor;
+import com.google.android.exoplayer2.extractor.SeekIndexStore;
 import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.extractor.SeekMap.SeekPoints;
 import com.google.android.exoplayer2.extractor.SeekMap.Unseekable;
@@ -50,15 +54,21 @@ import com.google.android.exoplayer2.upstream.Loader.Loadable;
 import com.google.android.exoplayer2.upstream.StatsDataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ConditionVariable;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import com.google.android.exoplayer2.util.Util;
-import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /** A {@link MediaPeriod} that extracts data using an {@link Extractor}. */
@@ -91,6 +101,13 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    */
   private static final long DEFAULT_LAST_SAMPLE_DURATION_US = 10000;
 
+  private static final String TAG = "ProgressiveMediaPeriod";
+  private static final String SEEK_INDEX_STORE_THREAD_NAME = "ExoPlayer:SeekIndexStore";
+  /** The time for which the idle thread of the seek index store executor is kept. */
+  private static final long SEEK_INDEX_STORE_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private static ThreadPoolExecutor seekIndexStoreExecutor;
+
   private static final Map<String, String> ICY_METADATA_HEADERS = createIcyMetadataHeaders();
 
   private static final Format ICY_FORMAT =
@@ -152,6 +169,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    *     indexing. May be null.
    * @param continueLoadingCheckIntervalBytes The number of bytes that should be loaded between each
    *     invocation of {@link Callback#onContinueLoadingRequested(SequenceableLoader)}.
+   * @param seekIndexStore The {@link SeekIndexStore} in which to persist seek indices, or null.
    */
   // maybeFinishPrepare is not posted to the handler until initialization completes.
   @SuppressWarnings({
@@ -168,7 +186,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       Listener listener,
       Allocator allocator,
       @Nullable String customCacheKey,
-      int continueLoadingCheckIntervalBytes) {
+      int continueLoadingCheckIntervalBytes,
+      @Nullable SeekIndexStore seekIndexStore) {
     this.uri = uri;
     this.dataSource = dataSource;
     this.drmSessionManager = drmSessionManager;
@@ -178,8 +197,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     this.allocator = allocator;
     this.customCacheKey = customCacheKey;
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
+    // The load blocks while the sample queues are full, so it can't share an executor's threads.
     loader = new Loader("Loader:ProgressiveMediaPeriod");
-    extractorHolder = new ExtractorHolder(extractors);
+    extractorHolder = new ExtractorHolder(extractors, seekIndexStore, customCacheKey);
     loadCondition = new ConditionVariable();
     maybeFinishPrepareRunnable = this::maybeFinishPrepare;
     onContinueLoadingRequestedRunnable =
@@ -958,15 +978,26 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             length += position;
           }
           Uri uri = Assertions.checkNotNull(dataSource.getUri());
-          icyHeaders = IcyHeaders.parse(dataSource.getResponseHeaders());
+          Map<String, List<String>> responseHeaders = dataSource.getResponseHeaders();
+          icyHeaders = IcyHeaders.parse(responseHeaders);
           DataSource extractorDataSource = dataSource;
           if (icyHeaders != null && icyHeaders.metadataInterval != C.LENGTH_UNSET) {
             extractorDataSource = new IcyDataSource(dataSource, icyHeaders.metadataInterval, this);
             icyTrackOutput = icyTrack();
             icyTrackOutput.format(ICY_FORMAT);
           }
-          input = new DefaultExtractorInput(extractorDataSource, position, length);
-          Extractor extractor = extractorHolder.selectExtractor(input, extractorOutput, uri);
+          @Nullable ByteBuffer mappedData = extractorDataSource.mapRemaining();
+          input =
+              mappedData != null
+                  ? new MappedExtractorInput(
+                      mappedData,
+                      extractorDataSource,
+                      position,
+                      length,
+                      /* endOfDataIsEndOfInput= */ true)
+                  : new DefaultExtractorInput(extractorDataSource, position, length);
+          Extractor extractor =
+              extractorHolder.selectExtractor(input, extractorOutput, uri, responseHeaders);
 
           // MP3 live streams commonly have seekable metadata, despite being unseekable.
           if (icyHeaders != null && extractor instanceof Mp3Extractor) {
@@ -1039,16 +1070,28 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private static final class ExtractorHolder {
 
     private final Extractor[] extractors;
+    private final ExtractorSniffer sniffer;
+    @Nullable private final SeekIndexStore seekIndexStore;
+    @Nullable private final String customCacheKey;
 
     @Nullable private Extractor extractor;
+    @Nullable private String seekIndexKey;
 
     /**
      * Creates a holder that will select an extractor and initialize it using the specified output.
      *
      * @param extractors One or more extractors to choose from.
+     * @param seekIndexStore The {@link SeekIndexStore} in which to persist seek indices, or null.
+     * @param customCacheKey A custom key that uniquely identifies the original stream, or null.
      */
-    public ExtractorHolder(Extractor[] extractors) {
+    public ExtractorHolder(
+        Extractor[] extractors,
+        @Nullable SeekIndexStore seekIndexStore,
+        @Nullable String customCacheKey) {
       this.extractors = extractors;
+      this.seekIndexStore = seekIndexStore;
+      this.customCacheKey = customCacheKey;
+      sniffer = new ExtractorSniffer(extractors);
     }
 
     /**
@@ -1059,12 +1102,18 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
      * @param output The {@link ExtractorOutput} that will be used to initialize the selected
      *     extractor.
      * @param uri The {@link Uri} of the data.
+     * @param responseHeaders The response headers associated with the data, used as a hint when
+     *     sniffing and to identify the version of the media whose seek index is restored.
      * @return An initialized extractor for reading {@code input}.
      * @throws UnrecognizedInputFormatException Thrown if the input format could not be detected.
      * @throws IOException Thrown if the input could not be read.
      * @throws InterruptedException Thrown if the thread was interrupted.
      */
-    public Extractor selectExtractor(ExtractorInput input, ExtractorOutput output, Uri uri)
+    public Extractor selectExtractor(
+        ExtractorInput input,
+        ExtractorOutput output,
+        Uri uri,
+        Map<String, List<String>> responseHeaders)
         throws IOException, InterruptedException {
       if (extractor != null) {
         return extractor;
@@ -1072,18 +1121,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       if (extractors.length == 1) {
         this.extractor = extractors[0];
       } else {
-        for (Extractor extractor : extractors) {
-          try {
-            if (extractor.sniff(input)) {
-              this.extractor = extractor;
-              break;
-            }
-          } catch (EOFException e) {
-            // Do nothing.
-          } finally {
-            input.resetPeekPosition();
-          }
-        }
+        extractor = sniffer.sniff(input, uri, responseHeaders);
         if (extractor == null) {
           throw new UnrecognizedInputFormatException(
               "None of the available extractors ("
@@ -1093,11 +1131,83 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         }
       }
       extractor.init(output);
+      if (seekIndexStore != null && extractor instanceof SeekIndexExtractor) {
+        maybeRestoreSeekIndex(
+            seekIndexStore, (SeekIndexExtractor) extractor, uri, input, responseHeaders);
+      }
       return extractor;
     }
 
+    /**
+     * Restores the seek index persisted for the media being read, if there is one, and records the
+     * key under which the seek index is persisted when the holder is released. Does nothing if the
+     * length of the media is unknown, since it cannot then be identified reliably.
+     */
+    private void maybeRestoreSeekIndex(
+        SeekIndexStore seekIndexStore,
+        SeekIndexExtractor extractor,
+        Uri uri,
+        ExtractorInput input,
+        Map<String, List<String>> responseHeaders) {
+      long length = input.getLength();
+      if (length == C.LENGTH_UNSET) {
+        return;
+      }
+      StringBuilder key = new StringBuilder();
+      key.append(customCacheKey != null ? customCacheKey : uri.toString());
+      key.append('|').append(length);
+      @Nullable String entityTag = getHeaderValue(responseHeaders, "ETag");
+      if (entityTag != null) {
+        key.append('|').append(entityTag);
+      }
+      seekIndexKey = key.toString();
+      try {
+        @Nullable ChunkIndex seekIndex = seekIndexStore.get(seekIndexKey);
+        if (seekIndex != null) {
+          extractor.setRestoredSeekIndex(seekIndex);
+        }
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to restore seek index", e);
+      }
+    }
+
+    /**
+     * Stores the seek index built by the extractor, if it has built one. The seek index is obtained
+     * immediately, and written to the store on a background thread so that releasing the holder
+     * doesn't wait for the store.
+     */
+    private static void maybeStoreSeekIndex(
+        SeekIndexStore seekIndexStore, SeekIndexExtractor extractor, String seekIndexKey) {
+      @Nullable ChunkIndex seekIndex = extractor.getSeekIndex();
+      if (seekIndex == null || seekIndex.length == 0) {
+        return;
+      }
+      getSeekIndexStoreExecutor()
+          .execute(
+              () -> {
+                try {
+                  seekIndexStore.put(seekIndexKey, seekIndex);
+                } catch (IOException e) {
+                  Log.w(TAG, "Failed to store seek index", e);
+                }
+              });
+    }
+
+    @Nullable
+    private static String getHeaderValue(Map<String, List<String>> headers, String name) {
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+          return header.getValue().get(0);
+        }
+      }
+      return null;
+    }
+
     public void release() {
       if (extractor != null) {
+        if (seekIndexStore != null && seekIndexKey != null) {
+          maybeStoreSeekIndex(seekIndexStore, (SeekIndexExtractor) extractor, seekIndexKey);
+        }
         extractor.release();
         extractor = null;
       }
@@ -1152,6 +1262,26 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
   }
 
+  /**
+   * Returns the executor on which seek indices are stored, which is shared by all periods. Its
+   * single thread is terminated when idle, so the executor never needs to be shut down.
+   */
+  private static synchronized Executor getSeekIndexStoreExecutor() {
+    if (seekIndexStoreExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              SEEK_INDEX_STORE_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, SEEK_INDEX_STORE_THREAD_NAME));
+      executor.allowCoreThreadTimeOut(true);
+      seekIndexStoreExecutor = executor;
+    }
+    return seekIndexStoreExecutor;
+  }
+
   private static Map<String, String> createIcyMetadataHeaders() {
     Map<String, String> headers = new HashMap<>();
     headers.put(
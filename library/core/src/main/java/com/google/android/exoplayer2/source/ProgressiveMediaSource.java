@@ -23,10 +23,13 @@ import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.extractor.SeekIndexExtractor;
+import com.google.android.exoplayer2.extractor.SeekIndexStore;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.ParallelRangeDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
@@ -56,6 +59,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     private DrmSessionManager<?> drmSessionManager;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private int continueLoadingCheckIntervalBytes;
+    @Nullable private SeekIndexStore seekIndexStore;
+    private int parallelConnectionCount;
     private boolean isCreateCalled;
 
     /**
@@ -80,6 +85,7 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       drmSessionManager = DrmSessionManager.getDummyDrmSessionManager();
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       continueLoadingCheckIntervalBytes = DEFAULT_LOADING_CHECK_INTERVAL_BYTES;
+      parallelConnectionCount = 1;
     }
 
     /**
@@ -163,6 +169,42 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets the {@link SeekIndexStore} in which the seek indices built by {@link
+     * SeekIndexExtractor SeekIndexExtractors} are persisted, so that they can be restored when the
+     * same media is opened again. Seek indices are written to the store on a background thread
+     * shared by all media sources. The default value is {@code null}, in which case seek indices
+     * are not persisted.
+     *
+     * @param seekIndexStore The {@link SeekIndexStore}, or {@code null}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If {@link #createMediaSource(Uri)} has already been called.
+     */
+    public Factory setSeekIndexStore(@Nullable SeekIndexStore seekIndexStore) {
+      Assertions.checkState(!isCreateCalled);
+      this.seekIndexStore = seekIndexStore;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections over which the media is loaded concurrently. If
+     * greater than 1, the media is split into byte ranges that are fetched in parallel and
+     * reassembled in order, using a {@link ParallelRangeDataSource}. Media is still loaded over a
+     * single connection if the server doesn't support byte ranges. Ranges that have been fetched
+     * but not yet extracted are held in the player's {@link Allocator}, so they count towards its
+     * buffer. The default value is 1.
+     *
+     * @param parallelConnectionCount The maximum number of connections.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If {@link #createMediaSource(Uri)} has already been called.
+     */
+    public Factory setParallelConnectionCount(int parallelConnectionCount) {
+      Assertions.checkState(!isCreateCalled);
+      Assertions.checkArgument(parallelConnectionCount > 0);
+      this.parallelConnectionCount = parallelConnectionCount;
+      return this;
+    }
+
     /**
      * Sets the {@link DrmSessionManager} to use for acquiring {@link DrmSession DrmSessions}. The
      * default value is {@link DrmSessionManager#DUMMY}.
@@ -195,7 +237,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
           loadErrorHandlingPolicy,
           customCacheKey,
           continueLoadingCheckIntervalBytes,
-          tag);
+          tag,
+          seekIndexStore,
+          parallelConnectionCount);
     }
 
     @Override
@@ -218,6 +262,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
   @Nullable private final String customCacheKey;
   private final int continueLoadingCheckIntervalBytes;
   @Nullable private final Object tag;
+  @Nullable private final SeekIndexStore seekIndexStore;
+  private final int parallelConnectionCount;
 
   private long timelineDurationUs;
   private boolean timelineIsSeekable;
@@ -233,7 +279,9 @@ public final class ProgressiveMediaSource extends BaseMediaSource
       LoadErrorHandlingPolicy loadableLoadErrorHandlingPolicy,
       @Nullable String customCacheKey,
       int continueLoadingCheckIntervalBytes,
-      @Nullable Object tag) {
+      @Nullable Object tag,
+      @Nullable SeekIndexStore seekIndexStore,
+      int parallelConnectionCount) {
     this.uri = uri;
     this.dataSourceFactory = dataSourceFactory;
     this.extractorsFactory = extractorsFactory;
@@ -243,6 +291,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
     this.continueLoadingCheckIntervalBytes = continueLoadingCheckIntervalBytes;
     this.timelineDurationUs = C.TIME_UNSET;
     this.tag = tag;
+    this.seekIndexStore = seekIndexStore;
+    this.parallelConnectionCount = parallelConnectionCount;
   }
 
   @Override
@@ -265,7 +315,15 @@ public final class ProgressiveMediaSource extends BaseMediaSource
 
   @Override
   public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
-    DataSource dataSource = dataSourceFactory.createDataSource();
+    DataSource dataSource =
+        parallelConnectionCount > 1
+            ? new ParallelRangeDataSource(
+                dataSourceFactory,
+                parallelConnectionCount,
+                ParallelRangeDataSource.DEFAULT_RANGE_LENGTH,
+                allocator,
+                /* executorService= */ null)
+            : dataSourceFactory.createDataSource();
     if (transferListener != null) {
       dataSource.addTransferListener(transferListener);
     }
@@ -279,7 +337,8 @@ public final class ProgressiveMediaSource extends BaseMediaSource
         this,
         allocator,
         customCacheKey,
-        continueLoadingCheckIntervalBytes);
+        continueLoadingCheckIntervalBytes,
+        seekIndexStore);
   }
 
   @Override
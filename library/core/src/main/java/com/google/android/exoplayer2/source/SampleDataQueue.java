@@ -24,25 +24,48 @@ import com.google.android.exoplayer2.extractor.TrackOutput.CryptoData;
 import com.google.android.exoplayer2.source.SampleQueue.SampleExtrasHolder;
 import com.google.android.exoplayer2.upstream.Allocation;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.SpillBuffer;
+import com.google.android.exoplayer2.upstream.SpillingAllocator;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.ParsableByteArray;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-/** A queue of media sample data. */
+/**
+ * A queue of media sample data.
+ *
+ * <p>If created with a {@link SpillingAllocator}, sample data that has been read and is older than
+ * the allocator's hot window is moved into a {@link SpillBuffer}, and its allocations are released.
+ * Spilled data remains readable, so seeking back into it doesn't require it to be loaded again.
+ */
 /* package */ class SampleDataQueue {
 
+  private static final String TAG = "SampleDataQueue";
+
   private static final int INITIAL_SCRATCH_SIZE = 32;
+  private static final int DIRECT_WRITE_SCRATCH_SIZE = 8192;
 
   private final Allocator allocator;
   private final int allocationLength;
   private final ParsableByteArray scratch;
 
+  private final int hotWindowBytes;
+
+  // Used by the loading thread to stage data read from an ExtractorInput into direct allocations.
+  @Nullable private byte[] directWriteScratch;
+
+  // Accessed only by the consuming thread.
+  @Nullable private SpillBuffer spillBuffer;
+
   // References into the linked list of allocations.
   private AllocationNode firstAllocationNode;
   private AllocationNode readAllocationNode;
   private AllocationNode writeAllocationNode;
+  // The first node whose data has not been spilled. Accessed only by the consuming thread.
+  private AllocationNode firstUnspilledAllocationNode;
 
   // Accessed only by the loading thread (or the consuming thread when there is no loading thread).
   private long totalBytesWritten;
@@ -51,9 +74,17 @@ import java.util.Arrays;
     this.allocator = allocator;
     allocationLength = allocator.getIndividualAllocationLength();
     scratch = new ParsableByteArray(INITIAL_SCRATCH_SIZE);
+    if (allocator instanceof SpillingAllocator) {
+      SpillingAllocator spillingAllocator = (SpillingAllocator) allocator;
+      spillBuffer = spillingAllocator.createSpillBuffer();
+      hotWindowBytes = spillingAllocator.getHotWindowBytes();
+    } else {
+      hotWindowBytes = 0;
+    }
     firstAllocationNode = new AllocationNode(/* startPosition= */ 0, allocationLength);
     readAllocationNode = firstAllocationNode;
     writeAllocationNode = firstAllocationNode;
+    firstUnspilledAllocationNode = firstAllocationNode;
   }
 
   // Called by the consuming thread, but only when there is no loading thread.
@@ -64,10 +95,19 @@ import java.util.Arrays;
     firstAllocationNode = new AllocationNode(0, allocationLength);
     readAllocationNode = firstAllocationNode;
     writeAllocationNode = firstAllocationNode;
+    firstUnspilledAllocationNode = firstAllocationNode;
     totalBytesWritten = 0;
     allocator.trim();
   }
 
+  /** Releases any resources held by the queue. Should be called after {@link #reset()}. */
+  public void release() {
+    if (spillBuffer != null) {
+      spillBuffer.release();
+      spillBuffer = null;
+    }
+  }
+
   /**
    * Discards sample data bytes from the write side of the queue.
    *
@@ -82,6 +122,7 @@ import java.util.Arrays;
       firstAllocationNode = new AllocationNode(this.totalBytesWritten, allocationLength);
       readAllocationNode = firstAllocationNode;
       writeAllocationNode = firstAllocationNode;
+      firstUnspilledAllocationNode = firstAllocationNode;
     } else {
       // Find the last node containing at least 1 byte of data that we need to keep.
       AllocationNode lastNodeToKeep = firstAllocationNode;
@@ -101,6 +142,16 @@ import java.util.Arrays;
       if (readAllocationNode == firstNodeToDiscard) {
         readAllocationNode = lastNodeToKeep.next;
       }
+      if (firstUnspilledAllocationNode.startPosition > lastNodeToKeep.startPosition) {
+        // The last node to keep was spilled. If it's going to be written to again, it needs to be
+        // moved back into memory.
+        if (writeAllocationNode == lastNodeToKeep) {
+          unspill(lastNodeToKeep);
+          firstUnspilledAllocationNode = lastNodeToKeep;
+        } else {
+          firstUnspilledAllocationNode = lastNodeToKeep.next;
+        }
+      }
     }
   }
 
@@ -145,6 +196,7 @@ import java.util.Arrays;
       buffer.ensureSpaceForWrite(extrasHolder.size);
       readData(extrasHolder.offset, buffer.data, extrasHolder.size);
     }
+    maybeSpillBackBuffer();
   }
 
   /**
@@ -159,8 +211,11 @@ import java.util.Arrays;
     }
     while (absolutePosition >= firstAllocationNode.endPosition) {
       // Advance firstAllocationNode to the specified absolute position. Also clear nodes that are
-      // advanced past, and return their underlying allocations to the allocator.
-      allocator.release(firstAllocationNode.allocation);
+      // advanced past, and return their underlying allocations to the allocator. Spilled nodes
+      // don't have an allocation.
+      if (firstAllocationNode.allocation != null) {
+        allocator.release(firstAllocationNode.allocation);
+      }
       firstAllocationNode = firstAllocationNode.clear();
     }
     if (readAllocationNode.startPosition < firstAllocationNode.startPosition) {
@@ -168,6 +223,9 @@ import java.util.Arrays;
       // remaining node.
       readAllocationNode = firstAllocationNode;
     }
+    if (firstUnspilledAllocationNode.startPosition < firstAllocationNode.startPosition) {
+      firstUnspilledAllocationNode = firstAllocationNode;
+    }
   }
 
   // Called by the loading thread.
@@ -179,11 +237,26 @@ import java.util.Arrays;
   public int sampleData(ExtractorInput input, int length, boolean allowEndOfInput)
       throws IOException, InterruptedException {
     length = preAppend(length);
-    int bytesAppended =
-        input.read(
-            writeAllocationNode.allocation.data,
-            writeAllocationNode.translateOffset(totalBytesWritten),
-            length);
+    int bytesAppended;
+    @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+    if (writeBuffer == null) {
+      bytesAppended =
+          input.read(
+              writeAllocationNode.allocation.data,
+              writeAllocationNode.translateOffset(totalBytesWritten),
+              length);
+    } else {
+      // ExtractorInput can only read into arrays, so stage the data through a scratch array.
+      if (directWriteScratch == null) {
+        directWriteScratch = new byte[DIRECT_WRITE_SCRATCH_SIZE];
+      }
+      bytesAppended =
+          input.read(directWriteScratch, 0, Math.min(length, DIRECT_WRITE_SCRATCH_SIZE));
+      if (bytesAppended != C.RESULT_END_OF_INPUT) {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(directWriteScratch, 0, bytesAppended);
+      }
+    }
     if (bytesAppended == C.RESULT_END_OF_INPUT) {
       if (allowEndOfInput) {
         return C.RESULT_END_OF_INPUT;
@@ -197,10 +270,17 @@ import java.util.Arrays;
   public void sampleData(ParsableByteArray buffer, int length) {
     while (length > 0) {
       int bytesAppended = preAppend(length);
-      buffer.readBytes(
-          writeAllocationNode.allocation.data,
-          writeAllocationNode.translateOffset(totalBytesWritten),
-          bytesAppended);
+      @Nullable ByteBuffer writeBuffer = writeAllocationNode.writeBuffer;
+      if (writeBuffer == null) {
+        buffer.readBytes(
+            writeAllocationNode.allocation.data,
+            writeAllocationNode.translateOffset(totalBytesWritten),
+            bytesAppended);
+      } else {
+        writeBuffer.position(writeAllocationNode.translateOffset(totalBytesWritten));
+        writeBuffer.put(buffer.data, buffer.getPosition(), bytesAppended);
+        buffer.skipBytes(bytesAppended);
+      }
       length -= bytesAppended;
       postAppend(bytesAppended);
     }
@@ -305,8 +385,20 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
-      Allocation allocation = readAllocationNode.allocation;
-      target.put(allocation.data, readAllocationNode.translateOffset(absolutePosition), toCopy);
+      @Nullable ByteBuffer readBuffer = readAllocationNode.readBuffer;
+      if (readAllocationNode.spilled) {
+        Assertions.checkNotNull(spillBuffer).read(absolutePosition, target, toCopy);
+      } else if (readBuffer == null) {
+        int offset = readAllocationNode.translateOffset(absolutePosition);
+        target.put(readAllocationNode.allocation.data, offset, toCopy);
+      } else {
+        // Bulk copy between buffers, which avoids going through the Java heap if the target is
+        // also direct.
+        int offset = readAllocationNode.translateOffset(absolutePosition);
+        readBuffer.limit(offset + toCopy);
+        readBuffer.position(offset);
+        target.put(readBuffer);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -327,13 +419,24 @@ import java.util.Arrays;
     int remaining = length;
     while (remaining > 0) {
       int toCopy = Math.min(remaining, (int) (readAllocationNode.endPosition - absolutePosition));
-      Allocation allocation = readAllocationNode.allocation;
-      System.arraycopy(
-          allocation.data,
-          readAllocationNode.translateOffset(absolutePosition),
-          target,
-          length - remaining,
-          toCopy);
+      @Nullable ByteBuffer readBuffer = readAllocationNode.readBuffer;
+      if (readAllocationNode.spilled) {
+        Assertions.checkNotNull(spillBuffer)
+            .read(absolutePosition, target, length - remaining, toCopy);
+      } else if (readBuffer == null) {
+        int offset = readAllocationNode.translateOffset(absolutePosition);
+        System.arraycopy(
+            readAllocationNode.allocation.data,
+            offset,
+            target,
+            length - remaining,
+            toCopy);
+      } else {
+        int offset = readAllocationNode.translateOffset(absolutePosition);
+        readBuffer.limit(readBuffer.capacity());
+        readBuffer.position(offset);
+        readBuffer.get(target, length - remaining, toCopy);
+      }
       remaining -= toCopy;
       absolutePosition += toCopy;
       if (absolutePosition == readAllocationNode.endPosition) {
@@ -353,6 +456,64 @@ import java.util.Arrays;
     }
   }
 
+  /**
+   * Moves the data of nodes that have been read, and that are older than the hot window, into the
+   * {@link #spillBuffer}, releasing their allocations. Does nothing if spilling is not enabled.
+   */
+  private void maybeSpillBackBuffer() {
+    @Nullable SpillBuffer spillBuffer = this.spillBuffer;
+    if (spillBuffer == null) {
+      return;
+    }
+    long spillEndPosition = readAllocationNode.startPosition - hotWindowBytes;
+    AllocationNode node = firstUnspilledAllocationNode;
+    while (node.endPosition <= spillEndPosition
+        && node.endPosition - firstAllocationNode.startPosition <= spillBuffer.getCapacity()) {
+      Allocation allocation = Assertions.checkNotNull(node.allocation);
+      try {
+        if (!allocation.isDirect()) {
+          spillBuffer.write(
+              node.startPosition, allocation.data, allocation.offset, allocationLength);
+        } else {
+          ByteBuffer readBuffer = Assertions.checkNotNull(node.readBuffer);
+          readBuffer.limit(allocation.offset + allocationLength);
+          readBuffer.position(allocation.offset);
+          spillBuffer.write(node.startPosition, readBuffer);
+        }
+      } catch (IOException e) {
+        // The spill file is created by the first write, so nothing has been spilled yet.
+        Log.w(TAG, "Failed to create spill file. Back buffer will be kept in memory.", e);
+        spillBuffer.release();
+        this.spillBuffer = null;
+        return;
+      }
+      allocator.release(allocation);
+      node.spill();
+      node = Assertions.checkNotNull(node.next);
+    }
+    firstUnspilledAllocationNode = node;
+  }
+
+  /**
+   * Moves the data of a spilled node back into a newly obtained allocation.
+   *
+   * @param node The spilled node.
+   */
+  private void unspill(AllocationNode node) {
+    Allocation allocation = allocator.allocate();
+    node.unspill(allocation);
+    SpillBuffer spillBuffer = Assertions.checkNotNull(this.spillBuffer);
+    if (!allocation.isDirect()) {
+      spillBuffer.read(node.startPosition, allocation.data, allocation.offset, allocationLength);
+    } else {
+      ByteBuffer writeBuffer = Assertions.checkNotNull(node.writeBuffer);
+      writeBuffer.limit(allocation.offset + allocationLength);
+      writeBuffer.position(allocation.offset);
+      spillBuffer.read(node.startPosition, writeBuffer, allocationLength);
+      writeBuffer.limit(writeBuffer.capacity());
+    }
+  }
+
   /**
    * Clears allocation nodes starting from {@code fromNode}.
    *
@@ -365,16 +526,23 @@ import java.util.Arrays;
     // Bulk release allocations for performance (it's significantly faster when using
     // DefaultAllocator because the allocator's lock only needs to be acquired and released once)
     // [Internal: See b/29542039].
-    int allocationCount =
+    int nodeCount =
         (writeAllocationNode.wasInitialized ? 1 : 0)
             + ((int) (writeAllocationNode.startPosition - fromNode.startPosition)
                 / allocationLength);
-    Allocation[] allocationsToRelease = new Allocation[allocationCount];
+    Allocation[] allocationsToRelease = new Allocation[nodeCount];
+    int allocationCount = 0;
     AllocationNode currentNode = fromNode;
-    for (int i = 0; i < allocationsToRelease.length; i++) {
-      allocationsToRelease[i] = currentNode.allocation;
+    for (int i = 0; i < nodeCount; i++) {
+      // Spilled nodes don't have an allocation.
+      if (currentNode.allocation != null) {
+        allocationsToRelease[allocationCount++] = currentNode.allocation;
+      }
       currentNode = currentNode.clear();
     }
+    if (allocationCount < nodeCount) {
+      allocationsToRelease = Arrays.copyOf(allocationsToRelease, allocationCount);
+    }
     allocator.release(allocationsToRelease);
   }
 
@@ -416,8 +584,23 @@ import java.util.Arrays;
     public final long endPosition;
     /** Whether the node has been initialized. Remains true after {@link #clear()}. */
     public boolean wasInitialized;
+    /**
+     * Whether the node's data has been moved to the spill buffer, in which case {@link #allocation}
+     * is {@code null}.
+     */
+    public boolean spilled;
     /** The {@link Allocation}, or {@code null} if the node is not initialized. */
     @Nullable public Allocation allocation;
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used by the consuming thread,
+     * or {@code null} if the node is not initialized or the allocation is not direct.
+     */
+    @Nullable public ByteBuffer readBuffer;
+    /**
+     * A view of the {@link #allocation}'s {@link Allocation#buffer} used by the loading thread, or
+     * {@code null} if the node is not initialized or the allocation is not direct.
+     */
+    @Nullable public ByteBuffer writeBuffer;
     /**
      * The next {@link AllocationNode} in the list, or {@code null} if the node has not been
      * initialized. Remains set after {@link #clear()}.
@@ -441,14 +624,14 @@ import java.util.Arrays;
      * @param next The next {@link AllocationNode}.
      */
     public void initialize(Allocation allocation, AllocationNode next) {
-      this.allocation = allocation;
+      setAllocation(allocation);
       this.next = next;
       wasInitialized = true;
     }
 
     /**
-     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} that corresponds to
-     * the specified absolute position.
+     * Gets the offset into the {@link #allocation}'s {@link Allocation#data} or {@link
+     * Allocation#buffer} that corresponds to the specified absolute position.
      *
      * @param absolutePosition The absolute position.
      * @return The corresponding offset into the allocation's data.
@@ -457,6 +640,24 @@ import java.util.Arrays;
       return (int) (absolutePosition - startPosition) + allocation.offset;
     }
 
+    /** Marks the node as spilled and clears its {@link #allocation}. */
+    public void spill() {
+      allocation = null;
+      readBuffer = null;
+      writeBuffer = null;
+      spilled = true;
+    }
+
+    /**
+     * Marks the node as no longer spilled.
+     *
+     * @param allocation The node's new {@link Allocation}.
+     */
+    public void unspill(Allocation allocation) {
+      setAllocation(allocation);
+      spilled = false;
+    }
+
     /**
      * Clears {@link #allocation} and {@link #next}.
      *
@@ -464,9 +665,21 @@ import java.util.Arrays;
      */
     public AllocationNode clear() {
       allocation = null;
+      readBuffer = null;
+      writeBuffer = null;
       AllocationNode temp = next;
       next = null;
       return temp;
     }
+
+    private void setAllocation(Allocation allocation) {
+      this.allocation = allocation;
+      @Nullable ByteBuffer directBuffer = allocation.getDirectBuffer();
+      if (directBuffer != null) {
+        // The loading and consuming threads each need their own position and limit.
+        readBuffer = directBuffer.duplicate();
+        writeBuffer = directBuffer.duplicate();
+      }
+    }
   }
 }
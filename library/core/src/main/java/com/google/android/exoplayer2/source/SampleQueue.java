@@ -53,6 +53,7 @@ public class SampleQueue implements TrackOutput {
 
   private final SampleDataQueue sampleDataQueue;
   private final SampleExtrasHolder extrasHolder;
+  private final KeyframeIndex keyframeIndex;
   private final DrmSessionManager<?> drmSessionManager;
   private UpstreamFormatChangedListener upstreamFormatChangeListener;
 
@@ -98,6 +99,7 @@ public class SampleQueue implements TrackOutput {
     sampleDataQueue = new SampleDataQueue(allocator);
     this.drmSessionManager = drmSessionManager;
     extrasHolder = new SampleExtrasHolder();
+    keyframeIndex = new KeyframeIndex();
     capacity = SAMPLE_CAPACITY_INCREMENT;
     sourceIds = new int[capacity];
     offsets = new long[capacity];
@@ -118,6 +120,7 @@ public class SampleQueue implements TrackOutput {
   @CallSuper
   public void release() {
     reset(/* resetUpstreamFormat= */ true);
+    sampleDataQueue.release();
     releaseDrmSessionReferences();
   }
 
@@ -137,6 +140,7 @@ public class SampleQueue implements TrackOutput {
   @CallSuper
   public void reset(boolean resetUpstreamFormat) {
     sampleDataQueue.reset();
+    keyframeIndex.clear();
     length = 0;
     absoluteFirstIndex = 0;
     relativeFirstIndex = 0;
@@ -674,6 +678,9 @@ public class SampleQueue implements TrackOutput {
     formats[relativeEndIndex] = upstreamFormat;
     sourceIds[relativeEndIndex] = upstreamSourceId;
     upstreamCommittedFormat = upstreamFormat;
+    if ((sampleFlags & C.BUFFER_FLAG_KEY_FRAME) != 0) {
+      keyframeIndex.add(absoluteFirstIndex + length);
+    }
 
     length++;
     if (length == capacity) {
@@ -747,6 +754,7 @@ public class SampleQueue implements TrackOutput {
     int discardCount = getWriteIndex() - discardFromIndex;
     Assertions.checkArgument(0 <= discardCount && discardCount <= (length - readPosition));
     length -= discardCount;
+    keyframeIndex.discardFrom(getWriteIndex());
     largestQueuedTimestampUs = Math.max(largestDiscardedTimestampUs, getLargestTimestamp(length));
     isLastSampleQueued = discardCount == 0 && isLastSampleQueued;
     if (length != 0) {
@@ -833,9 +841,9 @@ public class SampleQueue implements TrackOutput {
    *     sample was found.
    */
   private int findSampleBefore(int relativeStartIndex, int length, long timeUs, boolean keyframe) {
-    // This could be optimized to use a binary search, however in practice callers to this method
-    // normally pass times near to the start of the search region. Hence it's unclear whether
-    // switching to a binary search would yield any real benefit.
+    if (keyframe) {
+      return findKeyframeBefore(relativeStartIndex, length, timeUs);
+    }
     int sampleCountToTarget = -1;
     int searchIndex = relativeStartIndex;
     for (int i = 0; i < length && timesUs[searchIndex] <= timeUs; i++) {
@@ -851,6 +859,46 @@ public class SampleQueue implements TrackOutput {
     return sampleCountToTarget;
   }
 
+  /**
+   * Equivalent to {@link #findSampleBefore(int, int, long, boolean)} with {@code keyframe} set to
+   * {@code true}, but uses a binary search over the {@link #keyframeIndex}.
+   *
+   * <p>A linear search stops at the first sample whose timestamp exceeds {@code timeUs}. Assuming
+   * that samples prior to a keyframe always have smaller timestamps than the keyframe itself (as
+   * {@link #getLargestTimestamp(int)} does), this is the same as finding the last keyframe in the
+   * range whose timestamp does not exceed {@code timeUs}. Keyframe timestamps are increasing under
+   * the same assumption, and so can be binary searched.
+   *
+   * @param relativeStartIndex The relative index from which to start searching.
+   * @param length The length of the range being searched.
+   * @param timeUs The specified time.
+   * @return The offset from {@code relativeFirstIndex} to the found keyframe, or -1 if no matching
+   *     keyframe was found.
+   */
+  private int findKeyframeBefore(int relativeStartIndex, int length, long timeUs) {
+    int startOffset =
+        relativeStartIndex >= relativeFirstIndex
+            ? relativeStartIndex - relativeFirstIndex
+            : relativeStartIndex + capacity - relativeFirstIndex;
+    int absoluteStartIndex = absoluteFirstIndex + startOffset;
+    int low = keyframeIndex.getFirstPositionAtOrAfter(absoluteStartIndex);
+    int high = keyframeIndex.getFirstPositionAtOrAfter(absoluteStartIndex + length) - 1;
+    int foundPosition = C.INDEX_UNSET;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int relativeKeyframeIndex = getRelativeIndex(keyframeIndex.get(mid) - absoluteFirstIndex);
+      if (timesUs[relativeKeyframeIndex] <= timeUs) {
+        foundPosition = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return foundPosition == C.INDEX_UNSET
+        ? -1
+        : keyframeIndex.get(foundPosition) - absoluteStartIndex;
+  }
+
   /**
    * Discards the specified number of samples.
    *
@@ -862,6 +910,7 @@ public class SampleQueue implements TrackOutput {
         Math.max(largestDiscardedTimestampUs, getLargestTimestamp(discardCount));
     length -= discardCount;
     absoluteFirstIndex += discardCount;
+    keyframeIndex.discardBefore(absoluteFirstIndex);
     relativeFirstIndex += discardCount;
     if (relativeFirstIndex >= capacity) {
       relativeFirstIndex -= capacity;
@@ -915,6 +964,88 @@ public class SampleQueue implements TrackOutput {
     return relativeIndex < capacity ? relativeIndex : relativeIndex - capacity;
   }
 
+  /**
+   * The absolute indices of the keyframes in the queue, in increasing order. Stored in a circular
+   * array so that keyframes can be added at the end and discarded from either end in amortized
+   * constant time.
+   */
+  private static final class KeyframeIndex {
+
+    private int[] indices;
+    private int first;
+    private int size;
+
+    public KeyframeIndex() {
+      indices = new int[SAMPLE_CAPACITY_INCREMENT];
+    }
+
+    /** Returns the absolute index of the keyframe at the specified position in the index. */
+    public int get(int position) {
+      int arrayIndex = first + position;
+      return indices[arrayIndex < indices.length ? arrayIndex : arrayIndex - indices.length];
+    }
+
+    /**
+     * Adds a keyframe to the end of the index.
+     *
+     * @param absoluteIndex The absolute index of the keyframe, which must be larger than that of
+     *     any keyframe already in the index.
+     */
+    public void add(int absoluteIndex) {
+      if (size == indices.length) {
+        int[] newIndices = new int[indices.length + SAMPLE_CAPACITY_INCREMENT];
+        int beforeWrap = indices.length - first;
+        System.arraycopy(indices, first, newIndices, 0, beforeWrap);
+        System.arraycopy(indices, 0, newIndices, beforeWrap, first);
+        indices = newIndices;
+        first = 0;
+      }
+      int arrayIndex = first + size;
+      indices[arrayIndex < indices.length ? arrayIndex : arrayIndex - indices.length] =
+          absoluteIndex;
+      size++;
+    }
+
+    /** Discards keyframes whose absolute index is less than {@code absoluteIndex}. */
+    public void discardBefore(int absoluteIndex) {
+      int discardCount = getFirstPositionAtOrAfter(absoluteIndex);
+      first += discardCount;
+      if (first >= indices.length) {
+        first -= indices.length;
+      }
+      size -= discardCount;
+    }
+
+    /** Discards keyframes whose absolute index is at least {@code absoluteIndex}. */
+    public void discardFrom(int absoluteIndex) {
+      size = getFirstPositionAtOrAfter(absoluteIndex);
+    }
+
+    /** Discards all keyframes. */
+    public void clear() {
+      first = 0;
+      size = 0;
+    }
+
+    /**
+     * Returns the position in the index of the first keyframe whose absolute index is greater than
+     * or equal to {@code absoluteIndex}, or the size of the index if there is no such keyframe.
+     */
+    public int getFirstPositionAtOrAfter(int absoluteIndex) {
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (get(mid) < absoluteIndex) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
   /** A holder for sample metadata not held by {@link DecoderInputBuffer}. */
   /* package */ static final class SampleExtrasHolder {
 
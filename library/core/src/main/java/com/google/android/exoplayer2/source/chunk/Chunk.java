@@ -70,6 +70,14 @@ public abstract class Chunk implements Loadable {
 
   protected final StatsDataSource dataSource;
 
+  /** Wraps the data source, allowing the chunk's request to be hedged if it's slow to respond. */
+  /* package */ final HedgingDataSource hedgingDataSource;
+  /**
+   * The source from which the chunk is loaded if its request is issued ahead of its load, or null
+   * if the chunk is loaded from the source passed to the constructor.
+   */
+  @Nullable /* package */ PrefetchingDataSource prefetchingDataSource;
+
   /**
    * @param dataSource The source from which the data should be loaded.
    * @param dataSpec Defines the data to be loaded.
@@ -89,7 +97,8 @@ public abstract class Chunk implements Loadable {
       @Nullable Object trackSelectionData,
       long startTimeUs,
       long endTimeUs) {
-    this.dataSource = new StatsDataSource(dataSource);
+    hedgingDataSource = new HedgingDataSource(dataSource);
+    this.dataSource = new StatsDataSource(hedgingDataSource);
     this.dataSpec = Assertions.checkNotNull(dataSpec);
     this.type = type;
     this.trackFormat = trackFormat;
@@ -99,6 +108,21 @@ public abstract class Chunk implements Loadable {
     this.endTimeUs = endTimeUs;
   }
 
+  /**
+   * Makes the chunk load from {@code prefetchDataSource} instead of the source passed to the
+   * constructor, so that its request can be issued ahead of its load. Must be called before the
+   * chunk is loaded.
+   *
+   * @param prefetchDataSource A {@link DataSource} that isn't used by any other chunk.
+   * @return The {@link PrefetchingDataSource} from which the chunk will be loaded.
+   */
+  /* package */ PrefetchingDataSource enablePrefetching(DataSource prefetchDataSource) {
+    PrefetchingDataSource prefetchingDataSource = new PrefetchingDataSource(prefetchDataSource);
+    this.prefetchingDataSource = prefetchingDataSource;
+    hedgingDataSource.setUpstream(prefetchingDataSource);
+    return prefetchingDataSource;
+  }
+
   /**
    * Returns the duration of the chunk in microseconds.
    */
@@ -15,6 +15,8 @@
  */
 package com.google.android.exoplayer2.source.chunk;
 
+import android.net.Uri;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
@@ -28,6 +30,7 @@ import com.google.android.exoplayer2.source.SampleQueue;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.SequenceableLoader;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
@@ -38,6 +41,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * A {@link SampleStream} that loads media in {@link Chunk}s, obtained from a {@link ChunkSource}.
@@ -59,6 +64,15 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   private static final String TAG = "ChunkSampleStream";
 
+  /** The maximum number of bytes buffered for each chunk that's requested ahead of its load. */
+  private static final int MAX_PREFETCH_BUFFER_SIZE = 512 * 1024;
+
+  private static final String HEDGE_THREAD_NAME = "ExoPlayer:ChunkSampleStreamHedge";
+  /** The maximum number of threads of the hedge executor used if no loader executor is set. */
+  private static final int MAX_SHARED_HEDGE_THREAD_COUNT = 4;
+
+  @Nullable private static ExecutorService sharedHedgeExecutorService;
+
   public final int primaryTrackType;
 
   @Nullable private final int[] embeddedTrackTypes;
@@ -75,6 +89,15 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   private final SampleQueue primarySampleQueue;
   private final SampleQueue[] embeddedSampleQueues;
   private final BaseMediaChunkOutput chunkOutput;
+  private final int chunkPipelineDepth;
+  private final Loader[] prefetchLoaders;
+  private final ArrayList<PrefetchLoadable> prefetchLoadables;
+  private final ArrayList<BaseMediaChunk> prefetchChunkQueue;
+  private final List<BaseMediaChunk> readOnlyPrefetchChunkQueue;
+  private final PrefetchCallback prefetchCallback;
+  @Nullable private final ExecutorService loaderExecutorService;
+  @Nullable private final DataSource.Factory hedgeDataSourceFactory;
+  private final HedgingDataSource.SharedUpstreamState sharedUpstreamState;
 
   private Format primaryDownstreamTrackFormat;
   @Nullable private ReleaseCallback<T> releaseCallback;
@@ -112,6 +135,63 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       DrmSessionManager<?> drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       EventDispatcher eventDispatcher) {
+    this(
+        primaryTrackType,
+        embeddedTrackTypes,
+        embeddedTrackFormats,
+        chunkSource,
+        callback,
+        allocator,
+        positionUs,
+        drmSessionManager,
+        loadErrorHandlingPolicy,
+        eventDispatcher,
+        /* loaderExecutorService= */ null,
+        /* chunkPipelineDepth= */ 1,
+        /* hedgeDataSourceFactory= */ null);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param primaryTrackType The type of the primary track. One of the {@link C} {@code
+   *     TRACK_TYPE_*} constants.
+   * @param embeddedTrackTypes The types of any embedded tracks, or null.
+   * @param embeddedTrackFormats The formats of the embedded tracks, or null.
+   * @param chunkSource A {@link ChunkSource} from which chunks to load are obtained.
+   * @param callback An {@link Callback} for the stream.
+   * @param allocator An {@link Allocator} from which allocations can be obtained.
+   * @param positionUs The position from which to start loading media.
+   * @param drmSessionManager The {@link DrmSessionManager} to obtain {@link DrmSession DrmSessions}
+   *     from.
+   * @param loadErrorHandlingPolicy The {@link LoadErrorHandlingPolicy}.
+   * @param eventDispatcher A dispatcher to notify of events.
+   * @param loaderExecutorService An {@link ExecutorService} shared with other loaders on which to
+   *     load chunks and open the requests of hedged loads, or null to load chunks on a dedicated
+   *     thread and open the requests of hedged loads on threads shared by all sample streams.
+   * @param chunkPipelineDepth The maximum number of media chunk requests to keep in flight.
+   *     Requests for chunks after the one being loaded are issued ahead of time on dedicated
+   *     threads, and the start of their responses buffered, so that each chunk is still written to
+   *     the sample queues in order. A value of 1 disables pipelining.
+   * @param hedgeDataSourceFactory A factory for the {@link DataSource DataSources} used to make
+   *     hedged requests for chunks that are slow to respond, or null to disable hedging. Requests
+   *     are hedged after the delay given by {@link LoadErrorHandlingPolicy#getHedgeDelayMsFor}.
+   */
+  public ChunkSampleStream(
+      int primaryTrackType,
+      @Nullable int[] embeddedTrackTypes,
+      @Nullable Format[] embeddedTrackFormats,
+      T chunkSource,
+      Callback<ChunkSampleStream<T>> callback,
+      Allocator allocator,
+      long positionUs,
+      DrmSessionManager<?> drmSessionManager,
+      LoadErrorHandlingPolicy loadErrorHandlingPolicy,
+      EventDispatcher eventDispatcher,
+      @Nullable ExecutorService loaderExecutorService,
+      int chunkPipelineDepth,
+      @Nullable DataSource.Factory hedgeDataSourceFactory) {
+    Assertions.checkArgument(chunkPipelineDepth > 0);
     this.primaryTrackType = primaryTrackType;
     this.embeddedTrackTypes = embeddedTrackTypes;
     this.embeddedTrackFormats = embeddedTrackFormats;
@@ -119,10 +199,19 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     this.callback = callback;
     this.eventDispatcher = eventDispatcher;
     this.loadErrorHandlingPolicy = loadErrorHandlingPolicy;
-    loader = new Loader("Loader:ChunkSampleStream");
+    this.chunkPipelineDepth = chunkPipelineDepth;
+    this.loaderExecutorService = loaderExecutorService;
+    this.hedgeDataSourceFactory = hedgeDataSourceFactory;
+    sharedUpstreamState = new HedgingDataSource.SharedUpstreamState();
+    loader = new Loader("Loader:ChunkSampleStream", loaderExecutorService);
     nextChunkHolder = new ChunkHolder();
     mediaChunks = new ArrayList<>();
     readOnlyMediaChunks = Collections.unmodifiableList(mediaChunks);
+    prefetchLoaders = new Loader[chunkPipelineDepth - 1];
+    prefetchLoadables = new ArrayList<>();
+    prefetchChunkQueue = new ArrayList<>();
+    readOnlyPrefetchChunkQueue = Collections.unmodifiableList(prefetchChunkQueue);
+    prefetchCallback = new PrefetchCallback();
 
     int embeddedTrackCount = embeddedTrackTypes == null ? 0 : embeddedTrackTypes.length;
     embeddedSampleQueues = new SampleQueue[embeddedTrackCount];
@@ -292,6 +381,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
       pendingResetPositionUs = positionUs;
       loadingFinished = false;
       mediaChunks.clear();
+      cancelPrefetches();
       nextNotifyPrimaryFormatMediaChunkIndex = 0;
       if (loader.isLoading()) {
         loader.cancelLoading();
@@ -331,6 +421,12 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     for (SampleQueue embeddedSampleQueue : embeddedSampleQueues) {
       embeddedSampleQueue.preRelease();
     }
+    cancelPrefetches();
+    for (Loader prefetchLoader : prefetchLoaders) {
+      if (prefetchLoader != null) {
+        prefetchLoader.release();
+      }
+    }
     loader.release(this);
   }
 
@@ -392,6 +488,8 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public void onLoadCompleted(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs) {
+    // Release the prefetch of a pipelined chunk, in case the load finished without opening it.
+    maybeCancelPrefetch(loadable);
     chunkSource.onChunkLoadCompleted(loadable);
     eventDispatcher.loadCompleted(
         loadable.dataSpec,
@@ -413,6 +511,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   @Override
   public void onLoadCanceled(Chunk loadable, long elapsedRealtimeMs, long loadDurationMs,
       boolean released) {
+    maybeCancelPrefetch(loadable);
     eventDispatcher.loadCanceled(
         loadable.dataSpec,
         loadable.getUri(),
@@ -481,6 +580,9 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     }
 
     boolean canceled = !loadErrorAction.isRetry();
+    if (canceled) {
+      maybeCancelPrefetch(loadable);
+    }
     eventDispatcher.loadError(
         loadable.dataSpec,
         loadable.getUri(),
@@ -507,9 +609,12 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
 
   @Override
   public boolean continueLoading(long positionUs) {
-    if (loadingFinished || loader.isLoading() || loader.hasFatalError()) {
+    if (loadingFinished || loader.hasFatalError()) {
       return false;
     }
+    if (loader.isLoading()) {
+      return maybeStartPrefetches(positionUs);
+    }
 
     boolean pendingReset = isPendingReset();
     List<BaseMediaChunk> chunkQueue;
@@ -526,6 +631,18 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     Chunk loadable = nextChunkHolder.chunk;
     nextChunkHolder.clear();
 
+    if (!prefetchLoadables.isEmpty()) {
+      BaseMediaChunk prefetchedChunk = prefetchLoadables.get(0).chunk;
+      if (!endOfStream && loadable != null && isSameChunk(prefetchedChunk, loadable)) {
+        // Load the chunk whose request has already been issued.
+        prefetchLoadables.remove(0);
+        loadable = prefetchedChunk;
+      } else {
+        // The chunk source has chosen a different chunk, for example due to a track switch.
+        cancelPrefetches();
+      }
+    }
+
     if (endOfStream) {
       pendingResetPositionUs = C.TIME_UNSET;
       loadingFinished = true;
@@ -549,6 +666,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     } else if (loadable instanceof InitializationChunk) {
       ((InitializationChunk) loadable).init(chunkOutput);
     }
+    maybeEnableHedging(loadable, pendingReset ? 0 : Math.max(0, loadPositionUs - positionUs));
     long elapsedRealtimeMs =
         loader.startLoading(
             loadable, this, loadErrorHandlingPolicy.getMinimumLoadableRetryCount(loadable.type));
@@ -562,6 +680,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
         loadable.startTimeUs,
         loadable.endTimeUs,
         elapsedRealtimeMs);
+    maybeStartPrefetches(positionUs);
     return true;
   }
 
@@ -703,6 +822,7 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
   private BaseMediaChunk discardUpstreamMediaChunksFromIndex(int chunkIndex) {
     BaseMediaChunk firstRemovedChunk = mediaChunks.get(chunkIndex);
     Util.removeRange(mediaChunks, /* fromIndex= */ chunkIndex, /* toIndex= */ mediaChunks.size());
+    cancelPrefetches();
     nextNotifyPrimaryFormatMediaChunkIndex =
         Math.max(nextNotifyPrimaryFormatMediaChunkIndex, mediaChunks.size());
     primarySampleQueue.discardUpstreamSamples(firstRemovedChunk.getFirstSampleIndex(0));
@@ -712,6 +832,240 @@ public class ChunkSampleStream<T extends ChunkSource> implements SampleStream, S
     return firstRemovedChunk;
   }
 
+  /**
+   * Issues requests for the media chunks that follow the last one in {@link #mediaChunks}, until
+   * {@link #chunkPipelineDepth} requests are in flight.
+   *
+   * @param positionUs The current playback position in microseconds.
+   * @return Whether a request was issued.
+   */
+  private boolean maybeStartPrefetches(long positionUs) {
+    if (chunkPipelineDepth == 1 || isPendingReset() || mediaChunks.isEmpty()) {
+      return false;
+    }
+    boolean startedPrefetch = false;
+    while (prefetchLoadables.size() < chunkPipelineDepth - 1) {
+      @Nullable Loader prefetchLoader = getIdlePrefetchLoader();
+      if (prefetchLoader == null) {
+        break;
+      }
+      @Nullable DataSource prefetchDataSource = chunkSource.createPrefetchDataSource();
+      if (prefetchDataSource == null) {
+        // Chunks from the source share a single data source, which can't be requested ahead.
+        break;
+      }
+      prefetchChunkQueue.clear();
+      prefetchChunkQueue.addAll(mediaChunks);
+      for (int i = 0; i < prefetchLoadables.size(); i++) {
+        prefetchChunkQueue.add(prefetchLoadables.get(i).chunk);
+      }
+      long loadPositionUs = prefetchChunkQueue.get(prefetchChunkQueue.size() - 1).endTimeUs;
+      chunkSource.getNextChunk(
+          positionUs, loadPositionUs, readOnlyPrefetchChunkQueue, nextChunkHolder);
+      boolean endOfStream = nextChunkHolder.endOfStream;
+      @Nullable Chunk chunk = nextChunkHolder.chunk;
+      nextChunkHolder.clear();
+      prefetchChunkQueue.clear();
+      // Initialization chunks are small and rare, so only media chunks are requested ahead.
+      if (endOfStream || chunk == null || !isMediaChunk(chunk)) {
+        break;
+      }
+      PrefetchLoadable prefetchLoadable =
+          new PrefetchLoadable(
+              (BaseMediaChunk) chunk, chunk.enablePrefetching(prefetchDataSource));
+      prefetchLoadables.add(prefetchLoadable);
+      prefetchLoader.startLoading(
+          prefetchLoadable, prefetchCallback, /* defaultMinRetryCount= */ 0);
+      startedPrefetch = true;
+    }
+    return startedPrefetch;
+  }
+
+  @Nullable
+  private Loader getIdlePrefetchLoader() {
+    for (int i = 0; i < prefetchLoaders.length; i++) {
+      if (prefetchLoaders[i] == null) {
+        // Prefetches hold their connections open until the chunk loads, so they're kept off the
+        // shared executor, whose threads are needed to load chunks.
+        prefetchLoaders[i] = new Loader("Loader:ChunkSampleStreamPrefetch");
+      }
+      if (!prefetchLoaders[i].isLoading()) {
+        return prefetchLoaders[i];
+      }
+    }
+    return null;
+  }
+
+  /** Cancels the requests issued for chunks that have yet to be loaded. */
+  private void cancelPrefetches() {
+    for (int i = 0; i < prefetchLoadables.size(); i++) {
+      prefetchLoadables.get(i).prefetchingDataSource.cancelPrefetch();
+    }
+    prefetchLoadables.clear();
+  }
+
+  private static void maybeCancelPrefetch(Chunk loadable) {
+    if (loadable.prefetchingDataSource != null) {
+      loadable.prefetchingDataSource.cancelPrefetch();
+    }
+  }
+
+  private void maybeEnableHedging(Chunk loadable, long bufferedDurationUs) {
+    if (hedgeDataSourceFactory == null) {
+      return;
+    }
+    long expectedLength = loadable.dataSpec.length;
+    if (expectedLength == C.LENGTH_UNSET
+        && loadable.trackFormat != null
+        && loadable.trackFormat.bitrate != Format.NO_VALUE
+        && loadable.startTimeUs != C.TIME_UNSET
+        && loadable.endTimeUs != C.TIME_UNSET) {
+      expectedLength =
+          loadable.trackFormat.bitrate
+              * loadable.getDurationUs()
+              / (C.BITS_PER_BYTE * C.MICROS_PER_SECOND);
+    }
+    long hedgeDelayMs =
+        loadErrorHandlingPolicy.getHedgeDelayMsFor(
+            loadable.type, expectedLength, bufferedDurationUs);
+    ExecutorService hedgeExecutorService =
+        loaderExecutorService != null ? loaderExecutorService : getSharedHedgeExecutorService();
+    // Chunks that aren't prefetched load from the data source shared by the chunk source. Hedging
+    // is enabled even if the request won't be hedged, so that it avoids the shared source while a
+    // request abandoned in favor of its hedge is still using it.
+    loadable.hedgingDataSource.enableHedging(
+        hedgeDataSourceFactory,
+        hedgeDelayMs,
+        hedgeExecutorService,
+        new HedgeListener(loadable),
+        loadable.prefetchingDataSource == null ? sharedUpstreamState : null);
+  }
+
+  /**
+   * Returns the executor on which the requests of hedged loads are opened if no loader executor is
+   * set, which is shared by all sample streams. Its threads are terminated when idle, so it never
+   * needs to be shut down.
+   */
+  private static synchronized ExecutorService getSharedHedgeExecutorService() {
+    if (sharedHedgeExecutorService == null) {
+      sharedHedgeExecutorService =
+          Loader.createSharedExecutorService(HEDGE_THREAD_NAME, MAX_SHARED_HEDGE_THREAD_COUNT);
+    }
+    return sharedHedgeExecutorService;
+  }
+
+  private static boolean isSameChunk(BaseMediaChunk prefetchedChunk, Chunk chunk) {
+    if (chunk.getClass() != prefetchedChunk.getClass()) {
+      return false;
+    }
+    BaseMediaChunk mediaChunk = (BaseMediaChunk) chunk;
+    return mediaChunk.chunkIndex == prefetchedChunk.chunkIndex
+        && mediaChunk.startTimeUs == prefetchedChunk.startTimeUs
+        && mediaChunk.endTimeUs == prefetchedChunk.endTimeUs
+        && mediaChunk.clippedStartTimeUs == prefetchedChunk.clippedStartTimeUs
+        && mediaChunk.clippedEndTimeUs == prefetchedChunk.clippedEndTimeUs
+        && mediaChunk.trackFormat.equals(prefetchedChunk.trackFormat)
+        && mediaChunk.dataSpec.uri.equals(prefetchedChunk.dataSpec.uri)
+        && mediaChunk.dataSpec.position == prefetchedChunk.dataSpec.position
+        && mediaChunk.dataSpec.length == prefetchedChunk.dataSpec.length;
+  }
+
+  /** Issues the request for a media chunk and buffers the start of the response. */
+  private static final class PrefetchLoadable implements Loader.Loadable {
+
+    public final BaseMediaChunk chunk;
+    public final PrefetchingDataSource prefetchingDataSource;
+
+    public PrefetchLoadable(BaseMediaChunk chunk, PrefetchingDataSource prefetchingDataSource) {
+      this.chunk = chunk;
+      this.prefetchingDataSource = prefetchingDataSource;
+    }
+
+    @Override
+    public void cancelLoad() {
+      prefetchingDataSource.cancelPrefetch();
+    }
+
+    @Override
+    public void load() {
+      prefetchingDataSource.prefetch(chunk.dataSpec, MAX_PREFETCH_BUFFER_SIZE);
+    }
+  }
+
+  private final class PrefetchCallback implements Loader.Callback<PrefetchLoadable> {
+
+    @Override
+    public void onLoadCompleted(
+        PrefetchLoadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      // The prefetch loader is idle again, so another request can be issued if one is pending.
+      callback.onContinueLoadingRequested(ChunkSampleStream.this);
+    }
+
+    @Override
+    public void onLoadCanceled(
+        PrefetchLoadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      if (!released) {
+        callback.onContinueLoadingRequested(ChunkSampleStream.this);
+      }
+    }
+
+    @Override
+    public LoadErrorAction onLoadError(
+        PrefetchLoadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      // Prefetch errors are surfaced by the load of the chunk itself.
+      return Loader.DONT_RETRY;
+    }
+  }
+
+  /** Reports the hedging of a chunk's request. Called on the loading thread. */
+  private final class HedgeListener implements HedgingDataSource.Listener {
+
+    private final Chunk chunk;
+
+    public HedgeListener(Chunk chunk) {
+      this.chunk = chunk;
+    }
+
+    @Override
+    public void onHedgeStarted(long hedgeDelayMs, long loadDurationMs) {
+      eventDispatcher.loadHedged(
+          chunk.dataSpec,
+          chunk.type,
+          primaryTrackType,
+          chunk.trackFormat,
+          chunk.trackSelectionReason,
+          chunk.trackSelectionData,
+          chunk.startTimeUs,
+          chunk.endTimeUs,
+          SystemClock.elapsedRealtime(),
+          loadDurationMs,
+          hedgeDelayMs);
+    }
+
+    @Override
+    public void onHedgeCompleted(
+        boolean hedgeWon, Uri uri, Map<String, List<String>> responseHeaders, long loadDurationMs) {
+      eventDispatcher.loadHedgeCompleted(
+          chunk.dataSpec,
+          uri,
+          responseHeaders,
+          chunk.type,
+          primaryTrackType,
+          chunk.trackFormat,
+          chunk.trackSelectionReason,
+          chunk.trackSelectionData,
+          chunk.startTimeUs,
+          chunk.endTimeUs,
+          SystemClock.elapsedRealtime(),
+          loadDurationMs,
+          hedgeWon);
+    }
+  }
+
   /**
    * A {@link SampleStream} embedded in a {@link ChunkSampleStream}.
    */
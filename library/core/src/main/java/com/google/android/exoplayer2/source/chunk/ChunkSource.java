@@ -15,8 +15,10 @@
  */
 package com.google.android.exoplayer2.source.chunk;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.upstream.DataSource;
 import java.io.IOException;
 import java.util.List;
 
@@ -81,6 +83,18 @@ public interface ChunkSource {
       List<? extends MediaChunk> queue,
       ChunkHolder out);
 
+  /**
+   * Returns a new {@link DataSource} for a chunk whose request is issued before its load starts,
+   * or null if chunks from this source must not be requested ahead of their load.
+   *
+   * <p>The returned source must not be shared with any other chunk, since it may still be reading
+   * the prefetched request while other chunks are loaded.
+   */
+  @Nullable
+  default DataSource createPrefetchDataSource() {
+    return null;
+  }
+
   /**
    * Called when the {@link ChunkSampleStream} has finished loading a chunk obtained from this
    * source.
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import android.net.Uri;
+import android.os.SystemClock;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * {@link DataSource} wrapper that hedges requests which are slow to respond.
+ *
+ * <p>When hedging is enabled, {@link #open(DataSpec)} opens the wrapped source on a separate
+ * thread. If it hasn't returned within the hedge delay, a duplicate request is opened on a source
+ * obtained from the hedge {@link DataSource.Factory}. Data is then read from whichever source
+ * responds first, and the other is closed as soon as its open returns.
+ *
+ * <p>The executor on which requests are opened may also run the thread calling {@link
+ * #open(DataSpec)}, for example if both are loader threads. If no thread of the executor is free to
+ * open the wrapped source by the end of the hedge delay, it's opened on the calling thread without
+ * hedging. A hedged request that hasn't started by the time the wrapped source fails isn't made.
+ *
+ * <p>A request that loses the race may still be opening the wrapped source after {@link
+ * #open(DataSpec)} returns. If the wrapped source is shared with other chunks, its {@link
+ * SharedUpstreamState} records this, and requests that would use the source while it's busy are
+ * made on a source obtained from the hedge {@link DataSource.Factory} instead.
+ *
+ * <p>{@link TransferListener TransferListeners} added to this source are also added to the sources
+ * obtained from the hedge {@link DataSource.Factory}.
+ */
+/* package */ final class HedgingDataSource implements DataSource {
+
+  /** Listener for hedging events. Methods are called on the thread calling {@link #open}. */
+  public interface Listener {
+
+    /**
+     * Called when a request hasn't responded within the hedge delay, and a hedged request is
+     * started.
+     *
+     * @param hedgeDelayMs The hedge delay, in milliseconds.
+     * @param loadDurationMs The time since the start of the original request, in milliseconds.
+     */
+    void onHedgeStarted(long hedgeDelayMs, long loadDurationMs);
+
+    /**
+     * Called when one of the requests of a hedged open has responded.
+     *
+     * @param hedgeWon Whether the hedged request responded first.
+     * @param uri The {@link Uri} of the request that responded first.
+     * @param responseHeaders The response headers of the request that responded first.
+     * @param loadDurationMs The time taken for the first response, measured from the start of the
+     *     original request.
+     */
+    void onHedgeCompleted(
+        boolean hedgeWon, Uri uri, Map<String, List<String>> responseHeaders, long loadDurationMs);
+  }
+
+  /**
+   * Tracks whether a {@link DataSource} shared by the chunks of a stream is still in use by a
+   * request that lost the race against its hedge.
+   */
+  public static final class SharedUpstreamState {
+
+    @GuardedBy("this")
+    private boolean inUse;
+
+    /** Returns whether the shared source is still in use by an abandoned request. */
+    public synchronized boolean isInUse() {
+      return inUse;
+    }
+
+    private synchronized void setInUse(boolean inUse) {
+      this.inUse = inUse;
+    }
+  }
+
+  private final Object raceLock;
+  private final ArrayList<TransferListener> transferListeners;
+
+  private DataSource upstream;
+  @Nullable private DataSource.Factory hedgeDataSourceFactory;
+  private long hedgeDelayMs;
+  @Nullable private Executor executor;
+  @Nullable private Listener listener;
+  @Nullable private SharedUpstreamState sharedUpstreamState;
+
+  @Nullable private DataSource activeDataSource;
+
+  /** @param upstream The wrapped {@link DataSource}. */
+  public HedgingDataSource(DataSource upstream) {
+    this.upstream = Assertions.checkNotNull(upstream);
+    raceLock = new Object();
+    transferListeners = new ArrayList<>(/* initialCapacity= */ 1);
+  }
+
+  /**
+   * Replaces the wrapped {@link DataSource}. Must be called before {@link #open(DataSpec)}.
+   *
+   * @param upstream The {@link DataSource} to wrap instead.
+   */
+  public void setUpstream(DataSource upstream) {
+    this.upstream = Assertions.checkNotNull(upstream);
+    for (int i = 0; i < transferListeners.size(); i++) {
+      upstream.addTransferListener(transferListeners.get(i));
+    }
+  }
+
+  /**
+   * Enables hedging for subsequent {@link #open(DataSpec)} calls.
+   *
+   * @param hedgeDataSourceFactory A factory for the {@link DataSource DataSources} used to make
+   *     hedged requests.
+   * @param hedgeDelayMs The time to wait for a response before making a hedged request, in
+   *     milliseconds, or {@link C#TIME_UNSET} if requests shouldn't be hedged.
+   * @param executor The {@link Executor} on which requests are opened.
+   * @param listener A {@link Listener} to notify of hedging events.
+   * @param sharedUpstreamState The {@link SharedUpstreamState} of the wrapped source if it's shared
+   *     with other chunks, or null if it's only used by this source.
+   */
+  public void enableHedging(
+      DataSource.Factory hedgeDataSourceFactory,
+      long hedgeDelayMs,
+      Executor executor,
+      Listener listener,
+      @Nullable SharedUpstreamState sharedUpstreamState) {
+    this.hedgeDataSourceFactory = hedgeDataSourceFactory;
+    this.hedgeDelayMs = hedgeDelayMs;
+    this.executor = executor;
+    this.listener = listener;
+    this.sharedUpstreamState = sharedUpstreamState;
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+    transferListeners.add(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    DataSource.Factory hedgeDataSourceFactory = this.hedgeDataSourceFactory;
+    if (hedgeDataSourceFactory == null) {
+      activeDataSource = upstream;
+      return upstream.open(dataSpec);
+    }
+    DataSource primaryDataSource = upstream;
+    @Nullable SharedUpstreamState primaryUpstreamState = sharedUpstreamState;
+    if (primaryUpstreamState != null && primaryUpstreamState.isInUse()) {
+      // An abandoned request, possibly of a previous chunk, is still using the shared source.
+      primaryDataSource = createHedgeDataSource(hedgeDataSourceFactory);
+      primaryUpstreamState = null;
+    }
+    if (hedgeDelayMs == C.TIME_UNSET) {
+      activeDataSource = primaryDataSource;
+      return primaryDataSource.open(dataSpec);
+    }
+    long startTimeMs = SystemClock.elapsedRealtime();
+    OpenAttempt primaryAttempt = startAttempt(primaryDataSource, dataSpec, primaryUpstreamState);
+
+    @Nullable OpenAttempt hedgeAttempt = null;
+    try {
+      boolean openPrimaryOnThisThread;
+      synchronized (raceLock) {
+        long remainingMs = startTimeMs + hedgeDelayMs - SystemClock.elapsedRealtime();
+        while (!primaryAttempt.finished && remainingMs > 0) {
+          raceLock.wait(remainingMs);
+          remainingMs = startTimeMs + hedgeDelayMs - SystemClock.elapsedRealtime();
+        }
+        if (primaryAttempt.finished) {
+          return takeResult(primaryAttempt);
+        }
+        openPrimaryOnThisThread = primaryAttempt.tryStart();
+      }
+      if (openPrimaryOnThisThread) {
+        // No thread of the executor is free, so a hedged request wouldn't be made either.
+        primaryAttempt.open();
+        return takeResult(primaryAttempt);
+      }
+      Assertions.checkNotNull(listener)
+          .onHedgeStarted(hedgeDelayMs, SystemClock.elapsedRealtime() - startTimeMs);
+      hedgeAttempt =
+          startAttempt(
+              createHedgeDataSource(hedgeDataSourceFactory),
+              dataSpec,
+              /* sharedUpstreamState= */ null);
+      @Nullable OpenAttempt winner;
+      synchronized (raceLock) {
+        while (true) {
+          if (primaryAttempt.succeeded()) {
+            winner = primaryAttempt;
+            break;
+          } else if (hedgeAttempt.succeeded()) {
+            winner = hedgeAttempt;
+            break;
+          } else if (primaryAttempt.finished
+              && (hedgeAttempt.finished || hedgeAttempt.tryStart())) {
+            // Both requests failed, or the hedged request hadn't started when the original failed.
+            winner = null;
+            break;
+          }
+          raceLock.wait();
+        }
+      }
+      if (winner == null) {
+        return takeResult(primaryAttempt);
+      }
+      abandon(winner == primaryAttempt ? hedgeAttempt : primaryAttempt);
+      long length = takeResult(winner);
+      @Nullable Uri uri = winner.dataSource.getUri();
+      Assertions.checkNotNull(listener)
+          .onHedgeCompleted(
+              /* hedgeWon= */ winner == hedgeAttempt,
+              uri != null ? uri : dataSpec.uri,
+              winner.dataSource.getResponseHeaders(),
+              SystemClock.elapsedRealtime() - startTimeMs);
+      return length;
+    } catch (InterruptedException e) {
+      abandon(primaryAttempt);
+      if (hedgeAttempt != null) {
+        abandon(hedgeAttempt);
+      }
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    return Assertions.checkNotNull(activeDataSource).read(buffer, offset, readLength);
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return activeDataSource == null ? null : activeDataSource.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return activeDataSource == null
+        ? Collections.emptyMap()
+        : activeDataSource.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (activeDataSource != null) {
+      DataSource activeDataSource = this.activeDataSource;
+      this.activeDataSource = null;
+      activeDataSource.close();
+    }
+  }
+
+  private DataSource createHedgeDataSource(DataSource.Factory hedgeDataSourceFactory) {
+    DataSource dataSource = hedgeDataSourceFactory.createDataSource();
+    for (int i = 0; i < transferListeners.size(); i++) {
+      dataSource.addTransferListener(transferListeners.get(i));
+    }
+    return dataSource;
+  }
+
+  private OpenAttempt startAttempt(
+      DataSource dataSource, DataSpec dataSpec, @Nullable SharedUpstreamState sharedUpstreamState)
+      throws IOException {
+    OpenAttempt openAttempt = new OpenAttempt(dataSource, dataSpec, sharedUpstreamState);
+    try {
+      Assertions.checkNotNull(executor).execute(openAttempt);
+    } catch (RejectedExecutionException e) {
+      // The executor has been shut down.
+      throw new InterruptedIOException();
+    }
+    return openAttempt;
+  }
+
+  /**
+   * Returns the length opened by a finished attempt, making its source active, or throws the error
+   * with which it failed.
+   */
+  private long takeResult(OpenAttempt openAttempt) throws IOException {
+    @Nullable IOException error;
+    long length;
+    synchronized (raceLock) {
+      error = openAttempt.error;
+      length = openAttempt.length;
+    }
+    if (error != null) {
+      throw error;
+    }
+    activeDataSource = openAttempt.dataSource;
+    return length;
+  }
+
+  /**
+   * Closes the source of an attempt as soon as its open returns, if it succeeded, or prevents the
+   * attempt from starting if it hasn't started yet. A shared source is marked as in use until the
+   * attempt's thread has released it.
+   */
+  private void abandon(OpenAttempt openAttempt) {
+    boolean closeNow;
+    synchronized (raceLock) {
+      closeNow = openAttempt.finished && openAttempt.error == null;
+      openAttempt.abandoned = true;
+      if (openAttempt.tryStart()) {
+        openAttempt.released = true;
+      } else if (!openAttempt.released && openAttempt.sharedUpstreamState != null) {
+        openAttempt.sharedUpstreamState.setInUse(true);
+      }
+    }
+    if (closeNow) {
+      Util.closeQuietly(openAttempt.dataSource);
+    }
+  }
+
+  /** Opens a {@link DataSource}, and records the outcome. */
+  private final class OpenAttempt implements Runnable {
+
+    public final DataSource dataSource;
+    public final DataSpec dataSpec;
+    /** The state of {@link #dataSource} if it's shared with other chunks, or null. */
+    @Nullable public final SharedUpstreamState sharedUpstreamState;
+
+    /** Whether a thread has claimed the attempt, or it has been abandoned before starting. */
+    @GuardedBy("raceLock")
+    private boolean started;
+
+    @GuardedBy("raceLock")
+    public boolean finished;
+
+    @GuardedBy("raceLock")
+    public boolean abandoned;
+
+    /** Whether the attempt's thread has finished using {@link #dataSource}. */
+    @GuardedBy("raceLock")
+    public boolean released;
+
+    @GuardedBy("raceLock")
+    public long length;
+
+    @GuardedBy("raceLock")
+    @Nullable
+    public IOException error;
+
+    public OpenAttempt(
+        DataSource dataSource,
+        DataSpec dataSpec,
+        @Nullable SharedUpstreamState sharedUpstreamState) {
+      this.dataSource = dataSource;
+      this.dataSpec = dataSpec;
+      this.sharedUpstreamState = sharedUpstreamState;
+      length = C.LENGTH_UNSET;
+    }
+
+    @GuardedBy("raceLock")
+    public boolean succeeded() {
+      return finished && error == null;
+    }
+
+    /**
+     * Claims the attempt, and returns whether it hadn't been claimed yet. A thread that claims the
+     * attempt must call {@link #open()}, unless it's abandoning the attempt.
+     */
+    @GuardedBy("raceLock")
+    public boolean tryStart() {
+      if (started) {
+        return false;
+      }
+      started = true;
+      return true;
+    }
+
+    @Override
+    public void run() {
+      boolean claimed;
+      synchronized (raceLock) {
+        claimed = tryStart();
+      }
+      if (claimed) {
+        open();
+      }
+    }
+
+    /** Opens the source and records the outcome. Must only be called by the claiming thread. */
+    public void open() {
+      long length = C.LENGTH_UNSET;
+      @Nullable IOException error = null;
+      try {
+        length = dataSource.open(dataSpec);
+      } catch (IOException e) {
+        error = e;
+      }
+      boolean close;
+      synchronized (raceLock) {
+        this.length = length;
+        this.error = error;
+        finished = true;
+        // A source must be closed even if opening it fails.
+        close = abandoned || error != null;
+        raceLock.notifyAll();
+      }
+      if (close) {
+        Util.closeQuietly(dataSource);
+      }
+      synchronized (raceLock) {
+        released = true;
+        if (abandoned && sharedUpstreamState != null) {
+          sharedUpstreamState.setInUse(false);
+        }
+      }
+    }
+  }
+}
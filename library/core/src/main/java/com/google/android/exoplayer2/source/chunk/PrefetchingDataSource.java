@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DataSource} wrapper that allows a request to be opened, and the start of its response to
+ * be buffered, ahead of the {@link #open(DataSpec)} call that consumes it.
+ *
+ * <p>{@link #prefetch(DataSpec, int)} is called on a separate loading thread. It opens the wrapped
+ * source, buffers up to a fixed number of bytes and returns, leaving the connection open until the
+ * prefetched data is either handed over to a matching {@link #open(DataSpec)} call, or the prefetch
+ * is canceled. If the prefetch fails, or the consumer opens a different {@link DataSpec}, the
+ * consumer falls back to opening the wrapped source itself.
+ *
+ * <p>The wrapped source must not be used by anything else, since the prefetch may still be reading
+ * from it while other requests are made.
+ */
+/* package */ final class PrefetchingDataSource implements DataSource {
+
+  private static final int INITIAL_BUFFER_SIZE = 32 * 1024;
+
+  private final DataSource upstream;
+  private final Object lock;
+
+  @GuardedBy("lock")
+  @Nullable
+  private DataSpec prefetchDataSpec;
+
+  @GuardedBy("lock")
+  private boolean prefetchOpened;
+
+  @GuardedBy("lock")
+  private boolean prefetchFailed;
+
+  /** Whether a thread other than the consumer is opening, reading or closing the wrapped source. */
+  @GuardedBy("lock")
+  private boolean upstreamBusy;
+
+  private volatile boolean prefetchHandedOver;
+  private volatile boolean prefetchCanceled;
+
+  private byte[] prefetchBuffer;
+  private int prefetchBufferLength;
+  private long prefetchLength;
+  private boolean prefetchEndedInput;
+
+  private int readPosition;
+  private boolean servingPrefetchedData;
+
+  /** @param upstream The wrapped {@link DataSource}, which must not be used by anything else. */
+  public PrefetchingDataSource(DataSource upstream) {
+    this.upstream = Assertions.checkNotNull(upstream);
+    lock = new Object();
+    prefetchBuffer = Util.EMPTY_BYTE_ARRAY;
+  }
+
+  /**
+   * Opens the wrapped source for {@code dataSpec} and buffers the start of the response. Returns
+   * once the buffer is full, the response has ended, or the prefetch has been handed over or
+   * canceled. The connection is left open for a subsequent {@link #open(DataSpec)} call. Must be
+   * called at most once.
+   *
+   * <p>Errors are not propagated. They are reported to the consumer by falling back to a regular
+   * open, which will typically fail in the same way and be handled by the normal retry logic.
+   *
+   * @param dataSpec The {@link DataSpec} to prefetch.
+   * @param maxBufferSize The maximum number of bytes to buffer.
+   */
+  public void prefetch(DataSpec dataSpec, int maxBufferSize) {
+    synchronized (lock) {
+      if (prefetchCanceled || prefetchHandedOver) {
+        return;
+      }
+      prefetchDataSpec = dataSpec;
+      // The wrapped source must be closed even if opening it fails.
+      prefetchOpened = true;
+      upstreamBusy = true;
+    }
+    boolean failed = false;
+    try {
+      long length = upstream.open(dataSpec);
+      prefetchLength = length;
+      int bufferSize = maxBufferSize;
+      if (length != C.LENGTH_UNSET) {
+        bufferSize = (int) Math.min(length, maxBufferSize);
+      }
+      prefetchBuffer = new byte[Math.min(bufferSize, INITIAL_BUFFER_SIZE)];
+      // Stop early if the consumer is waiting to take over the connection.
+      while (!prefetchCanceled && !prefetchHandedOver && prefetchBufferLength < bufferSize) {
+        if (prefetchBufferLength == prefetchBuffer.length) {
+          prefetchBuffer =
+              Arrays.copyOf(prefetchBuffer, Math.min(prefetchBuffer.length * 2, bufferSize));
+        }
+        int bytesRead =
+            upstream.read(
+                prefetchBuffer, prefetchBufferLength, prefetchBuffer.length - prefetchBufferLength);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          prefetchEndedInput = true;
+          break;
+        }
+        prefetchBufferLength += bytesRead;
+      }
+    } catch (IOException e) {
+      failed = true;
+    }
+    synchronized (lock) {
+      prefetchFailed = failed;
+      // A prefetch that has been handed over is closed by the consumer if it can't be used.
+      if (!failed && (!prefetchCanceled || prefetchHandedOver)) {
+        releaseUpstream();
+        return;
+      }
+    }
+    closePrefetchQuietly();
+  }
+
+  /**
+   * Cancels a pending {@link #prefetch(DataSpec, int)}. Any connection the prefetch opened is
+   * closed, unless it has already been handed over. If the prefetch is still in progress, the
+   * connection is closed by the prefetching thread once it stops.
+   */
+  public void cancelPrefetch() {
+    synchronized (lock) {
+      prefetchCanceled = true;
+      if (upstreamBusy || prefetchHandedOver || !prefetchOpened) {
+        return;
+      }
+      upstreamBusy = true;
+    }
+    closePrefetchQuietly();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    boolean closePrefetch;
+    synchronized (lock) {
+      prefetchHandedOver = true;
+      while (upstreamBusy) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (prefetchOpened && !prefetchFailed && !prefetchCanceled && matchesPrefetch(dataSpec)) {
+        // The consumer now owns the prefetched connection.
+        prefetchOpened = false;
+        servingPrefetchedData = true;
+        readPosition = 0;
+        return prefetchLength;
+      }
+      closePrefetch = prefetchOpened;
+      prefetchOpened = false;
+    }
+    if (closePrefetch) {
+      // No other thread uses the wrapped source once it's been handed over.
+      prefetchBuffer = Util.EMPTY_BYTE_ARRAY;
+      prefetchBufferLength = 0;
+      Util.closeQuietly(upstream);
+    }
+    return upstream.open(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (servingPrefetchedData && readPosition < prefetchBufferLength) {
+      int bytesToRead = Math.min(readLength, prefetchBufferLength - readPosition);
+      System.arraycopy(prefetchBuffer, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      if (readPosition == prefetchBufferLength) {
+        // Release the buffered data as soon as it's been consumed.
+        prefetchBuffer = Util.EMPTY_BYTE_ARRAY;
+      }
+      return bytesToRead;
+    }
+    if (servingPrefetchedData && prefetchEndedInput) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    servingPrefetchedData = false;
+    prefetchBuffer = Util.EMPTY_BYTE_ARRAY;
+    prefetchBufferLength = 0;
+    upstream.close();
+  }
+
+  @GuardedBy("lock")
+  private boolean matchesPrefetch(DataSpec dataSpec) {
+    DataSpec prefetchDataSpec = Assertions.checkNotNull(this.prefetchDataSpec);
+    return dataSpec.uri.equals(prefetchDataSpec.uri)
+        && dataSpec.httpMethod == prefetchDataSpec.httpMethod
+        && dataSpec.position == prefetchDataSpec.position
+        && dataSpec.length == prefetchDataSpec.length
+        && Util.areEqual(dataSpec.key, prefetchDataSpec.key)
+        && dataSpec.flags == prefetchDataSpec.flags;
+  }
+
+  /**
+   * Closes the prefetched connection and releases the wrapped source. Must only be called by a
+   * thread that has marked the wrapped source as busy.
+   */
+  private void closePrefetchQuietly() {
+    prefetchBuffer = Util.EMPTY_BYTE_ARRAY;
+    prefetchBufferLength = 0;
+    Util.closeQuietly(upstream);
+    synchronized (lock) {
+      prefetchOpened = false;
+    }
+    releaseUpstream();
+  }
+
+  private void releaseUpstream() {
+    synchronized (lock) {
+      upstreamBusy = false;
+      lock.notifyAll();
+    }
+  }
+}
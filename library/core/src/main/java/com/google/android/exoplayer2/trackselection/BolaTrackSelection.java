@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.MediaChunk;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A buffer based adaptive {@link TrackSelection} implementing BOLA (Buffer Occupancy based
+ * Lyapunov Algorithm).
+ *
+ * <p>In steady state, the selected track is the one maximizing {@code (v * (utility + gamma) -
+ * buffer) / size}, where {@code utility} is the logarithm of the track's bitrate relative to the
+ * lowest bitrate, {@code buffer} is the duration of buffered media and {@code size} is the size of
+ * the track's next chunk per second of media, taken from the {@link MediaChunkIterator
+ * MediaChunkIterators} where available. The parameters {@code v} and {@code gamma} are chosen so
+ * that the lowest quality track is selected while less than the minimum buffer is buffered, and the
+ * highest quality track is selected once the target buffer is buffered.
+ *
+ * <p>To prevent oscillation, a switch is only made if it would also be made with the buffer
+ * offset by a hysteresis duration, and switching to a higher quality track is limited to the
+ * highest quality that the bandwidth estimate can sustain. The bandwidth estimate is otherwise only
+ * used during start-up, until the buffer supports a selection of at least the quality that the
+ * bandwidth estimate would select. Start-up is repeated after each discontinuity.
+ *
+ * <p>As the selected quality decreases when the buffer drains, this selection should be used with a
+ * {@link com.google.android.exoplayer2.LoadControl} that keeps loading until its maximum buffer
+ * duration is reached, for example a {@link com.google.android.exoplayer2.DefaultLoadControl} whose
+ * minimum and maximum buffer durations are equal.
+ */
+public class BolaTrackSelection extends BaseTrackSelection {
+
+  /** Factory for {@link BolaTrackSelection} instances. */
+  public static class Factory implements TrackSelection.Factory {
+
+    private final int minBufferMs;
+    private final int targetBufferMs;
+    private final int hysteresisBufferMs;
+    private final float bandwidthFraction;
+    private final Clock clock;
+
+    /** Creates a BOLA track selection factory with default parameters. */
+    public Factory() {
+      this(
+          DEFAULT_MIN_BUFFER_MS,
+          DEFAULT_TARGET_BUFFER_MS,
+          DEFAULT_HYSTERESIS_BUFFER_MS,
+          DEFAULT_BANDWIDTH_FRACTION,
+          Clock.DEFAULT);
+    }
+
+    /**
+     * Creates a BOLA track selection factory.
+     *
+     * @param minBufferMs The duration of buffered media below which the lowest quality track is
+     *     selected, in milliseconds.
+     * @param targetBufferMs The duration of buffered media above which the highest quality track is
+     *     selected, in milliseconds. Should not exceed the maximum buffer duration of the {@link
+     *     com.google.android.exoplayer2.LoadControl}.
+     * @param hysteresisBufferMs The offset by which the duration of buffered media must exceed the
+     *     duration at which a switch would be made before the switch is made, in milliseconds.
+     * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+     *     consider available for use during start-up and when switching to a higher quality.
+     * @param clock A {@link Clock}.
+     */
+    public Factory(
+        int minBufferMs,
+        int targetBufferMs,
+        int hysteresisBufferMs,
+        float bandwidthFraction,
+        Clock clock) {
+      Assertions.checkArgument(0 < minBufferMs && minBufferMs < targetBufferMs);
+      this.minBufferMs = minBufferMs;
+      this.targetBufferMs = targetBufferMs;
+      this.hysteresisBufferMs = hysteresisBufferMs;
+      this.bandwidthFraction = bandwidthFraction;
+      this.clock = clock;
+    }
+
+    @Override
+    public final @NullableType TrackSelection[] createTrackSelections(
+        @NullableType Definition[] definitions, BandwidthMeter bandwidthMeter) {
+      return TrackSelectionUtil.createTrackSelectionsForDefinitions(
+          definitions,
+          definition ->
+              new BolaTrackSelection(
+                  definition.group,
+                  definition.tracks,
+                  bandwidthMeter,
+                  minBufferMs,
+                  targetBufferMs,
+                  hysteresisBufferMs,
+                  bandwidthFraction,
+                  clock));
+    }
+  }
+
+  /**
+   * The default duration of buffered media below which the lowest quality track is selected, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_MIN_BUFFER_MS = 10_000;
+  /**
+   * The default duration of buffered media above which the highest quality track is selected, in
+   * milliseconds.
+   */
+  public static final int DEFAULT_TARGET_BUFFER_MS = 30_000;
+  /**
+   * The default offset by which the duration of buffered media must exceed the duration at which a
+   * switch would be made before the switch is made, in milliseconds.
+   */
+  public static final int DEFAULT_HYSTERESIS_BUFFER_MS = 4_000;
+  /**
+   * The default fraction of the available bandwidth that the selection should consider available
+   * for use during start-up and when switching to a higher quality.
+   */
+  public static final float DEFAULT_BANDWIDTH_FRACTION =
+      AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long hysteresisBufferUs;
+  private final float bandwidthFraction;
+  private final Clock clock;
+  private final double[] utilities;
+  private final double[] chunkBitrates;
+  private final double vp;
+  private final double gp;
+
+  private boolean isInSteadyState;
+  private int selectedIndex;
+  private int selectionReason;
+  private float playbackSpeed;
+
+  /**
+   * @param group The {@link TrackGroup}.
+   * @param tracks The indices of the selected tracks within the {@link TrackGroup}. Must not be
+   *     empty. May be in any order.
+   * @param bandwidthMeter Provides an estimate of the currently available bandwidth.
+   * @param minBufferMs The duration of buffered media below which the lowest quality track is
+   *     selected, in milliseconds.
+   * @param targetBufferMs The duration of buffered media above which the highest quality track is
+   *     selected, in milliseconds.
+   * @param hysteresisBufferMs The offset by which the duration of buffered media must exceed the
+   *     duration at which a switch would be made before the switch is made, in milliseconds.
+   * @param bandwidthFraction The fraction of the available bandwidth that the selection should
+   *     consider available for use during start-up and when switching to a higher quality.
+   * @param clock A {@link Clock}.
+   */
+  public BolaTrackSelection(
+      TrackGroup group,
+      int[] tracks,
+      BandwidthMeter bandwidthMeter,
+      int minBufferMs,
+      int targetBufferMs,
+      int hysteresisBufferMs,
+      float bandwidthFraction,
+      Clock clock) {
+    super(group, tracks);
+    this.bandwidthMeter = bandwidthMeter;
+    this.hysteresisBufferUs = C.msToUs(hysteresisBufferMs);
+    this.bandwidthFraction = bandwidthFraction;
+    this.clock = clock;
+    selectionReason = C.SELECTION_REASON_UNKNOWN;
+    playbackSpeed = 1f;
+
+    // Utilities are the log of the bitrate relative to the lowest bitrate, offset so that the
+    // lowest utility is 1. Tracks are ordered by decreasing bitrate.
+    utilities = new double[length];
+    chunkBitrates = new double[length];
+    int minBitrate = Math.max(1, getFormat(/* index= */ length - 1).bitrate);
+    for (int i = 0; i < length; i++) {
+      int bitrate = Math.max(minBitrate, getFormat(i).bitrate);
+      utilities[i] = Math.log((double) bitrate / minBitrate) + 1;
+    }
+    // Choose gp and vp such that the lowest quality track has the highest score until minBuffer is
+    // reached, and the highest quality track has the highest score once targetBuffer is reached.
+    double minBufferSec = minBufferMs / 1000d;
+    double targetBufferSec = targetBufferMs / 1000d;
+    double maxUtility = utilities[0];
+    gp = maxUtility > 1 ? (maxUtility - 1) / (targetBufferSec / minBufferSec - 1) : 1;
+    vp = minBufferSec / gp;
+  }
+
+  @Override
+  public void onPlaybackSpeed(float playbackSpeed) {
+    this.playbackSpeed = playbackSpeed;
+  }
+
+  @Override
+  public void onDiscontinuity() {
+    isInSteadyState = false;
+  }
+
+  @Override
+  public int getSelectedIndex() {
+    return selectedIndex;
+  }
+
+  @Override
+  public int getSelectionReason() {
+    return selectionReason;
+  }
+
+  @Override
+  @Nullable
+  public Object getSelectionData() {
+    return null;
+  }
+
+  @Override
+  public void updateSelectedTrack(
+      long playbackPositionUs,
+      long bufferedDurationUs,
+      long availableDurationUs,
+      List<? extends MediaChunk> queue,
+      MediaChunkIterator[] mediaChunkIterators) {
+    long nowMs = clock.elapsedRealtime();
+
+    // Make initial selection
+    if (selectionReason == C.SELECTION_REASON_UNKNOWN) {
+      selectionReason = C.SELECTION_REASON_INITIAL;
+      selectedIndex = selectIndexUsingBandwidth(nowMs);
+      return;
+    }
+
+    updateChunkBitrates(mediaChunkIterators);
+    long bufferUs =
+        Util.getPlayoutDurationForMediaDuration(
+            getCurrentPeriodBufferedDurationUs(playbackPositionUs, bufferedDurationUs),
+            playbackSpeed);
+    int oldSelectedIndex = selectedIndex;
+    int bolaSelectedIndex = selectIndexUsingBuffer(bufferUs, nowMs);
+    if (isInSteadyState) {
+      selectedIndex = bolaSelectedIndex;
+    } else {
+      int startUpSelectedIndex = selectIndexUsingBandwidth(nowMs);
+      if (bolaSelectedIndex <= startUpSelectedIndex) {
+        // The buffer supports at least the quality selected using the bandwidth estimate.
+        selectedIndex = bolaSelectedIndex;
+        isInSteadyState = true;
+      } else {
+        selectedIndex = startUpSelectedIndex;
+      }
+    }
+    if (isInSteadyState && !isBlacklisted(oldSelectedIndex, nowMs)) {
+      selectedIndex = limitSwitch(oldSelectedIndex, selectedIndex, bufferUs, nowMs);
+    }
+    if (selectedIndex != oldSelectedIndex) {
+      selectionReason = C.SELECTION_REASON_ADAPTIVE;
+    }
+  }
+
+  /** Returns the index to switch to, given the index selected using the buffer. */
+  private int limitSwitch(int oldSelectedIndex, int selectedIndex, long bufferUs, long nowMs) {
+    if (selectedIndex < oldSelectedIndex
+        && Math.round(getFormat(selectedIndex).bitrate * playbackSpeed) > getEffectiveBitrate()) {
+      // Don't switch up beyond the quality that the bandwidth estimate can sustain.
+      selectedIndex = Math.min(selectIndexUsingBandwidth(nowMs), oldSelectedIndex);
+    }
+    if (selectedIndex < oldSelectedIndex) {
+      int hysteresisSelectedIndex =
+          selectIndexUsingBuffer(Math.max(0, bufferUs - hysteresisBufferUs), nowMs);
+      selectedIndex = Math.max(selectedIndex, Math.min(oldSelectedIndex, hysteresisSelectedIndex));
+    } else if (selectedIndex > oldSelectedIndex) {
+      int hysteresisSelectedIndex = selectIndexUsingBuffer(bufferUs + hysteresisBufferUs, nowMs);
+      selectedIndex = Math.min(selectedIndex, Math.max(oldSelectedIndex, hysteresisSelectedIndex));
+    }
+    return selectedIndex;
+  }
+
+  private int selectIndexUsingBuffer(long bufferUs, long nowMs) {
+    double bufferSec = bufferUs / (double) C.MICROS_PER_SECOND;
+    int selectedIndex = C.INDEX_UNSET;
+    double maxScore = 0;
+    for (int i = 0; i < length; i++) {
+      if (isBlacklisted(i, nowMs)) {
+        continue;
+      }
+      double score = (vp * (utilities[i] + gp) - bufferSec) / chunkBitrates[i];
+      if (selectedIndex == C.INDEX_UNSET || score > maxScore) {
+        selectedIndex = i;
+        maxScore = score;
+      }
+    }
+    return selectedIndex == C.INDEX_UNSET ? length - 1 : selectedIndex;
+  }
+
+  private int selectIndexUsingBandwidth(long nowMs) {
+    long effectiveBitrate = getEffectiveBitrate();
+    int lowestBitrateNonBlacklistedIndex = 0;
+    for (int i = 0; i < length; i++) {
+      if (!isBlacklisted(i, nowMs)) {
+        if (Math.round(getFormat(i).bitrate * playbackSpeed) <= effectiveBitrate) {
+          return i;
+        }
+        lowestBitrateNonBlacklistedIndex = i;
+      }
+    }
+    return lowestBitrateNonBlacklistedIndex;
+  }
+
+  private long getEffectiveBitrate() {
+    return (long) (bandwidthMeter.getBitrateEstimate() * bandwidthFraction);
+  }
+
+  /**
+   * Sets the bitrate of each track to that of its next chunk if known, or to its format bitrate
+   * otherwise.
+   */
+  private void updateChunkBitrates(MediaChunkIterator[] mediaChunkIterators) {
+    for (int i = 0; i < length; i++) {
+      double chunkBitrate = C.LENGTH_UNSET;
+      if (i < mediaChunkIterators.length) {
+        MediaChunkIterator iterator = mediaChunkIterators[i];
+        if (iterator.next()) {
+          long chunkLength = iterator.getDataSpec().length;
+          long chunkDurationUs = iterator.getChunkEndTimeUs() - iterator.getChunkStartTimeUs();
+          if (chunkLength != C.LENGTH_UNSET && chunkDurationUs > 0) {
+            chunkBitrate =
+                chunkLength * C.BITS_PER_BYTE * (double) C.MICROS_PER_SECOND / chunkDurationUs;
+          }
+        }
+        iterator.reset();
+      }
+      if (chunkBitrate <= 0) {
+        chunkBitrate = Math.max(1, getFormat(i).bitrate);
+      }
+      chunkBitrates[i] = chunkBitrate;
+    }
+  }
+
+  private static long getCurrentPeriodBufferedDurationUs(
+      long playbackPositionUs, long bufferedDurationUs) {
+    return playbackPositionUs >= 0 ? bufferedDurationUs : playbackPositionUs + bufferedDurationUs;
+  }
+}
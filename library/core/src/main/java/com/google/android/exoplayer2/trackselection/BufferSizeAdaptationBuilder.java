@@ -27,6 +27,7 @@ import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
 import com.google.android.exoplayer2.trackselection.TrackSelection.Definition;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.TargetBufferAllocator;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import java.util.List;
@@ -102,7 +103,7 @@ public final class BufferSizeAdaptationBuilder {
   public static final int DEFAULT_START_UP_MIN_BUFFER_FOR_QUALITY_INCREASE_MS =
       AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS;
 
-  @Nullable private DefaultAllocator allocator;
+  @Nullable private TargetBufferAllocator allocator;
   private Clock clock;
   private int minBufferMs;
   private int maxBufferMs;
@@ -141,18 +142,24 @@ public final class BufferSizeAdaptationBuilder {
   }
 
   /**
-   * Sets the {@link DefaultAllocator} used by the loader.
+   * Sets the {@link TargetBufferAllocator} used by the loader.
    *
-   * @param allocator The {@link DefaultAllocator}.
+   * @param allocator The {@link TargetBufferAllocator}.
    * @return This builder, for convenience.
    * @throws IllegalStateException If {@link #buildPlayerComponents()} has already been called.
    */
-  public BufferSizeAdaptationBuilder setAllocator(DefaultAllocator allocator) {
+  public BufferSizeAdaptationBuilder setAllocator(TargetBufferAllocator allocator) {
     Assertions.checkState(!buildCalled);
     this.allocator = allocator;
     return this;
   }
 
+  /** @deprecated Use {@link #setAllocator(TargetBufferAllocator)} instead. */
+  @Deprecated
+  public BufferSizeAdaptationBuilder setAllocator(DefaultAllocator allocator) {
+    return setAllocator((TargetBufferAllocator) allocator);
+  }
+
   /**
    * Sets the buffer duration parameters.
    *
@@ -15,8 +15,12 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
+
 /**
- * An allocation within a byte array.
+ * An allocation within a byte array or, if {@link #isDirect()}, within a direct {@link ByteBuffer}.
  * <p>
  * The allocation's length is obtained by calling {@link Allocator#getIndividualAllocationLength()}
  * on the {@link Allocator} from which it was obtained.
@@ -26,14 +30,20 @@ public final class Allocation {
   /**
    * The array containing the allocated space. The allocated space might not be at the start of the
    * array, and so {@link #offset} must be used when indexing into it.
+   *
+   * <p>If the allocation {@link #isDirect()}, this is an empty array and the allocated space is in
+   * the buffer returned by {@link #getDirectBuffer()} instead.
    */
   public final byte[] data;
 
   /**
-   * The offset of the allocated space in {@link #data}.
+   * The offset of the allocated space in {@link #data}, or in the buffer returned by {@link
+   * #getDirectBuffer()} if the allocation {@link #isDirect()}.
    */
   public final int offset;
 
+  @Nullable private final ByteBuffer directBuffer;
+
   /**
    * @param data The array containing the allocated space.
    * @param offset The offset of the allocated space in {@code data}.
@@ -41,6 +51,33 @@ public final class Allocation {
   public Allocation(byte[] data, int offset) {
     this.data = data;
     this.offset = offset;
+    directBuffer = null;
+  }
+
+  /**
+   * @param directBuffer The direct buffer containing the allocated space.
+   * @param offset The offset of the allocated space in {@code directBuffer}.
+   */
+  public Allocation(ByteBuffer directBuffer, int offset) {
+    this.directBuffer = directBuffer;
+    this.offset = offset;
+    data = Util.EMPTY_BYTE_ARRAY;
+  }
+
+  /** Returns whether the allocated space is in a direct buffer rather than in {@link #data}. */
+  public boolean isDirect() {
+    return directBuffer != null;
+  }
+
+  /**
+   * Returns the direct buffer containing the allocated space, or null if the allocation isn't
+   * {@link #isDirect() direct}. The allocated space might not be at the start of the buffer, and so
+   * {@link #offset} must be used when indexing into it. The position and limit of the buffer must
+   * not be modified; use {@link ByteBuffer#duplicate()} to obtain an independent view instead.
+   */
+  @Nullable
+  public ByteBuffer getDirectBuffer() {
+    return directBuffer;
   }
 
 }
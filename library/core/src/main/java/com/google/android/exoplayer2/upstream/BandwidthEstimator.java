@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+/**
+ * Estimates bandwidth from transfer samples reported by a {@link DefaultBandwidthMeter}.
+ *
+ * <p>Implementations need not be thread safe. The meter serializes calls to its estimator, and an
+ * instance must not be shared between meters.
+ */
+public interface BandwidthEstimator {
+
+  /**
+   * Adds a throughput sample.
+   *
+   * @param bytesTransferred The number of bytes transferred during the sample.
+   * @param elapsedTimeMs The duration of the sample, in milliseconds. Always greater than zero.
+   */
+  void addSample(long bytesTransferred, long elapsedTimeMs);
+
+  /**
+   * Adds a time to first byte sample, measured from the start of opening a network transfer to the
+   * transfer starting. The default implementation does nothing.
+   *
+   * @param timeToFirstByteMs The time to first byte, in milliseconds.
+   */
+  default void addTimeToFirstByteSample(long timeToFirstByteMs) {
+    // Do nothing.
+  }
+
+  /**
+   * Returns the bandwidth estimate in bits per second. Only called once at least one sample has
+   * been added since the estimator was created or last reset.
+   */
+  long getBandwidthEstimate();
+
+  /** Discards all samples, for example because the network type has changed. */
+  void reset();
+}
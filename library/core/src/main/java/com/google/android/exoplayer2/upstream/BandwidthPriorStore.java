@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.C;
+import java.io.IOException;
+
+/**
+ * Persists bandwidth and latency estimates across sessions, so that a {@link
+ * DefaultBandwidthMeter} can be seeded with the estimate measured the last time the same kind of
+ * network was used.
+ *
+ * <p>Priors are keyed by {@link C.NetworkType} and by the host to which the measured transfers
+ * were made.
+ */
+public interface BandwidthPriorStore {
+
+  /** A persisted bandwidth and latency estimate. */
+  final class Prior {
+
+    /** The bitrate estimate, in bits per second. */
+    public final long bitrateEstimate;
+    /** The time to first byte estimate in milliseconds, or {@link C#TIME_UNSET} if unknown. */
+    public final long timeToFirstByteMs;
+
+    /**
+     * @param bitrateEstimate The bitrate estimate, in bits per second.
+     * @param timeToFirstByteMs The time to first byte estimate in milliseconds, or {@link
+     *     C#TIME_UNSET} if unknown.
+     */
+    public Prior(long bitrateEstimate, long timeToFirstByteMs) {
+      this.bitrateEstimate = bitrateEstimate;
+      this.timeToFirstByteMs = timeToFirstByteMs;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Prior other = (Prior) obj;
+      return bitrateEstimate == other.bitrateEstimate
+          && timeToFirstByteMs == other.timeToFirstByteMs;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) (bitrateEstimate ^ (bitrateEstimate >>> 32));
+      result = 31 * result + (int) (timeToFirstByteMs ^ (timeToFirstByteMs >>> 32));
+      return result;
+    }
+  }
+
+  /**
+   * Returns the prior stored for the given network type and host, or null if there is none.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param networkType The {@link C.NetworkType}.
+   * @param host The host.
+   * @return The stored prior, or null.
+   * @throws IOException If an error occurs reading the prior.
+   */
+  @WorkerThread
+  @Nullable
+  Prior get(@C.NetworkType int networkType, String host) throws IOException;
+
+  /**
+   * Stores a prior for the given network type and host, replacing any existing one.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param networkType The {@link C.NetworkType}.
+   * @param host The host.
+   * @param prior The prior to store.
+   * @throws IOException If an error occurs storing the prior.
+   */
+  @WorkerThread
+  void put(@C.NetworkType int networkType, String host, Prior prior) throws IOException;
+}
@@ -19,6 +19,7 @@ import android.net.Uri;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +82,37 @@ public interface DataSource {
    */
   int read(byte[] buffer, int offset, int readLength) throws IOException;
 
+  /**
+   * When the source is open, returns all of the data remaining in the opened range as a read-only
+   * {@link ByteBuffer}, if the source is able to provide it without copying (for example by memory
+   * mapping a file). If a buffer is returned then subsequent calls to {@link #read(byte[], int,
+   * int)} will return {@link C#RESULT_END_OF_INPUT}, and the caller should report the data it
+   * consumes from the buffer by calling {@link #onMappedDataConsumed(int)}. If {@code null} is
+   * returned, for example because mapping failed, then the state of the source is unchanged and
+   * the data should be read with {@link #read(byte[], int, int)}.
+   *
+   * <p>The default implementation returns {@code null}.
+   *
+   * @return A buffer containing the remaining data from its position to its limit, or {@code null}.
+   * @throws IOException If an error occurs mapping the data.
+   */
+  @Nullable
+  default ByteBuffer mapRemaining() throws IOException {
+    return null;
+  }
+
+  /**
+   * Called when data in the buffer returned by {@link #mapRemaining()} has been consumed. Sources
+   * report the transfer of mapped data as it's consumed, rather than when it's mapped.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @param length The number of bytes consumed since the previous call.
+   */
+  default void onMappedDataConsumed(int length) {
+    // Do nothing.
+  }
+
   /**
    * When the source is open, returns the {@link Uri} from which data is being read. The returned
    * {@link Uri} will be identical to the one passed {@link #open(DataSpec)} in the {@link DataSpec}
@@ -15,20 +15,24 @@
  */
 package com.google.android.exoplayer2.upstream;
 
+import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 /**
  * Default implementation of {@link Allocator}.
  */
-public final class DefaultAllocator implements Allocator {
+public final class DefaultAllocator implements TargetBufferAllocator {
 
   private static final int AVAILABLE_EXTRA_CAPACITY = 100;
 
   private final boolean trimOnReset;
   private final int individualAllocationSize;
-  private final byte[] initialAllocationBlock;
+  private final boolean useDirectBuffers;
+  @Nullable private final byte[] initialAllocationBlock;
+  @Nullable private final ByteBuffer initialAllocationBuffer;
   private final Allocation[] singleAllocationReleaseHolder;
 
   private int targetBufferSize;
@@ -59,30 +63,67 @@ public final class DefaultAllocator implements Allocator {
    */
   public DefaultAllocator(boolean trimOnReset, int individualAllocationSize,
       int initialAllocationCount) {
+    this(
+        trimOnReset,
+        individualAllocationSize,
+        initialAllocationCount,
+        /* useDirectBuffers= */ false);
+  }
+
+  /**
+   * Constructs an instance with some {@link Allocation}s created up front, optionally backed by
+   * direct {@link ByteBuffer}s rather than byte arrays.
+   * <p>
+   * Direct allocations keep buffered media out of the Java heap, and allow sample data to be
+   * copied into direct decoder input buffers with {@link ByteBuffer#put(ByteBuffer)}.
+   * <p>
+   * Note: {@link Allocation}s created up front will never be discarded by {@link #trim()}.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param initialAllocationCount The number of allocations to create up front.
+   * @param useDirectBuffers Whether allocations are backed by direct {@link ByteBuffer}s.
+   */
+  public DefaultAllocator(boolean trimOnReset, int individualAllocationSize,
+      int initialAllocationCount, boolean useDirectBuffers) {
     Assertions.checkArgument(individualAllocationSize > 0);
     Assertions.checkArgument(initialAllocationCount >= 0);
     this.trimOnReset = trimOnReset;
     this.individualAllocationSize = individualAllocationSize;
+    this.useDirectBuffers = useDirectBuffers;
     this.availableCount = initialAllocationCount;
     this.availableAllocations = new Allocation[initialAllocationCount + AVAILABLE_EXTRA_CAPACITY];
-    if (initialAllocationCount > 0) {
+    if (initialAllocationCount > 0 && useDirectBuffers) {
+      initialAllocationBlock = null;
+      initialAllocationBuffer =
+          ByteBuffer.allocateDirect(initialAllocationCount * individualAllocationSize);
+      for (int i = 0; i < initialAllocationCount; i++) {
+        int allocationOffset = i * individualAllocationSize;
+        availableAllocations[i] = new Allocation(initialAllocationBuffer, allocationOffset);
+      }
+    } else if (initialAllocationCount > 0) {
       initialAllocationBlock = new byte[initialAllocationCount * individualAllocationSize];
+      initialAllocationBuffer = null;
       for (int i = 0; i < initialAllocationCount; i++) {
         int allocationOffset = i * individualAllocationSize;
         availableAllocations[i] = new Allocation(initialAllocationBlock, allocationOffset);
       }
     } else {
       initialAllocationBlock = null;
+      initialAllocationBuffer = null;
     }
     singleAllocationReleaseHolder = new Allocation[1];
   }
 
+  @Override
   public synchronized void reset() {
     if (trimOnReset) {
       setTargetBufferSize(0);
     }
   }
 
+  @Override
   public synchronized void setTargetBufferSize(int targetBufferSize) {
     boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
     this.targetBufferSize = targetBufferSize;
@@ -98,6 +139,8 @@ public final class DefaultAllocator implements Allocator {
     if (availableCount > 0) {
       allocation = availableAllocations[--availableCount];
       availableAllocations[availableCount] = null;
+    } else if (useDirectBuffers) {
+      allocation = new Allocation(ByteBuffer.allocateDirect(individualAllocationSize), 0);
     } else {
       allocation = new Allocation(new byte[individualAllocationSize], 0);
     }
@@ -133,7 +176,7 @@ public final class DefaultAllocator implements Allocator {
       return;
     }
 
-    if (initialAllocationBlock != null) {
+    if (initialAllocationBlock != null || initialAllocationBuffer != null) {
       // Some allocations are backed by an initial block. We need to make sure that we hold onto all
       // such allocations. Re-order the available allocations so that the ones backed by the initial
       // block come first.
@@ -141,11 +184,11 @@ public final class DefaultAllocator implements Allocator {
       int highIndex = availableCount - 1;
       while (lowIndex <= highIndex) {
         Allocation lowAllocation = availableAllocations[lowIndex];
-        if (lowAllocation.data == initialAllocationBlock) {
+        if (isBackedByInitialBlock(lowAllocation)) {
           lowIndex++;
         } else {
           Allocation highAllocation = availableAllocations[highIndex];
-          if (highAllocation.data != initialAllocationBlock) {
+          if (!isBackedByInitialBlock(highAllocation)) {
             highIndex--;
           } else {
             availableAllocations[lowIndex++] = highAllocation;
@@ -176,4 +219,10 @@ public final class DefaultAllocator implements Allocator {
     return individualAllocationSize;
   }
 
+  private boolean isBackedByInitialBlock(Allocation allocation) {
+    return useDirectBuffers
+        ? allocation.getDirectBuffer() == initialAllocationBuffer
+        : allocation.data == initialAllocationBlock;
+  }
+
 }
@@ -28,22 +28,35 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.EventDispatcher;
-import com.google.android.exoplayer2.util.SlidingPercentile;
+import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
  * Estimates bandwidth by listening to data transfers.
  *
- * <p>The bandwidth estimate is calculated using a {@link SlidingPercentile} and is updated each
- * time a transfer ends. The initial estimate is based on the current operator's network country
- * code or the locale of the user, as well as the network connection type. This can be configured in
- * the {@link Builder}.
+ * <p>The bandwidth estimate is calculated by a {@link BandwidthEstimator} and is updated each time
+ * a transfer ends. By default a {@link SlidingPercentileBandwidthEstimator} is used. The initial
+ * estimate is based on the current operator's network country code or the locale of the user, as
+ * well as the network connection type. This can be configured in the {@link Builder}. If a {@link
+ * BandwidthPriorStore} is set, estimates are persisted by network type and host, and the estimate
+ * persisted for the current network type and the host of the first network transfer replaces the
+ * initial estimate once it's been read.
+ *
+ * <p>{@link #onBytesTransferred} and {@link #getBitrateEstimate()} don't lock, so loading threads
+ * don't contend with each other when reporting progress.
  */
 public final class DefaultBandwidthMeter implements BandwidthMeter, TransferListener {
 
@@ -77,9 +90,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   public static final long DEFAULT_INITIAL_BITRATE_ESTIMATE = 1_000_000;
 
   /** Default maximum weight for the sliding window. */
-  public static final int DEFAULT_SLIDING_WINDOW_MAX_WEIGHT = 2000;
+  public static final int DEFAULT_SLIDING_WINDOW_MAX_WEIGHT =
+      SlidingPercentileBandwidthEstimator.DEFAULT_MAX_WEIGHT;
 
   @Nullable private static DefaultBandwidthMeter singletonInstance;
+  @Nullable private static ThreadPoolExecutor sharedBandwidthPriorStoreExecutor;
 
   /** Builder for a bandwidth meter. */
   public static final class Builder {
@@ -88,8 +103,11 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
     private SparseArray<Long> initialBitrateEstimates;
     private int slidingWindowMaxWeight;
+    @Nullable private BandwidthEstimator bandwidthEstimator;
     private Clock clock;
     private boolean resetOnNetworkTypeChange;
+    @Nullable private BandwidthPriorStore bandwidthPriorStore;
+    @Nullable private Executor bandwidthPriorStoreExecutor;
 
     /**
      * Creates a builder with default parameters and without listener.
@@ -106,7 +124,8 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     }
 
     /**
-     * Sets the maximum weight for the sliding window.
+     * Sets the maximum weight for the sliding window. Ignored if a {@link BandwidthEstimator} is
+     * set.
      *
      * @param slidingWindowMaxWeight The maximum weight for the sliding window.
      * @return This builder.
@@ -116,6 +135,19 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets the {@link BandwidthEstimator} used to estimate bandwidth from data transfers. The
+     * estimator must not be shared with other bandwidth meters. The default is a {@link
+     * SlidingPercentileBandwidthEstimator} using the sliding window maximum weight.
+     *
+     * @param bandwidthEstimator The {@link BandwidthEstimator}.
+     * @return This builder.
+     */
+    public Builder setBandwidthEstimator(BandwidthEstimator bandwidthEstimator) {
+      this.bandwidthEstimator = bandwidthEstimator;
+      return this;
+    }
+
     /**
      * Sets the initial bitrate estimate in bits per second that should be assumed when a bandwidth
      * estimate is unavailable.
@@ -181,18 +213,58 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
       return this;
     }
 
+    /**
+     * Sets a {@link BandwidthPriorStore} in which bandwidth and latency estimates are persisted, so
+     * that they can be used as initial estimates by bandwidth meters created in future sessions.
+     * The store is accessed on a background thread shared by all bandwidth meters, which terminates
+     * when it has been idle for a while.
+     *
+     * @param bandwidthPriorStore The {@link BandwidthPriorStore}.
+     * @return This builder.
+     */
+    public Builder setBandwidthPriorStore(BandwidthPriorStore bandwidthPriorStore) {
+      this.bandwidthPriorStore = bandwidthPriorStore;
+      this.bandwidthPriorStoreExecutor = null;
+      return this;
+    }
+
+    /**
+     * Sets a {@link BandwidthPriorStore} in which bandwidth and latency estimates are persisted, so
+     * that they can be used as initial estimates by bandwidth meters created in future sessions.
+     *
+     * @param bandwidthPriorStore The {@link BandwidthPriorStore}.
+     * @param executor The {@link Executor} on which the store is accessed. Tasks must be run in the
+     *     order in which they're submitted.
+     * @return This builder.
+     */
+    public Builder setBandwidthPriorStore(
+        BandwidthPriorStore bandwidthPriorStore, Executor executor) {
+      this.bandwidthPriorStore = bandwidthPriorStore;
+      this.bandwidthPriorStoreExecutor = executor;
+      return this;
+    }
+
     /**
      * Builds the bandwidth meter.
      *
      * @return A bandwidth meter with the configured properties.
      */
     public DefaultBandwidthMeter build() {
+      @Nullable Executor bandwidthPriorStoreExecutor = this.bandwidthPriorStoreExecutor;
+      if (bandwidthPriorStore != null && bandwidthPriorStoreExecutor == null) {
+        bandwidthPriorStoreExecutor = getSharedBandwidthPriorStoreExecutor();
+      }
       return new DefaultBandwidthMeter(
           context,
           initialBitrateEstimates,
-          slidingWindowMaxWeight,
+          bandwidthEstimator != null
+              ? bandwidthEstimator
+              : new SlidingPercentileBandwidthEstimator(
+                  slidingWindowMaxWeight, SlidingPercentileBandwidthEstimator.DEFAULT_PERCENTILE),
           clock,
-          resetOnNetworkTypeChange);
+          resetOnNetworkTypeChange,
+          bandwidthPriorStore,
+          bandwidthPriorStoreExecutor);
     }
 
     private static SparseArray<Long> getInitialBitrateEstimatesForCountry(String countryCode) {
@@ -230,23 +302,61 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return singletonInstance;
   }
 
+  /**
+   * Returns the executor on which bandwidth prior stores are accessed if no executor is set, which
+   * is shared by all bandwidth meters. Its single thread is terminated when idle, so the executor
+   * never needs to be shut down.
+   */
+  private static synchronized Executor getSharedBandwidthPriorStoreExecutor() {
+    if (sharedBandwidthPriorStoreExecutor == null) {
+      ThreadPoolExecutor executor =
+          new ThreadPoolExecutor(
+              /* corePoolSize= */ 1,
+              /* maximumPoolSize= */ 1,
+              BANDWIDTH_PRIOR_STORE_THREAD_KEEP_ALIVE_MS,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              runnable -> new Thread(runnable, BANDWIDTH_PRIOR_STORE_THREAD_NAME));
+      executor.allowCoreThreadTimeOut(true);
+      sharedBandwidthPriorStoreExecutor = executor;
+    }
+    return sharedBandwidthPriorStoreExecutor;
+  }
+
+  private static final String TAG = "DefaultBandwidthMeter";
+  private static final String BANDWIDTH_PRIOR_STORE_THREAD_NAME =
+      "ExoPlayer:BandwidthPriorStore";
+  /** The time for which the idle thread of the shared bandwidth prior store executor is kept. */
+  private static final long BANDWIDTH_PRIOR_STORE_THREAD_KEEP_ALIVE_MS = 10_000;
+
   private static final int ELAPSED_MILLIS_FOR_ESTIMATE = 2000;
   private static final int BYTES_TRANSFERRED_FOR_ESTIMATE = 512 * 1024;
+  /** The minimum interval between persisting priors for the same host. */
+  private static final long MIN_PRIOR_UPDATE_INTERVAL_MS = 10_000;
+  /** The weight given to new samples in the smoothed time to first byte of each host. */
+  private static final float TIME_TO_FIRST_BYTE_SMOOTHING_FACTOR = 0.25f;
 
   @Nullable private final Context context;
   private final SparseArray<Long> initialBitrateEstimates;
   private final EventDispatcher<EventListener> eventDispatcher;
-  private final SlidingPercentile slidingPercentile;
+  private final BandwidthEstimator bandwidthEstimator;
   private final Clock clock;
-
+  private final AtomicLong sampleBytesTransferred;
+  private final WeakHashMap<DataSource, Long> transferInitializingTimesMs;
+  @Nullable private final BandwidthPriorStore bandwidthPriorStore;
+  @Nullable private final Executor bandwidthPriorStoreExecutor;
+  private final HashMap<String, Long> timeToFirstByteEstimatesMs;
+  private final HashMap<String, Long> lastPriorUpdateTimesMs;
+
+  private boolean priorLoadRequested;
   private int streamCount;
   private long sampleStartTimeMs;
-  private long sampleBytesTransferred;
 
   @C.NetworkType private int networkType;
   private long totalElapsedTimeMs;
   private long totalBytesTransferred;
-  private long bitrateEstimate;
+  private volatile long bitrateEstimate;
+  private boolean bitrateEstimateMeasured;
   private long lastReportedBitrateEstimate;
 
   private boolean networkTypeOverrideSet;
@@ -258,22 +368,32 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     this(
         /* context= */ null,
         /* initialBitrateEstimates= */ new SparseArray<>(),
-        DEFAULT_SLIDING_WINDOW_MAX_WEIGHT,
+        new SlidingPercentileBandwidthEstimator(),
         Clock.DEFAULT,
-        /* resetOnNetworkTypeChange= */ false);
+        /* resetOnNetworkTypeChange= */ false,
+        /* bandwidthPriorStore= */ null,
+        /* bandwidthPriorStoreExecutor= */ null);
   }
 
   private DefaultBandwidthMeter(
       @Nullable Context context,
       SparseArray<Long> initialBitrateEstimates,
-      int maxWeight,
+      BandwidthEstimator bandwidthEstimator,
       Clock clock,
-      boolean resetOnNetworkTypeChange) {
+      boolean resetOnNetworkTypeChange,
+      @Nullable BandwidthPriorStore bandwidthPriorStore,
+      @Nullable Executor bandwidthPriorStoreExecutor) {
     this.context = context == null ? null : context.getApplicationContext();
     this.initialBitrateEstimates = initialBitrateEstimates;
     this.eventDispatcher = new EventDispatcher<>();
-    this.slidingPercentile = new SlidingPercentile(maxWeight);
+    this.bandwidthEstimator = bandwidthEstimator;
     this.clock = clock;
+    sampleBytesTransferred = new AtomicLong();
+    transferInitializingTimesMs = new WeakHashMap<>();
+    this.bandwidthPriorStore = bandwidthPriorStore;
+    this.bandwidthPriorStoreExecutor = bandwidthPriorStoreExecutor;
+    timeToFirstByteEstimatesMs = new HashMap<>();
+    lastPriorUpdateTimesMs = new HashMap<>();
     // Set the initial network type and bitrate estimate
     networkType = context == null ? C.NETWORK_TYPE_UNKNOWN : Util.getNetworkType(context);
     bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
@@ -300,7 +420,7 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public synchronized long getBitrateEstimate() {
+  public long getBitrateEstimate() {
     return bitrateEstimate;
   }
 
@@ -321,8 +441,14 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
   }
 
   @Override
-  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
-    // Do nothing.
+  public synchronized void onTransferInitializing(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (!isNetwork) {
+      return;
+    }
+    // Weakly keyed, as a source whose open fails doesn't report the start of the transfer.
+    transferInitializingTimesMs.put(source, clock.elapsedRealtime());
+    maybeLoadPrior(dataSpec);
   }
 
   @Override
@@ -331,19 +457,37 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     if (!isNetwork) {
       return;
     }
+    long nowMs = clock.elapsedRealtime();
+    @Nullable Long transferInitializingTimeMs = transferInitializingTimesMs.remove(source);
+    if (transferInitializingTimeMs != null) {
+      long timeToFirstByteMs = nowMs - transferInitializingTimeMs;
+      bandwidthEstimator.addTimeToFirstByteSample(timeToFirstByteMs);
+      @Nullable String host = dataSpec.uri.getHost();
+      if (host != null) {
+        @Nullable Long timeToFirstByteEstimateMs = timeToFirstByteEstimatesMs.get(host);
+        timeToFirstByteEstimatesMs.put(
+            host,
+            timeToFirstByteEstimateMs == null
+                ? timeToFirstByteMs
+                : (long)
+                    (timeToFirstByteEstimateMs
+                        + TIME_TO_FIRST_BYTE_SMOOTHING_FACTOR
+                            * (timeToFirstByteMs - timeToFirstByteEstimateMs)));
+      }
+    }
     if (streamCount == 0) {
-      sampleStartTimeMs = clock.elapsedRealtime();
+      sampleStartTimeMs = nowMs;
     }
     streamCount++;
   }
 
   @Override
-  public synchronized void onBytesTransferred(
+  public void onBytesTransferred(
       DataSource source, DataSpec dataSpec, boolean isNetwork, int bytes) {
     if (!isNetwork) {
       return;
     }
-    sampleBytesTransferred += bytes;
+    sampleBytesTransferred.addAndGet(bytes);
   }
 
   @Override
@@ -355,17 +499,19 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     long nowMs = clock.elapsedRealtime();
     int sampleElapsedTimeMs = (int) (nowMs - sampleStartTimeMs);
     totalElapsedTimeMs += sampleElapsedTimeMs;
-    totalBytesTransferred += sampleBytesTransferred;
     if (sampleElapsedTimeMs > 0) {
-      float bitsPerSecond = (sampleBytesTransferred * 8000f) / sampleElapsedTimeMs;
-      slidingPercentile.addSample((int) Math.sqrt(sampleBytesTransferred), bitsPerSecond);
+      // Bytes reported concurrently with the end of the sample are counted in the next sample.
+      long sampleBytesTransferred = this.sampleBytesTransferred.getAndSet(0);
+      totalBytesTransferred += sampleBytesTransferred;
+      bandwidthEstimator.addSample(sampleBytesTransferred, sampleElapsedTimeMs);
       if (totalElapsedTimeMs >= ELAPSED_MILLIS_FOR_ESTIMATE
           || totalBytesTransferred >= BYTES_TRANSFERRED_FOR_ESTIMATE) {
-        bitrateEstimate = (long) slidingPercentile.getPercentile(0.5f);
+        bitrateEstimate = bandwidthEstimator.getBandwidthEstimate();
+        bitrateEstimateMeasured = true;
+        maybeStorePrior(dataSpec, nowMs);
       }
       maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
       sampleStartTimeMs = nowMs;
-      sampleBytesTransferred = 0;
     } // Else any sample bytes transferred will be carried forward into the next sample.
     streamCount--;
   }
@@ -389,16 +535,92 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
 
     // Reset the bitrate estimate and report it, along with any bytes transferred.
     this.bitrateEstimate = getInitialBitrateEstimateForNetworkType(networkType);
+    bitrateEstimateMeasured = false;
     long nowMs = clock.elapsedRealtime();
     int sampleElapsedTimeMs = streamCount > 0 ? (int) (nowMs - sampleStartTimeMs) : 0;
+    long sampleBytesTransferred = this.sampleBytesTransferred.getAndSet(0);
     maybeNotifyBandwidthSample(sampleElapsedTimeMs, sampleBytesTransferred, bitrateEstimate);
 
     // Reset the remainder of the state.
     sampleStartTimeMs = nowMs;
-    sampleBytesTransferred = 0;
     totalBytesTransferred = 0;
     totalElapsedTimeMs = 0;
-    slidingPercentile.reset();
+    bandwidthEstimator.reset();
+    timeToFirstByteEstimatesMs.clear();
+    lastPriorUpdateTimesMs.clear();
+    priorLoadRequested = false;
+  }
+
+  /**
+   * Loads the prior for the current network type and the host of {@code dataSpec}, if no prior has
+   * been requested since the meter was created or the network type last changed.
+   */
+  private void maybeLoadPrior(DataSpec dataSpec) {
+    @Nullable String host = dataSpec.uri.getHost();
+    if (bandwidthPriorStore == null
+        || priorLoadRequested
+        || host == null
+        || !isPriorNetworkType(networkType)) {
+      return;
+    }
+    priorLoadRequested = true;
+    BandwidthPriorStore bandwidthPriorStore = this.bandwidthPriorStore;
+    @C.NetworkType int networkType = this.networkType;
+    Assertions.checkNotNull(bandwidthPriorStoreExecutor)
+        .execute(
+            () -> {
+              try {
+                @Nullable
+                BandwidthPriorStore.Prior prior = bandwidthPriorStore.get(networkType, host);
+                if (prior != null) {
+                  onPriorLoaded(networkType, prior);
+                }
+              } catch (IOException e) {
+                Log.e(TAG, "Failed to load bandwidth prior", e);
+              }
+            });
+  }
+
+  private synchronized void onPriorLoaded(
+      @C.NetworkType int networkType, BandwidthPriorStore.Prior prior) {
+    if (this.networkType != networkType || bitrateEstimateMeasured) {
+      // The prior is stale.
+      return;
+    }
+    bitrateEstimate = prior.bitrateEstimate;
+    if (prior.timeToFirstByteMs != C.TIME_UNSET) {
+      bandwidthEstimator.addTimeToFirstByteSample(prior.timeToFirstByteMs);
+    }
+    maybeNotifyBandwidthSample(/* elapsedMs= */ 0, /* bytesTransferred= */ 0, bitrateEstimate);
+  }
+
+  private void maybeStorePrior(DataSpec dataSpec, long nowMs) {
+    @Nullable String host = dataSpec.uri.getHost();
+    if (bandwidthPriorStore == null || host == null || !isPriorNetworkType(networkType)) {
+      return;
+    }
+    @Nullable Long lastPriorUpdateTimeMs = lastPriorUpdateTimesMs.get(host);
+    if (lastPriorUpdateTimeMs != null
+        && nowMs - lastPriorUpdateTimeMs < MIN_PRIOR_UPDATE_INTERVAL_MS) {
+      return;
+    }
+    lastPriorUpdateTimesMs.put(host, nowMs);
+    @Nullable Long timeToFirstByteEstimateMs = timeToFirstByteEstimatesMs.get(host);
+    BandwidthPriorStore.Prior prior =
+        new BandwidthPriorStore.Prior(
+            bitrateEstimate,
+            timeToFirstByteEstimateMs != null ? timeToFirstByteEstimateMs : C.TIME_UNSET);
+    BandwidthPriorStore bandwidthPriorStore = this.bandwidthPriorStore;
+    @C.NetworkType int networkType = this.networkType;
+    Assertions.checkNotNull(bandwidthPriorStoreExecutor)
+        .execute(
+            () -> {
+              try {
+                bandwidthPriorStore.put(networkType, host, prior);
+              } catch (IOException e) {
+                Log.e(TAG, "Failed to store bandwidth prior", e);
+              }
+            });
   }
 
   private void maybeNotifyBandwidthSample(
@@ -422,6 +644,12 @@ public final class DefaultBandwidthMeter implements BandwidthMeter, TransferList
     return initialBitrateEstimate;
   }
 
+  private static boolean isPriorNetworkType(@C.NetworkType int networkType) {
+    return networkType != C.NETWORK_TYPE_OFFLINE
+        && networkType != C.NETWORK_TYPE_UNKNOWN
+        && networkType != C.NETWORK_TYPE_OTHER;
+  }
+
   /*
    * Note: This class only holds a weak reference to DefaultBandwidthMeter instances. It should not
    * be made non-static, since doing so adds a strong reference (i.e. DefaultBandwidthMeter.this).
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthPriorStore} that persists priors in an SQLite database provided by a {@link
+ * DatabaseProvider}. Priors older than a maximum age are ignored, and the least recently updated
+ * priors are removed once the number of stored priors exceeds a maximum.
+ */
+public final class DefaultBandwidthPriorStore implements BandwidthPriorStore {
+
+  /** The default maximum number of stored priors. */
+  public static final int DEFAULT_MAX_ENTRY_COUNT = 64;
+  /** The default maximum age of a prior that's returned, in milliseconds. */
+  public static final long DEFAULT_MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+  private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "BandwidthPriors";
+  private static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_NETWORK_TYPE = "network_type";
+  private static final String COLUMN_HOST = "host";
+  private static final String COLUMN_BITRATE_ESTIMATE = "bitrate_estimate";
+  private static final String COLUMN_TIME_TO_FIRST_BYTE_MS = "time_to_first_byte_ms";
+  private static final String COLUMN_LAST_UPDATE_TIMESTAMP = "last_update_timestamp";
+
+  private static final int COLUMN_INDEX_BITRATE_ESTIMATE = 0;
+  private static final int COLUMN_INDEX_TIME_TO_FIRST_BYTE_MS = 1;
+
+  private static final String WHERE_NETWORK_TYPE_AND_HOST_EQUALS_AND_UPDATED_SINCE =
+      COLUMN_NETWORK_TYPE
+          + " = ? AND "
+          + COLUMN_HOST
+          + " = ? AND "
+          + COLUMN_LAST_UPDATE_TIMESTAMP
+          + " >= ?";
+
+  private static final String[] COLUMNS =
+      new String[] {COLUMN_BITRATE_ESTIMATE, COLUMN_TIME_TO_FIRST_BYTE_MS};
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_NETWORK_TYPE
+          + " INTEGER NOT NULL,"
+          + COLUMN_HOST
+          + " TEXT NOT NULL,"
+          + COLUMN_BITRATE_ESTIMATE
+          + " INTEGER NOT NULL,"
+          + COLUMN_TIME_TO_FIRST_BYTE_MS
+          + " INTEGER NOT NULL,"
+          + COLUMN_LAST_UPDATE_TIMESTAMP
+          + " INTEGER NOT NULL,"
+          + "PRIMARY KEY ("
+          + COLUMN_NETWORK_TYPE
+          + ", "
+          + COLUMN_HOST
+          + "))";
+
+  private final String name;
+  private final String tableName;
+  private final DatabaseProvider databaseProvider;
+  private final int maxEntryCount;
+  private final long maxAgeMs;
+
+  private boolean initialized;
+
+  /**
+   * Equivalent to {@code DefaultBandwidthPriorStore(databaseProvider, "", DEFAULT_MAX_ENTRY_COUNT,
+   * DEFAULT_MAX_AGE_MS)}.
+   *
+   * @param databaseProvider Provides the SQLite database in which priors are persisted.
+   */
+  public DefaultBandwidthPriorStore(DatabaseProvider databaseProvider) {
+    this(databaseProvider, /* name= */ "", DEFAULT_MAX_ENTRY_COUNT, DEFAULT_MAX_AGE_MS);
+  }
+
+  /**
+   * @param databaseProvider Provides the SQLite database in which priors are persisted.
+   * @param name The name of the store. This name is incorporated into the name of the SQLite table
+   *     in which priors are persisted.
+   * @param maxEntryCount The maximum number of priors to persist.
+   * @param maxAgeMs The maximum age of a prior that's returned, in milliseconds.
+   */
+  public DefaultBandwidthPriorStore(
+      DatabaseProvider databaseProvider, String name, int maxEntryCount, long maxAgeMs) {
+    Assertions.checkArgument(maxEntryCount > 0);
+    this.databaseProvider = databaseProvider;
+    this.name = name;
+    this.maxEntryCount = maxEntryCount;
+    this.maxAgeMs = maxAgeMs;
+    tableName = TABLE_PREFIX + name;
+  }
+
+  @Override
+  @WorkerThread
+  @Nullable
+  public synchronized Prior get(@C.NetworkType int networkType, String host)
+      throws DatabaseIOException {
+    ensureInitialized();
+    String[] selectionArgs =
+        new String[] {
+          Integer.toString(networkType),
+          host,
+          Long.toString(System.currentTimeMillis() - maxAgeMs)
+        };
+    try (Cursor cursor =
+        databaseProvider
+            .getReadableDatabase()
+            .query(
+                tableName,
+                COLUMNS,
+                WHERE_NETWORK_TYPE_AND_HOST_EQUALS_AND_UPDATED_SINCE,
+                selectionArgs,
+                /* groupBy= */ null,
+                /* having= */ null,
+                /* orderBy= */ null,
+                /* limit= */ null)) {
+      if (!cursor.moveToFirst()) {
+        return null;
+      }
+      return new Prior(
+          cursor.getLong(COLUMN_INDEX_BITRATE_ESTIMATE),
+          cursor.getLong(COLUMN_INDEX_TIME_TO_FIRST_BYTE_MS));
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  @Override
+  @WorkerThread
+  public synchronized void put(@C.NetworkType int networkType, String host, Prior prior)
+      throws DatabaseIOException {
+    ensureInitialized();
+    ContentValues values = new ContentValues();
+    values.put(COLUMN_NETWORK_TYPE, networkType);
+    values.put(COLUMN_HOST, host);
+    values.put(COLUMN_BITRATE_ESTIMATE, prior.bitrateEstimate);
+    values.put(COLUMN_TIME_TO_FIRST_BYTE_MS, prior.timeToFirstByteMs);
+    values.put(COLUMN_LAST_UPDATE_TIMESTAMP, System.currentTimeMillis());
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        writableDatabase.replaceOrThrow(tableName, /* nullColumnHack= */ null, values);
+        writableDatabase.execSQL(
+            "DELETE FROM "
+                + tableName
+                + " WHERE rowid NOT IN (SELECT rowid FROM "
+                + tableName
+                + " ORDER BY "
+                + COLUMN_LAST_UPDATE_TIMESTAMP
+                + " DESC LIMIT "
+                + maxEntryCount
+                + ")");
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private void ensureInitialized() throws DatabaseIOException {
+    if (initialized) {
+      return;
+    }
+    try {
+      SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+      int version =
+          VersionTable.getVersion(readableDatabase, VersionTable.FEATURE_BANDWIDTH_PRIORS, name);
+      if (version != TABLE_VERSION) {
+        SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+        writableDatabase.beginTransactionNonExclusive();
+        try {
+          VersionTable.setVersion(
+              writableDatabase, VersionTable.FEATURE_BANDWIDTH_PRIORS, name, TABLE_VERSION);
+          writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+          writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          writableDatabase.setTransactionSuccessful();
+        } finally {
+          writableDatabase.endTransaction();
+        }
+      }
+      initialized = true;
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+}
@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -182,6 +183,17 @@ public final class DefaultDataSource implements DataSource {
     return Assertions.checkNotNull(dataSource).read(buffer, offset, readLength);
   }
 
+  @Override
+  @Nullable
+  public ByteBuffer mapRemaining() throws IOException {
+    return Assertions.checkNotNull(dataSource).mapRemaining();
+  }
+
+  @Override
+  public void onMappedDataConsumed(int length) {
+    Assertions.checkNotNull(dataSource).onMappedDataConsumed(length);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthEstimator} that keeps fast and slow exponentially weighted moving averages of
+ * throughput, and returns the lower of the two.
+ *
+ * <p>Samples are weighted by their duration, so the half-lives are expressed in milliseconds of
+ * transfer time. The fast average drops quickly when throughput falls, while the slow average stops
+ * the estimate from rising on a short burst of high throughput.
+ */
+public final class ExponentialWeightedBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default half-life of the fast average, in milliseconds. */
+  public static final long DEFAULT_FAST_HALF_LIFE_MS = 2000;
+  /** The default half-life of the slow average, in milliseconds. */
+  public static final long DEFAULT_SLOW_HALF_LIFE_MS = 5000;
+
+  private final MovingAverage fastAverage;
+  private final MovingAverage slowAverage;
+
+  /** Creates an instance with the default half-lives. */
+  public ExponentialWeightedBandwidthEstimator() {
+    this(DEFAULT_FAST_HALF_LIFE_MS, DEFAULT_SLOW_HALF_LIFE_MS);
+  }
+
+  /**
+   * @param fastHalfLifeMs The half-life of the fast average, in milliseconds.
+   * @param slowHalfLifeMs The half-life of the slow average, in milliseconds.
+   */
+  public ExponentialWeightedBandwidthEstimator(long fastHalfLifeMs, long slowHalfLifeMs) {
+    Assertions.checkArgument(0 < fastHalfLifeMs && fastHalfLifeMs <= slowHalfLifeMs);
+    fastAverage = new MovingAverage(fastHalfLifeMs);
+    slowAverage = new MovingAverage(slowHalfLifeMs);
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs) {
+    double bitsPerSecond = (bytesTransferred * 8000d) / elapsedTimeMs;
+    fastAverage.addSample(elapsedTimeMs, bitsPerSecond);
+    slowAverage.addSample(elapsedTimeMs, bitsPerSecond);
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return (long) Math.min(fastAverage.getAverage(), slowAverage.getAverage());
+  }
+
+  @Override
+  public void reset() {
+    fastAverage.reset();
+    slowAverage.reset();
+  }
+
+  /** An exponentially weighted moving average, corrected for its zero initial value. */
+  private static final class MovingAverage {
+
+    private final double decayPerMs;
+
+    private double average;
+    private double totalWeightMs;
+
+    public MovingAverage(long halfLifeMs) {
+      decayPerMs = Math.pow(0.5, 1d / halfLifeMs);
+    }
+
+    public void addSample(long weightMs, double value) {
+      double decay = Math.pow(decayPerMs, weightMs);
+      average = value * (1 - decay) + average * decay;
+      totalWeightMs += weightMs;
+    }
+
+    public double getAverage() {
+      double zeroFactor = 1 - Math.pow(decayPerMs, totalWeightMs);
+      return zeroFactor > 0 ? average / zeroFactor : 0;
+    }
+
+    public void reset() {
+      average = 0;
+      totalWeightMs = 0;
+    }
+  }
+}
@@ -26,8 +26,16 @@ import java.io.EOFException;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-/** A {@link DataSource} for reading local files. */
+/**
+ * A {@link DataSource} for reading local files.
+ *
+ * <p>The source supports {@link #mapRemaining()}, allowing consumers to read the opened range
+ * directly from a memory-mapped region of the file rather than copying it through {@link
+ * #read(byte[], int, int)}.
+ */
 public final class FileDataSource extends BaseDataSource {
 
   /** Thrown when a {@link FileDataSource} encounters an error reading a file. */
@@ -144,6 +152,34 @@ public final class FileDataSource extends BaseDataSource {
     }
   }
 
+  @Override
+  @Nullable
+  public ByteBuffer mapRemaining() {
+    if (bytesRemaining > Integer.MAX_VALUE) {
+      // The size of a single mapping is limited to Integer.MAX_VALUE bytes.
+      return null;
+    }
+    RandomAccessFile file = castNonNull(this.file);
+    ByteBuffer mappedData;
+    try {
+      mappedData =
+          file.getChannel()
+              .map(FileChannel.MapMode.READ_ONLY, file.getFilePointer(), bytesRemaining);
+    } catch (IOException e) {
+      // Mapping doesn't move the file pointer, so the data can still be read.
+      return null;
+    }
+    bytesRemaining = 0;
+    return mappedData;
+  }
+
+  @Override
+  public void onMappedDataConsumed(int length) {
+    if (length > 0) {
+      bytesTransferred(length);
+    }
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * A {@link DefaultLoadErrorHandlingPolicy} that also hedges media loads which are slow to respond.
+ *
+ * <p>The hedge delay is derived from the time left before the buffer runs out: the buffered
+ * duration, less the time needed to transfer the data at the current bandwidth estimate. A fraction
+ * of that slack is spent waiting for a response, constrained to lie between a minimum and maximum
+ * delay. Loads are therefore hedged quickly when the buffer is nearly exhausted, and given more
+ * time when it's not.
+ */
+public class HedgingLoadErrorHandlingPolicy extends DefaultLoadErrorHandlingPolicy {
+
+  /** The default minimum hedge delay, in milliseconds. */
+  public static final long DEFAULT_MIN_HEDGE_DELAY_MS = 500;
+  /** The default maximum hedge delay, in milliseconds. */
+  public static final long DEFAULT_MAX_HEDGE_DELAY_MS = 5000;
+  /** The default fraction of the buffer slack to spend waiting for a response. */
+  public static final float DEFAULT_SLACK_FRACTION = 0.5f;
+
+  private final BandwidthMeter bandwidthMeter;
+  private final long minHedgeDelayMs;
+  private final long maxHedgeDelayMs;
+  private final float slackFraction;
+
+  /**
+   * Creates an instance with default hedging parameters.
+   *
+   * @param bandwidthMeter The {@link BandwidthMeter} providing the bandwidth estimate.
+   */
+  public HedgingLoadErrorHandlingPolicy(BandwidthMeter bandwidthMeter) {
+    this(
+        bandwidthMeter,
+        DEFAULT_MIN_HEDGE_DELAY_MS,
+        DEFAULT_MAX_HEDGE_DELAY_MS,
+        DEFAULT_SLACK_FRACTION);
+  }
+
+  /**
+   * @param bandwidthMeter The {@link BandwidthMeter} providing the bandwidth estimate.
+   * @param minHedgeDelayMs The minimum hedge delay, in milliseconds.
+   * @param maxHedgeDelayMs The maximum hedge delay, in milliseconds.
+   * @param slackFraction The fraction of the buffer slack to spend waiting for a response.
+   */
+  public HedgingLoadErrorHandlingPolicy(
+      BandwidthMeter bandwidthMeter,
+      long minHedgeDelayMs,
+      long maxHedgeDelayMs,
+      float slackFraction) {
+    Assertions.checkArgument(0 < minHedgeDelayMs && minHedgeDelayMs <= maxHedgeDelayMs);
+    this.bandwidthMeter = bandwidthMeter;
+    this.minHedgeDelayMs = minHedgeDelayMs;
+    this.maxHedgeDelayMs = maxHedgeDelayMs;
+    this.slackFraction = slackFraction;
+  }
+
+  /** Hedges loads of media and media initialization data. */
+  @Override
+  public long getHedgeDelayMsFor(int dataType, long expectedLength, long bufferedDurationUs) {
+    if (dataType != C.DATA_TYPE_MEDIA && dataType != C.DATA_TYPE_MEDIA_INITIALIZATION) {
+      return C.TIME_UNSET;
+    }
+    long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+    long expectedTransferDurationMs =
+        expectedLength == C.LENGTH_UNSET || bitrateEstimate <= 0
+            ? 0
+            : expectedLength * C.BITS_PER_BYTE * 1000 / bitrateEstimate;
+    long slackMs = C.usToMs(bufferedDurationUs) - expectedTransferDurationMs;
+    return Util.constrainValue((long) (slackMs * slackFraction), minHedgeDelayMs, maxHedgeDelayMs);
+  }
+}
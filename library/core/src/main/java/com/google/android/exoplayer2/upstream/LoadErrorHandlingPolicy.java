@@ -84,4 +84,25 @@ public interface LoadErrorHandlingPolicy {
    * @see Loader#startLoading(Loadable, Callback, int)
    */
   int getMinimumLoadableRetryCount(int dataType);
+
+  /**
+   * Returns the number of milliseconds to wait for a load to receive a response before issuing a
+   * duplicate (hedged) request for the same data, or {@link C#TIME_UNSET} if the load should not be
+   * hedged. Whichever request responds first is used, and the other is abandoned.
+   *
+   * <p>{@link Loader} clients that don't support hedging ignore this method. The default
+   * implementation returns {@link C#TIME_UNSET}.
+   *
+   * @param dataType One of the {@link C C.DATA_TYPE_*} constants indicating the type of data to
+   *     load.
+   * @param expectedLength The expected length of the data in bytes, or {@link C#LENGTH_UNSET} if
+   *     unknown.
+   * @param bufferedDurationUs The duration of media that's buffered ahead of the playback position
+   *     when the load starts, in microseconds.
+   * @return The number of milliseconds to wait before hedging the load, or {@link C#TIME_UNSET} if
+   *     the load should not be hedged.
+   */
+  default long getHedgeDelayMsFor(int dataType, long expectedLength, long bufferedDurationUs) {
+    return C.TIME_UNSET;
+  }
 }
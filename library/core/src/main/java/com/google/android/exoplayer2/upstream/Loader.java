@@ -31,7 +31,13 @@ import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Manages the background loading of {@link Loadable}s.
@@ -188,16 +194,78 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  /**
+   * The time for which an idle thread of an executor service created by {@link
+   * #createSharedExecutorService(String, int)} is kept alive, in milliseconds.
+   */
+  public static final long SHARED_THREAD_KEEP_ALIVE_MS = 10_000;
+
+  @Nullable private final ExecutorService ownedExecutorService;
+  private final Executor downloadExecutor;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
 
   /**
+   * Creates a loader that loads on its own thread, which is terminated when the loader is released.
+   *
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this(threadName, /* sharedExecutorService= */ null);
+  }
+
+  /**
+   * Creates a loader that loads either on its own thread or on the threads of an {@link
+   * ExecutorService} shared with other loaders, such as one created by {@link
+   * #createSharedExecutorService(String, int)}.
+   *
+   * <p>When an executor service is shared, the loads of the loader and its {@link ReleaseCallback}
+   * are still run one at a time and in order, so the {@link ReleaseCallback} is not called until
+   * any canceled load has returned. The executor service is not shut down when the loader is
+   * released.
+   *
+   * <p>A load occupies one of the executor service's threads until it completes or is canceled.
+   * Loads that are started when all threads are occupied wait in the executor service's queue, so
+   * it should have at least as many threads as there are loads that need to run at the same time.
+   * Loadables that may block indefinitely, for example while waiting for buffer space, should use a
+   * loader with its own thread.
+   *
+   * @param threadName A name for the loader's thread, if it has its own.
+   * @param sharedExecutorService The {@link ExecutorService} on which to load, or null if the
+   *     loader should load on its own thread.
+   */
+  public Loader(String threadName, @Nullable ExecutorService sharedExecutorService) {
+    if (sharedExecutorService != null) {
+      ownedExecutorService = null;
+      downloadExecutor = new SerialExecutor(sharedExecutorService);
+    } else {
+      ownedExecutorService = Util.newSingleThreadExecutor(threadName);
+      downloadExecutor = ownedExecutorService;
+    }
+  }
+
+  /**
+   * Creates an {@link ExecutorService} suitable for sharing between loaders created with {@link
+   * #Loader(String, ExecutorService)}. Threads are created as loads are started, up to {@code
+   * maxThreadCount}, and are terminated after being idle for {@link #SHARED_THREAD_KEEP_ALIVE_MS}.
+   *
+   * @param threadName A name for the executor service's threads.
+   * @param maxThreadCount The maximum number of threads, and hence of loads that run at once.
+   * @return The {@link ExecutorService}.
+   */
+  public static ExecutorService createSharedExecutorService(String threadName, int maxThreadCount) {
+    Assertions.checkArgument(maxThreadCount > 0);
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize= */ maxThreadCount,
+            maxThreadCount,
+            SHARED_THREAD_KEEP_ALIVE_MS,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> new Thread(runnable, threadName));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
   }
 
   /**
@@ -279,9 +347,11 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
+    }
+    if (ownedExecutorService != null) {
+      ownedExecutorService.shutdown();
     }
-    downloadExecutorService.shutdown();
   }
 
   // LoaderErrorThrower implementation.
@@ -323,7 +393,7 @@ public final class Loader implements LoaderErrorThrower {
     @Nullable private IOException currentError;
     private int errorCount;
 
-    @Nullable private volatile Thread executorThread;
+    @Nullable private Thread executorThread;
     private volatile boolean canceled;
     private volatile boolean released;
 
@@ -363,9 +433,10 @@ public final class Loader implements LoaderErrorThrower {
       } else {
         canceled = true;
         loadable.cancelLoad();
-        Thread executorThread = this.executorThread;
-        if (executorThread != null) {
-          executorThread.interrupt();
+        synchronized (this) {
+          if (executorThread != null) {
+            executorThread.interrupt();
+          }
         }
       }
       if (released) {
@@ -384,7 +455,9 @@ public final class Loader implements LoaderErrorThrower {
     @Override
     public void run() {
       try {
-        executorThread = Thread.currentThread();
+        synchronized (this) {
+          executorThread = Thread.currentThread();
+        }
         if (!canceled) {
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
           try {
@@ -429,6 +502,13 @@ public final class Loader implements LoaderErrorThrower {
           obtainMessage(MSG_FATAL_ERROR, e).sendToTarget();
         }
         throw e;
+      } finally {
+        // The thread may go on to run the loads of other loaders, which must not be interrupted if
+        // this load is canceled.
+        synchronized (this) {
+          executorThread = null;
+          Thread.interrupted();
+        }
       }
     }
 
@@ -490,7 +570,7 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
@@ -518,4 +598,50 @@ public final class Loader implements LoaderErrorThrower {
 
   }
 
+  /**
+   * Runs tasks one at a time and in order on an {@link Executor} that may run other tasks
+   * concurrently.
+   */
+  private static final class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks;
+
+    @Nullable private Runnable activeTask;
+
+    public SerialExecutor(Executor executor) {
+      this.executor = executor;
+      tasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      tasks.add(
+          () -> {
+            try {
+              task.run();
+            } finally {
+              scheduleNext();
+            }
+          });
+      if (activeTask == null) {
+        scheduleNext();
+      }
+    }
+
+    private synchronized void scheduleNext() {
+      activeTask = tasks.poll();
+      if (activeTask != null) {
+        try {
+          executor.execute(activeTask);
+        } catch (RejectedExecutionException e) {
+          // Allow later tasks to be scheduled if the executor accepts them again.
+          activeTask = null;
+          throw e;
+        }
+      }
+    }
+
+  }
+
 }
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * A {@link DataSource} that splits a request into byte ranges, which are fetched concurrently over
+ * several connections and returned in order.
+ *
+ * <p>The request is first opened on a single connection. If the response has a known length and
+ * the server advertises support for byte ranges, the first range is read from that connection and
+ * subsequent ranges are fetched by additional {@link DataSource DataSources}, each holding up to
+ * one range in memory. Otherwise, the data is read from the single connection.
+ *
+ * <p>Ranges that are being fetched or waiting to be read are held in {@link Allocation Allocations}
+ * of an {@link Allocator}. Passing the player's allocator counts this memory, up to {@code
+ * connectionCount * rangeLength} bytes, towards the player's buffer.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /** The default length of each range, in bytes. */
+  public static final int DEFAULT_RANGE_LENGTH = 1024 * 1024;
+
+  private static final String THREAD_NAME = "ExoPlayer:ParallelRangeDataSource";
+
+  @Nullable private static ExecutorService sharedExecutorService;
+
+  private final DataSource.Factory upstreamFactory;
+  private final DataSource primaryDataSource;
+  private final int connectionCount;
+  private final int rangeLength;
+  private final Allocator allocator;
+  private final boolean ownsAllocator;
+  private final ExecutorService executorService;
+  private final List<TransferListener> transferListeners;
+  private final ArrayDeque<PendingRange> pendingRanges;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Uri uri;
+  private Map<String, List<String>> responseHeaders;
+  private boolean primaryOpened;
+  private boolean loadingRanges;
+  private long length;
+  private long primaryBytesRemaining;
+  private long nextRangeOffset;
+  @Nullable private Allocation[] currentRange;
+  private int currentRangeLength;
+  private int currentRangePosition;
+
+  /**
+   * Creates an instance that uses ranges of {@link #DEFAULT_RANGE_LENGTH} bytes.
+   *
+   * @param upstreamFactory A factory for the {@link DataSource DataSources} used to fetch data.
+   * @param connectionCount The maximum number of connections to use concurrently.
+   */
+  public ParallelRangeDataSource(DataSource.Factory upstreamFactory, int connectionCount) {
+    this(upstreamFactory, connectionCount, DEFAULT_RANGE_LENGTH);
+  }
+
+  /**
+   * Creates an instance that holds ranges in memory of its own, and fetches them on threads shared
+   * by all instances.
+   *
+   * @param upstreamFactory A factory for the {@link DataSource DataSources} used to fetch data.
+   * @param connectionCount The maximum number of connections to use concurrently.
+   * @param rangeLength The length of each range, in bytes.
+   */
+  public ParallelRangeDataSource(
+      DataSource.Factory upstreamFactory, int connectionCount, int rangeLength) {
+    this(
+        upstreamFactory,
+        connectionCount,
+        rangeLength,
+        /* allocator= */ null,
+        /* executorService= */ null);
+  }
+
+  /**
+   * @param upstreamFactory A factory for the {@link DataSource DataSources} used to fetch data.
+   * @param connectionCount The maximum number of connections to use concurrently.
+   * @param rangeLength The length of each range, in bytes.
+   * @param allocator The {@link Allocator} from which memory for ranges is obtained, or null to
+   *     use memory of the data source's own.
+   * @param executorService The {@link ExecutorService} on which ranges are fetched, or null to use
+   *     threads shared by all instances. Must be able to run {@code connectionCount} tasks
+   *     concurrently. It isn't shut down by the data source.
+   */
+  public ParallelRangeDataSource(
+      DataSource.Factory upstreamFactory,
+      int connectionCount,
+      int rangeLength,
+      @Nullable Allocator allocator,
+      @Nullable ExecutorService executorService) {
+    Assertions.checkArgument(connectionCount > 0);
+    Assertions.checkArgument(rangeLength > 0);
+    this.upstreamFactory = upstreamFactory;
+    this.connectionCount = connectionCount;
+    this.rangeLength = rangeLength;
+    ownsAllocator = allocator == null;
+    this.allocator =
+        allocator != null ? allocator : new DefaultAllocator(/* trimOnReset= */ true, rangeLength);
+    this.executorService = executorService != null ? executorService : getSharedExecutorService();
+    primaryDataSource = upstreamFactory.createDataSource();
+    transferListeners = new ArrayList<>();
+    pendingRanges = new ArrayDeque<>();
+    responseHeaders = Collections.emptyMap();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    primaryDataSource.addTransferListener(transferListener);
+    transferListeners.add(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    // The primary data source must be closed even if opening it fails.
+    primaryOpened = true;
+    length = primaryDataSource.open(dataSpec);
+    uri = primaryDataSource.getUri();
+    responseHeaders = primaryDataSource.getResponseHeaders();
+    loadingRanges =
+        connectionCount > 1
+            && length != C.LENGTH_UNSET
+            && length > rangeLength
+            && supportsByteRanges(responseHeaders);
+    if (loadingRanges) {
+      primaryBytesRemaining = rangeLength;
+      nextRangeOffset = rangeLength;
+      // One connection is still in use by the primary data source.
+      maybeLoadRanges(connectionCount - 1);
+    }
+    return length;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (!loadingRanges) {
+      return primaryDataSource.read(buffer, offset, readLength);
+    } else if (readLength == 0) {
+      return 0;
+    }
+    if (primaryBytesRemaining > 0) {
+      int bytesRead =
+          primaryDataSource.read(buffer, offset, (int) Math.min(readLength, primaryBytesRemaining));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      primaryBytesRemaining -= bytesRead;
+      if (primaryBytesRemaining == 0) {
+        // The rest of the data is fetched in ranges, so the primary connection can be dropped.
+        primaryOpened = false;
+        primaryDataSource.close();
+        maybeLoadRanges(connectionCount);
+      }
+      return bytesRead;
+    }
+    if (currentRange == null || currentRangePosition == currentRangeLength) {
+      releaseCurrentRange();
+      if (pendingRanges.isEmpty()) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      PendingRange pendingRange = pendingRanges.remove();
+      currentRange = pendingRange.take();
+      currentRangeLength = (int) pendingRange.dataSpec.length;
+      currentRangePosition = 0;
+      maybeLoadRanges(connectionCount);
+    }
+    int allocationLength = allocator.getIndividualAllocationLength();
+    Allocation allocation = currentRange[currentRangePosition / allocationLength];
+    int allocationPosition = currentRangePosition % allocationLength;
+    int bytesToRead =
+        Math.min(
+            readLength,
+            Math.min(
+                allocationLength - allocationPosition,
+                currentRangeLength - currentRangePosition));
+    if (!allocation.isDirect()) {
+      System.arraycopy(
+          allocation.data, allocation.offset + allocationPosition, buffer, offset, bytesToRead);
+    } else {
+      ByteBuffer allocationBuffer =
+          Assertions.checkNotNull(allocation.getDirectBuffer()).duplicate();
+      allocationBuffer.position(allocation.offset + allocationPosition);
+      allocationBuffer.get(buffer, offset, bytesToRead);
+    }
+    currentRangePosition += bytesToRead;
+    return bytesToRead;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return uri;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataSpec = null;
+    uri = null;
+    responseHeaders = Collections.emptyMap();
+    loadingRanges = false;
+    releaseCurrentRange();
+    for (PendingRange pendingRange : pendingRanges) {
+      pendingRange.cancel();
+    }
+    pendingRanges.clear();
+    if (ownsAllocator) {
+      allocator.trim();
+    }
+    if (primaryOpened) {
+      primaryOpened = false;
+      primaryDataSource.close();
+    }
+  }
+
+  private void maybeLoadRanges(int maxPendingRangeCount) {
+    DataSpec dataSpec = Assertions.checkNotNull(this.dataSpec);
+    while (pendingRanges.size() < maxPendingRangeCount && nextRangeOffset < length) {
+      DataSpec rangeDataSpec =
+          dataSpec.subrange(nextRangeOffset, Math.min(rangeLength, length - nextRangeOffset));
+      PendingRange pendingRange = new PendingRange(rangeDataSpec);
+      pendingRange.future = executorService.submit(pendingRange);
+      pendingRanges.add(pendingRange);
+      nextRangeOffset += rangeDataSpec.length;
+    }
+  }
+
+  private void releaseCurrentRange() {
+    if (currentRange != null) {
+      allocator.release(currentRange);
+      currentRange = null;
+    }
+  }
+
+  /**
+   * Returns the executor on which ranges are fetched if no executor is set, which is shared by all
+   * instances. Its threads are terminated when idle, so the executor never needs to be shut down.
+   */
+  private static synchronized ExecutorService getSharedExecutorService() {
+    if (sharedExecutorService == null) {
+      sharedExecutorService =
+          Executors.newCachedThreadPool(runnable -> new Thread(runnable, THREAD_NAME));
+    }
+    return sharedExecutorService;
+  }
+
+  /**
+   * Returns whether response headers indicate that the server supports byte range requests, and
+   * that the response body can be split into ranges.
+   */
+  private static boolean supportsByteRanges(Map<String, List<String>> responseHeaders) {
+    boolean supportsByteRanges = false;
+    for (Map.Entry<String, List<String>> header : responseHeaders.entrySet()) {
+      @Nullable String name = header.getKey();
+      if (name == null) {
+        // The status line.
+        continue;
+      }
+      for (String value : header.getValue()) {
+        if ("Accept-Ranges".equalsIgnoreCase(name) && "bytes".equalsIgnoreCase(value.trim())) {
+          supportsByteRanges = true;
+        } else if ("Content-Range".equalsIgnoreCase(name)) {
+          supportsByteRanges = true;
+        } else if ("Content-Encoding".equalsIgnoreCase(name)
+            && !"identity".equalsIgnoreCase(value.trim())) {
+          // Ranges of an encoded response can't be reassembled into the decoded body.
+          return false;
+        } else if ("icy-metaint".equalsIgnoreCase(name)) {
+          // Interleaved stream metadata has to be read from a single stream.
+          return false;
+        }
+      }
+    }
+    return supportsByteRanges;
+  }
+
+  /** A range that is being fetched, or that has been fetched and is waiting to be read. */
+  private final class PendingRange implements Callable<Allocation[]> {
+
+    public final DataSpec dataSpec;
+
+    @MonotonicNonNull public Future<Allocation[]> future;
+
+    // Accessed on the loading thread and the thread reading from the data source.
+    @Nullable private Allocation[] allocations;
+    private boolean canceled;
+
+    public PendingRange(DataSpec dataSpec) {
+      this.dataSpec = dataSpec;
+    }
+
+    /** Waits for the range to be fetched, and returns the allocations holding its data. */
+    public Allocation[] take() throws IOException {
+      Allocation[] allocations;
+      try {
+        allocations = Assertions.checkNotNull(future).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        cancel();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+      }
+      synchronized (this) {
+        this.allocations = null;
+      }
+      return allocations;
+    }
+
+    /** Cancels fetching the range, and releases any allocations holding its data. */
+    public void cancel() {
+      Assertions.checkNotNull(future).cancel(/* mayInterruptIfRunning= */ true);
+      synchronized (this) {
+        canceled = true;
+        if (allocations != null) {
+          allocator.release(allocations);
+          allocations = null;
+        }
+      }
+    }
+
+    @Override
+    public Allocation[] call() throws IOException {
+      DataSource dataSource = upstreamFactory.createDataSource();
+      for (int i = 0; i < transferListeners.size(); i++) {
+        dataSource.addTransferListener(transferListeners.get(i));
+      }
+      int allocationLength = allocator.getIndividualAllocationLength();
+      int length = (int) dataSpec.length;
+      Allocation[] allocations = new Allocation[Util.ceilDivide(length, allocationLength)];
+      int allocationCount = 0;
+      try {
+        dataSource.open(dataSpec);
+        @Nullable byte[] scratch = null;
+        for (int position = 0; position < length; position += allocationLength) {
+          Allocation allocation = allocator.allocate();
+          allocations[allocationCount++] = allocation;
+          int bytesToRead = Math.min(allocationLength, length - position);
+          if (!allocation.isDirect()) {
+            readFully(dataSource, allocation.data, allocation.offset, bytesToRead);
+          } else {
+            if (scratch == null) {
+              scratch = new byte[allocationLength];
+            }
+            readFully(dataSource, scratch, /* offset= */ 0, bytesToRead);
+            ByteBuffer allocationBuffer =
+                Assertions.checkNotNull(allocation.getDirectBuffer()).duplicate();
+            allocationBuffer.position(allocation.offset);
+            allocationBuffer.put(scratch, /* offset= */ 0, bytesToRead);
+          }
+        }
+        synchronized (this) {
+          if (!canceled) {
+            this.allocations = allocations;
+            allocationCount = 0;
+            return allocations;
+          }
+        }
+        throw new InterruptedIOException();
+      } finally {
+        Util.closeQuietly(dataSource);
+        if (allocationCount > 0) {
+          allocator.release(Arrays.copyOf(allocations, allocationCount));
+        }
+      }
+    }
+
+    private void readFully(DataSource dataSource, byte[] target, int offset, int length)
+        throws IOException {
+      int position = 0;
+      while (position < length) {
+        int bytesRead = dataSource.read(target, offset + position, length - position);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          throw new EOFException();
+        }
+        position += bytesRead;
+      }
+    }
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A memory budget shared by the allocators of several players.
+ *
+ * <p>Each player obtains its own {@link BudgetedAllocator} by calling {@link #register(int)}, and
+ * passes it to {@link DefaultLoadControl.Builder#setAllocator(TargetBufferAllocator)}. All
+ * registered allocators draw {@link Allocation}s from a single pool, and the total budget is split
+ * between them according to their priorities, using the same convention as {@link
+ * PriorityTaskManager} (larger values indicate higher priorities, for example {@link
+ * C#PRIORITY_PLAYBACK}):
+ *
+ * <ul>
+ *   <li>Every allocator is first given a minimum share, so that players of low priority keep
+ *       buffering slowly rather than stalling indefinitely. The minimum share is capped at the
+ *       allocator's target buffer size, and reduced if the budget can't cover the minimum share of
+ *       every allocator.
+ *   <li>The rest of the budget is given out in decreasing order of priority. Each allocator's
+ *       share is capped at its target buffer size, and any remaining budget is passed on to
+ *       allocators of lower priority.
+ *   <li>Allocators of equal priority split the budget available to them evenly. Budget not needed
+ *       by allocators with smaller targets is redistributed to the others.
+ * </ul>
+ *
+ * <p>An allocator's share is reported by {@link BudgetedAllocator#getAllocationLimitBytes()}, which
+ * {@link DefaultLoadControl} respects when deciding whether to continue loading.
+ */
+public final class SharedMemoryBudget {
+
+  /** The default minimum share of each allocator, in number of {@link Allocation}s. */
+  public static final int DEFAULT_MIN_SHARE_ALLOCATIONS = 4;
+
+  /** An allocator whose memory use is bounded by its share of a {@link SharedMemoryBudget}. */
+  public final class BudgetedAllocator implements TargetBufferAllocator {
+
+    private final int priority;
+    private final boolean trimOnReset;
+    private final AtomicInteger allocatedCount;
+
+    // Guarded by the lock of the enclosing SharedMemoryBudget.
+    private int targetBufferSize;
+
+    private volatile int allocationLimitBytes;
+
+    private BudgetedAllocator(int priority, boolean trimOnReset) {
+      this.priority = priority;
+      this.trimOnReset = trimOnReset;
+      allocatedCount = new AtomicInteger();
+    }
+
+    /** Returns the priority with which the allocator was registered. */
+    public int getPriority() {
+      return priority;
+    }
+
+    /** Returns the {@link SharedMemoryBudget} with which the allocator is registered. */
+    public SharedMemoryBudget getBudget() {
+      return SharedMemoryBudget.this;
+    }
+
+    @Override
+    public void reset() {
+      if (trimOnReset) {
+        setTargetBufferSize(0);
+      }
+    }
+
+    @Override
+    public void setTargetBufferSize(int targetBufferSize) {
+      onTargetBufferSizeChanged(this, targetBufferSize);
+    }
+
+    @Override
+    public int getAllocationLimitBytes() {
+      return allocationLimitBytes;
+    }
+
+    @Override
+    public Allocation allocate() {
+      allocatedCount.incrementAndGet();
+      return pool.allocate();
+    }
+
+    @Override
+    public void release(Allocation allocation) {
+      pool.release(allocation);
+      allocatedCount.decrementAndGet();
+    }
+
+    @Override
+    public void release(Allocation[] allocations) {
+      pool.release(allocations);
+      allocatedCount.addAndGet(-allocations.length);
+    }
+
+    @Override
+    public void trim() {
+      pool.trim();
+    }
+
+    @Override
+    public int getTotalBytesAllocated() {
+      return allocatedCount.get() * individualAllocationSize;
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return individualAllocationSize;
+    }
+  }
+
+  private final int totalBudgetBytes;
+  private final int individualAllocationSize;
+  private final int minShareBytes;
+  private final StripedAllocator pool;
+
+  // Guarded by this.
+  private final List<BudgetedAllocator> allocators;
+
+  /**
+   * Constructs an instance in which each allocator has a minimum share of {@link
+   * #DEFAULT_MIN_SHARE_ALLOCATIONS} allocations.
+   *
+   * @param totalBudgetBytes The maximum number of bytes that all registered allocators together
+   *     should hold.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public SharedMemoryBudget(int totalBudgetBytes, int individualAllocationSize) {
+    this(
+        totalBudgetBytes,
+        individualAllocationSize,
+        /* minShareBytes= */ DEFAULT_MIN_SHARE_ALLOCATIONS * individualAllocationSize);
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param totalBudgetBytes The maximum number of bytes that all registered allocators together
+   *     should hold.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param minShareBytes The share reserved for each allocator regardless of its priority, in
+   *     bytes. Should be at least {@code individualAllocationSize}, so that every allocator can
+   *     continue loading.
+   */
+  public SharedMemoryBudget(int totalBudgetBytes, int individualAllocationSize, int minShareBytes) {
+    Assertions.checkArgument(totalBudgetBytes > 0 && minShareBytes >= 0);
+    this.totalBudgetBytes = totalBudgetBytes;
+    this.individualAllocationSize = individualAllocationSize;
+    this.minShareBytes = minShareBytes;
+    pool = new StripedAllocator(/* trimOnReset= */ false, individualAllocationSize);
+    allocators = new ArrayList<>();
+  }
+
+  /**
+   * Registers a new allocator with the budget. Equivalent to {@code register(priority, true)}.
+   *
+   * @param priority The priority of the allocator. Larger values indicate higher priorities.
+   * @return The registered {@link BudgetedAllocator}.
+   */
+  public BudgetedAllocator register(int priority) {
+    return register(priority, /* trimOnReset= */ true);
+  }
+
+  /**
+   * Registers a new allocator with the budget.
+   *
+   * @param priority The priority of the allocator. Larger values indicate higher priorities.
+   * @param trimOnReset Whether the allocator gives up its share of the budget when it's reset.
+   * @return The registered {@link BudgetedAllocator}.
+   */
+  public synchronized BudgetedAllocator register(int priority, boolean trimOnReset) {
+    BudgetedAllocator allocator = new BudgetedAllocator(priority, trimOnReset);
+    allocators.add(allocator);
+    updateShares();
+    return allocator;
+  }
+
+  /**
+   * Unregisters an allocator, making its share of the budget available to the remaining
+   * allocators. The allocator must not hold any allocations.
+   *
+   * @param allocator The allocator to unregister.
+   */
+  public synchronized void unregister(BudgetedAllocator allocator) {
+    Assertions.checkState(allocator.getTotalBytesAllocated() == 0);
+    if (allocators.remove(allocator)) {
+      updateShares();
+    }
+  }
+
+  /** Returns the maximum number of bytes that all registered allocators together should hold. */
+  public int getTotalBudgetBytes() {
+    return totalBudgetBytes;
+  }
+
+  /** Returns the number of bytes currently allocated by all registered allocators. */
+  public int getTotalBytesAllocated() {
+    return pool.getTotalBytesAllocated();
+  }
+
+  /** Returns a snapshot of the currently registered allocators, for example to report metrics. */
+  public synchronized List<BudgetedAllocator> getRegisteredAllocators() {
+    return Collections.unmodifiableList(new ArrayList<>(allocators));
+  }
+
+  private synchronized void onTargetBufferSizeChanged(
+      BudgetedAllocator allocator, int targetBufferSize) {
+    allocator.targetBufferSize = targetBufferSize;
+    updateShares();
+  }
+
+  // Must be called while holding the lock on this.
+  private void updateShares() {
+    List<BudgetedAllocator> sortedAllocators = new ArrayList<>(allocators);
+    // Sort by decreasing priority, and by increasing target within each priority.
+    Collections.sort(
+        sortedAllocators,
+        (a, b) ->
+            a.priority != b.priority
+                ? Integer.compare(b.priority, a.priority)
+                : Integer.compare(a.targetBufferSize, b.targetBufferSize));
+    int allocatorCount = sortedAllocators.size();
+    int remainingBudget = totalBudgetBytes;
+    if (allocatorCount > 0) {
+      // Reserve the minimum share of every allocator, so that higher priority allocators can't use
+      // the whole budget.
+      int minShare = Math.min(minShareBytes, totalBudgetBytes / allocatorCount);
+      for (int i = 0; i < allocatorCount; i++) {
+        BudgetedAllocator allocator = sortedAllocators.get(i);
+        allocator.allocationLimitBytes = Math.min(allocator.targetBufferSize, minShare);
+        remainingBudget -= allocator.allocationLimitBytes;
+      }
+    }
+    int totalShares = totalBudgetBytes - remainingBudget;
+    int groupStartIndex = 0;
+    while (groupStartIndex < sortedAllocators.size()) {
+      int priority = sortedAllocators.get(groupStartIndex).priority;
+      int groupEndIndex = groupStartIndex;
+      while (groupEndIndex < sortedAllocators.size()
+          && sortedAllocators.get(groupEndIndex).priority == priority) {
+        groupEndIndex++;
+      }
+      // Allocators are sorted by increasing target, so any budget not needed by an allocator is
+      // redistributed to the allocators that follow it in the same group.
+      for (int i = groupStartIndex; i < groupEndIndex; i++) {
+        BudgetedAllocator allocator = sortedAllocators.get(i);
+        int fairShare = remainingBudget / (groupEndIndex - i);
+        int extraShare =
+            Math.min(allocator.targetBufferSize - allocator.allocationLimitBytes, fairShare);
+        allocator.allocationLimitBytes += extraShare;
+        remainingBudget -= extraShare;
+        totalShares += extraShare;
+      }
+      groupStartIndex = groupEndIndex;
+    }
+    // Retain just enough memory in the pool to satisfy the current shares.
+    pool.setTargetBufferSize(totalShares);
+  }
+}
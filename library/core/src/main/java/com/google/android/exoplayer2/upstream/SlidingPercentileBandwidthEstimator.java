@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.util.SlidingPercentile;
+
+/**
+ * A {@link BandwidthEstimator} that returns a percentile of the throughput samples in a sliding
+ * window. Each sample is weighted by the square root of the number of bytes transferred.
+ */
+public final class SlidingPercentileBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default maximum weight of the sliding window. */
+  public static final int DEFAULT_MAX_WEIGHT = 2000;
+  /** The default percentile. */
+  public static final float DEFAULT_PERCENTILE = 0.5f;
+
+  private final SlidingPercentile slidingPercentile;
+  private final float percentile;
+
+  /** Creates an instance that returns the median over a window of the default weight. */
+  public SlidingPercentileBandwidthEstimator() {
+    this(DEFAULT_MAX_WEIGHT, DEFAULT_PERCENTILE);
+  }
+
+  /**
+   * @param maxWeight The maximum weight of the sliding window.
+   * @param percentile The percentile of the samples to return, in the range [0, 1].
+   */
+  public SlidingPercentileBandwidthEstimator(int maxWeight, float percentile) {
+    slidingPercentile = new SlidingPercentile(maxWeight);
+    this.percentile = percentile;
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs) {
+    float bitsPerSecond = (bytesTransferred * 8000f) / elapsedTimeMs;
+    slidingPercentile.addSample((int) Math.sqrt(bytesTransferred), bitsPerSecond);
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    return (long) slidingPercentile.getPercentile(percentile);
+  }
+
+  @Override
+  public void reset() {
+    slidingPercentile.reset();
+  }
+}
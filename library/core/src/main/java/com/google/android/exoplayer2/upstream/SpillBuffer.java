@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A fixed capacity ring buffer backed by a memory-mapped file, used to hold media data that has
+ * been moved out of memory.
+ *
+ * <p>Data is addressed by absolute position. The byte at absolute position {@code p} is stored at
+ * offset {@code p % capacity} of the file, so at most {@link #getCapacity()} contiguous bytes can
+ * be held at any one time. Callers are responsible for not overwriting data that's still needed.
+ *
+ * <p>The file is created lazily on the first write, and deleted by {@link #release()}. Instances
+ * are not thread safe.
+ */
+public final class SpillBuffer {
+
+  private final File directory;
+  private final int capacity;
+
+  @Nullable private RandomAccessFile randomAccessFile;
+  @Nullable private File file;
+  @Nullable private MappedByteBuffer mappedBuffer;
+
+  /**
+   * @param directory The directory in which to create the backing file.
+   * @param capacity The capacity of the buffer in bytes.
+   */
+  public SpillBuffer(File directory, int capacity) {
+    Assertions.checkArgument(capacity > 0);
+    this.directory = directory;
+    this.capacity = capacity;
+  }
+
+  /** Returns the capacity of the buffer in bytes. */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Writes data to the buffer.
+   *
+   * @param absolutePosition The absolute position at which to write the data.
+   * @param source The array containing the data.
+   * @param offset The offset of the data in {@code source}.
+   * @param length The number of bytes to write. Must not exceed the capacity of the buffer.
+   * @throws IOException If the backing file could not be created.
+   */
+  public void write(long absolutePosition, byte[] source, int offset, int length)
+      throws IOException {
+    Assertions.checkArgument(length <= capacity);
+    MappedByteBuffer buffer = getMappedBuffer();
+    int fileOffset = getFileOffset(absolutePosition);
+    int bytesBeforeWrap = Math.min(length, capacity - fileOffset);
+    buffer.position(fileOffset);
+    buffer.put(source, offset, bytesBeforeWrap);
+    if (bytesBeforeWrap < length) {
+      buffer.position(0);
+      buffer.put(source, offset + bytesBeforeWrap, length - bytesBeforeWrap);
+    }
+  }
+
+  /**
+   * Writes data to the buffer.
+   *
+   * @param absolutePosition The absolute position at which to write the data.
+   * @param source The buffer containing the data, from its position to its limit. Its position is
+   *     advanced to its limit.
+   * @throws IOException If the backing file could not be created.
+   */
+  public void write(long absolutePosition, ByteBuffer source) throws IOException {
+    int length = source.remaining();
+    Assertions.checkArgument(length <= capacity);
+    MappedByteBuffer buffer = getMappedBuffer();
+    int fileOffset = getFileOffset(absolutePosition);
+    int bytesBeforeWrap = Math.min(length, capacity - fileOffset);
+    int sourceLimit = source.limit();
+    source.limit(source.position() + bytesBeforeWrap);
+    buffer.position(fileOffset);
+    buffer.put(source);
+    source.limit(sourceLimit);
+    if (bytesBeforeWrap < length) {
+      buffer.position(0);
+      buffer.put(source);
+    }
+  }
+
+  /**
+   * Reads data from the buffer.
+   *
+   * @param absolutePosition The absolute position from which to read.
+   * @param target The array into which data should be written.
+   * @param offset The offset in {@code target} at which to write.
+   * @param length The number of bytes to read.
+   */
+  public void read(long absolutePosition, byte[] target, int offset, int length) {
+    MappedByteBuffer buffer = Assertions.checkStateNotNull(mappedBuffer);
+    int fileOffset = getFileOffset(absolutePosition);
+    int bytesBeforeWrap = Math.min(length, capacity - fileOffset);
+    buffer.position(fileOffset);
+    buffer.get(target, offset, bytesBeforeWrap);
+    if (bytesBeforeWrap < length) {
+      buffer.position(0);
+      buffer.get(target, offset + bytesBeforeWrap, length - bytesBeforeWrap);
+    }
+  }
+
+  /**
+   * Reads data from the buffer.
+   *
+   * @param absolutePosition The absolute position from which to read.
+   * @param target The buffer into which data should be written, at its current position.
+   * @param length The number of bytes to read.
+   */
+  public void read(long absolutePosition, ByteBuffer target, int length) {
+    MappedByteBuffer buffer = Assertions.checkStateNotNull(mappedBuffer);
+    int fileOffset = getFileOffset(absolutePosition);
+    int bytesBeforeWrap = Math.min(length, capacity - fileOffset);
+    buffer.limit(fileOffset + bytesBeforeWrap);
+    buffer.position(fileOffset);
+    target.put(buffer);
+    if (bytesBeforeWrap < length) {
+      buffer.limit(length - bytesBeforeWrap);
+      buffer.position(0);
+      target.put(buffer);
+    }
+    buffer.limit(capacity);
+  }
+
+  /** Deletes the backing file. The buffer must not be used after it's been released. */
+  public void release() {
+    mappedBuffer = null;
+    Util.closeQuietly(randomAccessFile);
+    randomAccessFile = null;
+    if (file != null) {
+      file.delete();
+      file = null;
+    }
+  }
+
+  private MappedByteBuffer getMappedBuffer() throws IOException {
+    if (mappedBuffer == null) {
+      try {
+        File file = File.createTempFile("exo-spill", /* suffix= */ null, directory);
+        this.file = file;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        this.randomAccessFile = randomAccessFile;
+        randomAccessFile.setLength(capacity);
+        mappedBuffer =
+            randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+      } catch (IOException e) {
+        release();
+        throw e;
+      }
+    }
+    return mappedBuffer;
+  }
+
+  private int getFileOffset(long absolutePosition) {
+    return (int) (absolutePosition % capacity);
+  }
+}
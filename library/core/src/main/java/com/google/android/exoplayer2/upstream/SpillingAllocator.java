@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.File;
+
+/**
+ * A {@link TargetBufferAllocator} that additionally allows {@link SampleQueue}s to move their back
+ * buffer out of memory and into {@link SpillBuffer}s.
+ *
+ * <p>A sample queue created with this allocator keeps the most recently read {@link
+ * #getHotWindowBytes()} of sample data in memory. Older data that has been read, but that's still
+ * retained as back buffer (see {@link DefaultLoadControl.Builder#setBackBuffer(int, boolean)}), is
+ * written to a memory-mapped file of {@link #getSpillBufferCapacity()} bytes, and its {@link
+ * Allocation}s are released. Seeking back into spilled data reads it from the file.
+ */
+public final class SpillingAllocator implements TargetBufferAllocator {
+
+  private final TargetBufferAllocator allocator;
+  private final File directory;
+  private final int spillBufferCapacity;
+  private final int hotWindowBytes;
+
+  /**
+   * @param allocator The allocator from which {@link Allocation}s are obtained.
+   * @param directory The directory in which spill files are created.
+   * @param spillBufferCapacity The maximum number of bytes that each sample queue can spill.
+   * @param hotWindowBytes The number of bytes behind the read position that each sample queue keeps
+   *     in memory.
+   */
+  public SpillingAllocator(
+      TargetBufferAllocator allocator, File directory, int spillBufferCapacity, int hotWindowBytes) {
+    Assertions.checkArgument(spillBufferCapacity > 0);
+    Assertions.checkArgument(hotWindowBytes >= 0);
+    this.allocator = allocator;
+    this.directory = directory;
+    this.spillBufferCapacity = spillBufferCapacity;
+    this.hotWindowBytes = hotWindowBytes;
+  }
+
+  /** Returns a new {@link SpillBuffer}. The caller is responsible for releasing it. */
+  public SpillBuffer createSpillBuffer() {
+    return new SpillBuffer(directory, spillBufferCapacity);
+  }
+
+  /** Returns the maximum number of bytes that each sample queue can spill. */
+  public int getSpillBufferCapacity() {
+    return spillBufferCapacity;
+  }
+
+  /** Returns the number of bytes behind the read position that sample queues keep in memory. */
+  public int getHotWindowBytes() {
+    return hotWindowBytes;
+  }
+
+  @Override
+  public void reset() {
+    allocator.reset();
+  }
+
+  @Override
+  public void setTargetBufferSize(int targetBufferSize) {
+    allocator.setTargetBufferSize(targetBufferSize);
+  }
+
+  @Override
+  public int getAllocationLimitBytes() {
+    return allocator.getAllocationLimitBytes();
+  }
+
+  @Override
+  public Allocation allocate() {
+    return allocator.allocate();
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    allocator.release(allocation);
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    allocator.release(allocations);
+  }
+
+  @Override
+  public void trim() {
+    allocator.trim();
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocator.getTotalBytesAllocated();
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return allocator.getIndividualAllocationLength();
+  }
+}
@@ -20,6 +20,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -95,6 +96,18 @@ public final class StatsDataSource implements DataSource {
     return bytesRead;
   }
 
+  @Override
+  @Nullable
+  public ByteBuffer mapRemaining() throws IOException {
+    return dataSource.mapRemaining();
+  }
+
+  @Override
+  public void onMappedDataConsumed(int length) {
+    bytesRead += length;
+    dataSource.onMappedDataConsumed(length);
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
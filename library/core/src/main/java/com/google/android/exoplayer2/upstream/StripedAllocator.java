@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link Allocator} for use when many threads allocate and release concurrently, for example
+ * when several players share a single allocator.
+ *
+ * <p>Available {@link Allocation}s are held in a number of independent stripes, and each thread
+ * allocates from and releases to the stripe selected by its thread id. Each stripe is guarded by
+ * its own monitor, so threads mapped to different stripes never contend with each other. The
+ * number of allocated and available allocations are tracked with atomic counters, so {@link
+ * #getTotalBytesAllocated()} never blocks. If a thread's stripe is empty, allocations are taken
+ * from the other stripes before new memory is allocated.
+ */
+public final class StripedAllocator implements TargetBufferAllocator {
+
+  private static final int INITIAL_STRIPE_CAPACITY = 16;
+
+  private final boolean trimOnReset;
+  private final int individualAllocationSize;
+  private final Stripe[] stripes;
+  private final int stripeMask;
+  private final AtomicInteger allocatedCount;
+  private final AtomicInteger availableCount;
+
+  private volatile int targetBufferSize;
+
+  /**
+   * Constructs an instance with one stripe for each available processor.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   */
+  public StripedAllocator(boolean trimOnReset, int individualAllocationSize) {
+    this(trimOnReset, individualAllocationSize, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Constructs an instance.
+   *
+   * @param trimOnReset Whether memory is freed when the allocator is reset. Should be true unless
+   *     the allocator will be re-used by multiple player instances.
+   * @param individualAllocationSize The length of each individual {@link Allocation}.
+   * @param stripeCount The minimum number of stripes. Rounded up to the next power of two.
+   */
+  public StripedAllocator(boolean trimOnReset, int individualAllocationSize, int stripeCount) {
+    Assertions.checkArgument(individualAllocationSize > 0);
+    Assertions.checkArgument(stripeCount > 0);
+    this.trimOnReset = trimOnReset;
+    this.individualAllocationSize = individualAllocationSize;
+    int roundedStripeCount = Integer.highestOneBit(stripeCount);
+    if (roundedStripeCount < stripeCount) {
+      roundedStripeCount <<= 1;
+    }
+    stripes = new Stripe[roundedStripeCount];
+    for (int i = 0; i < roundedStripeCount; i++) {
+      stripes[i] = new Stripe();
+    }
+    stripeMask = roundedStripeCount - 1;
+    allocatedCount = new AtomicInteger();
+    availableCount = new AtomicInteger();
+  }
+
+  @Override
+  public void reset() {
+    if (trimOnReset) {
+      setTargetBufferSize(0);
+    }
+  }
+
+  @Override
+  public void setTargetBufferSize(int targetBufferSize) {
+    boolean targetBufferSizeReduced = targetBufferSize < this.targetBufferSize;
+    this.targetBufferSize = targetBufferSize;
+    if (targetBufferSizeReduced) {
+      trim();
+    }
+  }
+
+  @Override
+  public Allocation allocate() {
+    allocatedCount.incrementAndGet();
+    int homeIndex = getHomeStripeIndex();
+    for (int i = 0; i < stripes.length; i++) {
+      @Nullable Allocation allocation = stripes[(homeIndex + i) & stripeMask].poll();
+      if (allocation != null) {
+        availableCount.decrementAndGet();
+        return allocation;
+      }
+    }
+    return new Allocation(new byte[individualAllocationSize], 0);
+  }
+
+  @Override
+  public void release(Allocation allocation) {
+    stripes[getHomeStripeIndex()].add(allocation);
+    availableCount.incrementAndGet();
+    allocatedCount.decrementAndGet();
+  }
+
+  @Override
+  public void release(Allocation[] allocations) {
+    stripes[getHomeStripeIndex()].addAll(allocations);
+    availableCount.addAndGet(allocations.length);
+    allocatedCount.addAndGet(-allocations.length);
+  }
+
+  @Override
+  public void trim() {
+    int targetAllocationCount = Util.ceilDivide(targetBufferSize, individualAllocationSize);
+    int targetAvailableCount = Math.max(0, targetAllocationCount - allocatedCount.get());
+    int excessCount = availableCount.get() - targetAvailableCount;
+    for (int i = 0; i < stripes.length && excessCount > 0; i++) {
+      int discardedCount = stripes[i].discard(excessCount);
+      availableCount.addAndGet(-discardedCount);
+      excessCount -= discardedCount;
+    }
+  }
+
+  @Override
+  public int getTotalBytesAllocated() {
+    return allocatedCount.get() * individualAllocationSize;
+  }
+
+  @Override
+  public int getIndividualAllocationLength() {
+    return individualAllocationSize;
+  }
+
+  private int getHomeStripeIndex() {
+    long threadId = Thread.currentThread().getId();
+    // Spread the bits of the id, since thread ids are typically small and sequential.
+    int hash = (int) (threadId ^ (threadId >>> 32)) * 0x9E3779B9;
+    return (hash ^ (hash >>> 16)) & stripeMask;
+  }
+
+  /** A stack of available allocations guarded by its own monitor. */
+  private static final class Stripe {
+
+    private Allocation[] allocations;
+    private int size;
+
+    public Stripe() {
+      allocations = new Allocation[INITIAL_STRIPE_CAPACITY];
+    }
+
+    @Nullable
+    public synchronized Allocation poll() {
+      if (size == 0) {
+        return null;
+      }
+      Allocation allocation = allocations[--size];
+      allocations[size] = null;
+      return allocation;
+    }
+
+    public synchronized void add(Allocation allocation) {
+      ensureCapacity(size + 1);
+      allocations[size++] = allocation;
+    }
+
+    public synchronized void addAll(Allocation[] allocations) {
+      ensureCapacity(size + allocations.length);
+      System.arraycopy(allocations, 0, this.allocations, size, allocations.length);
+      size += allocations.length;
+    }
+
+    /**
+     * Discards up to {@code maxCount} allocations from the stripe.
+     *
+     * @param maxCount The maximum number of allocations to discard.
+     * @return The number of allocations discarded.
+     */
+    public synchronized int discard(int maxCount) {
+      int discardCount = Math.min(maxCount, size);
+      Arrays.fill(allocations, size - discardCount, size, null);
+      size -= discardCount;
+      return discardCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > allocations.length) {
+        allocations = Arrays.copyOf(allocations, Math.max(allocations.length * 2, capacity));
+      }
+    }
+  }
+}
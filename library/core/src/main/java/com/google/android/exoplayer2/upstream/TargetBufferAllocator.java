@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+
+/**
+ * An {@link Allocator} whose pool of retained {@link Allocation}s is sized by a target buffer size,
+ * as required by {@link DefaultLoadControl}.
+ */
+public interface TargetBufferAllocator extends Allocator {
+
+  /**
+   * Resets the allocator. Implementations may free retained memory, depending on their
+   * configuration.
+   */
+  void reset();
+
+  /**
+   * Sets the target buffer size in bytes. If the target is reduced, excess {@link Allocation}s are
+   * discarded as if {@link #trim()} had been called.
+   *
+   * @param targetBufferSize The target buffer size in bytes.
+   */
+  void setTargetBufferSize(int targetBufferSize);
+
+  /**
+   * Returns the maximum number of bytes that the allocator's user should hold at any one time, or
+   * {@link C#LENGTH_UNSET} if there is no such limit. The limit may change over time, for example
+   * if the allocator shares a memory budget with other allocators.
+   */
+  default int getAllocationLimitBytes() {
+    return C.LENGTH_UNSET;
+  }
+}
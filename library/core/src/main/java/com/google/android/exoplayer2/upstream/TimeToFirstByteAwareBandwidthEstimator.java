@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+
+/**
+ * A {@link BandwidthEstimator} that estimates latency and throughput separately, and combines them
+ * into the effective bandwidth of a transfer of a reference size.
+ *
+ * <p>Throughput samples exclude the time to first byte, so a throughput estimate alone overstates
+ * the bandwidth available to short transfers on high latency networks. This estimator adds the
+ * estimated time to first byte to the time needed to transfer the reference size at the estimated
+ * throughput. The reference size should be close to the size of a typical media segment.
+ */
+public final class TimeToFirstByteAwareBandwidthEstimator implements BandwidthEstimator {
+
+  /** The default reference transfer size, in bytes. */
+  public static final long DEFAULT_REFERENCE_TRANSFER_BYTES = 512 * 1024;
+  /** The default weight given to each new time to first byte sample. */
+  public static final float DEFAULT_LATENCY_SMOOTHING_FACTOR = 0.25f;
+
+  private final BandwidthEstimator throughputEstimator;
+  private final long referenceTransferBytes;
+  private final float latencySmoothingFactor;
+
+  private long timeToFirstByteEstimateMs;
+
+  /**
+   * Creates an instance that estimates throughput with a {@link
+   * SlidingPercentileBandwidthEstimator}, using default parameters.
+   */
+  public TimeToFirstByteAwareBandwidthEstimator() {
+    this(
+        new SlidingPercentileBandwidthEstimator(),
+        DEFAULT_REFERENCE_TRANSFER_BYTES,
+        DEFAULT_LATENCY_SMOOTHING_FACTOR);
+  }
+
+  /**
+   * @param throughputEstimator The {@link BandwidthEstimator} used to estimate throughput.
+   * @param referenceTransferBytes The size of the transfer whose effective bandwidth is returned,
+   *     in bytes.
+   * @param latencySmoothingFactor The weight given to each new time to first byte sample, in the
+   *     range (0, 1].
+   */
+  public TimeToFirstByteAwareBandwidthEstimator(
+      BandwidthEstimator throughputEstimator,
+      long referenceTransferBytes,
+      float latencySmoothingFactor) {
+    Assertions.checkArgument(referenceTransferBytes > 0);
+    Assertions.checkArgument(0 < latencySmoothingFactor && latencySmoothingFactor <= 1);
+    this.throughputEstimator = throughputEstimator;
+    this.referenceTransferBytes = referenceTransferBytes;
+    this.latencySmoothingFactor = latencySmoothingFactor;
+    timeToFirstByteEstimateMs = C.TIME_UNSET;
+  }
+
+  /**
+   * Returns the estimated time to first byte in milliseconds, or {@link C#TIME_UNSET} if no time
+   * to first byte samples have been added.
+   */
+  public long getTimeToFirstByteEstimateMs() {
+    return timeToFirstByteEstimateMs;
+  }
+
+  /** Returns the estimated throughput in bits per second, excluding the time to first byte. */
+  public long getThroughputEstimate() {
+    return throughputEstimator.getBandwidthEstimate();
+  }
+
+  @Override
+  public void addSample(long bytesTransferred, long elapsedTimeMs) {
+    throughputEstimator.addSample(bytesTransferred, elapsedTimeMs);
+  }
+
+  @Override
+  public void addTimeToFirstByteSample(long timeToFirstByteMs) {
+    timeToFirstByteEstimateMs =
+        timeToFirstByteEstimateMs == C.TIME_UNSET
+            ? timeToFirstByteMs
+            : (long)
+                (latencySmoothingFactor * timeToFirstByteMs
+                    + (1 - latencySmoothingFactor) * timeToFirstByteEstimateMs);
+  }
+
+  @Override
+  public long getBandwidthEstimate() {
+    long throughputEstimate = throughputEstimator.getBandwidthEstimate();
+    if (timeToFirstByteEstimateMs == C.TIME_UNSET || throughputEstimate <= 0) {
+      return throughputEstimate;
+    }
+    long referenceTransferBits = referenceTransferBytes * C.BITS_PER_BYTE;
+    double transferTimeMs =
+        timeToFirstByteEstimateMs + (referenceTransferBits * 1000d) / throughputEstimate;
+    return (long) ((referenceTransferBits * 1000d) / transferTimeMs);
+  }
+
+  @Override
+  public void reset() {
+    throughputEstimator.reset();
+    timeToFirstByteEstimateMs = C.TIME_UNSET;
+  }
+}
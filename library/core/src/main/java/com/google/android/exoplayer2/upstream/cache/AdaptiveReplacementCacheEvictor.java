@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts cache files using adaptive replacement (ARC).
+ *
+ * <p>Files that haven't been accessed since they were added are kept in a recency list, and files
+ * that have been accessed again in a frequency list, each ordered from least to most recently used.
+ * The evictor remembers the files it recently evicted from each list, and grows the share of the
+ * cache targeted for the recency list when a file evicted from it is added again, or shrinks it
+ * when a file evicted from the frequency list is added again. Files are evicted from the recency
+ * list while it's larger than its target, and from the frequency list otherwise. All sizes are
+ * measured in bytes, and the remembered files of each list are limited to the maximum size of the
+ * cache.
+ *
+ * <p>The lists are only kept in memory, so all files are added to the recency list when the cache
+ * is initialized.
+ */
+public final class AdaptiveReplacementCacheEvictor implements CacheEvictor {
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, CacheSpan> recentSpans;
+  private final LinkedHashMap<String, CacheSpan> frequentSpans;
+  private final LinkedHashMap<String, Long> evictedRecentSpanLengths;
+  private final LinkedHashMap<String, Long> evictedFrequentSpanLengths;
+
+  private long recentSize;
+  private long frequentSize;
+  private long evictedRecentSize;
+  private long evictedFrequentSize;
+  private long targetRecentSize;
+
+  public AdaptiveReplacementCacheEvictor(long maxBytes) {
+    this.maxBytes = maxBytes;
+    recentSpans = new LinkedHashMap<>();
+    frequentSpans = new LinkedHashMap<>();
+    evictedRecentSpanLengths = new LinkedHashMap<>();
+    evictedFrequentSpanLengths = new LinkedHashMap<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    // Accesses are reported as touches.
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    String id = span.getPositionId();
+    Long evictedLength = evictedRecentSpanLengths.get(id);
+    if (evictedLength != null) {
+      // The recency list was too small to keep the span until it was needed again.
+      long delta = span.length * Math.max(1, evictedFrequentSize / evictedRecentSize);
+      targetRecentSize = Math.min(maxBytes, targetRecentSize + delta);
+      evictedRecentSpanLengths.remove(id);
+      evictedRecentSize -= evictedLength;
+      addFrequentSpan(id, span);
+    } else if ((evictedLength = evictedFrequentSpanLengths.get(id)) != null) {
+      // The frequency list was too small to keep the span until it was needed again.
+      long delta = span.length * Math.max(1, evictedRecentSize / evictedFrequentSize);
+      targetRecentSize = Math.max(0, targetRecentSize - delta);
+      evictedFrequentSpanLengths.remove(id);
+      evictedFrequentSize -= evictedLength;
+      addFrequentSpan(id, span);
+    } else {
+      recentSpans.put(id, span);
+      recentSize += span.length;
+    }
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    String id = span.getPositionId();
+    CacheSpan removedSpan = recentSpans.remove(id);
+    if (removedSpan != null) {
+      recentSize -= removedSpan.length;
+    } else if ((removedSpan = frequentSpans.remove(id)) != null) {
+      frequentSize -= removedSpan.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    String id = oldSpan.getPositionId();
+    if (!oldSpan.isAccessedBy(newSpan)) {
+      // The span's data has only been moved, so the span keeps its place in its list.
+      if (recentSpans.containsKey(id)) {
+        recentSpans.put(id, newSpan);
+      } else if (frequentSpans.containsKey(id)) {
+        frequentSpans.put(id, newSpan);
+      }
+      return;
+    }
+    onSpanRemoved(cache, oldSpan);
+    addFrequentSpan(id, newSpan);
+  }
+
+  private void addFrequentSpan(String id, CacheSpan span) {
+    frequentSpans.put(id, span);
+    frequentSize += span.length;
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (recentSize + frequentSize + requiredSpace > maxBytes
+        && (!recentSpans.isEmpty() || !frequentSpans.isEmpty())) {
+      CacheSpan span;
+      if (!recentSpans.isEmpty() && (recentSize > targetRecentSize || frequentSpans.isEmpty())) {
+        span = recentSpans.values().iterator().next();
+        if (evictedRecentSpanLengths.put(span.getPositionId(), span.length) == null) {
+          evictedRecentSize += span.length;
+          evictedRecentSize = trimEvictedSpans(evictedRecentSpanLengths, evictedRecentSize);
+        }
+      } else {
+        span = frequentSpans.values().iterator().next();
+        if (evictedFrequentSpanLengths.put(span.getPositionId(), span.length) == null) {
+          evictedFrequentSize += span.length;
+          evictedFrequentSize = trimEvictedSpans(evictedFrequentSpanLengths, evictedFrequentSize);
+        }
+      }
+      try {
+        cache.removeSpan(span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  /**
+   * Forgets the least recently evicted spans until the remembered spans fit into the maximum size
+   * of the cache.
+   *
+   * @param evictedSpanLengths The lengths of the remembered spans, by span id.
+   * @param evictedSize The total length of the remembered spans.
+   * @return The total length of the remembered spans after trimming.
+   */
+  private long trimEvictedSpans(LinkedHashMap<String, Long> evictedSpanLengths, long evictedSize) {
+    Iterator<Long> iterator = evictedSpanLengths.values().iterator();
+    while (evictedSize > maxBytes && iterator.hasNext()) {
+      evictedSize -= iterator.next();
+      iterator.remove();
+    }
+    return evictedSize;
+  }
+}
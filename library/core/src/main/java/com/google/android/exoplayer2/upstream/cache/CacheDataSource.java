@@ -417,8 +417,9 @@ public final class CacheDataSource implements DataSource {
     } else if (nextSpan.isCached) {
       // Data is cached, read from cache.
       Uri fileUri = Uri.fromFile(nextSpan.file);
-      long filePosition = readPosition - nextSpan.position;
-      long length = nextSpan.length - filePosition;
+      long spanOffset = readPosition - nextSpan.position;
+      long filePosition = nextSpan.fileOffset + spanOffset;
+      long length = nextSpan.length - spanOffset;
       if (bytesRemaining != C.LENGTH_UNSET) {
         length = Math.min(length, bytesRemaining);
       }
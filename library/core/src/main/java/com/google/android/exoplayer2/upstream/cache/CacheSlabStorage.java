@@ -0,0 +1,600 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.google.android.exoplayer2.database.DatabaseIOException;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.VersionTable;
+import com.google.android.exoplayer2.util.Assertions;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * Stores the data of small cache spans in larger slab files, to avoid the cost of creating, listing
+ * and deleting a very large number of small files.
+ *
+ * <p>Spans are appended to the current slab until it's full, after which a new slab is started.
+ * The location of each span is stored in a database table. Removing a span leaves unused data in
+ * its slab. Once less than half of the data of a slab is in use, the slab should be compacted by
+ * moving its remaining spans to the current slab with {@link #move(SimpleCacheSpan, int)}, after
+ * which the slab is deleted.
+ */
+/* package */ final class CacheSlabStorage {
+
+  /** The maximum length of a span that's stored in a slab. */
+  public static final long MAX_PACKED_SPAN_LENGTH = 256 * 1024;
+
+  /** The length beyond which no more spans are appended to a slab. */
+  private static final long MAX_SLAB_LENGTH = 8 * 1024 * 1024;
+  /** Slabs in which a smaller fraction of data is in use are compacted. */
+  private static final float MIN_USED_FRACTION = 0.5f;
+
+  private static final String SLAB_FILE_PREFIX = "slab.";
+  private static final Pattern SLAB_FILE_PATTERN =
+      Pattern.compile("^slab\\.(\\d+)\\" + SimpleCacheSpan.COMMON_SUFFIX + "$");
+
+  private static final String TABLE_PREFIX = DatabaseProvider.TABLE_PREFIX + "CacheSlabSpans";
+  private static final int TABLE_VERSION = 1;
+
+  private static final String COLUMN_SLAB = "slab";
+  private static final String COLUMN_FILE_OFFSET = "file_offset";
+  private static final String COLUMN_ID = "id";
+  private static final String COLUMN_POSITION = "position";
+  private static final String COLUMN_LENGTH = "length";
+  private static final String COLUMN_LAST_TOUCH_TIMESTAMP = "last_touch_timestamp";
+
+  private static final int COLUMN_INDEX_SLAB = 0;
+  private static final int COLUMN_INDEX_FILE_OFFSET = 1;
+  private static final int COLUMN_INDEX_ID = 2;
+  private static final int COLUMN_INDEX_POSITION = 3;
+  private static final int COLUMN_INDEX_LENGTH = 4;
+  private static final int COLUMN_INDEX_LAST_TOUCH_TIMESTAMP = 5;
+
+  private static final String WHERE_SLAB_EQUALS = COLUMN_SLAB + " = ?";
+  private static final String WHERE_SLAB_AND_FILE_OFFSET_EQUALS =
+      COLUMN_SLAB + " = ? AND " + COLUMN_FILE_OFFSET + " = ?";
+
+  private static final String[] COLUMNS =
+      new String[] {
+        COLUMN_SLAB,
+        COLUMN_FILE_OFFSET,
+        COLUMN_ID,
+        COLUMN_POSITION,
+        COLUMN_LENGTH,
+        COLUMN_LAST_TOUCH_TIMESTAMP,
+      };
+  private static final String TABLE_SCHEMA =
+      "("
+          + COLUMN_SLAB
+          + " TEXT NOT NULL,"
+          + COLUMN_FILE_OFFSET
+          + " INTEGER NOT NULL,"
+          + COLUMN_ID
+          + " INTEGER NOT NULL,"
+          + COLUMN_POSITION
+          + " INTEGER NOT NULL,"
+          + COLUMN_LENGTH
+          + " INTEGER NOT NULL,"
+          + COLUMN_LAST_TOUCH_TIMESTAMP
+          + " INTEGER NOT NULL,"
+          + "PRIMARY KEY ("
+          + COLUMN_SLAB
+          + ", "
+          + COLUMN_FILE_OFFSET
+          + "))";
+
+  /** A span stored in a slab. */
+  public static final class Entry {
+
+    /** The id of the content to which the span belongs. */
+    public final int id;
+    /** The position of the span in the original stream. */
+    public final long position;
+
+    private Entry(int id, long position) {
+      this.id = id;
+      this.position = position;
+    }
+  }
+
+  private final File cacheDir;
+  private final DatabaseProvider databaseProvider;
+  private final HashMap<String, Slab> slabs;
+
+  private @MonotonicNonNull String tableName;
+  @Nullable private Slab currentSlab;
+  private int nextSlabNumber;
+
+  /**
+   * Deletes slab data for the specified cache. The slab files are not deleted.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param databaseProvider Provides the database in which the slab index is stored.
+   * @param uid The cache UID.
+   * @throws DatabaseIOException If an error occurs deleting the slab index.
+   */
+  @WorkerThread
+  public static void delete(DatabaseProvider databaseProvider, long uid)
+      throws DatabaseIOException {
+    String hexUid = Long.toHexString(uid);
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        VersionTable.removeVersion(writableDatabase, VersionTable.FEATURE_CACHE_SLABS, hexUid);
+        dropTable(writableDatabase, getTableName(hexUid));
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /** Returns whether the file with the given name is a slab file. */
+  public static boolean isSlabFile(String fileName) {
+    return fileName.startsWith(SLAB_FILE_PREFIX) && SLAB_FILE_PATTERN.matcher(fileName).matches();
+  }
+
+  /** Returns whether a span of the given length should be stored in a slab. */
+  public static boolean canPack(long length) {
+    return length <= MAX_PACKED_SPAN_LENGTH;
+  }
+
+  /**
+   * @param cacheDir The cache directory, in which slab files are stored.
+   * @param databaseProvider Provides the database in which the slab index is stored.
+   */
+  public CacheSlabStorage(File cacheDir, DatabaseProvider databaseProvider) {
+    this.cacheDir = cacheDir;
+    this.databaseProvider = databaseProvider;
+    slabs = new HashMap<>();
+  }
+
+  /**
+   * Initializes the storage for the given cache UID, and returns the spans stored in slabs. Index
+   * entries whose content no longer exists, or whose data is missing, are removed, as are slab
+   * files that are no longer used.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param uid The cache UID.
+   * @param contentIndex The content index, which must have been initialized.
+   * @return The spans stored in slabs.
+   * @throws DatabaseIOException If an error occurs initializing the index.
+   */
+  @WorkerThread
+  public synchronized List<SimpleCacheSpan> initialize(long uid, CachedContentIndex contentIndex)
+      throws DatabaseIOException {
+    initializeTable(uid);
+    ArrayList<SimpleCacheSpan> spans = new ArrayList<>();
+    ArrayList<String[]> invalidEntries = new ArrayList<>();
+    HashMap<String, Long> slabFileLengths = new HashMap<>();
+    try (Cursor cursor = getCursor(/* selection= */ null, /* selectionArgs= */ null)) {
+      while (cursor.moveToNext()) {
+        String slabName = cursor.getString(COLUMN_INDEX_SLAB);
+        long fileOffset = cursor.getLong(COLUMN_INDEX_FILE_OFFSET);
+        long length = cursor.getLong(COLUMN_INDEX_LENGTH);
+        @Nullable String key = contentIndex.getKeyForId(cursor.getInt(COLUMN_INDEX_ID));
+        Long slabFileLength = slabFileLengths.get(slabName);
+        if (slabFileLength == null) {
+          // File.length() returns 0 if the file doesn't exist.
+          slabFileLength = new File(cacheDir, slabName).length();
+          slabFileLengths.put(slabName, slabFileLength);
+        }
+        if (key == null || !isSlabFile(slabName) || fileOffset + length > slabFileLength) {
+          invalidEntries.add(new String[] {slabName, Long.toString(fileOffset)});
+          continue;
+        }
+        Slab slab = getOrAddSlab(new File(cacheDir, slabName));
+        slab.length = slabFileLength;
+        slab.usedLength += length;
+        spans.add(
+            SimpleCacheSpan.createPackedCacheEntry(
+                key,
+                cursor.getLong(COLUMN_INDEX_POSITION),
+                length,
+                cursor.getLong(COLUMN_INDEX_LAST_TOUCH_TIMESTAMP),
+                slab.file,
+                fileOffset));
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    if (!invalidEntries.isEmpty()) {
+      deleteEntries(invalidEntries);
+    }
+
+    // Delete slabs that are no longer used, and continue numbering after the existing slabs. Spans
+    // are never appended to existing slabs, since their last span may not have been fully written.
+    @Nullable File[] files = cacheDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        String fileName = file.getName();
+        Matcher matcher = SLAB_FILE_PATTERN.matcher(fileName);
+        if (!matcher.matches()) {
+          continue;
+        }
+        nextSlabNumber = Math.max(nextSlabNumber, Integer.parseInt(matcher.group(1)) + 1);
+        if (!slabs.containsKey(fileName)) {
+          file.delete();
+        }
+      }
+    }
+    return spans;
+  }
+
+  /**
+   * Deletes the slab files and the slab index for the given cache UID, if the cache previously
+   * stored spans in slabs. Used instead of {@link #initialize(long, CachedContentIndex)} when spans
+   * are no longer stored in slabs, so that existing slabs aren't leaked.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param uid The cache UID.
+   * @param files The files in the cache directory, or null if they couldn't be listed.
+   * @throws DatabaseIOException If an error occurs deleting the slab index.
+   */
+  @WorkerThread
+  public synchronized void deleteSlabs(long uid, @Nullable File[] files)
+      throws DatabaseIOException {
+    int version;
+    try {
+      version =
+          VersionTable.getVersion(
+              databaseProvider.getReadableDatabase(),
+              VersionTable.FEATURE_CACHE_SLABS,
+              Long.toHexString(uid));
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    if (version == VersionTable.VERSION_UNSET) {
+      return;
+    }
+    if (files != null) {
+      for (File file : files) {
+        if (isSlabFile(file.getName())) {
+          file.delete();
+        }
+      }
+    }
+    // The index is deleted last, so that a later call deletes any slab files left by this one.
+    delete(databaseProvider, uid);
+  }
+
+  /**
+   * Moves the data of a span from its own file to the current slab, and deletes the file.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param span The span, whose data is stored in its own file.
+   * @param id The id of the content to which the span belongs.
+   * @return The span with its data stored in a slab.
+   * @throws IOException If an error occurs writing the data or updating the index. The span remains
+   *     stored in its own file.
+   */
+  @WorkerThread
+  public synchronized SimpleCacheSpan add(SimpleCacheSpan span, int id) throws IOException {
+    File file = Assertions.checkNotNull(span.file);
+    SimpleCacheSpan packedSpan = append(span, id, /* previousEntry= */ null);
+    file.delete();
+    return packedSpan;
+  }
+
+  /**
+   * Moves the data of a span from the slab in which it's stored to the current slab.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param span The span, whose data is stored in a slab.
+   * @param id The id of the content to which the span belongs.
+   * @return The span with its data stored in the current slab.
+   * @throws IOException If an error occurs writing the data or updating the index. The span remains
+   *     stored in its previous slab.
+   */
+  @WorkerThread
+  public synchronized SimpleCacheSpan move(SimpleCacheSpan span, int id) throws IOException {
+    File slabFile = Assertions.checkNotNull(span.file);
+    SimpleCacheSpan movedSpan =
+        append(span, id, new String[] {slabFile.getName(), Long.toString(span.fileOffset)});
+    Assertions.checkNotNull(slabs.get(slabFile.getName())).usedLength -= span.length;
+    return movedSpan;
+  }
+
+  /**
+   * Removes a span stored in a slab. The slab is deleted if none of its data is used anymore.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param span The span to remove.
+   * @return Whether the slab in which the span was stored should now be compacted. If {@code true},
+   *     {@link #onCompactionEnded(File)} must be called once the slab has been compacted.
+   * @throws DatabaseIOException If an error occurs removing the span from the index.
+   */
+  @WorkerThread
+  public synchronized boolean remove(SimpleCacheSpan span) throws DatabaseIOException {
+    File slabFile = Assertions.checkNotNull(span.file);
+    ArrayList<String[]> entries = new ArrayList<>();
+    entries.add(new String[] {slabFile.getName(), Long.toString(span.fileOffset)});
+    deleteEntries(entries);
+    @Nullable Slab slab = slabs.get(slabFile.getName());
+    if (slab == null) {
+      return false;
+    }
+    slab.usedLength -= span.length;
+    if (slab == currentSlab || slab.compacting) {
+      return false;
+    }
+    if (slab.usedLength <= 0) {
+      deleteSlab(slab);
+      return false;
+    }
+    if (slab.usedLength < slab.length * MIN_USED_FRACTION) {
+      slab.compacting = true;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the spans stored in a slab.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param slabFile The slab file.
+   * @return The spans stored in the slab.
+   * @throws DatabaseIOException If an error occurs querying the index.
+   */
+  @WorkerThread
+  public synchronized List<Entry> getEntries(File slabFile) throws DatabaseIOException {
+    ArrayList<Entry> entries = new ArrayList<>();
+    try (Cursor cursor = getCursor(WHERE_SLAB_EQUALS, new String[] {slabFile.getName()})) {
+      while (cursor.moveToNext()) {
+        entries.add(
+            new Entry(cursor.getInt(COLUMN_INDEX_ID), cursor.getLong(COLUMN_INDEX_POSITION)));
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    return entries;
+  }
+
+  /**
+   * Called when the compaction of a slab has ended. The slab is deleted if none of its data is used
+   * anymore.
+   *
+   * @param slabFile The slab file.
+   */
+  public synchronized void onCompactionEnded(File slabFile) {
+    @Nullable Slab slab = slabs.get(slabFile.getName());
+    if (slab == null) {
+      return;
+    }
+    slab.compacting = false;
+    if (slab.usedLength <= 0) {
+      deleteSlab(slab);
+    }
+  }
+
+  /**
+   * Sets the last touch timestamp of a span stored in a slab.
+   *
+   * <p>This method may be slow and shouldn't normally be called on the main thread.
+   *
+   * @param span The span.
+   * @param lastTouchTimestamp The new last touch timestamp.
+   * @throws DatabaseIOException If an error occurs updating the index.
+   */
+  @WorkerThread
+  public synchronized void setLastTouchTimestamp(SimpleCacheSpan span, long lastTouchTimestamp)
+      throws DatabaseIOException {
+    Assertions.checkNotNull(tableName);
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      ContentValues values = new ContentValues();
+      values.put(COLUMN_LAST_TOUCH_TIMESTAMP, lastTouchTimestamp);
+      writableDatabase.update(
+          tableName,
+          values,
+          WHERE_SLAB_AND_FILE_OFFSET_EQUALS,
+          new String[] {
+            Assertions.checkNotNull(span.file).getName(), Long.toString(span.fileOffset)
+          });
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  /**
+   * Appends the data of a span to the current slab, and adds it to the index.
+   *
+   * @param span The span.
+   * @param id The id of the content to which the span belongs.
+   * @param previousEntry The slab name and file offset of the previous index entry of the span,
+   *     which is replaced, or null if the span isn't stored in a slab.
+   * @return The span with its data stored in the current slab.
+   * @throws IOException If an error occurs writing the data or updating the index.
+   */
+  private SimpleCacheSpan append(SimpleCacheSpan span, int id, @Nullable String[] previousEntry)
+      throws IOException {
+    Assertions.checkNotNull(tableName);
+    Slab slab = currentSlab;
+    if (slab == null || slab.length + span.length > MAX_SLAB_LENGTH) {
+      @Nullable Slab previousSlab = slab;
+      String slabName = SLAB_FILE_PREFIX + nextSlabNumber++ + SimpleCacheSpan.COMMON_SUFFIX;
+      slab = getOrAddSlab(new File(cacheDir, slabName));
+      currentSlab = slab;
+      // Removing spans from the current slab doesn't delete it, so check it once it's been left.
+      if (previousSlab != null && !previousSlab.compacting && previousSlab.usedLength <= 0) {
+        deleteSlab(previousSlab);
+      }
+    }
+
+    byte[] data = new byte[(int) span.length];
+    try (RandomAccessFile inputFile = new RandomAccessFile(span.file, "r")) {
+      inputFile.seek(span.fileOffset);
+      inputFile.readFully(data);
+    }
+    long fileOffset = slab.length;
+    try (FileOutputStream outputStream = new FileOutputStream(slab.file, /* append= */ true)) {
+      outputStream.write(data);
+      // Make sure the data is on disk before the index refers to it, and before the data is
+      // deleted from its previous location.
+      outputStream.getFD().sync();
+    } catch (IOException e) {
+      // The length of the slab is no longer known, so start a new slab.
+      currentSlab = null;
+      throw e;
+    }
+    slab.length += span.length;
+
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_SLAB, slab.file.getName());
+        values.put(COLUMN_FILE_OFFSET, fileOffset);
+        values.put(COLUMN_ID, id);
+        values.put(COLUMN_POSITION, span.position);
+        values.put(COLUMN_LENGTH, span.length);
+        values.put(COLUMN_LAST_TOUCH_TIMESTAMP, span.lastTouchTimestamp);
+        writableDatabase.insertOrThrow(tableName, /* nullColumnHack= */ null, values);
+        if (previousEntry != null) {
+          writableDatabase.delete(tableName, WHERE_SLAB_AND_FILE_OFFSET_EQUALS, previousEntry);
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+    slab.usedLength += span.length;
+    return span.copyWithFile(slab.file, fileOffset);
+  }
+
+  private Slab getOrAddSlab(File file) {
+    @Nullable Slab slab = slabs.get(file.getName());
+    if (slab == null) {
+      slab = new Slab(file);
+      slabs.put(file.getName(), slab);
+    }
+    return slab;
+  }
+
+  private void deleteSlab(Slab slab) {
+    slabs.remove(slab.file.getName());
+    slab.file.delete();
+  }
+
+  private void deleteEntries(List<String[]> entries) throws DatabaseIOException {
+    Assertions.checkNotNull(tableName);
+    try {
+      SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+      writableDatabase.beginTransactionNonExclusive();
+      try {
+        for (int i = 0; i < entries.size(); i++) {
+          writableDatabase.delete(tableName, WHERE_SLAB_AND_FILE_OFFSET_EQUALS, entries.get(i));
+        }
+        writableDatabase.setTransactionSuccessful();
+      } finally {
+        writableDatabase.endTransaction();
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private void initializeTable(long uid) throws DatabaseIOException {
+    try {
+      String hexUid = Long.toHexString(uid);
+      tableName = getTableName(hexUid);
+      SQLiteDatabase readableDatabase = databaseProvider.getReadableDatabase();
+      int version =
+          VersionTable.getVersion(readableDatabase, VersionTable.FEATURE_CACHE_SLABS, hexUid);
+      if (version != TABLE_VERSION) {
+        SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
+        writableDatabase.beginTransactionNonExclusive();
+        try {
+          VersionTable.setVersion(
+              writableDatabase, VersionTable.FEATURE_CACHE_SLABS, hexUid, TABLE_VERSION);
+          dropTable(writableDatabase, tableName);
+          writableDatabase.execSQL("CREATE TABLE " + tableName + " " + TABLE_SCHEMA);
+          writableDatabase.setTransactionSuccessful();
+        } finally {
+          writableDatabase.endTransaction();
+        }
+      }
+    } catch (SQLException e) {
+      throw new DatabaseIOException(e);
+    }
+  }
+
+  private Cursor getCursor(@Nullable String selection, @Nullable String[] selectionArgs) {
+    Assertions.checkNotNull(tableName);
+    return databaseProvider
+        .getReadableDatabase()
+        .query(
+            tableName,
+            COLUMNS,
+            selection,
+            selectionArgs,
+            /* groupBy= */ null,
+            /* having= */ null,
+            /* orderBy= */ null);
+  }
+
+  private static void dropTable(SQLiteDatabase writableDatabase, String tableName) {
+    writableDatabase.execSQL("DROP TABLE IF EXISTS " + tableName);
+  }
+
+  private static String getTableName(String hexUid) {
+    return TABLE_PREFIX + hexUid;
+  }
+
+  private static final class Slab {
+
+    public final File file;
+
+    /** The length of the data appended to the slab. */
+    public long length;
+    /** The length of the data of the spans stored in the slab. */
+    public long usedLength;
+    /** Whether the slab is being compacted. */
+    public boolean compacting;
+
+    public Slab(File file) {
+      this.file = file;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.upstream.cache;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
 import java.io.File;
 
 /**
@@ -43,6 +44,11 @@ public class CacheSpan implements Comparable<CacheSpan> {
   public final boolean isCached;
   /** The file corresponding to this {@link CacheSpan}, or null if {@link #isCached} is false. */
   @Nullable public final File file;
+  /**
+   * The offset of the data of this {@link CacheSpan} in {@link #file}. Non-zero only if the file is
+   * shared with other spans.
+   */
+  public final long fileOffset;
   /** The last touch timestamp, or {@link C#TIME_UNSET} if {@link #isCached} is false. */
   public final long lastTouchTimestamp;
 
@@ -72,11 +78,34 @@ public class CacheSpan implements Comparable<CacheSpan> {
    */
   public CacheSpan(
       String key, long position, long length, long lastTouchTimestamp, @Nullable File file) {
+    this(key, position, length, lastTouchTimestamp, file, /* fileOffset= */ 0);
+  }
+
+  /**
+   * Creates a CacheSpan.
+   *
+   * @param key The cache key that uniquely identifies the original stream.
+   * @param position The position of the {@link CacheSpan} in the original stream.
+   * @param length The length of the {@link CacheSpan}, or {@link C#LENGTH_UNSET} if this is an
+   *     open-ended hole.
+   * @param lastTouchTimestamp The last touch timestamp, or {@link C#TIME_UNSET} if {@link
+   *     #isCached} is false.
+   * @param file The file corresponding to this {@link CacheSpan}, or null if it's a hole.
+   * @param fileOffset The offset of the data of this {@link CacheSpan} in {@code file}.
+   */
+  public CacheSpan(
+      String key,
+      long position,
+      long length,
+      long lastTouchTimestamp,
+      @Nullable File file,
+      long fileOffset) {
     this.key = key;
     this.position = position;
     this.length = length;
     this.isCached = file != null;
     this.file = file;
+    this.fileOffset = fileOffset;
     this.lastTouchTimestamp = lastTouchTimestamp;
   }
 
@@ -94,6 +123,24 @@ public class CacheSpan implements Comparable<CacheSpan> {
     return !isCached;
   }
 
+  /**
+   * Returns an identifier of the span's position in its stream, which is shared by the spans that
+   * replace it when it's touched.
+   */
+  /* package */ String getPositionId() {
+    return key + "." + position;
+  }
+
+  /**
+   * Returns whether the touch that replaced this span with {@code newSpan} reports an access of the
+   * span, rather than its data having been moved to a different location. Moves keep the last
+   * touch timestamp and change the file.
+   */
+  /* package */ boolean isAccessedBy(CacheSpan newSpan) {
+    return newSpan.lastTouchTimestamp != lastTouchTimestamp
+        || (Util.areEqual(newSpan.file, file) && newSpan.fileOffset == fileOffset);
+  }
+
   @Override
   public int compareTo(@NonNull CacheSpan another) {
     if (!key.equals(another.key)) {
@@ -169,6 +169,18 @@ import java.util.TreeSet;
     return newCacheSpan;
   }
 
+  /**
+   * Replaces a span with a copy whose data is stored at a different location. The passed span
+   * becomes invalid after this call.
+   *
+   * @param cacheSpan The span to be replaced.
+   * @param newCacheSpan The copy of the span.
+   */
+  public void replaceSpan(SimpleCacheSpan cacheSpan, SimpleCacheSpan newCacheSpan) {
+    Assertions.checkState(cachedSpans.remove(cacheSpan));
+    cachedSpans.add(newCacheSpan);
+  }
+
   /** Returns whether there are any spans cached. */
   public boolean isEmpty() {
     return cachedSpans.isEmpty();
@@ -177,7 +189,10 @@ import java.util.TreeSet;
   /** Removes the given span from cache. */
   public boolean removeSpan(CacheSpan span) {
     if (cachedSpans.remove(span)) {
-      span.file.delete();
+      // Slab files are shared with other spans, and are deleted by CacheSlabStorage.
+      if (!CacheSlabStorage.isSlabFile(span.file.getName())) {
+        span.file.delete();
+      }
       return true;
     }
     return false;
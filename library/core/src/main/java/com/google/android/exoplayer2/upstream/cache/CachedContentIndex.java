@@ -34,23 +34,29 @@ import com.google.android.exoplayer2.util.AtomicFile;
 import com.google.android.exoplayer2.util.ReusableBufferedOutputStream;
 import com.google.android.exoplayer2.util.Util;
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.zip.CRC32;
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
@@ -59,10 +65,19 @@ import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
-/** Maintains the index of cached content. */
+/**
+ * Maintains the index of cached content.
+ *
+ * <p>The index is thread safe. The spans and locked state of each {@link CachedContent} aren't
+ * guarded by the index, and must be guarded by the caller. The index is stored from a snapshot of
+ * its changes, so that other threads can use the index while the snapshot is written.
+ */
 /* package */ class CachedContentIndex {
 
   /* package */ static final String FILE_NAME_ATOMIC = "cached_content_index.exi";
+  /* package */ static final String FILE_NAME_JOURNAL_SNAPSHOT =
+      "cached_content_index_snapshot.exi";
+  /* package */ static final String FILE_NAME_JOURNAL = "cached_content_index_journal.exi";
 
   private static final int INCREMENTAL_METADATA_READ_LENGTH = 10 * 1024 * 1024;
 
@@ -92,14 +107,23 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final SparseBooleanArray removedIds;
   /** Tracks ids that are new since the index was last stored. */
   private final SparseBooleanArray newIds;
+  /** Serializes storing the index. */
+  private final Object storeLock;
 
+  /**
+   * Changes since the index was last stored, by id. Contains (id -> null) entries for removed
+   * content.
+   */
+  private SparseArray<@NullableType CachedContent> pendingUpdates;
   private Storage storage;
   @Nullable private Storage previousStorage;
 
   /** Returns whether the file is an index file. */
   public static boolean isIndexFile(String fileName) {
     // Atomic file backups add additional suffixes to the file name.
-    return fileName.startsWith(FILE_NAME_ATOMIC);
+    return fileName.startsWith(FILE_NAME_ATOMIC)
+        || fileName.startsWith(FILE_NAME_JOURNAL_SNAPSHOT)
+        || fileName.equals(FILE_NAME_JOURNAL);
   }
 
   /**
@@ -157,6 +181,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     idToKey = new SparseArray<>();
     removedIds = new SparseBooleanArray();
     newIds = new SparseBooleanArray();
+    pendingUpdates = new SparseArray<>();
+    storeLock = new Object();
     Storage databaseStorage =
         databaseProvider != null ? new DatabaseStorage(databaseProvider) : null;
     Storage legacyStorage =
@@ -175,6 +201,36 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
   }
 
+  /**
+   * Creates an instance using journal storage, which appends changes to a journal file rather than
+   * rewriting the whole index when it's stored. Index data in database storage, or otherwise in
+   * unencrypted legacy storage, is migrated to journal storage when the index is initialized.
+   *
+   * @param journalStorageDir The directory in which the journal storage is stored. Also the
+   *     directory of any legacy storage to migrate.
+   * @param databaseProvider Provides the database from which any database storage is migrated, or
+   *     {@code null} to migrate legacy storage.
+   */
+  public CachedContentIndex(File journalStorageDir, @Nullable DatabaseProvider databaseProvider) {
+    keyToContent = new HashMap<>();
+    idToKey = new SparseArray<>();
+    removedIds = new SparseBooleanArray();
+    newIds = new SparseBooleanArray();
+    pendingUpdates = new SparseArray<>();
+    storeLock = new Object();
+    storage =
+        new JournalStorage(
+            new File(journalStorageDir, FILE_NAME_JOURNAL_SNAPSHOT),
+            new File(journalStorageDir, FILE_NAME_JOURNAL));
+    previousStorage =
+        databaseProvider != null
+            ? new DatabaseStorage(databaseProvider)
+            : new LegacyStorage(
+                new File(journalStorageDir, FILE_NAME_ATOMIC),
+                /* secretKey= */ null,
+                /* encrypt= */ false);
+  }
+
   /**
    * Loads the index data for the given cache UID.
    *
@@ -184,7 +240,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    * @throws IOException If an error occurs initializing the index data.
    */
   @WorkerThread
-  public void initialize(long uid) throws IOException {
+  public synchronized void initialize(long uid) throws IOException {
     storage.initialize(uid);
     if (previousStorage != null) {
       previousStorage.initialize(uid);
@@ -212,14 +268,63 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    */
   @WorkerThread
   public void store() throws IOException {
-    storage.storeIncremental(keyToContent);
-    // Make ids that were removed since the index was last stored eligible for re-use.
-    int removedIdCount = removedIds.size();
-    for (int i = 0; i < removedIdCount; i++) {
-      idToKey.remove(removedIds.keyAt(i));
-    }
-    removedIds.clear();
-    newIds.clear();
+    synchronized (storeLock) {
+      @Nullable HashMap<String, CachedContent> content = null;
+      SparseArray<@NullableType CachedContent> updates;
+      SparseBooleanArray storedRemovedIds;
+      synchronized (this) {
+        boolean storeFully = storage.requiresFullStore(keyToContent.size(), pendingUpdates.size());
+        if (!storeFully && pendingUpdates.size() == 0) {
+          return;
+        }
+        // Snapshot the changes, so that they can be written without holding the index lock.
+        if (storeFully) {
+          content = new HashMap<>();
+          for (CachedContent cachedContent : keyToContent.values()) {
+            content.put(cachedContent.key, copyOf(cachedContent));
+          }
+        }
+        updates = new SparseArray<>();
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          @Nullable CachedContent cachedContent = pendingUpdates.valueAt(i);
+          int id = pendingUpdates.keyAt(i);
+          updates.put(id, cachedContent != null ? copyOf(cachedContent) : null);
+        }
+        pendingUpdates = new SparseArray<>();
+        storedRemovedIds = removedIds.clone();
+        removedIds.clear();
+        // Ids added from now on are new relative to the snapshot being stored.
+        newIds.clear();
+      }
+      try {
+        if (content != null) {
+          storage.storeFully(content);
+        } else {
+          storage.storeIncremental(updates);
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          // Store the changes again next time, unless they have been superseded.
+          for (int i = 0; i < updates.size(); i++) {
+            int id = updates.keyAt(i);
+            @Nullable String key = idToKey.get(id);
+            if (pendingUpdates.indexOfKey(id) < 0) {
+              pendingUpdates.put(id, key != null ? keyToContent.get(key) : null);
+            }
+          }
+          for (int i = 0; i < storedRemovedIds.size(); i++) {
+            removedIds.put(storedRemovedIds.keyAt(i), /* value= */ true);
+          }
+        }
+        throw e;
+      }
+      synchronized (this) {
+        // Make ids whose removal has been stored eligible for re-use.
+        for (int i = 0; i < storedRemovedIds.size(); i++) {
+          idToKey.remove(storedRemovedIds.keyAt(i));
+        }
+      }
+    }
   }
 
   /**
@@ -228,50 +333,44 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
    * @param key The cache key that uniquely identifies the original stream.
    * @return A new or existing CachedContent instance with the given key.
    */
-  public CachedContent getOrAdd(String key) {
+  public synchronized CachedContent getOrAdd(String key) {
     CachedContent cachedContent = keyToContent.get(key);
     return cachedContent == null ? addNew(key) : cachedContent;
   }
 
   /** Returns a CachedContent instance with the given key or null if there isn't one. */
-  public CachedContent get(String key) {
+  public synchronized CachedContent get(String key) {
     return keyToContent.get(key);
   }
 
-  /**
-   * Returns a Collection of all CachedContent instances in the index. The collection is backed by
-   * the {@code keyToContent} map, so changes to the map are reflected in the collection, and
-   * vice-versa. If the map is modified while an iteration over the collection is in progress
-   * (except through the iterator's own remove operation), the results of the iteration are
-   * undefined.
-   */
-  public Collection<CachedContent> getAll() {
-    return keyToContent.values();
+  /** Returns a snapshot of all CachedContent instances in the index. */
+  public synchronized Collection<CachedContent> getAll() {
+    return new ArrayList<>(keyToContent.values());
   }
 
   /** Returns an existing or new id assigned to the given key. */
-  public int assignIdForKey(String key) {
+  public synchronized int assignIdForKey(String key) {
     return getOrAdd(key).id;
   }
 
   /** Returns the key which has the given id assigned. */
-  public String getKeyForId(int id) {
+  public synchronized String getKeyForId(int id) {
     return idToKey.get(id);
   }
 
   /** Removes {@link CachedContent} with the given key from index if it's empty and not locked. */
-  public void maybeRemove(String key) {
+  public synchronized void maybeRemove(String key) {
     CachedContent cachedContent = keyToContent.get(key);
     if (cachedContent != null && cachedContent.isEmpty() && !cachedContent.isLocked()) {
       keyToContent.remove(key);
       int id = cachedContent.id;
-      boolean neverStored = newIds.get(id);
-      storage.onRemove(cachedContent, neverStored);
-      if (neverStored) {
-        // The id can be reused immediately.
+      if (newIds.get(id)) {
+        // The id has never been stored, so it can be reused immediately.
+        pendingUpdates.delete(id);
         idToKey.remove(id);
         newIds.delete(id);
       } else {
+        pendingUpdates.put(id, null);
         // Keep an entry in idToKey to stop the id from being reused until the index is next stored,
         // and add an entry to removedIds to track that it should be removed when this does happen.
         idToKey.put(id, /* value= */ null);
@@ -281,7 +380,7 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   }
 
   /** Removes empty and not locked {@link CachedContent} instances from index. */
-  public void removeEmpty() {
+  public synchronized void removeEmpty() {
     String[] keys = new String[keyToContent.size()];
     keyToContent.keySet().toArray(keys);
     for (String key : keys) {
@@ -289,40 +388,40 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
   }
 
-  /**
-   * Returns a set of all content keys. The set is backed by the {@code keyToContent} map, so
-   * changes to the map are reflected in the set, and vice-versa. If the map is modified while an
-   * iteration over the set is in progress (except through the iterator's own remove operation), the
-   * results of the iteration are undefined.
-   */
-  public Set<String> getKeys() {
-    return keyToContent.keySet();
+  /** Returns a snapshot of all content keys. */
+  public synchronized Set<String> getKeys() {
+    return new HashSet<>(keyToContent.keySet());
   }
 
   /**
    * Applies {@code mutations} to the {@link ContentMetadata} for the given key. A new {@link
    * CachedContent} is added if there isn't one already with the given key.
    */
-  public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations) {
+  public synchronized void applyContentMetadataMutations(
+      String key, ContentMetadataMutations mutations) {
     CachedContent cachedContent = getOrAdd(key);
     if (cachedContent.applyMetadataMutations(mutations)) {
-      storage.onUpdate(cachedContent);
+      pendingUpdates.put(cachedContent.id, cachedContent);
     }
   }
 
   /** Returns a {@link ContentMetadata} for the given key. */
-  public ContentMetadata getContentMetadata(String key) {
+  public synchronized ContentMetadata getContentMetadata(String key) {
     CachedContent cachedContent = get(key);
     return cachedContent != null ? cachedContent.getMetadata() : DefaultContentMetadata.EMPTY;
   }
 
+  private static CachedContent copyOf(CachedContent cachedContent) {
+    return new CachedContent(cachedContent.id, cachedContent.key, cachedContent.getMetadata());
+  }
+
   private CachedContent addNew(String key) {
     int id = getNewId(idToKey);
     CachedContent cachedContent = new CachedContent(id, key);
     keyToContent.put(key, cachedContent);
     idToKey.put(id, key);
     newIds.put(id, true);
-    storage.onUpdate(cachedContent);
+    pendingUpdates.put(id, cachedContent);
     return cachedContent;
   }
 
@@ -456,30 +555,25 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     void storeFully(HashMap<String, CachedContent> content) throws IOException;
 
     /**
-     * Ensures incremental changes to the index since the initial {@link #initialize(long)} or last
-     * {@link #storeFully(HashMap)} are persisted. The storage will have been notified of all such
-     * changes via {@link #onUpdate(CachedContent)} and {@link #onRemove(CachedContent, boolean)}.
+     * Returns whether the index must be persisted using {@link #storeFully(HashMap)}, rather than
+     * {@link #storeIncremental(SparseArray)}.
      *
-     * @param content The key to content map to persist.
-     * @throws IOException If an error occurs persisting the index.
-     */
-    void storeIncremental(HashMap<String, CachedContent> content) throws IOException;
-
-    /**
-     * Called when a {@link CachedContent} is added or updated.
-     *
-     * @param cachedContent The updated {@link CachedContent}.
+     * @param contentCount The number of entries in the index.
+     * @param pendingUpdateCount The number of changes to the index since the initial {@link
+     *     #initialize(long)} or last successful store.
      */
-    void onUpdate(CachedContent cachedContent);
+    boolean requiresFullStore(int contentCount, int pendingUpdateCount);
 
     /**
-     * Called when a {@link CachedContent} is removed.
+     * Persists incremental changes to the index since the initial {@link #initialize(long)} or last
+     * successful store.
      *
-     * @param cachedContent The removed {@link CachedContent}.
-     * @param neverStored True if the {@link CachedContent} was added more recently than when the
-     *     index was last stored.
+     * @param pendingUpdates The changes to persist, by id. Contains (id -> null) entries for
+     *     removed content.
+     * @throws IOException If an error occurs persisting the index.
      */
-    void onRemove(CachedContent cachedContent, boolean neverStored);
+    void storeIncremental(SparseArray<@NullableType CachedContent> pendingUpdates)
+        throws IOException;
   }
 
   /** {@link Storage} implementation that uses an {@link AtomicFile}. */
@@ -552,21 +646,13 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
-      if (!changed) {
-        return;
-      }
-      storeFully(content);
-    }
-
-    @Override
-    public void onUpdate(CachedContent cachedContent) {
-      changed = true;
+    public boolean requiresFullStore(int contentCount, int pendingUpdateCount) {
+      return changed || pendingUpdateCount > 0;
     }
 
     @Override
-    public void onRemove(CachedContent cachedContent, boolean neverStored) {
-      changed = true;
+    public void storeIncremental(SparseArray<@NullableType CachedContent> pendingUpdates) {
+      // Do nothing. Changes are always persisted by rewriting the whole file.
     }
 
     private boolean readFile(
@@ -722,6 +808,285 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
   }
 
+  /**
+   * {@link Storage} implementation that appends changes to a journal file, and periodically
+   * compacts the journal into a snapshot file written using an {@link AtomicFile}. Compaction
+   * happens once the journal has more records than the index has entries, so the amortized cost of
+   * storing changes is proportional to the number of changes rather than the size of the index.
+   *
+   * <p>The snapshot and the journal both contain the generation of the snapshot. A compaction
+   * increments the generation, so that a journal left over by an interrupted compaction is ignored.
+   * Each journal record has a checksum, so that a partially written record is detected and
+   * discarded together with any later records.
+   */
+  private static final class JournalStorage implements Storage {
+
+    private static final int VERSION = 1;
+
+    /** The length of the version and the generation at the start of the journal. */
+    private static final int JOURNAL_HEADER_LENGTH = 12;
+    /** The length of the record length and the checksum surrounding each journal record. */
+    private static final int RECORD_FRAMING_LENGTH = 8;
+
+    private static final int RECORD_TYPE_UPDATE = 1;
+    private static final int RECORD_TYPE_REMOVE = 2;
+
+    /** The minimum number of journal records before the journal is compacted. */
+    private static final int MIN_RECORD_COUNT_FOR_COMPACTION = 1000;
+
+    private final AtomicFile snapshotFile;
+    private final File journalFile;
+
+    private long generation;
+    private int journalRecordCount;
+    /** Whether new records can be appended to the journal file. */
+    private boolean journalValid;
+    @Nullable private ReusableBufferedOutputStream bufferedOutputStream;
+
+    public JournalStorage(File snapshotFile, File journalFile) {
+      this.snapshotFile = new AtomicFile(snapshotFile);
+      this.journalFile = journalFile;
+    }
+
+    @Override
+    public void initialize(long uid) {
+      // Do nothing. Journal storage uses separate files for each cache.
+    }
+
+    @Override
+    public boolean exists() {
+      return snapshotFile.exists() || journalFile.exists();
+    }
+
+    @Override
+    public void delete() {
+      snapshotFile.delete();
+      journalFile.delete();
+      generation = 0;
+      journalRecordCount = 0;
+      journalValid = false;
+    }
+
+    @Override
+    public void load(
+        HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey) {
+      SparseArray<CachedContent> idToContent = new SparseArray<>();
+      if (readSnapshot(idToContent)) {
+        readJournal(idToContent);
+      } else {
+        idToContent.clear();
+        delete();
+      }
+      for (int i = 0; i < idToContent.size(); i++) {
+        CachedContent cachedContent = idToContent.valueAt(i);
+        content.put(cachedContent.key, cachedContent);
+        idToKey.put(cachedContent.id, cachedContent.key);
+      }
+    }
+
+    @Override
+    public void storeFully(HashMap<String, CachedContent> content) throws IOException {
+      long newGeneration = generation + 1;
+      writeSnapshot(content, newGeneration);
+      generation = newGeneration;
+      // Start a new journal. If this fails, the journal of the previous generation is ignored.
+      journalValid = false;
+      try (FileOutputStream outputStream = new FileOutputStream(journalFile)) {
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(VERSION);
+        output.writeLong(generation);
+        output.flush();
+        outputStream.getFD().sync();
+      }
+      journalRecordCount = 0;
+      journalValid = true;
+    }
+
+    @Override
+    public boolean requiresFullStore(int contentCount, int pendingUpdateCount) {
+      return !journalValid
+          || journalRecordCount + pendingUpdateCount
+              > Math.max(MIN_RECORD_COUNT_FOR_COMPACTION, contentCount);
+    }
+
+    @Override
+    public void storeIncremental(SparseArray<@NullableType CachedContent> pendingUpdates)
+        throws IOException {
+      try (FileOutputStream outputStream = new FileOutputStream(journalFile, /* append= */ true)) {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream();
+        for (int i = 0; i < pendingUpdates.size(); i++) {
+          recordOutputStream.reset();
+          writeRecord(
+              pendingUpdates.keyAt(i),
+              pendingUpdates.valueAt(i),
+              new DataOutputStream(recordOutputStream));
+          byte[] record = recordOutputStream.toByteArray();
+          output.writeInt(record.length);
+          output.write(record);
+          output.writeInt(getChecksum(record));
+        }
+        output.flush();
+        outputStream.getFD().sync();
+      } catch (IOException e) {
+        // A partially appended record invalidates any records appended after it.
+        journalValid = false;
+        throw e;
+      }
+      journalRecordCount += pendingUpdates.size();
+    }
+
+    /**
+     * Reads the snapshot into {@code idToContent}, and sets the generation.
+     *
+     * @return Whether the snapshot was read successfully or doesn't exist.
+     */
+    private boolean readSnapshot(SparseArray<CachedContent> idToContent) {
+      generation = 0;
+      if (!snapshotFile.exists()) {
+        return true;
+      }
+      DataInputStream input = null;
+      try {
+        input = new DataInputStream(new BufferedInputStream(snapshotFile.openRead()));
+        if (input.readInt() != VERSION) {
+          return false;
+        }
+        long generation = input.readLong();
+        int count = input.readInt();
+        int hashCode = 0;
+        for (int i = 0; i < count; i++) {
+          CachedContent cachedContent = readCachedContent(input);
+          idToContent.put(cachedContent.id, cachedContent);
+          hashCode += cachedContent.hashCode();
+        }
+        if (input.readInt() != hashCode || input.read() != -1) {
+          return false;
+        }
+        this.generation = generation;
+      } catch (IOException e) {
+        return false;
+      } finally {
+        Util.closeQuietly(input);
+      }
+      return true;
+    }
+
+    /**
+     * Applies the records of the journal of the current generation to {@code idToContent}. If the
+     * journal is missing, belongs to another generation or ends with an invalid record, the valid
+     * records are applied and the journal is marked as invalid, so that it's replaced when the
+     * index is next stored.
+     */
+    private void readJournal(SparseArray<CachedContent> idToContent) {
+      journalRecordCount = 0;
+      journalValid = false;
+      if (!journalFile.exists()) {
+        return;
+      }
+      DataInputStream input = null;
+      try {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+        if (input.readInt() != VERSION || input.readLong() != generation) {
+          return;
+        }
+        long remainingLength = journalFile.length() - JOURNAL_HEADER_LENGTH;
+        while (remainingLength > 0) {
+          int recordLength = input.readInt();
+          if (recordLength < 0 || recordLength > remainingLength - RECORD_FRAMING_LENGTH) {
+            return;
+          }
+          byte[] record = new byte[recordLength];
+          input.readFully(record);
+          if (input.readInt() != getChecksum(record)) {
+            return;
+          }
+          applyRecord(record, idToContent);
+          journalRecordCount++;
+          remainingLength -= recordLength + RECORD_FRAMING_LENGTH;
+        }
+        journalValid = true;
+      } catch (IOException e) {
+        // The journal ends with a partially written record. The valid records have been applied.
+      } finally {
+        Util.closeQuietly(input);
+      }
+    }
+
+    private void writeSnapshot(HashMap<String, CachedContent> content, long generation)
+        throws IOException {
+      DataOutputStream output = null;
+      try {
+        OutputStream outputStream = snapshotFile.startWrite();
+        if (bufferedOutputStream == null) {
+          bufferedOutputStream = new ReusableBufferedOutputStream(outputStream);
+        } else {
+          bufferedOutputStream.reset(outputStream);
+        }
+        output = new DataOutputStream(bufferedOutputStream);
+        output.writeInt(VERSION);
+        output.writeLong(generation);
+        output.writeInt(content.size());
+        int hashCode = 0;
+        for (CachedContent cachedContent : content.values()) {
+          writeCachedContent(cachedContent, output);
+          hashCode += cachedContent.hashCode();
+        }
+        output.writeInt(hashCode);
+        snapshotFile.endWrite(output);
+        output = null;
+      } finally {
+        Util.closeQuietly(output);
+      }
+    }
+
+    private static void writeRecord(
+        int id, @Nullable CachedContent cachedContent, DataOutputStream output)
+        throws IOException {
+      if (cachedContent == null) {
+        output.writeByte(RECORD_TYPE_REMOVE);
+        output.writeInt(id);
+      } else {
+        output.writeByte(RECORD_TYPE_UPDATE);
+        writeCachedContent(cachedContent, output);
+      }
+    }
+
+    private static void applyRecord(byte[] record, SparseArray<CachedContent> idToContent)
+        throws IOException {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+      int type = input.readByte();
+      if (type == RECORD_TYPE_UPDATE) {
+        CachedContent cachedContent = readCachedContent(input);
+        idToContent.put(cachedContent.id, cachedContent);
+      } else if (type == RECORD_TYPE_REMOVE) {
+        idToContent.remove(input.readInt());
+      } else {
+        throw new IOException("Invalid record type: " + type);
+      }
+    }
+
+    private static CachedContent readCachedContent(DataInputStream input) throws IOException {
+      int id = input.readInt();
+      String key = input.readUTF();
+      DefaultContentMetadata metadata = readContentMetadata(input);
+      return new CachedContent(id, key, metadata);
+    }
+
+    private static void writeCachedContent(CachedContent cachedContent, DataOutputStream output)
+        throws IOException {
+      output.writeInt(cachedContent.id);
+      output.writeUTF(cachedContent.key);
+      writeContentMetadata(cachedContent.getMetadata(), output);
+    }
+
+    private static int getChecksum(byte[] record) {
+      CRC32 crc32 = new CRC32();
+      crc32.update(record);
+      return (int) crc32.getValue();
+    }
+  }
+
   /** {@link Storage} implementation that uses an SQL database. */
   private static final class DatabaseStorage implements Storage {
 
@@ -749,7 +1114,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             + " BLOB NOT NULL)";
 
     private final DatabaseProvider databaseProvider;
-    private final SparseArray<CachedContent> pendingUpdates;
 
     private String hexUid;
     private String tableName;
@@ -761,7 +1125,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
 
     public DatabaseStorage(DatabaseProvider databaseProvider) {
       this.databaseProvider = databaseProvider;
-      pendingUpdates = new SparseArray<>();
     }
 
     @Override
@@ -788,7 +1151,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     public void load(
         HashMap<String, CachedContent> content, SparseArray<@NullableType String> idToKey)
         throws IOException {
-      Assertions.checkState(pendingUpdates.size() == 0);
       try {
         int version =
             VersionTable.getVersion(
@@ -839,7 +1201,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             addOrUpdateRow(writableDatabase, cachedContent);
           }
           writableDatabase.setTransactionSuccessful();
-          pendingUpdates.clear();
         } finally {
           writableDatabase.endTransaction();
         }
@@ -849,16 +1210,19 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     }
 
     @Override
-    public void storeIncremental(HashMap<String, CachedContent> content) throws IOException {
-      if (pendingUpdates.size() == 0) {
-        return;
-      }
+    public boolean requiresFullStore(int contentCount, int pendingUpdateCount) {
+      return false;
+    }
+
+    @Override
+    public void storeIncremental(SparseArray<@NullableType CachedContent> pendingUpdates)
+        throws IOException {
       try {
         SQLiteDatabase writableDatabase = databaseProvider.getWritableDatabase();
         writableDatabase.beginTransactionNonExclusive();
         try {
           for (int i = 0; i < pendingUpdates.size(); i++) {
-            CachedContent cachedContent = pendingUpdates.valueAt(i);
+            @Nullable CachedContent cachedContent = pendingUpdates.valueAt(i);
             if (cachedContent == null) {
               deleteRow(writableDatabase, pendingUpdates.keyAt(i));
             } else {
@@ -866,7 +1230,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             }
           }
           writableDatabase.setTransactionSuccessful();
-          pendingUpdates.clear();
         } finally {
           writableDatabase.endTransaction();
         }
@@ -875,20 +1238,6 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       }
     }
 
-    @Override
-    public void onUpdate(CachedContent cachedContent) {
-      pendingUpdates.put(cachedContent.id, cachedContent);
-    }
-
-    @Override
-    public void onRemove(CachedContent cachedContent, boolean neverStored) {
-      if (neverStored) {
-        pendingUpdates.delete(cachedContent.id);
-      } else {
-        pendingUpdates.put(cachedContent.id, null);
-      }
-    }
-
     private Cursor getCursor() {
       return databaseProvider
           .getReadableDatabase()
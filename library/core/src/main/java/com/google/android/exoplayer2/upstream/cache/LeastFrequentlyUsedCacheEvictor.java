@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeSet;
+
+/**
+ * Evicts cache files with the fewest accesses per byte first, aging the cache so that files that
+ * were accessed often in the past are eventually evicted if they stop being accessed.
+ *
+ * <p>Each file has a priority of {@code age + accessCount / length}, which is updated whenever the
+ * file is accessed, and the file with the lowest priority is evicted first. The age of the cache is
+ * the priority of the most recently evicted file. The access counts of recently evicted files are
+ * remembered up to the maximum size of the cache, so that a file that is added again continues
+ * counting from its former access count. Access counts are only kept in memory, so all files start
+ * with an access count of one when the cache is initialized.
+ */
+public final class LeastFrequentlyUsedCacheEvictor implements CacheEvictor {
+
+  private final long maxBytes;
+  private final HashMap<String, Entry> entries;
+  private final TreeSet<Entry> leastFrequentlyUsed;
+  private final LinkedHashMap<String, Entry> evictedEntries;
+
+  private long currentSize;
+  private long evictedSize;
+  private double age;
+
+  public LeastFrequentlyUsedCacheEvictor(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.entries = new HashMap<>();
+    this.leastFrequentlyUsed = new TreeSet<>(LeastFrequentlyUsedCacheEvictor::compare);
+    this.evictedEntries = new LinkedHashMap<>();
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    // Accesses are reported as touches.
+    return true;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    // Do nothing.
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    if (length != C.LENGTH_UNSET) {
+      evictCache(cache, length);
+    }
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    String id = span.getPositionId();
+    Entry entry = new Entry(span);
+    Entry evictedEntry = evictedEntries.remove(id);
+    if (evictedEntry != null) {
+      evictedSize -= evictedEntry.span.length;
+      entry.accessCount += evictedEntry.accessCount;
+    }
+    entry.priority = age + (double) entry.accessCount / span.length;
+    entries.put(id, entry);
+    leastFrequentlyUsed.add(entry);
+    currentSize += span.length;
+    evictCache(cache, 0);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    Entry entry = entries.remove(span.getPositionId());
+    if (entry != null) {
+      leastFrequentlyUsed.remove(entry);
+      currentSize -= entry.span.length;
+    }
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    Entry entry = entries.get(oldSpan.getPositionId());
+    if (entry == null) {
+      onSpanAdded(cache, newSpan);
+      return;
+    }
+    leastFrequentlyUsed.remove(entry);
+    entry.span = newSpan;
+    if (oldSpan.isAccessedBy(newSpan)) {
+      entry.accessCount++;
+      entry.priority = age + (double) entry.accessCount / newSpan.length;
+    }
+    leastFrequentlyUsed.add(entry);
+  }
+
+  private void evictCache(Cache cache, long requiredSpace) {
+    while (currentSize + requiredSpace > maxBytes && !leastFrequentlyUsed.isEmpty()) {
+      Entry entry = leastFrequentlyUsed.first();
+      age = entry.priority;
+      if (evictedEntries.put(entry.span.getPositionId(), entry) == null) {
+        evictedSize += entry.span.length;
+        trimEvictedEntries();
+      }
+      try {
+        cache.removeSpan(entry.span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  /** Forgets the least recently evicted entries until they fit into the maximum cache size. */
+  private void trimEvictedEntries() {
+    Iterator<Entry> iterator = evictedEntries.values().iterator();
+    while (evictedSize > maxBytes && iterator.hasNext()) {
+      evictedSize -= iterator.next().span.length;
+      iterator.remove();
+    }
+  }
+
+  private static int compare(Entry lhs, Entry rhs) {
+    int result = Double.compare(lhs.priority, rhs.priority);
+    if (result == 0) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.span.compareTo(rhs.span);
+    }
+    return result;
+  }
+
+  private static final class Entry {
+
+    public CacheSpan span;
+    public int accessCount;
+    public double priority;
+
+    public Entry(CacheSpan span) {
+      this.span = span;
+      accessCount = 1;
+    }
+  }
+}
@@ -31,11 +31,21 @@ import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -46,6 +56,13 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
  * <p>To delete a SimpleCache, use {@link #delete(File, DatabaseProvider)} rather than deleting the
  * directory and its contents directly. This is necessary to ensure that associated index data is
  * also removed.
+ *
+ * <p>SimpleCache is thread safe. The cached content of each key is guarded by one of a fixed number
+ * of key locks, so that reads and writes of unrelated keys don't block each other. Index
+ * persistence is serialized by the {@link CachedContentIndex}. Evictor callbacks are serialized on
+ * the cache instance, and are delivered after the key lock of the change has been released so that
+ * the evictor can remove spans of any key. Locks are acquired in the order: cache instance, key
+ * lock, index.
  */
 public final class SimpleCache implements Cache {
 
@@ -57,6 +74,8 @@ public final class SimpleCache implements Cache {
    * https://github.com/google/ExoPlayer/issues/4253.
    */
   private static final int SUBDIRECTORY_COUNT = 10;
+  /** The number of locks guarding the cached content of keys. */
+  private static final int KEY_LOCK_COUNT = 32;
 
   private static final String UID_FILE_SUFFIX = ".uid";
 
@@ -66,13 +85,23 @@ public final class SimpleCache implements Cache {
   private final CacheEvictor evictor;
   private final CachedContentIndex contentIndex;
   @Nullable private final CacheFileMetadataIndex fileIndex;
-  private final HashMap<String, ArrayList<Listener>> listeners;
+  @Nullable private final CacheSlabStorage slabStorage;
+  private final boolean packSmallSpans;
+  @Nullable private final ExecutorService compactionExecutor;
+  private final Object[] keyLocks;
+  private final ConcurrentHashMap<String, ArrayList<Listener>> listeners;
+  private final ConcurrentLinkedQueue<Runnable> pendingEvictorEvents;
+  private final ConditionVariable initializationCondition;
+  private final ConditionVariable loadingCondition;
+  private final ConcurrentHashMap<String, HashMap<String, CacheFileMetadata>> unloadedFileMetadata;
+  private final AtomicLong totalSpace;
   private final Random random;
   private final boolean touchCacheSpans;
+  private final boolean loadSpansLazily;
 
   private long uid;
-  private long totalSpace;
-  private boolean released;
+  private volatile boolean released;
+  private volatile boolean loadingCanceled;
   private @MonotonicNonNull CacheException initializationException;
 
   /**
@@ -119,6 +148,11 @@ public final class SimpleCache implements Cache {
         } catch (DatabaseIOException e) {
           Log.w(TAG, "Failed to delete file metadata: " + uid);
         }
+        try {
+          CacheSlabStorage.delete(databaseProvider, uid);
+        } catch (DatabaseIOException e) {
+          Log.w(TAG, "Failed to delete slab index: " + uid);
+        }
       }
     }
 
@@ -200,6 +234,117 @@ public final class SimpleCache implements Cache {
         /* preferLegacyIndex= */ false);
   }
 
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * <p>A journal index stores changes by appending them to a journal file in the cache directory,
+   * which is periodically compacted. Its cost of storing changes depends on the size of the changes
+   * rather than the number of cached keys, which makes it preferable for caches with a very large
+   * number of keys. A database index of a previous instance is migrated to the journal index. Note
+   * that content cached with a journal index isn't retained if the cache is later constructed
+   * without one.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which cache file metadata is stored, and in
+   *     which the cache index is stored if {@code useJournalIndex} is {@code false}.
+   * @param useJournalIndex Whether to store the cache index in a journal in the cache directory.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      DatabaseProvider databaseProvider,
+      boolean useJournalIndex) {
+    this(cacheDir, evictor, databaseProvider, useJournalIndex, /* loadSpansLazily= */ false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * <p>By default, initialization completes once all cache files have been loaded, which can take
+   * several seconds for a cache with a very large number of files. If {@code loadSpansLazily} is
+   * {@code true}, initialization completes once the cache indices have been loaded, so that reads
+   * and writes don't wait for the cache directory to be scanned. The spans of a key are then loaded
+   * from the persisted file metadata when the key is first accessed, and the remaining spans are
+   * loaded in the background, scanning the cache subdirectories in parallel for files missing from
+   * the file metadata. {@link #getKeys()} and {@link #getCacheSpace()} block until all spans have
+   * been loaded. If no file metadata has been persisted, all cache files are loaded during
+   * initialization.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which cache file metadata is stored, and in
+   *     which the cache index is stored if {@code useJournalIndex} is {@code false}.
+   * @param useJournalIndex Whether to store the cache index in a journal in the cache directory.
+   * @param loadSpansLazily Whether to load the spans of each key when it's first accessed, rather
+   *     than during initialization.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      DatabaseProvider databaseProvider,
+      boolean useJournalIndex,
+      boolean loadSpansLazily) {
+    this(
+        cacheDir,
+        evictor,
+        databaseProvider,
+        useJournalIndex,
+        loadSpansLazily,
+        /* packSmallSpans= */ false);
+  }
+
+  /**
+   * Constructs the cache. The cache will delete any unrecognized files from the directory. Hence
+   * the directory cannot be used to store other files.
+   *
+   * <p>If {@code packSmallSpans} is {@code true}, the data of each span of up to 256 KB is appended
+   * to a larger slab file when it's committed, rather than being kept in a file of its own. This
+   * avoids creating a very large number of small files when caching media that consists of many
+   * small segments, such as audio, subtitle and initialization segments. The location of each span
+   * in its slab is stored in the database. Slabs in which less than half of the data is still in
+   * use are compacted in the background. If the cache is later constructed without packing, the
+   * spans stored in slabs are deleted during initialization.
+   *
+   * @param cacheDir A dedicated cache directory.
+   * @param evictor The evictor to be used. For download use cases where cache eviction should not
+   *     occur, use {@link NoOpCacheEvictor}.
+   * @param databaseProvider Provides the database in which cache file metadata and the locations of
+   *     packed spans are stored, and in which the cache index is stored if {@code useJournalIndex}
+   *     is {@code false}.
+   * @param useJournalIndex Whether to store the cache index in a journal in the cache directory.
+   * @param loadSpansLazily Whether to load the spans of each key when it's first accessed, rather
+   *     than during initialization. Spans stored in slabs are always loaded during initialization.
+   * @param packSmallSpans Whether to store the data of small spans in shared slab files.
+   */
+  public SimpleCache(
+      File cacheDir,
+      CacheEvictor evictor,
+      DatabaseProvider databaseProvider,
+      boolean useJournalIndex,
+      boolean loadSpansLazily,
+      boolean packSmallSpans) {
+    this(
+        cacheDir,
+        evictor,
+        useJournalIndex
+            ? new CachedContentIndex(cacheDir, databaseProvider)
+            : new CachedContentIndex(
+                databaseProvider,
+                cacheDir,
+                /* legacyStorageSecretKey= */ null,
+                /* legacyStorageEncrypt= */ false,
+                /* preferLegacyStorage= */ false),
+        new CacheFileMetadataIndex(databaseProvider),
+        new CacheSlabStorage(cacheDir, databaseProvider),
+        packSmallSpans,
+        loadSpansLazily);
+  }
+
   /**
    * Constructs the cache. The cache will delete any unrecognized files from the cache directory.
    * Hence the directory cannot be used to store other files.
@@ -237,14 +382,21 @@ public final class SimpleCache implements Cache {
             preferLegacyIndex),
         databaseProvider != null && !preferLegacyIndex
             ? new CacheFileMetadataIndex(databaseProvider)
-            : null);
+            : null,
+        databaseProvider != null ? new CacheSlabStorage(cacheDir, databaseProvider) : null,
+        /* packSmallSpans= */ false,
+        /* loadSpansLazily= */ false);
   }
 
   /* package */ SimpleCache(
       File cacheDir,
       CacheEvictor evictor,
       CachedContentIndex contentIndex,
-      @Nullable CacheFileMetadataIndex fileIndex) {
+      @Nullable CacheFileMetadataIndex fileIndex,
+      @Nullable CacheSlabStorage slabStorage,
+      boolean packSmallSpans,
+      boolean loadSpansLazily) {
+    Assertions.checkArgument(!packSmallSpans || slabStorage != null);
     if (!lockFolder(cacheDir)) {
       throw new IllegalStateException("Another SimpleCache instance uses the folder: " + cacheDir);
     }
@@ -253,24 +405,52 @@ public final class SimpleCache implements Cache {
     this.evictor = evictor;
     this.contentIndex = contentIndex;
     this.fileIndex = fileIndex;
-    listeners = new HashMap<>();
+    this.slabStorage = slabStorage;
+    this.packSmallSpans = packSmallSpans;
+    compactionExecutor =
+        packSmallSpans
+            ? Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "SimpleCache.compactSlab()"))
+            : null;
+    keyLocks = new Object[KEY_LOCK_COUNT];
+    for (int i = 0; i < KEY_LOCK_COUNT; i++) {
+      keyLocks[i] = new Object();
+    }
+    listeners = new ConcurrentHashMap<>();
+    pendingEvictorEvents = new ConcurrentLinkedQueue<>();
+    initializationCondition = new ConditionVariable();
+    loadingCondition = new ConditionVariable();
+    unloadedFileMetadata = new ConcurrentHashMap<>();
+    totalSpace = new AtomicLong();
     random = new Random();
     touchCacheSpans = evictor.requiresCacheSpanTouches();
+    this.loadSpansLazily = loadSpansLazily && fileIndex != null;
     uid = UID_UNSET;
 
-    // Start cache initialization.
-    final ConditionVariable conditionVariable = new ConditionVariable();
+    // Start cache initialization. Other methods block until the in-memory representation has been
+    // loaded.
     new Thread("SimpleCache.initialize()") {
       @Override
       public void run() {
+        @Nullable Set<String> indexedFileNames = initialize();
         synchronized (SimpleCache.this) {
-          conditionVariable.open();
-          initialize();
-          SimpleCache.this.evictor.onCacheInitialized();
+          initializationCondition.open();
+          dispatchPendingEvictorEvents();
+          if (indexedFileNames == null) {
+            SimpleCache.this.evictor.onCacheInitialized();
+          }
+        }
+        if (indexedFileNames != null) {
+          // Only the indices have been loaded. Load the spans of keys that haven't been accessed.
+          loadRemainingSpans(indexedFileNames);
+          synchronized (SimpleCache.this) {
+            dispatchPendingEvictorEvents();
+            SimpleCache.this.evictor.onCacheInitialized();
+          }
         }
+        loadingCondition.open();
       }
     }.start();
-    conditionVariable.block();
   }
 
   /**
@@ -278,142 +458,169 @@ public final class SimpleCache implements Cache {
    *
    * @throws CacheException If an error occurred during initialization.
    */
-  public synchronized void checkInitialization() throws CacheException {
+  public void checkInitialization() throws CacheException {
+    blockUntilInitialized();
     if (initializationException != null) {
       throw initializationException;
     }
   }
 
   @Override
-  public synchronized long getUid() {
+  public long getUid() {
+    blockUntilInitialized();
     return uid;
   }
 
   @Override
-  public synchronized void release() {
-    if (released) {
-      return;
+  public void release() {
+    blockUntilInitialized();
+    // Stop loading spans in the background, so that the cache directory isn't accessed once the
+    // folder has been unlocked.
+    loadingCanceled = true;
+    loadingCondition.block();
+    if (compactionExecutor != null) {
+      // Complete pending slab compactions for the same reason.
+      compactionExecutor.shutdown();
+      try {
+        compactionExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
     }
-    listeners.clear();
-    removeStaleSpans();
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      Log.e(TAG, "Storing index file failed", e);
-    } finally {
-      unlockFolder(cacheDir);
-      released = true;
+    synchronized (this) {
+      if (released) {
+        return;
+      }
+      listeners.clear();
+      removeStaleSpans();
+      try {
+        contentIndex.store();
+      } catch (IOException e) {
+        Log.e(TAG, "Storing index file failed", e);
+      } finally {
+        unlockFolder(cacheDir);
+        released = true;
+      }
     }
   }
 
   @Override
-  public synchronized NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+  public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
     Assertions.checkState(!released);
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey == null) {
-      listenersForKey = new ArrayList<>();
-      listeners.put(key, listenersForKey);
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey == null) {
+        listenersForKey = new ArrayList<>();
+        listeners.put(key, listenersForKey);
+      }
+      listenersForKey.add(listener);
+      return getCachedSpans(key);
     }
-    listenersForKey.add(listener);
-    return getCachedSpans(key);
   }
 
   @Override
-  public synchronized void removeListener(String key, Listener listener) {
+  public void removeListener(String key, Listener listener) {
     if (released) {
       return;
     }
-    ArrayList<Listener> listenersForKey = listeners.get(key);
-    if (listenersForKey != null) {
-      listenersForKey.remove(listener);
-      if (listenersForKey.isEmpty()) {
-        listeners.remove(key);
+    synchronized (getKeyLock(key)) {
+      ArrayList<Listener> listenersForKey = listeners.get(key);
+      if (listenersForKey != null) {
+        listenersForKey.remove(listener);
+        if (listenersForKey.isEmpty()) {
+          listeners.remove(key);
+        }
       }
     }
   }
 
   @NonNull
   @Override
-  public synchronized NavigableSet<CacheSpan> getCachedSpans(String key) {
+  public NavigableSet<CacheSpan> getCachedSpans(String key) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent == null || cachedContent.isEmpty()
-        ? new TreeSet<>()
-        : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      loadSpans(key, /* indexedFiles= */ null);
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent == null || cachedContent.isEmpty()
+          ? new TreeSet<>()
+          : new TreeSet<CacheSpan>(cachedContent.getSpans());
+    }
   }
 
   @Override
-  public synchronized Set<String> getKeys() {
+  public Set<String> getKeys() {
     Assertions.checkState(!released);
-    return new HashSet<>(contentIndex.getKeys());
+    blockUntilLoaded();
+    return contentIndex.getKeys();
   }
 
   @Override
-  public synchronized long getCacheSpace() {
+  public long getCacheSpace() {
     Assertions.checkState(!released);
-    return totalSpace;
+    blockUntilLoaded();
+    return totalSpace.get();
   }
 
   @Override
-  public synchronized CacheSpan startReadWrite(String key, long position)
+  public CacheSpan startReadWrite(String key, long position)
       throws InterruptedException, CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    while (true) {
-      CacheSpan span = startReadWriteNonBlocking(key, position);
-      if (span != null) {
-        return span;
-      } else {
+    Object keyLock = getKeyLock(key);
+    @Nullable CacheSpan span;
+    synchronized (keyLock) {
+      span = startReadWriteInternal(key, position);
+      while (span == null) {
         // Lock not available. We'll be woken up when a span is added, or when a locked span is
         // released. We'll be able to make progress when either:
         // 1. A span is added for the requested key that covers the requested position, in which
         //    case a read can be started.
         // 2. The lock for the requested key is released, in which case a write can be started.
-        wait();
+        keyLock.wait();
+        span = startReadWriteInternal(key, position);
       }
     }
+    dispatchPendingEvictorEvents();
+    return span;
   }
 
   @Override
   @Nullable
-  public synchronized CacheSpan startReadWriteNonBlocking(String key, long position)
-      throws CacheException {
+  public CacheSpan startReadWriteNonBlocking(String key, long position) throws CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    SimpleCacheSpan span = getSpan(key, position);
-
-    if (span.isCached) {
-      // Read case.
-      return touchSpan(key, span);
-    }
-
-    CachedContent cachedContent = contentIndex.getOrAdd(key);
-    if (!cachedContent.isLocked()) {
-      // Write case.
-      cachedContent.setLocked(true);
-      return span;
+    @Nullable CacheSpan span;
+    synchronized (getKeyLock(key)) {
+      span = startReadWriteInternal(key, position);
     }
-
-    // Lock not available.
-    return null;
+    dispatchPendingEvictorEvents();
+    return span;
   }
 
   @Override
-  public synchronized File startFile(String key, long position, long length) throws CacheException {
+  public File startFile(String key, long position, long length) throws CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    CachedContent cachedContent = contentIndex.get(key);
-    Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isLocked());
+    CachedContent cachedContent;
+    synchronized (getKeyLock(key)) {
+      cachedContent = contentIndex.get(key);
+      Assertions.checkNotNull(cachedContent);
+      Assertions.checkState(cachedContent.isLocked());
+    }
     if (!cacheDir.exists()) {
       // For some reason the cache directory doesn't exist. Make a best effort to create it.
       cacheDir.mkdirs();
       removeStaleSpans();
     }
-    evictor.onStartFile(this, key, position, length);
+    synchronized (this) {
+      dispatchPendingEvictorEvents();
+      evictor.onStartFile(this, key, position, length);
+    }
     // Randomly distribute files into subdirectories with a uniform distribution.
     File fileDir = new File(cacheDir, Integer.toString(random.nextInt(SUBDIRECTORY_COUNT)));
     if (!fileDir.exists()) {
@@ -424,7 +631,7 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized void commitFile(File file, long length) throws CacheException {
+  public void commitFile(File file, long length) throws CacheException {
     Assertions.checkState(!released);
     if (!file.exists()) {
       return;
@@ -436,70 +643,105 @@ public final class SimpleCache implements Cache {
 
     SimpleCacheSpan span =
         Assertions.checkNotNull(SimpleCacheSpan.createCacheEntry(file, length, contentIndex));
-    CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
-    Assertions.checkState(cachedContent.isLocked());
-
-    // Check if the span conflicts with the set content length
-    long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
-    if (contentLength != C.LENGTH_UNSET) {
-      Assertions.checkState((span.position + span.length) <= contentLength);
-    }
+    Object keyLock = getKeyLock(span.key);
+    try {
+      synchronized (keyLock) {
+        CachedContent cachedContent = Assertions.checkNotNull(contentIndex.get(span.key));
+        Assertions.checkState(cachedContent.isLocked());
+
+        // Check if the span conflicts with the set content length
+        long contentLength = ContentMetadata.getContentLength(cachedContent.getMetadata());
+        if (contentLength != C.LENGTH_UNSET) {
+          Assertions.checkState((span.position + span.length) <= contentLength);
+        }
 
-    if (fileIndex != null) {
-      String fileName = file.getName();
+        boolean packed = false;
+        if (packSmallSpans && CacheSlabStorage.canPack(span.length)) {
+          try {
+            span = Assertions.checkNotNull(slabStorage).add(span, cachedContent.id);
+            packed = true;
+          } catch (IOException e) {
+            Log.w(TAG, "Failed to pack span. Storing it in its own file instead.", e);
+          }
+        }
+        if (!packed && fileIndex != null) {
+          String fileName = file.getName();
+          try {
+            fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
+          } catch (IOException e) {
+            throw new CacheException(e);
+          }
+        }
+        addSpan(span);
+        keyLock.notifyAll();
+      }
       try {
-        fileIndex.set(fileName, span.length, span.lastTouchTimestamp);
+        contentIndex.store();
       } catch (IOException e) {
         throw new CacheException(e);
       }
+    } finally {
+      dispatchPendingEvictorEvents();
     }
-    addSpan(span);
-    try {
-      contentIndex.store();
-    } catch (IOException e) {
-      throw new CacheException(e);
-    }
-    notifyAll();
   }
 
   @Override
-  public synchronized void releaseHoleSpan(CacheSpan holeSpan) {
+  public void releaseHoleSpan(CacheSpan holeSpan) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(holeSpan.key);
-    Assertions.checkNotNull(cachedContent);
-    Assertions.checkState(cachedContent.isLocked());
-    cachedContent.setLocked(false);
-    contentIndex.maybeRemove(cachedContent.key);
-    notifyAll();
+    Object keyLock = getKeyLock(holeSpan.key);
+    synchronized (keyLock) {
+      CachedContent cachedContent = contentIndex.get(holeSpan.key);
+      Assertions.checkNotNull(cachedContent);
+      Assertions.checkState(cachedContent.isLocked());
+      cachedContent.setLocked(false);
+      contentIndex.maybeRemove(cachedContent.key);
+      keyLock.notifyAll();
+    }
   }
 
   @Override
-  public synchronized void removeSpan(CacheSpan span) {
+  public void removeSpan(CacheSpan span) {
     Assertions.checkState(!released);
-    removeSpanInternal(span);
+    blockUntilInitialized();
+    synchronized (getKeyLock(span.key)) {
+      loadSpans(span.key, /* indexedFiles= */ null);
+      removeSpanInternal(span);
+    }
+    dispatchPendingEvictorEvents();
   }
 
   @Override
-  public synchronized boolean isCached(String key, long position, long length) {
+  public boolean isCached(String key, long position, long length) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null && cachedContent.getCachedBytesLength(position, length) >= length;
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      loadSpans(key, /* indexedFiles= */ null);
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null
+          && cachedContent.getCachedBytesLength(position, length) >= length;
+    }
   }
 
   @Override
-  public synchronized long getCachedLength(String key, long position, long length) {
+  public long getCachedLength(String key, long position, long length) {
     Assertions.checkState(!released);
-    CachedContent cachedContent = contentIndex.get(key);
-    return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    blockUntilInitialized();
+    synchronized (getKeyLock(key)) {
+      loadSpans(key, /* indexedFiles= */ null);
+      CachedContent cachedContent = contentIndex.get(key);
+      return cachedContent != null ? cachedContent.getCachedBytesLength(position, length) : -length;
+    }
   }
 
   @Override
-  public synchronized void applyContentMetadataMutations(
-      String key, ContentMetadataMutations mutations) throws CacheException {
+  public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations)
+      throws CacheException {
     Assertions.checkState(!released);
     checkInitialization();
 
-    contentIndex.applyContentMetadataMutations(key, mutations);
+    synchronized (getKeyLock(key)) {
+      contentIndex.applyContentMetadataMutations(key, mutations);
+    }
     try {
       contentIndex.store();
     } catch (IOException e) {
@@ -508,19 +750,68 @@ public final class SimpleCache implements Cache {
   }
 
   @Override
-  public synchronized ContentMetadata getContentMetadata(String key) {
+  public ContentMetadata getContentMetadata(String key) {
     Assertions.checkState(!released);
+    blockUntilInitialized();
     return contentIndex.getContentMetadata(key);
   }
 
-  /** Ensures that the cache's in-memory representation has been initialized. */
-  private void initialize() {
+  /** Blocks until the cache's in-memory representation has been initialized. */
+  private void blockUntilInitialized() {
+    initializationCondition.block();
+  }
+
+  /**
+   * Blocks until all cached spans have been loaded into the in-memory representation, or loading
+   * has been canceled by {@link #release()}.
+   */
+  private void blockUntilLoaded() {
+    loadingCondition.block();
+  }
+
+  /** Returns the lock guarding the cached content of {@code key}. */
+  private Object getKeyLock(String key) {
+    return keyLocks[(key.hashCode() & Integer.MAX_VALUE) % KEY_LOCK_COUNT];
+  }
+
+  /**
+   * Starts a read or a write of {@code key} at {@code position}, as described by {@link
+   * #startReadWriteNonBlocking(String, long)}. Must be called while holding the key lock.
+   */
+  @Nullable
+  private CacheSpan startReadWriteInternal(String key, long position) {
+    SimpleCacheSpan span = getSpan(key, position);
+
+    if (span.isCached) {
+      // Read case.
+      return touchSpan(key, span);
+    }
+
+    CachedContent cachedContent = contentIndex.getOrAdd(key);
+    if (!cachedContent.isLocked()) {
+      // Write case.
+      cachedContent.setLocked(true);
+      return span;
+    }
+
+    // Lock not available.
+    return null;
+  }
+
+  /**
+   * Ensures that the cache's in-memory representation has been initialized.
+   *
+   * @return The names of the indexed files whose spans are loaded lazily, or null if all spans have
+   *     been loaded.
+   */
+  @Nullable
+  private Set<String> initialize() {
     if (!cacheDir.exists()) {
       if (!cacheDir.mkdirs()) {
         String message = "Failed to create cache directory: " + cacheDir;
         Log.e(TAG, message);
         initializationException = new CacheException(message);
-        return;
+        return null;
       }
     }
 
@@ -529,7 +820,7 @@ public final class SimpleCache implements Cache {
       String message = "Failed to list cache directory files: " + cacheDir;
       Log.e(TAG, message);
       initializationException = new CacheException(message);
-      return;
+      return null;
     }
 
     uid = loadUid(files);
@@ -540,15 +831,29 @@ public final class SimpleCache implements Cache {
         String message = "Failed to create cache UID: " + cacheDir;
         Log.e(TAG, message, e);
         initializationException = new CacheException(message, e);
-        return;
+        return null;
       }
     }
 
     try {
       contentIndex.initialize(uid);
+      if (packSmallSpans) {
+        List<SimpleCacheSpan> packedSpans =
+            Assertions.checkNotNull(slabStorage).initialize(uid, contentIndex);
+        for (int i = 0; i < packedSpans.size(); i++) {
+          addSpan(packedSpans.get(i));
+        }
+      } else if (slabStorage != null) {
+        // Delete the slabs of a previous instance that packed spans, which would otherwise leak.
+        slabStorage.deleteSlabs(uid, files);
+      }
       if (fileIndex != null) {
         fileIndex.initialize(uid);
         Map<String, CacheFileMetadata> fileMetadata = fileIndex.getAll();
+        if (loadSpansLazily && !fileMetadata.isEmpty()) {
+          // Trust the file index, and defer loading spans until their keys are accessed.
+          return addUnloadedFileMetadata(fileMetadata);
+        }
         loadDirectory(cacheDir, /* isRoot= */ true, files, fileMetadata);
         fileIndex.removeAll(fileMetadata.keySet());
       } else {
@@ -558,7 +863,7 @@ public final class SimpleCache implements Cache {
       String message = "Failed to initialize cache indices: " + cacheDir;
       Log.e(TAG, message, e);
       initializationException = new CacheException(message, e);
-      return;
+      return null;
     }
 
     contentIndex.removeEmpty();
@@ -567,6 +872,7 @@ public final class SimpleCache implements Cache {
     } catch (IOException e) {
       Log.e(TAG, "Storing index file failed", e);
     }
+    return null;
   }
 
   /**
@@ -599,8 +905,10 @@ public final class SimpleCache implements Cache {
         loadDirectory(file, /* isRoot= */ false, file.listFiles(), fileMetadata);
       } else {
         if (isRoot
-            && (CachedContentIndex.isIndexFile(fileName) || fileName.endsWith(UID_FILE_SUFFIX))) {
-          // Skip expected UID and index files in the root directory.
+            && (CachedContentIndex.isIndexFile(fileName)
+                || fileName.endsWith(UID_FILE_SUFFIX)
+                || CacheSlabStorage.isSlabFile(fileName))) {
+          // Skip expected UID, index and slab files in the root directory.
           continue;
         }
         long length = C.LENGTH_UNSET;
@@ -612,7 +920,7 @@ public final class SimpleCache implements Cache {
         }
         SimpleCacheSpan span =
             SimpleCacheSpan.createCacheEntry(file, length, lastTouchTimestamp, contentIndex);
-        if (span != null) {
+        if (span != null && !isPackedCopy(span)) {
           addSpan(span);
         } else {
           file.delete();
@@ -621,6 +929,271 @@ public final class SimpleCache implements Cache {
     }
   }
 
+  /**
+   * Groups file metadata by key, so that the spans of each key can be loaded when the key is first
+   * accessed. Metadata of files that don't belong to any content is removed from the file index.
+   *
+   * @param fileMetadata The file metadata keyed by file name.
+   * @return The names of the files whose metadata was added.
+   * @throws IOException If an error occurs removing metadata from the file index.
+   */
+  private Set<String> addUnloadedFileMetadata(Map<String, CacheFileMetadata> fileMetadata)
+      throws IOException {
+    HashSet<String> fileNames = new HashSet<>();
+    HashSet<String> unusedFileNames = new HashSet<>();
+    for (Map.Entry<String, CacheFileMetadata> entry : fileMetadata.entrySet()) {
+      String fileName = entry.getKey();
+      @Nullable String key = SimpleCacheSpan.getKeyForFileName(fileName, contentIndex);
+      if (key == null) {
+        unusedFileNames.add(fileName);
+        continue;
+      }
+      HashMap<String, CacheFileMetadata> fileMetadataForKey = unloadedFileMetadata.get(key);
+      if (fileMetadataForKey == null) {
+        fileMetadataForKey = new HashMap<>();
+        unloadedFileMetadata.put(key, fileMetadataForKey);
+      }
+      fileMetadataForKey.put(fileName, entry.getValue());
+      fileNames.add(fileName);
+    }
+    Assertions.checkNotNull(fileIndex).removeAll(unusedFileNames);
+    return fileNames;
+  }
+
+  /**
+   * Loads the spans of {@code key} from the file index, if they haven't been loaded yet. Must be
+   * called while holding the key lock.
+   *
+   * @param key The key whose spans should be loaded.
+   * @param indexedFiles The indexed cache files keyed by file name, or null if the cache directory
+   *     hasn't been scanned yet, in which case the files are looked up in the cache subdirectories.
+   */
+  private void loadSpans(String key, @Nullable Map<String, File> indexedFiles) {
+    @Nullable HashMap<String, CacheFileMetadata> fileMetadata = unloadedFileMetadata.remove(key);
+    if (fileMetadata == null) {
+      return;
+    }
+    HashSet<String> missingFileNames = new HashSet<>();
+    for (Map.Entry<String, CacheFileMetadata> entry : fileMetadata.entrySet()) {
+      String fileName = entry.getKey();
+      CacheFileMetadata metadata = entry.getValue();
+      @Nullable
+      File file = indexedFiles != null ? indexedFiles.get(fileName) : findCacheFile(fileName);
+      @Nullable
+      SimpleCacheSpan span =
+          file != null
+              ? SimpleCacheSpan.createCacheEntry(
+                  file, metadata.length, metadata.lastTouchTimestamp, contentIndex)
+              : null;
+      if (span != null) {
+        addSpan(span);
+      } else {
+        missingFileNames.add(fileName);
+        if (file != null) {
+          file.delete();
+        }
+      }
+    }
+    if (!missingFileNames.isEmpty()) {
+      try {
+        Assertions.checkNotNull(fileIndex).removeAll(missingFileNames);
+      } catch (IOException e) {
+        // This will leave stale entries in the file index. They will be removed next time the cache
+        // is initialized.
+        Log.w(TAG, "Failed to remove file index entries for: " + key);
+      }
+    }
+  }
+
+  /**
+   * Returns the cache file with the given name, or null if it doesn't exist.
+   *
+   * @param fileName The name of the cache file.
+   */
+  @Nullable
+  private File findCacheFile(String fileName) {
+    for (int i = 0; i < SUBDIRECTORY_COUNT; i++) {
+      File file = new File(new File(cacheDir, Integer.toString(i)), fileName);
+      if (file.exists()) {
+        return file;
+      }
+    }
+    // Earlier versions of SimpleCache stored files in the root directory.
+    File file = new File(cacheDir, fileName);
+    return file.exists() ? file : null;
+  }
+
+  /**
+   * Loads the spans of all keys that haven't been accessed since initialization. The cache
+   * directory is scanned first, to locate the indexed files and to load any files that are missing
+   * from the file index.
+   *
+   * @param indexedFileNames The names of the indexed files whose spans are loaded lazily.
+   */
+  private void loadRemainingSpans(Set<String> indexedFileNames) {
+    @Nullable Map<String, File> indexedFiles;
+    try {
+      indexedFiles = scanDirectories(indexedFileNames);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // Look up the remaining files individually.
+      indexedFiles = null;
+    }
+    dispatchPendingEvictorEvents();
+    for (String key : new ArrayList<>(unloadedFileMetadata.keySet())) {
+      if (loadingCanceled) {
+        return;
+      }
+      synchronized (getKeyLock(key)) {
+        loadSpans(key, indexedFiles);
+      }
+      dispatchPendingEvictorEvents();
+    }
+    // Remove content whose files are all missing.
+    for (String key : contentIndex.getKeys()) {
+      synchronized (getKeyLock(key)) {
+        contentIndex.maybeRemove(key);
+      }
+    }
+    try {
+      contentIndex.store();
+    } catch (IOException e) {
+      Log.e(TAG, "Storing index file failed", e);
+    }
+  }
+
+  /**
+   * Scans the cache directory, scanning its subdirectories in parallel.
+   *
+   * @param indexedFileNames The names of the indexed files whose spans are loaded lazily.
+   * @return The indexed cache files that were found, keyed by file name.
+   * @throws InterruptedException If the thread was interrupted.
+   */
+  private Map<String, File> scanDirectories(Set<String> indexedFileNames)
+      throws InterruptedException {
+    ConcurrentHashMap<String, File> indexedFiles = new ConcurrentHashMap<>();
+    @Nullable File[] files = cacheDir.listFiles();
+    if (files == null) {
+      return indexedFiles;
+    }
+    ArrayList<File> directories = new ArrayList<>();
+    for (File file : files) {
+      String fileName = file.getName();
+      if (fileName.indexOf('.') == -1) {
+        directories.add(file);
+      } else if (!CachedContentIndex.isIndexFile(fileName)
+          && !fileName.endsWith(UID_FILE_SUFFIX)
+          && !CacheSlabStorage.isSlabFile(fileName)) {
+        scanFile(file, indexedFileNames, indexedFiles);
+      }
+    }
+    if (directories.isEmpty()) {
+      return indexedFiles;
+    }
+
+    int threadCount = Math.min(directories.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executorService =
+        Executors.newFixedThreadPool(
+            threadCount, runnable -> new Thread(runnable, "SimpleCache.scanDirectory()"));
+    try {
+      ArrayList<Future<?>> pendingScans = new ArrayList<>();
+      for (File directory : directories) {
+        pendingScans.add(
+            executorService.submit(() -> scanDirectory(directory, indexedFileNames, indexedFiles)));
+      }
+      for (Future<?> pendingScan : pendingScans) {
+        try {
+          pendingScan.get();
+        } catch (ExecutionException e) {
+          Util.sneakyThrow(Assertions.checkNotNull(e.getCause()));
+        }
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    return indexedFiles;
+  }
+
+  /**
+   * Scans a cache subdirectory. Unlike during initialization, the directory isn't deleted if it's
+   * empty, since a file may be about to be written to it.
+   *
+   * @param directory The directory.
+   * @param indexedFileNames The names of the indexed files whose spans are loaded lazily.
+   * @param indexedFiles A map to which indexed files are added, keyed by file name.
+   */
+  private void scanDirectory(
+      File directory, Set<String> indexedFileNames, Map<String, File> indexedFiles) {
+    @Nullable File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (loadingCanceled) {
+        return;
+      }
+      scanFile(file, indexedFileNames, indexedFiles);
+    }
+  }
+
+  /**
+   * Scans a cache file. An indexed file is added to {@code indexedFiles}, so that it can be loaded
+   * with its key. Any other file is loaded as during initialization, unless it's being written.
+   *
+   * @param file The file.
+   * @param indexedFileNames The names of the indexed files whose spans are loaded lazily.
+   * @param indexedFiles A map to which indexed files are added, keyed by file name.
+   */
+  private void scanFile(File file, Set<String> indexedFileNames, Map<String, File> indexedFiles) {
+    String fileName = file.getName();
+    if (indexedFileNames.contains(fileName)) {
+      indexedFiles.put(fileName, file);
+      return;
+    }
+    @Nullable String key = SimpleCacheSpan.getKeyForFileName(fileName, contentIndex);
+    if (key == null) {
+      // The file was either written by an earlier version of SimpleCache, in which case it's
+      // upgraded, or it doesn't belong to any content. Neither kind of file is being written.
+      @Nullable
+      SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, C.LENGTH_UNSET, contentIndex);
+      if (span == null) {
+        file.delete();
+        return;
+      }
+      file = Assertions.checkNotNull(span.file);
+      key = span.key;
+    }
+    synchronized (getKeyLock(key)) {
+      loadSpans(key, /* indexedFiles= */ null);
+      @Nullable CachedContent cachedContent = contentIndex.get(key);
+      if (cachedContent == null) {
+        // The content has been removed, so the file is no longer used.
+        file.delete();
+        return;
+      }
+      if (cachedContent.isLocked()) {
+        // The file may be being written.
+        return;
+      }
+      @Nullable
+      SimpleCacheSpan span = SimpleCacheSpan.createCacheEntry(file, C.LENGTH_UNSET, contentIndex);
+      if (span == null) {
+        file.delete();
+        return;
+      }
+      if (isPackedCopy(span)) {
+        file.delete();
+        return;
+      }
+      SimpleCacheSpan cachedSpan = cachedContent.getSpan(span.position);
+      if (cachedSpan.isCached && cachedSpan.position == span.position) {
+        // The file has been committed since the scan started.
+        return;
+      }
+      addSpan(span);
+    }
+  }
+
   /**
    * Touches a cache span, returning the updated result. If the evictor does not require cache spans
    * to be touched, then this method does nothing and the span is returned without modification.
@@ -637,7 +1210,13 @@ public final class SimpleCache implements Cache {
     long length = span.length;
     long lastTouchTimestamp = System.currentTimeMillis();
     boolean updateFile = false;
-    if (fileIndex != null) {
+    if (isPacked(span)) {
+      try {
+        Assertions.checkNotNull(slabStorage).setLastTouchTimestamp(span, lastTouchTimestamp);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to update slab index with new touch timestamp.");
+      }
+    } else if (fileIndex != null) {
       try {
         fileIndex.set(fileName, length, lastTouchTimestamp);
       } catch (IOException e) {
@@ -666,16 +1245,18 @@ public final class SimpleCache implements Cache {
    * @return The corresponding cache {@link SimpleCacheSpan}.
    */
   private SimpleCacheSpan getSpan(String key, long position) {
+    loadSpans(key, /* indexedFiles= */ null);
     CachedContent cachedContent = contentIndex.get(key);
     if (cachedContent == null) {
       return SimpleCacheSpan.createOpenHole(key, position);
     }
     while (true) {
       SimpleCacheSpan span = cachedContent.getSpan(position);
-      if (span.isCached && span.file.length() != span.length) {
-        // The file has been modified or deleted underneath us. It's likely that other files will
-        // have been modified too, so scan the whole in-memory representation.
-        removeStaleSpans();
+      if (span.isCached && isStale(span)) {
+        // The file has been modified or deleted underneath us. Scan the spans of this key. Scanning
+        // other keys requires their key locks, so their stale spans are removed when they're next
+        // accessed or when the cache is released.
+        removeStaleSpans(cachedContent);
         continue;
       }
       return span;
@@ -689,18 +1270,42 @@ public final class SimpleCache implements Cache {
    */
   private void addSpan(SimpleCacheSpan span) {
     contentIndex.getOrAdd(span.key).addSpan(span);
-    totalSpace += span.length;
+    totalSpace.addAndGet(span.length);
     notifySpanAdded(span);
   }
 
+  /**
+   * Removes a cached span from the in-memory representation. Must be called while holding the key
+   * lock of the span.
+   *
+   * @param span The span to be removed.
+   */
   private void removeSpanInternal(CacheSpan span) {
     CachedContent cachedContent = contentIndex.get(span.key);
-    if (cachedContent == null || !cachedContent.removeSpan(span)) {
+    if (cachedContent == null) {
+      return;
+    }
+    // The evictor may not have been notified yet that the span has been touched, in which case the
+    // span has been replaced by one at the same position with a different file.
+    SimpleCacheSpan cachedSpan = cachedContent.getSpan(span.position);
+    if (!cachedSpan.isCached
+        || cachedSpan.position != span.position
+        || !cachedContent.removeSpan(cachedSpan)) {
       return;
     }
-    totalSpace -= span.length;
-    if (fileIndex != null) {
-      String fileName = span.file.getName();
+    totalSpace.addAndGet(-cachedSpan.length);
+    if (isPacked(cachedSpan)) {
+      try {
+        if (Assertions.checkNotNull(slabStorage).remove(cachedSpan)) {
+          scheduleCompaction(Assertions.checkNotNull(cachedSpan.file));
+        }
+      } catch (IOException e) {
+        // This will leave a stale entry in the slab index. It will be removed next time the cache
+        // is initialized if the slab no longer exists.
+        Log.w(TAG, "Failed to remove slab index entry for: " + cachedSpan.file.getName());
+      }
+    } else if (fileIndex != null) {
+      String fileName = cachedSpan.file.getName();
       try {
         fileIndex.remove(fileName);
       } catch (IOException e) {
@@ -710,7 +1315,7 @@ public final class SimpleCache implements Cache {
       }
     }
     contentIndex.maybeRemove(cachedContent.key);
-    notifySpanRemoved(span);
+    notifySpanRemoved(cachedSpan);
   }
 
   /**
@@ -718,19 +1323,140 @@ public final class SimpleCache implements Cache {
    * underlying file lengths no longer match.
    */
   private void removeStaleSpans() {
-    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
-    for (CachedContent cachedContent : contentIndex.getAll()) {
-      for (CacheSpan span : cachedContent.getSpans()) {
-        if (span.file.length() != span.length) {
-          spansToBeRemoved.add(span);
+    for (String key : contentIndex.getKeys()) {
+      synchronized (getKeyLock(key)) {
+        CachedContent cachedContent = contentIndex.get(key);
+        if (cachedContent != null) {
+          removeStaleSpans(cachedContent);
         }
       }
     }
+    dispatchPendingEvictorEvents();
+  }
+
+  /**
+   * Removes the cached spans of {@code cachedContent} for which the underlying file lengths no
+   * longer match. Must be called while holding the key lock of the content.
+   */
+  private void removeStaleSpans(CachedContent cachedContent) {
+    ArrayList<CacheSpan> spansToBeRemoved = new ArrayList<>();
+    for (CacheSpan span : cachedContent.getSpans()) {
+      if (isStale(span)) {
+        spansToBeRemoved.add(span);
+      }
+    }
     for (int i = 0; i < spansToBeRemoved.size(); i++) {
       removeSpanInternal(spansToBeRemoved.get(i));
     }
   }
 
+  /**
+   * Returns whether a span loaded from its own file is already cached in a slab, which happens if
+   * the cache was released after the span was packed, but before its file was deleted. The file is
+   * then a redundant copy of the packed data. Must be called while holding the key lock of the span
+   * or during initialization.
+   *
+   * @param span The span loaded from its own file.
+   */
+  private boolean isPackedCopy(SimpleCacheSpan span) {
+    @Nullable CachedContent cachedContent = contentIndex.get(span.key);
+    if (cachedContent == null) {
+      return false;
+    }
+    SimpleCacheSpan cachedSpan = cachedContent.getSpan(span.position);
+    return cachedSpan.isCached && cachedSpan.position == span.position && isPacked(cachedSpan);
+  }
+
+  /** Returns whether the data of a cached span is stored in a slab. */
+  private boolean isPacked(CacheSpan span) {
+    return packSmallSpans
+        && CacheSlabStorage.isSlabFile(Assertions.checkNotNull(span.file).getName());
+  }
+
+  /** Returns whether the file of a cached span has been modified or deleted underneath us. */
+  private boolean isStale(CacheSpan span) {
+    long fileLength = Assertions.checkNotNull(span.file).length();
+    return isPacked(span)
+        ? fileLength < span.fileOffset + span.length
+        : fileLength != span.length;
+  }
+
+  /**
+   * Schedules the compaction of a slab on the compaction thread.
+   *
+   * @param slabFile The slab file.
+   */
+  private void scheduleCompaction(File slabFile) {
+    try {
+      Assertions.checkNotNull(compactionExecutor).execute(() -> compactSlab(slabFile));
+    } catch (RejectedExecutionException e) {
+      // The cache is being released.
+    }
+  }
+
+  /**
+   * Moves the spans that remain in a slab to the current slab, after which the slab is deleted.
+   * Called on the compaction thread.
+   *
+   * @param slabFile The slab file.
+   */
+  private void compactSlab(File slabFile) {
+    CacheSlabStorage slabStorage = Assertions.checkNotNull(this.slabStorage);
+    List<CacheSlabStorage.Entry> entries;
+    try {
+      entries = slabStorage.getEntries(slabFile);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to compact slab: " + slabFile, e);
+      slabStorage.onCompactionEnded(slabFile);
+      return;
+    }
+    for (int i = 0; i < entries.size(); i++) {
+      CacheSlabStorage.Entry entry = entries.get(i);
+      @Nullable String key = contentIndex.getKeyForId(entry.id);
+      if (key == null) {
+        continue;
+      }
+      synchronized (getKeyLock(key)) {
+        @Nullable CachedContent cachedContent = contentIndex.get(key);
+        if (cachedContent == null) {
+          continue;
+        }
+        SimpleCacheSpan span = cachedContent.getSpan(entry.position);
+        if (!span.isCached || span.position != entry.position || !slabFile.equals(span.file)) {
+          // The span has been removed since the entries were queried.
+          continue;
+        }
+        SimpleCacheSpan movedSpan;
+        try {
+          movedSpan = slabStorage.move(span, cachedContent.id);
+        } catch (IOException e) {
+          Log.w(TAG, "Failed to compact slab: " + slabFile, e);
+          break;
+        }
+        cachedContent.replaceSpan(span, movedSpan);
+        // The span is reported as touched, since its file has changed.
+        notifySpanTouched(span, movedSpan);
+      }
+      dispatchPendingEvictorEvents();
+    }
+    slabStorage.onCompactionEnded(slabFile);
+  }
+
+  /**
+   * Delivers the evictor callbacks of all span changes made so far. Must not be called while
+   * holding a key lock.
+   *
+   * <p>Callbacks are queued while holding the key lock of the change, so that they're delivered in
+   * the order in which the changes were made to each key. When the evictor removes a span, the
+   * resulting callback is delivered before {@link #removeSpan(CacheSpan)} returns.
+   */
+  private synchronized void dispatchPendingEvictorEvents() {
+    @Nullable Runnable event;
+    while ((event = pendingEvictorEvents.poll()) != null) {
+      event.run();
+    }
+  }
+
   private void notifySpanRemoved(CacheSpan span) {
     ArrayList<Listener> keyListeners = listeners.get(span.key);
     if (keyListeners != null) {
@@ -738,7 +1464,7 @@ public final class SimpleCache implements Cache {
         keyListeners.get(i).onSpanRemoved(this, span);
       }
     }
-    evictor.onSpanRemoved(this, span);
+    pendingEvictorEvents.add(() -> evictor.onSpanRemoved(this, span));
   }
 
   private void notifySpanAdded(SimpleCacheSpan span) {
@@ -748,7 +1474,7 @@ public final class SimpleCache implements Cache {
         keyListeners.get(i).onSpanAdded(this, span);
       }
     }
-    evictor.onSpanAdded(this, span);
+    pendingEvictorEvents.add(() -> evictor.onSpanAdded(this, span));
   }
 
   private void notifySpanTouched(SimpleCacheSpan oldSpan, CacheSpan newSpan) {
@@ -758,7 +1484,7 @@ public final class SimpleCache implements Cache {
         keyListeners.get(i).onSpanTouched(this, oldSpan, newSpan);
       }
     }
-    evictor.onSpanTouched(this, oldSpan, newSpan);
+    pendingEvictorEvents.add(() -> evictor.onSpanTouched(this, oldSpan, newSpan));
   }
 
   /**
@@ -149,6 +149,37 @@ import java.util.regex.Pattern;
     return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
   }
 
+  /**
+   * Creates a cache span whose data is stored in a file that's shared with other spans.
+   *
+   * @param key The cache key.
+   * @param position The position of the {@link CacheSpan} in the original stream.
+   * @param length The length of the {@link CacheSpan}.
+   * @param lastTouchTimestamp The last touch timestamp.
+   * @param file The file in which the data is stored.
+   * @param fileOffset The offset of the data in {@code file}.
+   * @return The span.
+   */
+  public static SimpleCacheSpan createPackedCacheEntry(
+      String key, long position, long length, long lastTouchTimestamp, File file, long fileOffset) {
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file, fileOffset);
+  }
+
+  /**
+   * Returns the key of a cache file created by the current version of {@link SimpleCache}, without
+   * accessing the file.
+   *
+   * @param fileName The name of the cache file.
+   * @param index Cached content index.
+   * @return The key, or null if the file name is not correctly formatted for the current version,
+   *     or if the id is not present in the content index.
+   */
+  @Nullable
+  public static String getKeyForFileName(String fileName, CachedContentIndex index) {
+    Matcher matcher = CACHE_FILE_PATTERN_V3.matcher(fileName);
+    return matcher.matches() ? index.getKeyForId(Integer.parseInt(matcher.group(1))) : null;
+  }
+
   /**
    * Upgrades the cache file if it is created by an earlier version of {@link SimpleCache}.
    *
@@ -201,6 +232,19 @@ import java.util.regex.Pattern;
     super(key, position, length, lastTouchTimestamp, file);
   }
 
+  /**
+   * @param key The cache key.
+   * @param position The position of the {@link CacheSpan} in the original stream.
+   * @param length The length of the {@link CacheSpan}.
+   * @param lastTouchTimestamp The last touch timestamp.
+   * @param file The file in which the data of this {@link CacheSpan} is stored.
+   * @param fileOffset The offset of the data in {@code file}.
+   */
+  private SimpleCacheSpan(
+      String key, long position, long length, long lastTouchTimestamp, File file, long fileOffset) {
+    super(key, position, length, lastTouchTimestamp, file, fileOffset);
+  }
+
   /**
    * Returns a copy of this CacheSpan with a new file and last touch timestamp.
    *
@@ -211,7 +255,20 @@ import java.util.regex.Pattern;
    */
   public SimpleCacheSpan copyWithFileAndLastTouchTimestamp(File file, long lastTouchTimestamp) {
     Assertions.checkState(isCached);
-    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file);
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file, fileOffset);
+  }
+
+  /**
+   * Returns a copy of this CacheSpan whose data is stored at a different location.
+   *
+   * @param file The new file.
+   * @param fileOffset The offset of the data in the new file.
+   * @return A copy with the new file and file offset.
+   * @throws IllegalStateException If called on a non-cached span (i.e. {@link #isCached} is false).
+   */
+  public SimpleCacheSpan copyWithFile(File file, long fileOffset) {
+    Assertions.checkState(isCached);
+    return new SimpleCacheSpan(key, position, length, lastTouchTimestamp, file, fileOffset);
   }
 
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import com.google.android.exoplayer2.util.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Evicts cache files once their content has expired, and delegates all other evictions to another
+ * {@link CacheEvictor}.
+ *
+ * <p>The expiry time of content is read from its {@link ContentMetadata} (see {@link
+ * ContentMetadata#getExpiryTimeMs(ContentMetadata)}) whenever a file of the content is added or
+ * touched. Files of content without an expiry time expire a default time to live after they were
+ * last touched, if one is set. Expired files are removed when a writer starts writing to the cache,
+ * when a file is added to it and when a file is touched. A touched file is being read, so it's not
+ * removed by its own touch. If it has already expired, its expiry time isn't extended by the touch,
+ * so that it's removed by the next removal of expired files.
+ */
+public final class TimeToLiveCacheEvictor implements CacheEvictor {
+
+  private final CacheEvictor evictor;
+  private final long defaultTimeToLiveMs;
+  private final Clock clock;
+  private final HashMap<String, Entry> entries;
+  private final TreeSet<Entry> entriesByExpiryTime;
+
+  /**
+   * Creates an evictor that only removes files of content with an expiry time.
+   *
+   * @param evictor The {@link CacheEvictor} to which all other evictions are delegated.
+   */
+  public TimeToLiveCacheEvictor(CacheEvictor evictor) {
+    this(evictor, /* defaultTimeToLiveMs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * @param evictor The {@link CacheEvictor} to which all other evictions are delegated.
+   * @param defaultTimeToLiveMs The time after which files of content without an expiry time
+   *     expire, counted from the time they were last touched, or {@link C#TIME_UNSET} if such files
+   *     never expire.
+   */
+  public TimeToLiveCacheEvictor(CacheEvictor evictor, long defaultTimeToLiveMs) {
+    this(evictor, defaultTimeToLiveMs, Clock.DEFAULT);
+  }
+
+  /**
+   * @param evictor The {@link CacheEvictor} to which all other evictions are delegated.
+   * @param defaultTimeToLiveMs The time after which files of content without an expiry time
+   *     expire, counted from the time they were last touched, or {@link C#TIME_UNSET} if such files
+   *     never expire.
+   * @param clock The {@link Clock} used to determine whether content has expired. Should always be
+   *     {@link Clock#DEFAULT}, except for testing.
+   */
+  public TimeToLiveCacheEvictor(CacheEvictor evictor, long defaultTimeToLiveMs, Clock clock) {
+    this.evictor = evictor;
+    this.defaultTimeToLiveMs = defaultTimeToLiveMs;
+    this.clock = clock;
+    entries = new HashMap<>();
+    entriesByExpiryTime = new TreeSet<>(TimeToLiveCacheEvictor::compare);
+  }
+
+  @Override
+  public boolean requiresCacheSpanTouches() {
+    return evictor.requiresCacheSpanTouches() || defaultTimeToLiveMs != C.TIME_UNSET;
+  }
+
+  @Override
+  public void onCacheInitialized() {
+    evictor.onCacheInitialized();
+  }
+
+  @Override
+  public void onStartFile(Cache cache, String key, long position, long length) {
+    removeExpiredSpans(cache, /* spanBeingRead= */ null);
+    evictor.onStartFile(cache, key, position, length);
+  }
+
+  @Override
+  public void onSpanAdded(Cache cache, CacheSpan span) {
+    addEntry(cache, span);
+    evictor.onSpanAdded(cache, span);
+    removeExpiredSpans(cache, /* spanBeingRead= */ null);
+  }
+
+  @Override
+  public void onSpanRemoved(Cache cache, CacheSpan span) {
+    removeEntry(span);
+    evictor.onSpanRemoved(cache, span);
+  }
+
+  @Override
+  public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+    @Nullable Entry oldEntry = removeEntry(oldSpan);
+    if (oldEntry != null && oldEntry.expiryTimeMs <= clock.currentTimeMillis()) {
+      addEntry(newSpan, oldEntry.expiryTimeMs);
+    } else {
+      addEntry(cache, newSpan);
+    }
+    evictor.onSpanTouched(cache, oldSpan, newSpan);
+    removeExpiredSpans(cache, /* spanBeingRead= */ newSpan);
+  }
+
+  private void addEntry(Cache cache, CacheSpan span) {
+    long expiryTimeMs = ContentMetadata.getExpiryTimeMs(cache.getContentMetadata(span.key));
+    if (expiryTimeMs == C.TIME_UNSET && defaultTimeToLiveMs != C.TIME_UNSET) {
+      expiryTimeMs = span.lastTouchTimestamp + defaultTimeToLiveMs;
+    }
+    if (expiryTimeMs != C.TIME_UNSET) {
+      addEntry(span, expiryTimeMs);
+    }
+  }
+
+  private void addEntry(CacheSpan span, long expiryTimeMs) {
+    Entry entry = new Entry(span, expiryTimeMs);
+    entries.put(getId(span), entry);
+    entriesByExpiryTime.add(entry);
+  }
+
+  @Nullable
+  private Entry removeEntry(CacheSpan span) {
+    @Nullable Entry entry = entries.remove(getId(span));
+    if (entry != null) {
+      entriesByExpiryTime.remove(entry);
+    }
+    return entry;
+  }
+
+  /**
+   * Removes the spans that have expired.
+   *
+   * @param cache The {@link Cache} from which spans are removed.
+   * @param spanBeingRead A span that's being read, which isn't removed even if it has expired, or
+   *     null.
+   */
+  private void removeExpiredSpans(Cache cache, @Nullable CacheSpan spanBeingRead) {
+    long nowMs = clock.currentTimeMillis();
+    @Nullable String spanBeingReadId = spanBeingRead == null ? null : getId(spanBeingRead);
+    ArrayList<CacheSpan> expiredSpans = new ArrayList<>();
+    for (Entry entry : entriesByExpiryTime) {
+      if (entry.expiryTimeMs > nowMs) {
+        break;
+      }
+      if (!getId(entry.span).equals(spanBeingReadId)) {
+        expiredSpans.add(entry.span);
+      }
+    }
+    for (int i = 0; i < expiredSpans.size(); i++) {
+      CacheSpan span = expiredSpans.get(i);
+      // Stop tracking the span first, so that a failed removal isn't retried indefinitely.
+      removeEntry(span);
+      try {
+        cache.removeSpan(span);
+      } catch (CacheException e) {
+        // do nothing.
+      }
+    }
+  }
+
+  private static String getId(CacheSpan span) {
+    return span.key + "." + span.position;
+  }
+
+  private static int compare(Entry lhs, Entry rhs) {
+    if (lhs.expiryTimeMs == rhs.expiryTimeMs) {
+      // Use the standard compareTo method as a tie-break.
+      return lhs.span.compareTo(rhs.span);
+    }
+    return lhs.expiryTimeMs < rhs.expiryTimeMs ? -1 : 1;
+  }
+
+  private static final class Entry {
+
+    public final CacheSpan span;
+    public final long expiryTimeMs;
+
+    public Entry(CacheSpan span, long expiryTimeMs) {
+      this.span = span;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+}
@@ -30,6 +30,17 @@ public interface Clock {
    */
   Clock DEFAULT = new SystemClock();
 
+  /**
+   * Returns the current wall-clock time in milliseconds.
+   *
+   * <p>The default implementation returns {@link System#currentTimeMillis()}.
+   *
+   * @see System#currentTimeMillis()
+   */
+  default long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
   /** @see android.os.SystemClock#elapsedRealtime() */
   long elapsedRealtime();
 
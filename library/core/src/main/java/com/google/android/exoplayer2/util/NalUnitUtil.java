@@ -123,6 +123,14 @@ public final class NalUnitUtil {
   private static final int H264_NAL_UNIT_TYPE_SPS = 7; // Sequence parameter set
   private static final int H265_NAL_UNIT_TYPE_PREFIX_SEI = 39;
 
+  /**
+   * The minimum number of candidate positions for which a search for a three byte sequence reads
+   * the data a word at a time. Below this, the cost of setting up the word view isn't recovered.
+   */
+  private static final int MIN_WORD_SEARCH_LENGTH = 32;
+  private static final long WORD_LOW_BITS = 0x0101010101010101L;
+  private static final long WORD_HIGH_BITS = 0x8080808080808080L;
+
   private static final Object scratchEscapePositionsLock = new Object();
 
   /**
@@ -446,6 +454,19 @@ public final class NalUnitUtil {
     }
 
     int limit = endOffset - 1;
+    if (length - 3 >= MIN_WORD_SEARCH_LENGTH) {
+      // As in the loop below, a prefix ending with the last byte of the data isn't found here. It's
+      // detected through prefixFlags by the next call instead.
+      int nalUnitOffset =
+          findZeroZeroPrefixedByte(data, startOffset, endOffset - 3, /* thirdByte= */ 1);
+      if (nalUnitOffset < endOffset - 3) {
+        if (prefixFlags != null) {
+          clearPrefixFlags(prefixFlags);
+        }
+        return nalUnitOffset;
+      }
+      limit = startOffset;
+    }
     // We're looking for the NAL unit start code prefix 0x000001. The value of i tracks the index of
     // the third byte.
     for (int i = startOffset + 2; i < limit; i += 3) {
@@ -492,12 +513,50 @@ public final class NalUnitUtil {
   }
 
   private static int findNextUnescapeIndex(byte[] bytes, int offset, int limit) {
-    for (int i = offset; i < limit - 2; i++) {
-      if (bytes[i] == 0x00 && bytes[i + 1] == 0x00 && bytes[i + 2] == 0x03) {
+    int toOffset = limit - 2;
+    if (toOffset <= offset) {
+      return limit;
+    }
+    int index = findZeroZeroPrefixedByte(bytes, offset, toOffset, /* thirdByte= */ 0x03);
+    return index < toOffset ? index : limit;
+  }
+
+  /**
+   * Returns the offset of the first sequence of bytes [0, 0, {@code thirdByte}] that starts at an
+   * offset in [{@code fromOffset}, {@code toOffset}), or {@code toOffset} if there is none. The
+   * array must hold at least {@code toOffset + 2} bytes.
+   *
+   * <p>When there are enough candidate offsets, the data is read eight bytes at a time. A sequence
+   * can only start at a zero byte, so words without zero bytes are skipped without inspecting their
+   * individual bytes.
+   */
+  private static int findZeroZeroPrefixedByte(
+      byte[] data, int fromOffset, int toOffset, int thirdByte) {
+    int offset = fromOffset;
+    if (toOffset - fromOffset >= MIN_WORD_SEARCH_LENGTH) {
+      ByteBuffer words = ByteBuffer.wrap(data);
+      for (; offset + 8 <= toOffset; offset += 8) {
+        long word = words.getLong(offset);
+        // Non-zero if and only if one of the bytes of the word is zero.
+        if (((word - WORD_LOW_BITS) & ~word & WORD_HIGH_BITS) != 0) {
+          int index = findZeroZeroPrefixedByteBytewise(data, offset, offset + 8, thirdByte);
+          if (index < offset + 8) {
+            return index;
+          }
+        }
+      }
+    }
+    return findZeroZeroPrefixedByteBytewise(data, offset, toOffset, thirdByte);
+  }
+
+  private static int findZeroZeroPrefixedByteBytewise(
+      byte[] data, int fromOffset, int toOffset, int thirdByte) {
+    for (int i = fromOffset; i < toOffset; i++) {
+      if (data[i] == 0 && data[i + 1] == 0 && data[i + 2] == thirdByte) {
         return i;
       }
     }
-    return limit;
+    return toOffset;
   }
 
   private static void skipScalingList(ParsableNalUnitBitArray bitArray, int size) {
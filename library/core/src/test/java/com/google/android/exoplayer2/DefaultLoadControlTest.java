@@ -20,6 +20,8 @@ import static com.google.common.truth.Truth.assertThat;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.DefaultLoadControl.Builder;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.SharedMemoryBudget;
+import com.google.android.exoplayer2.upstream.SharedMemoryBudget.BudgetedAllocator;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -111,6 +113,29 @@ public class DefaultLoadControlTest {
         .isTrue();
   }
 
+  @Test
+  public void testShouldNotContinueLoading_ifSharedBudgetReached() {
+    SharedMemoryBudget budget =
+        new SharedMemoryBudget(
+            /* totalBudgetBytes= */ TARGET_BUFFER_BYTES, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+    BudgetedAllocator otherAllocator = budget.register(C.PRIORITY_PLAYBACK);
+    otherAllocator.setTargetBufferSize(TARGET_BUFFER_BYTES);
+    BudgetedAllocator budgetedAllocator = budget.register(C.PRIORITY_PLAYBACK);
+    builder.setAllocator(budgetedAllocator);
+    builder.setTargetBufferBytes(TARGET_BUFFER_BYTES);
+    loadControl = builder.createDefaultLoadControl();
+    loadControl.onTracksSelected(new Renderer[0], null, null);
+
+    // The budget is split evenly, so one allocation exhausts this player's share.
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isTrue();
+    budgetedAllocator.allocate();
+    assertThat(loadControl.shouldContinueLoading(/* bufferedDurationUs= */ 0, SPEED)).isFalse();
+    assertThat(
+            loadControl.shouldStartPlayback(
+                /* bufferedDurationUs= */ 0, SPEED, /* rebuffering= */ false))
+        .isTrue();
+  }
+
   private void createDefaultLoadControl() {
     builder.setAllocator(allocator);
     builder.setTargetBufferBytes(TARGET_BUFFER_BYTES);
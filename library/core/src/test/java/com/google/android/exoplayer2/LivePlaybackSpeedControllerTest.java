@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.SinglePeriodTimeline;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.testutil.StubExoPlayer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link LivePlaybackSpeedController}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class LivePlaybackSpeedControllerTest {
+
+  private static final long NOW_MS = 100_000;
+  private static final long WINDOW_START_TIME_MS = 60_000;
+  private static final long WINDOW_DURATION_US = 40 * C.MICROS_PER_SECOND;
+  // The default position is 3 seconds before the end of the window.
+  private static final long WINDOW_DEFAULT_POSITION_US = 37 * C.MICROS_PER_SECOND;
+  // The position at which the live offset equals the offset of the default position.
+  private static final long TARGET_POSITION_MS = 37_000;
+
+  private FakeClock clock;
+  private FakePlayer player;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ NOW_MS);
+    player = new FakePlayer();
+    player.timeline = createLiveTimeline();
+  }
+
+  @Test
+  public void getLiveOffsets_returnOffsetsFromManifestAndWallClock() {
+    LivePlaybackSpeedController controller =
+        createController(new LivePlaybackSpeedController.Builder());
+    player.positionMs = 35_000;
+
+    assertThat(controller.getTargetLiveOffsetUs()).isEqualTo(3 * C.MICROS_PER_SECOND);
+    assertThat(controller.getCurrentLiveOffsetUs()).isEqualTo(5 * C.MICROS_PER_SECOND);
+  }
+
+  @Test
+  public void start_atTargetLiveOffset_keepsPlaybackParameters() {
+    player.positionMs = TARGET_POSITION_MS;
+
+    startController(new LivePlaybackSpeedController.Builder());
+
+    assertThat(player.playbackParameters.speed).isEqualTo(1f);
+    assertThat(player.playbackParametersChangeCount).isEqualTo(0);
+  }
+
+  @Test
+  public void start_behindTargetLiveOffset_speedsUpWithinRange() {
+    player.positionMs = TARGET_POSITION_MS - 200;
+
+    startController(new LivePlaybackSpeedController.Builder());
+
+    // Proportional to the 0.2 second error.
+    assertThat(player.playbackParameters.speed).isEqualTo(1.02f);
+
+    player.positionMs = TARGET_POSITION_MS - 2000;
+    advanceTimeAndIdle(LivePlaybackSpeedController.DEFAULT_UPDATE_INTERVAL_MS);
+
+    // The live offset is now 3 seconds too large, which is limited to the maximum speed.
+    assertThat(player.playbackParameters.speed)
+        .isEqualTo(LivePlaybackSpeedController.DEFAULT_MAX_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void start_aheadOfTargetLiveOffset_slowsDownWithinRange() {
+    player.positionMs = TARGET_POSITION_MS + 500;
+
+    startController(new LivePlaybackSpeedController.Builder());
+
+    assertThat(player.playbackParameters.speed)
+        .isEqualTo(LivePlaybackSpeedController.DEFAULT_MIN_PLAYBACK_SPEED);
+  }
+
+  @Test
+  public void start_withTargetLiveOffsetOverride_usesOverride() {
+    player.positionMs = TARGET_POSITION_MS;
+
+    LivePlaybackSpeedController controller =
+        startController(
+            new LivePlaybackSpeedController.Builder()
+                .setTargetLiveOffsetOverrideMs(2900)
+                .setPlaybackSpeedRange(/* minPlaybackSpeed= */ 0.5f, /* maxPlaybackSpeed= */ 2f));
+
+    assertThat(controller.getTargetLiveOffsetUs()).isEqualTo(2_900_000);
+    assertThat(player.playbackParameters.speed).isEqualTo(1.01f);
+  }
+
+  @Test
+  public void update_whenLiveOffsetReachesTarget_resetsPlaybackSpeed() {
+    player.positionMs = TARGET_POSITION_MS - 500;
+    startController(new LivePlaybackSpeedController.Builder());
+    assertThat(player.playbackParameters.speed).isEqualTo(1.03f);
+
+    // Playback advances faster than the wall clock until the target is reached.
+    player.positionMs = TARGET_POSITION_MS + 1000;
+    advanceTimeAndIdle(/* timeMs= */ 1000);
+
+    assertThat(player.playbackParameters.speed).isEqualTo(1f);
+  }
+
+  @Test
+  public void pause_resetsPlaybackSpeed() {
+    player.positionMs = TARGET_POSITION_MS - 500;
+    LivePlaybackSpeedController controller =
+        startController(new LivePlaybackSpeedController.Builder());
+
+    player.playWhenReady = false;
+    controller.onIsPlayingChanged(/* isPlaying= */ false);
+
+    assertThat(player.playbackParameters.speed).isEqualTo(1f);
+  }
+
+  @Test
+  public void stop_resetsPlaybackSpeedAndStopsUpdates() {
+    player.positionMs = TARGET_POSITION_MS - 500;
+    LivePlaybackSpeedController controller =
+        startController(new LivePlaybackSpeedController.Builder());
+
+    controller.stop();
+    advanceTimeAndIdle(LivePlaybackSpeedController.DEFAULT_UPDATE_INTERVAL_MS);
+
+    assertThat(player.playbackParameters.speed).isEqualTo(1f);
+    assertThat(player.playbackParametersChangeCount).isEqualTo(2);
+    assertThat(player.listeners).isEmpty();
+  }
+
+  @Test
+  public void start_withNonLiveWindow_keepsPlaybackParameters() {
+    player.timeline =
+        new SinglePeriodTimeline(
+            WINDOW_DURATION_US,
+            /* isSeekable= */ true,
+            /* isDynamic= */ false,
+            /* isLive= */ false);
+    player.positionMs = 0;
+
+    LivePlaybackSpeedController controller =
+        startController(new LivePlaybackSpeedController.Builder());
+
+    assertThat(controller.getTargetLiveOffsetUs()).isEqualTo(C.TIME_UNSET);
+    assertThat(controller.getCurrentLiveOffsetUs()).isEqualTo(C.TIME_UNSET);
+    assertThat(player.playbackParametersChangeCount).isEqualTo(0);
+  }
+
+  private LivePlaybackSpeedController createController(
+      LivePlaybackSpeedController.Builder builder) {
+    return builder.setClock(clock).build(player);
+  }
+
+  private LivePlaybackSpeedController startController(
+      LivePlaybackSpeedController.Builder builder) {
+    LivePlaybackSpeedController controller = createController(builder);
+    controller.start();
+    shadowOf(Looper.getMainLooper()).idle();
+    return controller;
+  }
+
+  private void advanceTimeAndIdle(long timeMs) {
+    clock.advanceTime(timeMs);
+    shadowOf(Looper.getMainLooper()).idle();
+  }
+
+  private static Timeline createLiveTimeline() {
+    return new SinglePeriodTimeline(
+        /* presentationStartTimeMs= */ WINDOW_START_TIME_MS,
+        WINDOW_START_TIME_MS,
+        /* periodDurationUs= */ C.TIME_UNSET,
+        WINDOW_DURATION_US,
+        /* windowPositionInPeriodUs= */ 0,
+        WINDOW_DEFAULT_POSITION_US,
+        /* isSeekable= */ true,
+        /* isDynamic= */ true,
+        /* isLive= */ true,
+        /* manifest= */ null,
+        /* tag= */ null);
+  }
+
+  /** Fake player exposing a fixed timeline and position. */
+  private static final class FakePlayer extends StubExoPlayer {
+
+    public final List<Player.EventListener> listeners;
+
+    public Timeline timeline;
+    public long positionMs;
+    public boolean playWhenReady;
+    public PlaybackParameters playbackParameters;
+    public int playbackParametersChangeCount;
+
+    public FakePlayer() {
+      listeners = new ArrayList<>();
+      timeline = Timeline.EMPTY;
+      playWhenReady = true;
+      playbackParameters = PlaybackParameters.DEFAULT;
+    }
+
+    @Override
+    public Looper getApplicationLooper() {
+      return Looper.getMainLooper();
+    }
+
+    @Override
+    public void addListener(Player.EventListener listener) {
+      listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(Player.EventListener listener) {
+      listeners.remove(listener);
+    }
+
+    @Override
+    public int getPlaybackState() {
+      return Player.STATE_READY;
+    }
+
+    @Override
+    public int getPlaybackSuppressionReason() {
+      return Player.PLAYBACK_SUPPRESSION_REASON_NONE;
+    }
+
+    @Override
+    public boolean getPlayWhenReady() {
+      return playWhenReady;
+    }
+
+    @Override
+    public void setPlaybackParameters(PlaybackParameters playbackParameters) {
+      this.playbackParameters = playbackParameters;
+      playbackParametersChangeCount++;
+    }
+
+    @Override
+    public PlaybackParameters getPlaybackParameters() {
+      return playbackParameters;
+    }
+
+    @Override
+    public Timeline getCurrentTimeline() {
+      return timeline;
+    }
+
+    @Override
+    public int getCurrentWindowIndex() {
+      return 0;
+    }
+
+    @Override
+    public long getCurrentPosition() {
+      return positionMs;
+    }
+
+    @Override
+    public boolean isPlayingAd() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultSeekIndexStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultSeekIndexStoreTest {
+
+  private ExoDatabaseProvider databaseProvider;
+  private DefaultSeekIndexStore seekIndexStore;
+
+  @Before
+  public void setUp() {
+    databaseProvider = new ExoDatabaseProvider(ApplicationProvider.getApplicationContext());
+    seekIndexStore = new DefaultSeekIndexStore(databaseProvider);
+  }
+
+  @After
+  public void tearDown() {
+    databaseProvider.close();
+  }
+
+  @Test
+  public void get_nonExistingKey_returnsNull() throws IOException {
+    assertThat(seekIndexStore.get("non existing key")).isNull();
+  }
+
+  @Test
+  public void putAndGet_returnsEqualSeekIndex() throws IOException {
+    ChunkIndex seekIndex =
+        new ChunkIndex(
+            /* sizes= */ new int[] {100, 200, 300},
+            /* offsets= */ new long[] {10, 110, 310},
+            /* durationsUs= */ new long[] {1000, 2000, 3000},
+            /* timesUs= */ new long[] {0, 1000, 3000});
+
+    seekIndexStore.put("key", seekIndex);
+    ChunkIndex restoredSeekIndex = seekIndexStore.get("key");
+
+    assertThat(restoredSeekIndex.sizes).isEqualTo(seekIndex.sizes);
+    assertThat(restoredSeekIndex.offsets).isEqualTo(seekIndex.offsets);
+    assertThat(restoredSeekIndex.durationsUs).isEqualTo(seekIndex.durationsUs);
+    assertThat(restoredSeekIndex.timesUs).isEqualTo(seekIndex.timesUs);
+    assertThat(restoredSeekIndex.getDurationUs()).isEqualTo(6000);
+  }
+
+  @Test
+  public void put_existingKey_replacesSeekIndex() throws IOException {
+    seekIndexStore.put("key", createSeekIndex(/* offset= */ 1));
+    seekIndexStore.put("key", createSeekIndex(/* offset= */ 2));
+
+    assertThat(seekIndexStore.get("key").offsets).isEqualTo(new long[] {2});
+  }
+
+  @Test
+  public void get_afterReopeningDatabase_returnsSeekIndex() throws IOException {
+    seekIndexStore.put("key", createSeekIndex(/* offset= */ 1));
+
+    DefaultSeekIndexStore reopenedSeekIndexStore = new DefaultSeekIndexStore(databaseProvider);
+
+    assertThat(reopenedSeekIndexStore.get("key").offsets).isEqualTo(new long[] {1});
+  }
+
+  @Test
+  public void get_storedLengthExceedsData_returnsNull() throws IOException {
+    seekIndexStore.put("key", createSeekIndex(/* offset= */ 1));
+    ContentValues values = new ContentValues();
+    // An entry count of Integer.MAX_VALUE, without any entries.
+    values.put("seek_index", new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+    databaseProvider
+        .getWritableDatabase()
+        .update(
+            DatabaseProvider.TABLE_PREFIX + "SeekIndices",
+            values,
+            /* whereClause= */ null,
+            /* whereArgs= */ null);
+
+    assertThat(seekIndexStore.get("key")).isNull();
+  }
+
+  private static ChunkIndex createSeekIndex(long offset) {
+    return new ChunkIndex(
+        /* sizes= */ new int[] {1},
+        /* offsets= */ new long[] {offset},
+        /* durationsUs= */ new long[] {1},
+        /* timesUs= */ new long[] {0});
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.android.exoplayer2.C.RESULT_END_OF_INPUT;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.upstream.StatsDataSource;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Test for {@link MappedExtractorInput}. */
+@RunWith(AndroidJUnit4.class)
+public final class MappedExtractorInputTest {
+
+  private static final byte[] TEST_DATA = new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8};
+
+  @Test
+  public void testInitialPosition() {
+    MappedExtractorInput input =
+        new MappedExtractorInput(ByteBuffer.wrap(TEST_DATA), 123, C.LENGTH_UNSET);
+    assertThat(input.getPosition()).isEqualTo(123);
+    assertThat(input.getPeekPosition()).isEqualTo(123);
+  }
+
+  @Test
+  public void testReadFromBufferPosition() throws Exception {
+    ByteBuffer data = ByteBuffer.wrap(TEST_DATA);
+    data.position(2);
+    MappedExtractorInput input = new MappedExtractorInput(data, 2, TEST_DATA.length);
+    byte[] target = new byte[TEST_DATA.length - 2];
+
+    input.readFully(target, 0, target.length);
+
+    assertThat(target).isEqualTo(Arrays.copyOfRange(TEST_DATA, 2, TEST_DATA.length));
+    assertThat(input.getPosition()).isEqualTo(TEST_DATA.length);
+    // The position of the buffer passed to the input is unchanged.
+    assertThat(data.position()).isEqualTo(2);
+  }
+
+  @Test
+  public void testReadEndOfInput() {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[TEST_DATA.length + 1];
+
+    assertThat(input.read(target, 0, target.length)).isEqualTo(TEST_DATA.length);
+    assertThat(input.read(target, 0, 1)).isEqualTo(RESULT_END_OF_INPUT);
+    assertThat(input.read(target, 0, 0)).isEqualTo(0);
+    assertThat(input.getPosition()).isEqualTo(TEST_DATA.length);
+  }
+
+  @Test
+  public void testReadFullyTooMuch() {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[TEST_DATA.length + 1];
+    try {
+      input.readFully(target, 0, TEST_DATA.length + 1, /* allowEndOfInput= */ true);
+      fail();
+    } catch (EOFException e) {
+      // Expected.
+    }
+    assertThat(input.getPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void testPeekThenRead() throws Exception {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[TEST_DATA.length];
+
+    input.advancePeekPosition(3);
+    input.peekFully(target, 0, 3);
+    assertThat(Arrays.copyOf(target, 3)).isEqualTo(Arrays.copyOfRange(TEST_DATA, 3, 6));
+    assertThat(input.getPeekPosition()).isEqualTo(6);
+    assertThat(input.getPosition()).isEqualTo(0);
+
+    // Reading resets the peek position to the read position.
+    input.readFully(target, 0, 4);
+    assertThat(Arrays.copyOf(target, 4)).isEqualTo(Arrays.copyOf(TEST_DATA, 4));
+    assertThat(input.getPosition()).isEqualTo(4);
+    assertThat(input.getPeekPosition()).isEqualTo(4);
+  }
+
+  @Test
+  public void testSkipAndResetPeekPosition() throws Exception {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[1];
+
+    input.skipFully(5);
+    input.peekFully(target, 0, 1);
+    input.resetPeekPosition();
+
+    assertThat(target[0]).isEqualTo(TEST_DATA[5]);
+    assertThat(input.getPeekPosition()).isEqualTo(5);
+    assertThat(input.skip(TEST_DATA.length)).isEqualTo(TEST_DATA.length - 5);
+    assertThat(input.skip(1)).isEqualTo(RESULT_END_OF_INPUT);
+  }
+
+  @Test
+  public void testPeekFullyAtEndThenReadEndOfInput() throws Exception {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[TEST_DATA.length];
+
+    assertThat(input.peekFully(target, 0, TEST_DATA.length, false)).isTrue();
+    assertThat(input.peekFully(target, 0, 1, true)).isFalse();
+    assertThat(input.readFully(target, 0, TEST_DATA.length, false)).isTrue();
+    assertThat(input.readFully(target, 0, 1, true)).isFalse();
+    assertThat(input.skipFully(1, true)).isFalse();
+  }
+
+  @Test
+  public void testPeekFullyAcrossEndOfInputWithAllowEndOfInputFails() throws Exception {
+    MappedExtractorInput input = createMappedExtractorInput();
+    byte[] target = new byte[TEST_DATA.length];
+
+    assertThat(input.peekFully(target, 0, TEST_DATA.length - 1, true)).isTrue();
+    try {
+      input.peekFully(target, 0, 2, true);
+      fail();
+    } catch (EOFException e) {
+      // Expected.
+    }
+  }
+
+  @Test
+  public void testReadAndSkipReportConsumedDataToDataSource() throws Exception {
+    StatsDataSource dataSource = new StatsDataSource(new FakeDataSource());
+    MappedExtractorInput input =
+        new MappedExtractorInput(
+            ByteBuffer.wrap(TEST_DATA),
+            dataSource,
+            /* position= */ 0,
+            TEST_DATA.length,
+            /* endOfDataIsEndOfInput= */ true);
+    byte[] target = new byte[TEST_DATA.length];
+
+    input.peekFully(target, 0, TEST_DATA.length);
+    assertThat(dataSource.getBytesRead()).isEqualTo(0);
+    input.readFully(target, 0, 3);
+    input.skipFully(2);
+    assertThat(dataSource.getBytesRead()).isEqualTo(5);
+  }
+
+  private static MappedExtractorInput createMappedExtractorInput() {
+    return new MappedExtractorInput(ByteBuffer.wrap(TEST_DATA), 0, TEST_DATA.length);
+  }
+}
@@ -15,8 +15,18 @@
  */
 package com.google.android.exoplayer2.extractor.mkv;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -24,9 +34,11 @@ import org.junit.runner.RunWith;
 @RunWith(AndroidJUnit4.class)
 public final class MatroskaExtractorTest {
 
+  private static final String SAMPLE_FILE = "mkv/sample.mkv";
+
   @Test
   public void testMkvSample() throws Exception {
-    ExtractorAsserts.assertBehavior(MatroskaExtractor::new, "mkv/sample.mkv");
+    ExtractorAsserts.assertBehavior(MatroskaExtractor::new, SAMPLE_FILE);
   }
 
   @Test
@@ -39,4 +51,48 @@ public final class MatroskaExtractorTest {
   public void testWebmSubsampleEncryptionWithAltrefFrames() throws Exception {
     ExtractorAsserts.assertBehavior(MatroskaExtractor::new, "mkv/subsample_encrypted_altref.webm");
   }
+
+  @Test
+  public void testRestoredSeekIndexIsUsedWithoutReadingCues() throws Exception {
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    MatroskaExtractor indexingExtractor = new MatroskaExtractor();
+    FakeExtractorOutput indexingOutput =
+        TestUtil.extractAllSamplesFromFile(
+            indexingExtractor, ApplicationProvider.getApplicationContext(), SAMPLE_FILE);
+    ChunkIndex seekIndex = indexingExtractor.getSeekIndex();
+    assertThat(seekIndex).isNotNull();
+
+    MatroskaExtractor extractor = new MatroskaExtractor();
+    FakeExtractorOutput output = new FakeExtractorOutput();
+    extractor.init(output);
+    extractor.setRestoredSeekIndex(seekIndex);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    PositionHolder positionHolder = new PositionHolder();
+    while (output.seekMap == null) {
+      // The Cues are at the end of the file, so reading them would require a seek.
+      assertThat(extractor.read(input, positionHolder)).isEqualTo(Extractor.RESULT_CONTINUE);
+    }
+    SeekMap seekMap = output.seekMap;
+    assertThat(seekMap).isSameInstanceAs(seekIndex);
+    assertThat(seekMap.getDurationUs()).isEqualTo(indexingOutput.seekMap.getDurationUs());
+
+    // Seek to the last cue point, and read its first sample.
+    long seekTimeUs = seekIndex.timesUs[seekIndex.length - 1];
+    SeekMap.SeekPoints seekPoints = seekMap.getSeekPoints(seekTimeUs);
+    assertThat(seekPoints.first.position).isEqualTo(seekIndex.offsets[seekIndex.length - 1]);
+    extractor.seek(seekPoints.first.position, seekTimeUs);
+    input.setPosition((int) seekPoints.first.position);
+    output.clearTrackOutputs();
+    while (getSampleCount(output) == 0) {
+      assertThat(extractor.read(input, positionHolder)).isEqualTo(Extractor.RESULT_CONTINUE);
+    }
+  }
+
+  private static int getSampleCount(FakeExtractorOutput output) {
+    int sampleCount = 0;
+    for (int i = 0; i < output.trackOutputs.size(); i++) {
+      sampleCount += output.trackOutputs.valueAt(i).getSampleCount();
+    }
+    return sampleCount;
+  }
 }
@@ -15,8 +15,17 @@
  */
 package com.google.android.exoplayer2.extractor.mp4;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.annotation.Nullable;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -42,4 +51,171 @@ public final class Mp4ExtractorTest {
   public void testMp4SampleWithAc4Track() throws Exception {
     ExtractorAsserts.assertBehavior(Mp4Extractor::new, "mp4/sample_ac4.mp4");
   }
+
+  @Test
+  public void testMp4SampleWithCompactSampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () -> new Mp4Extractor(Mp4Extractor.FLAG_COMPACT_SAMPLE_TABLES), "mp4/sample.mp4");
+  }
+
+  @Test
+  public void testMp4SampleWithAc4TrackAndCompactSampleTables() throws Exception {
+    ExtractorAsserts.assertBehavior(
+        () -> new Mp4Extractor(Mp4Extractor.FLAG_COMPACT_SAMPLE_TABLES), "mp4/sample_ac4.mp4");
+  }
+
+  @Test
+  public void testCalculateAccumulatedSampleSizeMatchesCalculatedSampleSizes() {
+    TrackSampleTable[] sampleTables =
+        new TrackSampleTable[] {
+          createCompactSampleTable(
+              /* timescale= */ 1000,
+              /* sampleDurations= */ new int[] {20, 20, 20, 20, 20, 20, 20, 20, 20, 20},
+              /* compositionOffsets= */ null),
+          // Shares some timestamps with the first track.
+          createCompactSampleTable(
+              /* timescale= */ 1000,
+              /* sampleDurations= */ new int[] {30, 30, 30, 30, 30, 30, 30},
+              /* compositionOffsets= */ new int[] {10, 10, 10, 10, 10, 10, 10}),
+          // Has samples sharing a timestamp within the track.
+          createCompactSampleTable(
+              /* timescale= */ 44100,
+              /* sampleDurations= */ new int[] {0, 1024, 1024, 0, 0, 1024, 1024, 1024},
+              /* compositionOffsets= */ null)
+        };
+
+    CompactTrackSampleTable[] orderedSampleTables =
+        Mp4Extractor.getOrderedCompactSampleTables(sampleTables);
+    long[][] accumulatedSampleSizes = Mp4Extractor.calculateAccumulatedSampleSizes(sampleTables);
+
+    assertThat(orderedSampleTables).isNotNull();
+    for (int trackIndex = 0; trackIndex < sampleTables.length; trackIndex++) {
+      for (int sampleIndex = 0;
+          sampleIndex < sampleTables[trackIndex].sampleCount;
+          sampleIndex++) {
+        assertThat(
+                Mp4Extractor.calculateAccumulatedSampleSize(
+                    orderedSampleTables, trackIndex, sampleIndex))
+            .isEqualTo(accumulatedSampleSizes[trackIndex][sampleIndex]);
+      }
+    }
+  }
+
+  @Test
+  public void testGetOrderedCompactSampleTablesWithReorderedSamplesReturnsNull() {
+    TrackSampleTable[] sampleTables =
+        new TrackSampleTable[] {
+          createCompactSampleTable(
+              /* timescale= */ 1000,
+              /* sampleDurations= */ new int[] {20, 20, 20, 20},
+              /* compositionOffsets= */ null),
+          // Has samples presented in a different order to their decoding order.
+          createCompactSampleTable(
+              /* timescale= */ 1000,
+              /* sampleDurations= */ new int[] {30, 30, 30, 30},
+              /* compositionOffsets= */ new int[] {30, 90, 0, 30})
+        };
+
+    assertThat(Mp4Extractor.getOrderedCompactSampleTables(sampleTables)).isNull();
+  }
+
+  /**
+   * Returns a compact sample table of samples with the given durations and composition offsets,
+   * held in chunks of three samples. Each sample's size is derived from its index.
+   */
+  private static CompactTrackSampleTable createCompactSampleTable(
+      long timescale, int[] sampleDurations, @Nullable int[] compositionOffsets) {
+    int sampleCount = sampleDurations.length;
+    Track track =
+        new Track(
+            /* id= */ 1,
+            C.TRACK_TYPE_AUDIO,
+            timescale,
+            /* movieTimescale= */ timescale,
+            /* durationUs= */ C.TIME_UNSET,
+            Format.createSampleFormat(
+                /* id= */ null, MimeTypes.AUDIO_RAW, /* subsampleOffsetUs= */ 0),
+            Track.TRANSFORMATION_NONE,
+            /* sampleDescriptionEncryptionBoxes= */ null,
+            /* nalUnitLengthFieldLength= */ 0,
+            /* editListDurations= */ null,
+            /* editListMediaTimes= */ null);
+
+    ByteBuffer stsz = ByteBuffer.allocate(Atom.FULL_HEADER_SIZE + 8 + 4 * sampleCount);
+    stsz.position(Atom.FULL_HEADER_SIZE);
+    stsz.putInt(/* fixedSampleSize= */ 0);
+    stsz.putInt(sampleCount);
+    int chunkCount = (sampleCount + 2) / 3;
+    long[] chunkOffsets = new long[chunkCount];
+    int[] chunkFirstSampleIndices = new int[chunkCount];
+    long[] chunkAccumulatedSizes = new long[chunkCount];
+    long accumulatedSize = 0;
+    for (int i = 0; i < sampleCount; i++) {
+      if (i % 3 == 0) {
+        chunkOffsets[i / 3] = 1000L * i;
+        chunkFirstSampleIndices[i / 3] = i;
+        chunkAccumulatedSizes[i / 3] = accumulatedSize;
+      }
+      int sampleSize = 7 * i + 3;
+      stsz.putInt(sampleSize);
+      accumulatedSize += sampleSize;
+    }
+
+    CompactTrackSampleTable.SampleTimes sampleTimes =
+        new CompactTrackSampleTable.SampleTimes(
+            getRunFirstSampleIndices(sampleDurations),
+            getRunFirstDecodingTimes(sampleDurations),
+            getRunValues(sampleDurations),
+            compositionOffsets != null ? getRunFirstSampleIndices(compositionOffsets) : null,
+            compositionOffsets != null ? getRunValues(compositionOffsets) : null);
+    return new CompactTrackSampleTable(
+        track,
+        sampleCount,
+        /* maximumSize= */ 7 * (sampleCount - 1) + 3,
+        chunkOffsets,
+        chunkFirstSampleIndices,
+        chunkAccumulatedSizes,
+        CompactTrackSampleTable.SampleSizes.fromStsz(new ParsableByteArray(stsz.array())),
+        sampleTimes,
+        /* syncSampleIndices= */ null,
+        /* mediaTimeOffset= */ 0,
+        /* durationUs= */ C.TIME_UNSET);
+  }
+
+  /** Returns the index of the first sample of each run of samples with equal values. */
+  private static int[] getRunFirstSampleIndices(int[] sampleValues) {
+    int[] runFirstSampleIndices = new int[sampleValues.length];
+    int runCount = 0;
+    for (int i = 0; i < sampleValues.length; i++) {
+      if (i == 0 || sampleValues[i] != sampleValues[i - 1]) {
+        runFirstSampleIndices[runCount++] = i;
+      }
+    }
+    return Arrays.copyOf(runFirstSampleIndices, runCount);
+  }
+
+  /** Returns the value of each run of samples with equal values. */
+  private static int[] getRunValues(int[] sampleValues) {
+    int[] runFirstSampleIndices = getRunFirstSampleIndices(sampleValues);
+    int[] runValues = new int[runFirstSampleIndices.length];
+    for (int i = 0; i < runValues.length; i++) {
+      runValues[i] = sampleValues[runFirstSampleIndices[i]];
+    }
+    return runValues;
+  }
+
+  /** Returns the decoding time of the first sample of each run of samples with equal durations. */
+  private static long[] getRunFirstDecodingTimes(int[] sampleDurations) {
+    int[] runFirstSampleIndices = getRunFirstSampleIndices(sampleDurations);
+    long[] runFirstDecodingTimes = new long[runFirstSampleIndices.length];
+    long decodingTime = 0;
+    int run = 0;
+    for (int i = 0; i < sampleDurations.length; i++) {
+      if (run < runFirstSampleIndices.length && runFirstSampleIndices[run] == i) {
+        runFirstDecodingTimes[run++] = decodingTime;
+      }
+      decodingTime += sampleDurations[i];
+    }
+    return runFirstDecodingTimes;
+  }
 }
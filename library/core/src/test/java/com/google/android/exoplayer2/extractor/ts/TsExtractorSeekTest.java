@@ -20,6 +20,7 @@ import static com.google.common.truth.Truth.assertThat;
 import android.net.Uri;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
 import com.google.android.exoplayer2.extractor.Extractor;
 import com.google.android.exoplayer2.extractor.ExtractorInput;
 import com.google.android.exoplayer2.extractor.PositionHolder;
@@ -214,6 +215,43 @@ public final class TsExtractorSeekTest {
     }
   }
 
+  @Test
+  public void testHandlePendingSeek_withRestoredSeekIndex_extractsCorrectFrame()
+      throws IOException, InterruptedException {
+    Uri fileUri = TestUtil.buildAssetUri(TEST_FILE);
+    TsExtractor indexingExtractor = new TsExtractor();
+    readInputFileOnce(indexingExtractor, new FakeExtractorOutput(), fileUri);
+    ChunkIndex seekIndex = indexingExtractor.getSeekIndex();
+    assertThat(seekIndex).isNotNull();
+
+    TsExtractor extractor = new TsExtractor();
+    FakeExtractorOutput extractorOutput = new FakeExtractorOutput();
+    extractor.init(extractorOutput);
+    extractor.setRestoredSeekIndex(seekIndex);
+    ExtractorInput input = TestUtil.getExtractorInputFromPosition(dataSource, 0, fileUri);
+    try {
+      while (extractorOutput.seekMap == null || !extractorOutput.tracksEnded) {
+        // The restored index provides the duration, so the end of the file isn't read.
+        assertThat(extractor.read(input, positionHolder)).isEqualTo(Extractor.RESULT_CONTINUE);
+      }
+    } finally {
+      Util.closeQuietly(dataSource);
+    }
+    SeekMap seekMap = extractorOutput.seekMap;
+    assertThat(seekMap.getDurationUs()).isEqualTo(DURATION_US);
+    assertThat(seekMap.isSeekable()).isTrue();
+    FakeTrackOutput trackOutput = extractorOutput.trackOutputs.get(AUDIO_TRACK_ID);
+
+    long targetSeekTimeUs = 987_000;
+    int extractedFrameIndex =
+        TestUtil.seekToTimeUs(
+            extractor, seekMap, targetSeekTimeUs, dataSource, trackOutput, fileUri);
+
+    assertThat(extractedFrameIndex).isNotEqualTo(-1);
+    assertFirstFrameAfterSeekContainTargetSeekTime(
+        trackOutput, targetSeekTimeUs, extractedFrameIndex);
+  }
+
   // Internal methods
 
   private void readInputFileOnce(
@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.mp3.Mp3Extractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ExtractorSniffer}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorSnifferTest {
+
+  private static final byte[] TEST_DATA = TestUtil.buildTestData(/* length= */ 64 * 1024);
+
+  @Test
+  public void sniff_returnsFirstMatchingExtractor() throws Exception {
+    SniffingExtractor first = new SniffingExtractor(/* sniffResult= */ false);
+    OtherSniffingExtractor second = new OtherSniffingExtractor(/* sniffResult= */ true);
+    SniffingExtractor third = new SniffingExtractor(/* sniffResult= */ true);
+    ExtractorSniffer sniffer = new ExtractorSniffer(new Extractor[] {first, second, third});
+
+    Extractor extractor =
+        sniffer.sniff(createInput(), Uri.parse("http://test/first"), Collections.emptyMap());
+
+    assertThat(extractor).isSameInstanceAs(second);
+    assertThat(first.sniffCount).isEqualTo(1);
+    assertThat(third.sniffCount).isEqualTo(0);
+  }
+
+  @Test
+  public void sniff_sameUriAgain_sniffsPreviouslySelectedExtractorFirst() throws Exception {
+    Uri uri = Uri.parse("http://test/cached");
+    new ExtractorSniffer(
+            new Extractor[] {
+              new SniffingExtractor(/* sniffResult= */ false),
+              new OtherSniffingExtractor(/* sniffResult= */ true)
+            })
+        .sniff(createInput(), uri, Collections.emptyMap());
+    SniffingExtractor first = new SniffingExtractor(/* sniffResult= */ true);
+    OtherSniffingExtractor second = new OtherSniffingExtractor(/* sniffResult= */ true);
+
+    Extractor extractor =
+        new ExtractorSniffer(new Extractor[] {first, second})
+            .sniff(createInput(), uri, Collections.emptyMap());
+
+    assertThat(extractor).isSameInstanceAs(second);
+    assertThat(first.sniffCount).isEqualTo(0);
+  }
+
+  @Test
+  public void sniff_sameUriWithChangedContent_fallsBackToProvidedOrder() throws Exception {
+    Uri uri = Uri.parse("http://test/changed");
+    new ExtractorSniffer(
+            new Extractor[] {
+              new SniffingExtractor(/* sniffResult= */ false),
+              new OtherSniffingExtractor(/* sniffResult= */ true)
+            })
+        .sniff(createInput(), uri, Collections.emptyMap());
+    SniffingExtractor first = new SniffingExtractor(/* sniffResult= */ true);
+    OtherSniffingExtractor second = new OtherSniffingExtractor(/* sniffResult= */ false);
+
+    Extractor extractor =
+        new ExtractorSniffer(new Extractor[] {first, second})
+            .sniff(createInput(), uri, Collections.emptyMap());
+
+    assertThat(extractor).isSameInstanceAs(first);
+    assertThat(second.sniffCount).isEqualTo(1);
+  }
+
+  @Test
+  public void sniff_overlappingExtractorsWithHint_returnsFirstMatchingExtractor()
+      throws Exception {
+    byte[] data =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "mp3/bear.mp3");
+    FakeExtractorInput input = createInput(data);
+    // Matches any data, including the MP3 stream.
+    SniffingExtractor lenientExtractor = new SniffingExtractor(/* sniffResult= */ true);
+    Mp3Extractor mp3Extractor = new Mp3Extractor();
+    ExtractorSniffer sniffer =
+        new ExtractorSniffer(new Extractor[] {lenientExtractor, mp3Extractor});
+
+    Extractor extractor =
+        sniffer.sniff(
+            input,
+            Uri.parse("http://test/overlapping.mp3"),
+            Collections.singletonMap(
+                "Content-Type", Collections.singletonList(MimeTypes.AUDIO_MPEG)));
+
+    assertThat(mp3Extractor.sniff(createInput(data))).isTrue();
+    assertThat(extractor).isSameInstanceAs(lenientExtractor);
+  }
+
+  @Test
+  public void sniff_noMatchingExtractor_returnsNull() throws Exception {
+    ExtractorSniffer sniffer =
+        new ExtractorSniffer(
+            new Extractor[] {
+              new SniffingExtractor(/* sniffResult= */ false),
+              new OtherSniffingExtractor(/* sniffResult= */ false)
+            });
+
+    assertThat(sniffer.sniff(createInput(), Uri.parse("http://test/none"), Collections.emptyMap()))
+        .isNull();
+  }
+
+  @Test
+  public void sniff_beyondPrefix_sniffsInput() throws Exception {
+    // Peeks past the end of the sniffing prefix before matching.
+    SniffingExtractor extractor =
+        new SniffingExtractor(/* sniffResult= */ true, /* peekLength= */ 48 * 1024);
+    ExtractorSniffer sniffer = new ExtractorSniffer(new Extractor[] {extractor});
+    FakeExtractorInput input = createInput();
+
+    Extractor selected =
+        sniffer.sniff(input, Uri.parse("http://test/long"), Collections.emptyMap());
+
+    assertThat(selected).isSameInstanceAs(extractor);
+    // Sniffed once against the prefix, and once against the input.
+    assertThat(extractor.sniffCount).isEqualTo(2);
+    assertThat(input.getPeekPosition()).isEqualTo(0);
+  }
+
+  @Test
+  public void sniff_mp3ExtractorWithoutMp3Data_doesNotSniffInput() throws Exception {
+    CountingExtractor extractor = new CountingExtractor(new Mp3Extractor());
+    ExtractorSniffer sniffer = new ExtractorSniffer(new Extractor[] {extractor});
+
+    Extractor selected =
+        sniffer.sniff(createInput(), Uri.parse("http://test/other"), Collections.emptyMap());
+
+    assertThat(selected).isNull();
+    // Only sniffed against the prefix.
+    assertThat(extractor.sniffCount).isEqualTo(1);
+  }
+
+  @Test
+  public void sniff_extractorSkipsData_skipsInput() throws Exception {
+    SniffingExtractor extractor =
+        new SniffingExtractor(/* sniffResult= */ true, /* peekLength= */ 0, /* skipLength= */ 10);
+    ExtractorSniffer sniffer = new ExtractorSniffer(new Extractor[] {extractor});
+    FakeExtractorInput input = createInput();
+
+    sniffer.sniff(input, Uri.parse("http://test/skip"), Collections.emptyMap());
+
+    assertThat(input.getPosition()).isEqualTo(10);
+  }
+
+  private static FakeExtractorInput createInput() {
+    return createInput(TEST_DATA);
+  }
+
+  private static FakeExtractorInput createInput(byte[] data) {
+    return new FakeExtractorInput.Builder().setData(data).build();
+  }
+
+  private static class SniffingExtractor implements Extractor {
+
+    private final boolean sniffResult;
+    private final int peekLength;
+    private final int skipLength;
+
+    public int sniffCount;
+
+    public SniffingExtractor(boolean sniffResult) {
+      this(sniffResult, /* peekLength= */ 4);
+    }
+
+    public SniffingExtractor(boolean sniffResult, int peekLength) {
+      this(sniffResult, peekLength, /* skipLength= */ 0);
+    }
+
+    public SniffingExtractor(boolean sniffResult, int peekLength, int skipLength) {
+      this.sniffResult = sniffResult;
+      this.peekLength = peekLength;
+      this.skipLength = skipLength;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) throws IOException, InterruptedException {
+      sniffCount++;
+      input.advancePeekPosition(peekLength);
+      input.skipFully(skipLength);
+      return sniffResult;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {}
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) {
+      return RESULT_END_OF_INPUT;
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {}
+
+    @Override
+    public void release() {}
+  }
+
+  private static final class OtherSniffingExtractor extends SniffingExtractor {
+
+    public OtherSniffingExtractor(boolean sniffResult) {
+      super(sniffResult);
+    }
+  }
+
+  private static final class CountingExtractor implements Extractor {
+
+    private final Extractor extractor;
+
+    public int sniffCount;
+
+    public CountingExtractor(Extractor extractor) {
+      this.extractor = extractor;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) throws IOException, InterruptedException {
+      sniffCount++;
+      return extractor.sniff(input);
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      extractor.init(output);
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition)
+        throws IOException, InterruptedException {
+      return extractor.read(input, seekPosition);
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      extractor.seek(position, timeUs);
+    }
+
+    @Override
+    public void release() {
+      extractor.release();
+    }
+  }
+}
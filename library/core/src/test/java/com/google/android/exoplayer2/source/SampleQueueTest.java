@@ -27,6 +27,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.mockito.Mockito.when;
 
 import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.Format;
@@ -40,7 +41,10 @@ import com.google.android.exoplayer2.extractor.TrackOutput;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.SpillingAllocator;
 import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
@@ -306,6 +310,108 @@ public final class SampleQueueTest {
     assertAllocationCount(0);
   }
 
+  @Test
+  public void testReadMultiSamplesWithDirectAllocations() {
+    allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ false,
+            ALLOCATION_SIZE,
+            /* initialAllocationCount= */ 0,
+            /* useDirectBuffers= */ true);
+    sampleQueue = new SampleQueue(allocator, mockDrmSessionManager);
+    inputBuffer = new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
+
+    writeTestData();
+    assertAllocationCount(10);
+    assertReadTestData();
+    sampleQueue.discardToRead();
+    assertAllocationCount(0);
+  }
+
+  @Test
+  public void testReadMultiWithSeekIntoSpilledBackBuffer() throws IOException {
+    File spillDirectory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    try {
+      allocator =
+          new SpillingAllocator(
+              new DefaultAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE),
+              spillDirectory,
+              /* spillBufferCapacity= */ ALLOCATION_SIZE * 10,
+              /* hotWindowBytes= */ 0);
+      sampleQueue = new SampleQueue(allocator, mockDrmSessionManager);
+
+      writeTestData();
+      assertAllocationCount(10);
+      assertReadTestData();
+      // Everything behind the read position has been spilled.
+      assertAllocationCount(0);
+
+      // Read again from the spilled data.
+      sampleQueue.seekTo(0);
+      assertReadTestData();
+      sampleQueue.discardToRead();
+      assertAllocationCount(0);
+      sampleQueue.release();
+    } finally {
+      Util.recursiveDelete(spillDirectory);
+    }
+  }
+
+  @Test
+  public void testReadEncryptedWithSeekIntoSpilledBackBuffer() throws IOException {
+    File spillDirectory =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    try {
+      allocator =
+          new SpillingAllocator(
+              new DefaultAllocator(/* trimOnReset= */ false, ALLOCATION_SIZE),
+              spillDirectory,
+              /* spillBufferCapacity= */ ALLOCATION_SIZE * 10,
+              /* hotWindowBytes= */ 0);
+      sampleQueue = new SampleQueue(allocator, mockDrmSessionManager);
+      when(mockDrmSession.getState()).thenReturn(DrmSession.STATE_OPENED_WITH_KEYS);
+      // Each sample consists of the two byte encryption preamble, which is read into an array, and
+      // one byte of sample data. The samples span several allocations, the last of which is only
+      // partially written.
+      byte[] sampleData = new byte[] {1, 1, 1};
+      int sampleCount = ALLOCATION_SIZE * 2 + 1;
+      int sampleFlags = C.BUFFER_FLAG_KEY_FRAME | C.BUFFER_FLAG_ENCRYPTED;
+      writeFormat(FORMAT_ENCRYPTED);
+      for (int i = 0; i < sampleCount; i++) {
+        writeSample(sampleData, /* timestampUs= */ i * 1000, sampleFlags);
+      }
+      assertReadFormat(/* formatRequired= */ false, FORMAT_ENCRYPTED);
+      for (int i = 0; i < sampleCount; i++) {
+        assertReadSample(
+            /* timeUs= */ i * 1000,
+            /* isKeyFrame= */ true,
+            /* isEncrypted= */ true,
+            sampleData,
+            /* offset= */ 0,
+            /* length= */ 1);
+      }
+      // Everything behind the read position has been spilled, except for the last allocation.
+      assertAllocationCount(1);
+
+      // Read again from the spilled data, including the encryption preambles.
+      sampleQueue.seekTo(0);
+      for (int i = 0; i < sampleCount; i++) {
+        assertReadSample(
+            /* timeUs= */ i * 1000,
+            /* isKeyFrame= */ true,
+            /* isEncrypted= */ true,
+            sampleData,
+            /* offset= */ 0,
+            /* length= */ 1);
+      }
+      sampleQueue.discardToRead();
+      sampleQueue.release();
+    } finally {
+      Util.recursiveDelete(spillDirectory);
+    }
+  }
+
   @Test
   public void testReadMultiSamplesTwice() {
     writeTestData();
@@ -693,6 +799,32 @@ public final class SampleQueueTest {
     assertNoSamplesToRead(FORMAT_2);
   }
 
+  @Test
+  public void testSeekToAfterWrapAndDiscard() {
+    sampleQueue.format(FORMAT_1);
+    writeSingleByteSamples(/* firstIndex= */ 0, /* count= */ 999, /* keyframeInterval= */ 7);
+    sampleQueue.seekTo(/* sampleIndex= */ 500);
+    sampleQueue.discardToRead();
+    // Write enough samples for the queue to wrap around its circular arrays, then discard some of
+    // them from the write side.
+    writeSingleByteSamples(/* firstIndex= */ 999, /* count= */ 400, /* keyframeInterval= */ 7);
+    sampleQueue.discardUpstreamSamples(/* discardFromIndex= */ 1390);
+
+    // Seek between keyframes before and after the wrap, and to the last sample.
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 505 * 1000, false)).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(504);
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 1000 * 1000 - 1, false)).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(994);
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 1389 * 1000, false)).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(1386);
+    // There's no keyframe in the queue before sample 504.
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 503 * 1000, false)).isFalse();
+    // Samples from index 1390 were discarded.
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 1392 * 1000, false)).isFalse();
+    assertThat(sampleQueue.seekTo(/* timeUs= */ 1392 * 1000, true)).isTrue();
+    assertThat(sampleQueue.getReadIndex()).isEqualTo(1386);
+  }
+
   @Test
   public void testSeekToEndAndBackToStart() {
     writeTestData();
@@ -1045,6 +1177,20 @@ public final class SampleQueueTest {
         DATA, SAMPLE_SIZES, SAMPLE_OFFSETS, SAMPLE_TIMESTAMPS, SAMPLE_FORMATS, SAMPLE_FLAGS);
   }
 
+  /**
+   * Writes {@code count} single byte samples to {@code sampleQueue}, with timestamps of one
+   * millisecond per sample index. Samples whose index is a multiple of {@code keyframeInterval}
+   * are keyframes.
+   */
+  private void writeSingleByteSamples(int firstIndex, int count, int keyframeInterval) {
+    for (int i = firstIndex; i < firstIndex + count; i++) {
+      writeSample(
+          new byte[1],
+          /* timestampUs= */ i * 1000,
+          /* sampleFlags= */ i % keyframeInterval == 0 ? C.BUFFER_FLAG_KEY_FRAME : 0);
+    }
+  }
+
   private void writeTestDataWithEncryptedSections() {
     writeTestData(
         ENCRYPTED_SAMPLE_DATA,
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.FormatHolder;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.MediaSourceEventListener.EventDispatcher;
+import com.google.android.exoplayer2.source.SequenceableLoader;
+import com.google.android.exoplayer2.testutil.DummyMainThread;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ChunkSampleStream}. */
+@RunWith(AndroidJUnit4.class)
+public final class ChunkSampleStreamTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final int TRACK_COUNT = 2;
+  private static final int CHUNK_COUNT = 5;
+  private static final int CHUNK_LENGTH = 100;
+  private static final long CHUNK_DURATION_US = C.MICROS_PER_SECOND;
+  private static final int CHUNK_PIPELINE_DEPTH = 3;
+
+  private DummyMainThread mainThread;
+  private byte[][] trackData;
+  private Format[] trackFormats;
+  private TestChunkSource chunkSource;
+  private ConditionVariable loadingFinished;
+  @Nullable private ExecutorService loaderExecutorService;
+  @Nullable private ChunkSampleStream<TestChunkSource> sampleStream;
+
+  @Before
+  public void setUp() {
+    mainThread = new DummyMainThread();
+    trackData = new byte[TRACK_COUNT][];
+    trackFormats = new Format[TRACK_COUNT];
+    for (int i = 0; i < TRACK_COUNT; i++) {
+      trackData[i] = TestUtil.buildTestData(CHUNK_COUNT * CHUNK_LENGTH, /* seed= */ i);
+      trackFormats[i] =
+          Format.createSampleFormat(
+              /* id= */ Integer.toString(i),
+              MimeTypes.APPLICATION_ID3,
+              Format.OFFSET_SAMPLE_RELATIVE);
+    }
+    chunkSource = new TestChunkSource();
+    loadingFinished = new ConditionVariable();
+  }
+
+  @After
+  public void tearDown() {
+    if (sampleStream != null) {
+      mainThread.runOnMainThread(sampleStream::release);
+    }
+    if (loaderExecutorService != null) {
+      loaderExecutorService.shutdown();
+    }
+    mainThread.release();
+  }
+
+  @Test
+  public void continueLoading_withPipelining_writesChunksInOrder() {
+    createSampleStream(/* loaderExecutorService= */ null);
+
+    mainThread.runOnMainThread(() -> sampleStream.continueLoading(/* positionUs= */ 0));
+
+    assertThat(loadingFinished.block(TIMEOUT_MS)).isTrue();
+    assertReadChunks(/* track0ChunkCount= */ CHUNK_COUNT);
+    assertThat(chunkSource.getPrefetchDataSources()).isNotEmpty();
+    // Each chunk is requested once, whether or not its prefetch was taken over.
+    assertThat(getOpenedPositions())
+        .containsExactly(0L, 100L, 200L, 300L, 400L)
+        .inOrder();
+  }
+
+  @Test
+  public void continueLoading_withoutPrefetchDataSources_loadsChunksFromSharedSource() {
+    chunkSource.disablePrefetchDataSources();
+    createSampleStream(/* loaderExecutorService= */ null);
+
+    mainThread.runOnMainThread(() -> sampleStream.continueLoading(/* positionUs= */ 0));
+
+    assertThat(loadingFinished.block(TIMEOUT_MS)).isTrue();
+    assertReadChunks(/* track0ChunkCount= */ CHUNK_COUNT);
+    assertThat(chunkSource.getPrefetchDataSources()).isEmpty();
+    assertThat(getOpenedPositions())
+        .containsExactly(0L, 100L, 200L, 300L, 400L)
+        .inOrder();
+  }
+
+  @Test
+  public void continueLoading_withPipeliningOnSingleThreadExecutor_completesLoading() {
+    loaderExecutorService =
+        Loader.createSharedExecutorService("ChunkSampleStreamTest", /* maxThreadCount= */ 1);
+    createSampleStream(loaderExecutorService);
+
+    mainThread.runOnMainThread(() -> sampleStream.continueLoading(/* positionUs= */ 0));
+
+    assertThat(loadingFinished.block(TIMEOUT_MS)).isTrue();
+    assertReadChunks(/* track0ChunkCount= */ CHUNK_COUNT);
+  }
+
+  @Test
+  public void continueLoading_afterTrackSwitch_cancelsPrefetches() {
+    createSampleStream(/* loaderExecutorService= */ null);
+    chunkSource.blockFirstChunk();
+
+    mainThread.runOnMainThread(() -> sampleStream.continueLoading(/* positionUs= */ 0));
+    // Wait for the requests of the chunks following the first one to be issued.
+    assertThat(chunkSource.prefetchesOpened.block(TIMEOUT_MS)).isTrue();
+    chunkSource.selectedTrack = 1;
+    chunkSource.unblockFirstChunk();
+
+    assertThat(loadingFinished.block(TIMEOUT_MS)).isTrue();
+    assertReadChunks(/* track0ChunkCount= */ 1);
+    for (int i = 0; i < CHUNK_PIPELINE_DEPTH - 1; i++) {
+      assertThat(chunkSource.getPrefetchDataSources().get(i).isOpened()).isFalse();
+    }
+  }
+
+  private void createSampleStream(@Nullable ExecutorService loaderExecutorService) {
+    mainThread.runOnMainThread(
+        () ->
+            sampleStream =
+                new ChunkSampleStream<>(
+                    C.TRACK_TYPE_METADATA,
+                    /* embeddedTrackTypes= */ null,
+                    /* embeddedTrackFormats= */ null,
+                    chunkSource,
+                    new ContinueLoadingCallback(),
+                    new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+                    /* positionUs= */ 0,
+                    DrmSessionManager.getDummyDrmSessionManager(),
+                    new DefaultLoadErrorHandlingPolicy(),
+                    new EventDispatcher(),
+                    loaderExecutorService,
+                    CHUNK_PIPELINE_DEPTH,
+                    /* hedgeDataSourceFactory= */ null));
+  }
+
+  /** Returns the start positions of all requests made by the chunk source's data sources. */
+  private List<Long> getOpenedPositions() {
+    List<Long> positions = new ArrayList<>();
+    List<FakeDataSource> dataSources = new ArrayList<>(chunkSource.getPrefetchDataSources());
+    dataSources.add(chunkSource.dataSource);
+    for (FakeDataSource dataSource : dataSources) {
+      for (DataSpec dataSpec : dataSource.getAndClearOpenedDataSpecs()) {
+        positions.add(dataSpec.absoluteStreamPosition);
+      }
+    }
+    Collections.sort(positions);
+    return positions;
+  }
+
+  /**
+   * Asserts that the sample stream contains one sample per chunk in order, the first {@code
+   * track0ChunkCount} of which are from track 0, and the others from track 1.
+   */
+  private void assertReadChunks(int track0ChunkCount) {
+    List<Long> timesUs = new ArrayList<>();
+    List<byte[]> samples = new ArrayList<>();
+    mainThread.runOnMainThread(
+        () -> {
+          FormatHolder formatHolder = new FormatHolder();
+          DecoderInputBuffer buffer =
+              new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+          while (true) {
+            buffer.clear();
+            int result = sampleStream.readData(formatHolder, buffer, /* formatRequired= */ false);
+            if (result == C.RESULT_NOTHING_READ || buffer.isEndOfStream()) {
+              break;
+            } else if (result == C.RESULT_BUFFER_READ) {
+              buffer.flip();
+              byte[] sample = new byte[buffer.data.limit()];
+              buffer.data.get(sample);
+              timesUs.add(buffer.timeUs);
+              samples.add(sample);
+            }
+          }
+        });
+
+    assertThat(timesUs).hasSize(CHUNK_COUNT);
+    for (int i = 0; i < CHUNK_COUNT; i++) {
+      int track = i < track0ChunkCount ? 0 : 1;
+      assertThat(timesUs.get(i)).isEqualTo(i * CHUNK_DURATION_US);
+      assertThat(samples.get(i))
+          .isEqualTo(
+              Arrays.copyOfRange(trackData[track], i * CHUNK_LENGTH, (i + 1) * CHUNK_LENGTH));
+    }
+  }
+
+  private final class ContinueLoadingCallback
+      implements SequenceableLoader.Callback<ChunkSampleStream<TestChunkSource>> {
+
+    @Override
+    public void onContinueLoadingRequested(ChunkSampleStream<TestChunkSource> source) {
+      source.continueLoading(/* positionUs= */ 0);
+      if (source.getNextLoadPositionUs() == C.TIME_END_OF_SOURCE) {
+        loadingFinished.open();
+      }
+    }
+  }
+
+  /**
+   * {@link ChunkSource} of single sample media chunks from one of {@link #TRACK_COUNT} tracks. Like
+   * the DASH and SmoothStreaming chunk sources, all its chunks share one {@link FakeDataSource},
+   * which fails if it's opened again before being closed.
+   */
+  private final class TestChunkSource implements ChunkSource, TransferListener {
+
+    public final FakeDataSource dataSource;
+    /** Opened once the requests of {@link #CHUNK_PIPELINE_DEPTH} - 1 chunks have been issued. */
+    public final ConditionVariable prefetchesOpened;
+
+    public volatile int selectedTrack;
+
+    private final List<FakeDataSource> prefetchDataSources;
+    private final ConditionVariable firstChunkUnblocked;
+    private final AtomicInteger prefetchOpenCount;
+
+    private boolean prefetchDataSourcesDisabled;
+
+    public TestChunkSource() {
+      firstChunkUnblocked = new ConditionVariable();
+      firstChunkUnblocked.open();
+      // The first chunk is never prefetched, so only the shared source needs to block.
+      FakeDataSet dataSet = createDataSet();
+      dataSet
+          .newData(getUri(/* track= */ 0))
+          .appendReadAction(firstChunkUnblocked::block)
+          .appendReadData(trackData[0]);
+      dataSource = new FakeDataSource(dataSet);
+      prefetchesOpened = new ConditionVariable();
+      prefetchDataSources = new CopyOnWriteArrayList<>();
+      prefetchOpenCount = new AtomicInteger();
+    }
+
+    /** Makes the load of the first chunk block until {@link #unblockFirstChunk()} is called. */
+    public void blockFirstChunk() {
+      firstChunkUnblocked.close();
+    }
+
+    public void unblockFirstChunk() {
+      firstChunkUnblocked.open();
+    }
+
+    /** Makes {@link #createPrefetchDataSource()} return null. */
+    public void disablePrefetchDataSources() {
+      prefetchDataSourcesDisabled = true;
+    }
+
+    /** Returns the data sources created for prefetched chunks, in order of creation. */
+    public List<FakeDataSource> getPrefetchDataSources() {
+      return prefetchDataSources;
+    }
+
+    @Override
+    @Nullable
+    public DataSource createPrefetchDataSource() {
+      if (prefetchDataSourcesDisabled) {
+        return null;
+      }
+      // Fake data sets track the read position of each segment, so they can't be shared either.
+      FakeDataSource prefetchDataSource = new FakeDataSource(createDataSet());
+      prefetchDataSource.addTransferListener(this);
+      prefetchDataSources.add(prefetchDataSource);
+      return prefetchDataSource;
+    }
+
+    @Override
+    public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+      return positionUs;
+    }
+
+    @Override
+    public void maybeThrowError() {
+      // Do nothing.
+    }
+
+    @Override
+    public int getPreferredQueueSize(long playbackPositionUs, List<? extends MediaChunk> queue) {
+      return queue.size();
+    }
+
+    @Override
+    public void getNextChunk(
+        long playbackPositionUs,
+        long loadPositionUs,
+        List<? extends MediaChunk> queue,
+        ChunkHolder out) {
+      int chunkIndex =
+          queue.isEmpty()
+              ? (int) (playbackPositionUs / CHUNK_DURATION_US)
+              : (int) queue.get(queue.size() - 1).getNextChunkIndex();
+      if (chunkIndex >= CHUNK_COUNT) {
+        out.endOfStream = true;
+        return;
+      }
+      int track = selectedTrack;
+      DataSpec dataSpec =
+          new DataSpec(
+              Uri.parse(getUri(track)),
+              /* absoluteStreamPosition= */ chunkIndex * CHUNK_LENGTH,
+              /* length= */ CHUNK_LENGTH,
+              /* key= */ null);
+      out.chunk =
+          new SingleSampleMediaChunk(
+              dataSource,
+              dataSpec,
+              trackFormats[track],
+              C.SELECTION_REASON_UNKNOWN,
+              /* trackSelectionData= */ null,
+              /* startTimeUs= */ chunkIndex * CHUNK_DURATION_US,
+              /* endTimeUs= */ (chunkIndex + 1) * CHUNK_DURATION_US,
+              chunkIndex,
+              C.TRACK_TYPE_METADATA,
+              trackFormats[track]);
+    }
+
+    @Override
+    public void onChunkLoadCompleted(Chunk chunk) {
+      // Do nothing.
+    }
+
+    @Override
+    public boolean onChunkLoadError(
+        Chunk chunk, boolean cancelable, Exception e, long blacklistDurationMs) {
+      return false;
+    }
+
+    // TransferListener implementation.
+
+    @Override
+    public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      if (prefetchOpenCount.incrementAndGet() == CHUNK_PIPELINE_DEPTH - 1) {
+        prefetchesOpened.open();
+      }
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      // Do nothing.
+    }
+
+    private FakeDataSet createDataSet() {
+      FakeDataSet dataSet = new FakeDataSet();
+      for (int i = 0; i < TRACK_COUNT; i++) {
+        dataSet.setData(getUri(i), trackData[i]);
+      }
+      return dataSet;
+    }
+
+    private String getUri(int track) {
+      return "track" + track;
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+/** Unit tests for {@link HedgingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class HedgingDataSourceTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final Uri URI = Uri.parse("https://example.test/segment.m4s");
+
+  private byte[] primaryData;
+  private byte[] hedgeData;
+  private ExecutorService executorService;
+  private FakeListener listener;
+
+  @Before
+  public void setUp() {
+    primaryData = TestUtil.buildTestData(/* length= */ 100, /* seed= */ 0);
+    hedgeData = TestUtil.buildTestData(/* length= */ 100, /* seed= */ 1);
+    executorService = Executors.newCachedThreadPool();
+    listener = new FakeListener();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executorService.shutdown();
+    assertThat(executorService.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void open_withoutHedging_readsUpstream() throws Exception {
+    HedgingDataSource dataSource = new HedgingDataSource(new BlockingDataSource(primaryData));
+
+    assertThat(dataSource.open(new DataSpec(URI))).isEqualTo(primaryData.length);
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(primaryData);
+    dataSource.close();
+  }
+
+  @Test
+  public void open_upstreamRespondsWithinDelay_doesNotHedge() throws Exception {
+    BlockingDataSource hedgeDataSource = new BlockingDataSource(hedgeData);
+    HedgingDataSource dataSource = new HedgingDataSource(new BlockingDataSource(primaryData));
+    dataSource.enableHedging(
+        () -> hedgeDataSource,
+        /* hedgeDelayMs= */ TIMEOUT_MS,
+        executorService,
+        listener,
+        /* sharedUpstreamState= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(primaryData);
+    dataSource.close();
+
+    assertThat(hedgeDataSource.openCount).isEqualTo(0);
+    assertThat(listener.hedgeStartedCount).isEqualTo(0);
+    assertThat(listener.hedgeCompletedCount).isEqualTo(0);
+  }
+
+  @Test
+  public void open_upstreamStalls_readsHedgeAndClosesUpstream() throws Exception {
+    BlockingDataSource primaryDataSource = new BlockingDataSource(primaryData);
+    primaryDataSource.blockOpen();
+    HedgingDataSource dataSource = new HedgingDataSource(primaryDataSource);
+    dataSource.enableHedging(
+        () -> new BlockingDataSource(hedgeData),
+        /* hedgeDelayMs= */ 0,
+        createExecutorStartingOpenOf(primaryDataSource),
+        listener,
+        /* sharedUpstreamState= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(hedgeData);
+    dataSource.close();
+
+    assertThat(listener.hedgeStartedCount).isEqualTo(1);
+    assertThat(listener.hedgeCompletedCount).isEqualTo(1);
+    assertThat(listener.hedgeWon).isTrue();
+    // The stalled request is closed once it responds.
+    primaryDataSource.unblockOpen();
+    assertThat(primaryDataSource.closed.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void open_upstreamAndHedgeFail_throwsUpstreamError() throws Exception {
+    BlockingDataSource primaryDataSource = new BlockingDataSource(primaryData);
+    primaryDataSource.failOpen(new IOException("Primary failed"));
+    BlockingDataSource hedgeDataSource = new BlockingDataSource(hedgeData);
+    hedgeDataSource.failOpen(new IOException("Hedge failed"));
+    HedgingDataSource dataSource = new HedgingDataSource(primaryDataSource);
+    dataSource.enableHedging(
+        () -> hedgeDataSource,
+        /* hedgeDelayMs= */ 0,
+        executorService,
+        listener,
+        /* sharedUpstreamState= */ null);
+
+    try {
+      dataSource.open(new DataSpec(URI));
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().isEqualTo("Primary failed");
+    } finally {
+      dataSource.close();
+    }
+    assertThat(listener.hedgeCompletedCount).isEqualTo(0);
+  }
+
+  @Test
+  public void open_noFreeExecutorThread_opensUpstreamWithoutHedging() throws Exception {
+    ExecutorService busyExecutorService = Executors.newSingleThreadExecutor();
+    CountDownLatch executorBusy = new CountDownLatch(1);
+    busyExecutorService.execute(
+        () -> {
+          try {
+            executorBusy.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    BlockingDataSource hedgeDataSource = new BlockingDataSource(hedgeData);
+    HedgingDataSource dataSource = new HedgingDataSource(new BlockingDataSource(primaryData));
+    dataSource.enableHedging(
+        () -> hedgeDataSource,
+        /* hedgeDelayMs= */ 0,
+        busyExecutorService,
+        listener,
+        /* sharedUpstreamState= */ null);
+
+    try {
+      dataSource.open(new DataSpec(URI));
+      assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(primaryData);
+      dataSource.close();
+    } finally {
+      executorBusy.countDown();
+      busyExecutorService.shutdown();
+    }
+
+    assertThat(busyExecutorService.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(hedgeDataSource.openCount).isEqualTo(0);
+    assertThat(listener.hedgeStartedCount).isEqualTo(0);
+  }
+
+  @Test
+  public void open_upstreamStalls_addsTransferListenersToHedge() throws Exception {
+    BlockingDataSource primaryDataSource = new BlockingDataSource(primaryData);
+    primaryDataSource.blockOpen();
+    BlockingDataSource hedgeDataSource = new BlockingDataSource(hedgeData);
+    HedgingDataSource dataSource = new HedgingDataSource(primaryDataSource);
+    TransferListener transferListener = Mockito.mock(TransferListener.class);
+    dataSource.addTransferListener(transferListener);
+    dataSource.enableHedging(
+        () -> hedgeDataSource,
+        /* hedgeDelayMs= */ 0,
+        createExecutorStartingOpenOf(primaryDataSource),
+        listener,
+        /* sharedUpstreamState= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    dataSource.close();
+    primaryDataSource.unblockOpen();
+
+    assertThat(hedgeDataSource.transferListeners).containsExactly(transferListener);
+  }
+
+  @Test
+  public void open_sharedUpstreamStalls_nextChunkAvoidsSharedUpstreamUntilReleased()
+      throws Exception {
+    BlockingDataSource sharedDataSource = new BlockingDataSource(primaryData);
+    sharedDataSource.blockOpen();
+    HedgingDataSource.SharedUpstreamState sharedUpstreamState =
+        new HedgingDataSource.SharedUpstreamState();
+    List<BlockingDataSource> hedgeDataSources = new ArrayList<>();
+    DataSource.Factory hedgeDataSourceFactory =
+        () -> {
+          BlockingDataSource hedgeDataSource = new BlockingDataSource(hedgeData);
+          hedgeDataSources.add(hedgeDataSource);
+          return hedgeDataSource;
+        };
+    HedgingDataSource firstChunkDataSource = new HedgingDataSource(sharedDataSource);
+    firstChunkDataSource.enableHedging(
+        hedgeDataSourceFactory,
+        /* hedgeDelayMs= */ 0,
+        createExecutorStartingOpenOf(sharedDataSource),
+        listener,
+        sharedUpstreamState);
+    HedgingDataSource secondChunkDataSource = new HedgingDataSource(sharedDataSource);
+    secondChunkDataSource.enableHedging(
+        hedgeDataSourceFactory,
+        /* hedgeDelayMs= */ TIMEOUT_MS,
+        executorService,
+        listener,
+        sharedUpstreamState);
+
+    firstChunkDataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(firstChunkDataSource)).isEqualTo(hedgeData);
+    firstChunkDataSource.close();
+    assertThat(sharedUpstreamState.isInUse()).isTrue();
+    // The shared source is still being opened by the abandoned request of the first chunk.
+    secondChunkDataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(secondChunkDataSource)).isEqualTo(hedgeData);
+    secondChunkDataSource.close();
+
+    assertThat(sharedDataSource.openCount).isEqualTo(1);
+    assertThat(hedgeDataSources).hasSize(2);
+    sharedDataSource.unblockOpen();
+    executorService.shutdown();
+    assertThat(executorService.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(sharedDataSource.closed.getCount()).isEqualTo(0);
+    assertThat(sharedUpstreamState.isInUse()).isFalse();
+  }
+
+  /**
+   * Returns an executor that runs tasks on {@link #executorService}, and doesn't return from the
+   * first execution until the open of {@code dataSource} has started. Otherwise the source may be
+   * opened on the calling thread, because no thread of the executor has started opening it by the
+   * end of a zero hedge delay.
+   */
+  private Executor createExecutorStartingOpenOf(BlockingDataSource dataSource) {
+    return runnable -> {
+      executorService.execute(runnable);
+      try {
+        dataSource.openStarted.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+  }
+
+  /** A {@link DataSource} serving fixed data, whose open can be blocked or made to fail. */
+  private static final class BlockingDataSource implements DataSource {
+
+    public final CountDownLatch openStarted;
+    public final CountDownLatch closed;
+    public final List<TransferListener> transferListeners;
+
+    private final byte[] data;
+    private volatile CountDownLatch openBlocker;
+
+    @Nullable private IOException openError;
+    private volatile int openCount;
+    private int readPosition;
+
+    public BlockingDataSource(byte[] data) {
+      this.data = data;
+      openStarted = new CountDownLatch(1);
+      closed = new CountDownLatch(1);
+      transferListeners = new ArrayList<>();
+      openBlocker = new CountDownLatch(1);
+      openBlocker.countDown();
+    }
+
+    public void blockOpen() {
+      openBlocker = new CountDownLatch(1);
+    }
+
+    public void unblockOpen() {
+      openBlocker.countDown();
+    }
+
+    public void failOpen(IOException openError) {
+      this.openError = openError;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      transferListeners.add(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openCount++;
+      openStarted.countDown();
+      try {
+        openBlocker.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      if (openError != null) {
+        throw openError;
+      }
+      readPosition = 0;
+      return data.length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readPosition == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = Math.min(readLength, data.length - readPosition);
+      System.arraycopy(data, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      return bytesToRead;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return URI;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public void close() {
+      closed.countDown();
+    }
+  }
+
+  private static final class FakeListener implements HedgingDataSource.Listener {
+
+    public int hedgeStartedCount;
+    public int hedgeCompletedCount;
+    public boolean hedgeWon;
+
+    @Override
+    public void onHedgeStarted(long hedgeDelayMs, long loadDurationMs) {
+      hedgeStartedCount++;
+    }
+
+    @Override
+    public void onHedgeCompleted(
+        boolean hedgeWon, Uri uri, Map<String, List<String>> responseHeaders, long loadDurationMs) {
+      this.hedgeWon = hedgeWon;
+      hedgeCompletedCount++;
+    }
+  }
+}
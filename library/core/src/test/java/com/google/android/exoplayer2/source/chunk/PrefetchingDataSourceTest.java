@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.chunk;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import android.os.ConditionVariable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeDataSet;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PrefetchingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class PrefetchingDataSourceTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+  private static final int DATA_LENGTH = 10_000;
+  private static final int MAX_BUFFER_SIZE = 1000;
+
+  private byte[] data;
+  private byte[] otherData;
+  private FakeDataSource upstream;
+  private PrefetchingDataSource dataSource;
+
+  @Before
+  public void setUp() {
+    data = TestUtil.buildTestData(DATA_LENGTH, /* seed= */ 0);
+    otherData = TestUtil.buildTestData(DATA_LENGTH, /* seed= */ 1);
+    upstream =
+        new FakeDataSource(
+            new FakeDataSet().setData("uri", data).setData("other_uri", otherData));
+    dataSource = new PrefetchingDataSource(upstream);
+  }
+
+  @Test
+  public void prefetch_returnsWithConnectionOpen() {
+    dataSource.prefetch(new DataSpec(Uri.parse("uri")), MAX_BUFFER_SIZE);
+
+    assertThat(upstream.isOpened()).isTrue();
+  }
+
+  @Test
+  public void open_afterPrefetchOfSameDataSpec_usesPrefetchedConnection() throws Exception {
+    DataSpec dataSpec = new DataSpec(Uri.parse("uri"));
+    dataSource.prefetch(dataSpec, MAX_BUFFER_SIZE);
+
+    assertThat(dataSource.open(dataSpec)).isEqualTo(DATA_LENGTH);
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+
+    assertThat(upstream.getAndClearOpenedDataSpecs()).asList().containsExactly(dataSpec);
+  }
+
+  @Test
+  public void open_duringPrefetchOfSameDataSpec_takesOverPrefetchedConnection() throws Exception {
+    ConditionVariable prefetchReadStarted = new ConditionVariable();
+    ConditionVariable prefetchReadAllowed = new ConditionVariable();
+    upstream =
+        new FakeDataSource(
+            new FakeDataSet()
+                .newData("uri")
+                .appendReadAction(
+                    () -> {
+                      prefetchReadStarted.open();
+                      prefetchReadAllowed.block();
+                    })
+                .appendReadData(data)
+                .endData());
+    dataSource = new PrefetchingDataSource(upstream);
+    DataSpec dataSpec = new DataSpec(Uri.parse("uri"));
+    Thread prefetchThread = new Thread(() -> dataSource.prefetch(dataSpec, MAX_BUFFER_SIZE));
+    prefetchThread.start();
+    assertThat(prefetchReadStarted.block(TIMEOUT_MS)).isTrue();
+
+    ConditionVariable opened = new ConditionVariable();
+    Thread consumerThread =
+        new Thread(
+            () -> {
+              try {
+                dataSource.open(dataSpec);
+              } catch (IOException e) {
+                throw new IllegalStateException(e);
+              }
+              opened.open();
+            });
+    consumerThread.start();
+    // The consumer waits for the prefetch to stop using the connection.
+    assertThat(opened.block(/* timeout= */ 100)).isFalse();
+    prefetchReadAllowed.open();
+
+    assertThat(opened.block(TIMEOUT_MS)).isTrue();
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+    prefetchThread.join(TIMEOUT_MS);
+    assertThat(prefetchThread.isAlive()).isFalse();
+    assertThat(upstream.getAndClearOpenedDataSpecs()).asList().containsExactly(dataSpec);
+  }
+
+  @Test
+  public void open_afterPrefetchOfDifferentDataSpec_reopensUpstream() throws Exception {
+    DataSpec prefetchDataSpec = new DataSpec(Uri.parse("uri"));
+    DataSpec dataSpec = new DataSpec(Uri.parse("other_uri"));
+    dataSource.prefetch(prefetchDataSpec, MAX_BUFFER_SIZE);
+
+    dataSource.open(dataSpec);
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(otherData);
+    dataSource.close();
+
+    assertThat(upstream.getAndClearOpenedDataSpecs())
+        .asList()
+        .containsExactly(prefetchDataSpec, dataSpec)
+        .inOrder();
+  }
+
+  @Test
+  public void open_afterFailedPrefetch_reopensUpstream() throws Exception {
+    dataSource.prefetch(new DataSpec(Uri.parse("missing_uri")), MAX_BUFFER_SIZE);
+
+    dataSource.open(new DataSpec(Uri.parse("uri")));
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+  }
+
+  @Test
+  public void cancelPrefetch_afterPrefetch_closesPrefetchedConnection() {
+    dataSource.prefetch(new DataSpec(Uri.parse("uri")), MAX_BUFFER_SIZE);
+
+    dataSource.cancelPrefetch();
+
+    assertThat(upstream.isOpened()).isFalse();
+  }
+
+  @Test
+  public void cancelPrefetch_beforePrefetch_preventsPrefetch() {
+    dataSource.cancelPrefetch();
+
+    dataSource.prefetch(new DataSpec(Uri.parse("uri")), MAX_BUFFER_SIZE);
+
+    assertThat(upstream.getAndClearOpenedDataSpecs()).isEmpty();
+  }
+}
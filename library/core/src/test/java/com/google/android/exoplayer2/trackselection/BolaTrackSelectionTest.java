@@ -0,0 +1,312 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.trackselection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.source.chunk.MediaChunkIterator;
+import com.google.android.exoplayer2.testutil.AbrSimulationRunner;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveDataSet;
+import com.google.android.exoplayer2.testutil.FakeAdaptiveMediaSource;
+import com.google.android.exoplayer2.testutil.FakeChunkSource;
+import com.google.android.exoplayer2.testutil.FakeDataSource;
+import com.google.android.exoplayer2.testutil.FakeMediaChunkIterator;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.testutil.NetworkTrace;
+import com.google.android.exoplayer2.testutil.SimulatedNetwork;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.util.MimeTypes;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link BolaTrackSelection}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class BolaTrackSelectionTest {
+
+  private static final Format format1 =
+      createVideoFormat(/* bitrate= */ 500_000, /* width= */ 320, /* height= */ 240);
+  private static final Format format2 =
+      createVideoFormat(/* bitrate= */ 1_000_000, /* width= */ 640, /* height= */ 480);
+  private static final Format format3 =
+      createVideoFormat(/* bitrate= */ 2_000_000, /* width= */ 960, /* height= */ 720);
+
+  /**
+   * With the default minimum buffer of 10s and target buffer of 30s, format2 is selected from a
+   * buffer of about 14.4s and format3 from a buffer of about 24.4s.
+   */
+  private static final int BUFFER_LEVEL_FORMAT_1 = 5_000;
+
+  private static final int BUFFER_LEVEL_FORMAT_2 = 20_000;
+  private static final int BUFFER_LEVEL_FORMAT_3 = 30_000;
+
+  private static final long SIMULATION_TIMEOUT_MS = 60_000;
+  private static final long SIMULATION_DURATION_US = 300 * C.MICROS_PER_SECOND;
+  private static final long SIMULATION_CHUNK_DURATION_US = 4 * C.MICROS_PER_SECOND;
+  private static final Format[] SIMULATION_FORMATS =
+      new Format[] {
+        createVideoFormat(/* bitrate= */ 300_000, /* width= */ 160, /* height= */ 90),
+        createVideoFormat(/* bitrate= */ 750_000, /* width= */ 320, /* height= */ 180),
+        createVideoFormat(/* bitrate= */ 1_500_000, /* width= */ 640, /* height= */ 360),
+        createVideoFormat(/* bitrate= */ 3_000_000, /* width= */ 1280, /* height= */ 720),
+        createVideoFormat(/* bitrate= */ 6_000_000, /* width= */ 2560, /* height= */ 1440)
+      };
+
+  @Mock private BandwidthMeter mockBandwidthMeter;
+  private TrackSelection trackSelection;
+
+  @Before
+  public void setUp() {
+    initMocks(this);
+    trackSelection =
+        new BolaTrackSelection.Factory()
+            .createTrackSelections(
+                new TrackSelection.Definition[] {
+                  new TrackSelection.Definition(
+                      new TrackGroup(format1, format2, format3), /* tracks= */ 0, 1, 2)
+                },
+                mockBandwidthMeter)[0];
+    trackSelection.enable();
+  }
+
+  @Test
+  public void updateSelectedTrack_usesBandwidthEstimateForInitialSelection() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format2));
+
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withLowBufferDuringStartUp_keepsBandwidthBasedSelection() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_1);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withDecreasedBufferInSteadyState_switchesDown() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_2);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void
+      updateSelectedTrack_withDecreasedBufferInSteadyState_withinHysteresis_keepsSelection() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+
+    updateSelectedTrack(/* bufferedDurationMs= */ 23_000);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_withIncreasedBufferInSteadyState_switchesUp() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_1);
+
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_2);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_withIncreasedBufferInSteadyState_switchesUpToSustainableFormat() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_1);
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format2));
+
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format2);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_ADAPTIVE);
+  }
+
+  @Test
+  public void updateSelectedTrack_usesChunkSizesFromMediaChunkIterators() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+    // The next chunk of format3 is as small as the chunks of format1.
+    MediaChunkIterator format3Iterator =
+        new FakeMediaChunkIterator(
+            /* chunkTimeBoundariesSec= */ new long[] {0, 4},
+            /* chunkLengths= */ new long[] {format1.bitrate / 2});
+
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        /* bufferedDurationUs= */ C.msToUs(12_000),
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        new MediaChunkIterator[] {
+          format3Iterator, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+        });
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+    assertThat(trackSelection.getSelectionReason()).isEqualTo(C.SELECTION_REASON_INITIAL);
+  }
+
+  @Test
+  public void updateSelectedTrack_afterDiscontinuity_usesBandwidthEstimateDuringStartUp() {
+    when(mockBandwidthMeter.getBitrateEstimate()).thenReturn(getBitrateEstimateEnoughFor(format3));
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_3);
+    updateSelectedTrack(BUFFER_LEVEL_FORMAT_1);
+
+    trackSelection.onDiscontinuity();
+    updateSelectedTrack(/* bufferedDurationMs= */ 0);
+
+    assertThat(trackSelection.getSelectedFormat()).isEqualTo(format3);
+  }
+
+  @Test
+  public void traceDrivenSimulation_withBurstyBandwidth_rebuffersAndSwitchesLessThanAdaptive()
+      throws Exception {
+    // Bursts of 10 Mbps for 3 seconds, separated by 9 seconds of 500 kbps.
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 3_000, /* bitrate= */ 10_000_000, /* latencyMs= */ 100)
+            .addSegment(/* durationMs= */ 9_000, /* bitrate= */ 500_000, /* latencyMs= */ 100)
+            .build();
+
+    AbrSimulationRunner.Result adaptiveResult = runSimulation(trace, /* useBola= */ false);
+    AbrSimulationRunner.Result bolaResult = runSimulation(trace, /* useBola= */ true);
+
+    assertThat(adaptiveResult.rebufferCount).isGreaterThan(0);
+    assertThat(bolaResult.rebufferCount).isEqualTo(0);
+    assertThat(bolaResult.switchCount).isLessThan(adaptiveResult.switchCount / 2);
+  }
+
+  @Test
+  public void traceDrivenSimulation_withStableBandwidth_doesNotRebuffer() throws Exception {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 60_000, /* bitrate= */ 3_500_000, /* latencyMs= */ 100)
+            .build();
+
+    AbrSimulationRunner.Result bolaResult = runSimulation(trace, /* useBola= */ true);
+
+    assertThat(bolaResult.rebufferCount).isEqualTo(0);
+    assertThat(bolaResult.switchCount).isLessThan(5);
+  }
+
+  private void updateSelectedTrack(long bufferedDurationMs) {
+    trackSelection.updateSelectedTrack(
+        /* playbackPositionUs= */ 0,
+        C.msToUs(bufferedDurationMs),
+        /* availableDurationUs= */ C.TIME_UNSET,
+        /* queue= */ Collections.emptyList(),
+        /* mediaChunkIterators= */ new MediaChunkIterator[] {
+          MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY, MediaChunkIterator.EMPTY
+        });
+  }
+
+  private static Format createVideoFormat(int bitrate, int width, int height) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        /* sampleMimeType= */ MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        /* bitrate= */ bitrate,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ width,
+        /* height= */ height,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+
+  private static long getBitrateEstimateEnoughFor(Format format) {
+    return (long) (format.bitrate / BolaTrackSelection.DEFAULT_BANDWIDTH_FRACTION) + 1;
+  }
+
+  /**
+   * Plays chunked media over a network following {@code trace}, selecting tracks with a {@link
+   * BolaTrackSelection} or an {@link AdaptiveTrackSelection}. Media is loaded until the maximum
+   * buffer duration is reached, as recommended for {@link BolaTrackSelection}.
+   */
+  private static AbrSimulationRunner.Result runSimulation(NetworkTrace trace, boolean useBola)
+      throws Exception {
+    SimulatedNetwork network = new SimulatedNetwork(trace);
+    AbrSimulationRunner.Builder builder =
+        new AbrSimulationRunner.Builder(network, BolaTrackSelectionTest::createAdaptiveMediaSource)
+            .setSupportedFormats(SIMULATION_FORMATS)
+            .setLoadControl(
+                new DefaultLoadControl.Builder()
+                    .setBufferDurationsMs(
+                        /* minBufferMs= */ 50_000,
+                        /* maxBufferMs= */ 50_000,
+                        /* bufferForPlaybackMs= */ 2_500,
+                        /* bufferForPlaybackAfterRebufferMs= */ 5_000)
+                    .createDefaultLoadControl());
+    if (useBola) {
+      builder.setTrackSelectionFactory(
+          new BolaTrackSelection.Factory(
+              BolaTrackSelection.DEFAULT_MIN_BUFFER_MS,
+              BolaTrackSelection.DEFAULT_TARGET_BUFFER_MS,
+              BolaTrackSelection.DEFAULT_HYSTERESIS_BUFFER_MS,
+              BolaTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+              network.getClock()));
+    }
+    return builder.build(ApplicationProvider.getApplicationContext()).run(SIMULATION_TIMEOUT_MS);
+  }
+
+  private static MediaSource createAdaptiveMediaSource(FakeDataSource.Factory dataSourceFactory) {
+    return new FakeAdaptiveMediaSource(
+        new FakeTimeline(
+            new TimelineWindowDefinition(
+                /* isSeekable= */ true, /* isDynamic= */ false, SIMULATION_DURATION_US)),
+        new TrackGroupArray(new TrackGroup(SIMULATION_FORMATS)),
+        new FakeChunkSource.Factory(
+            new FakeAdaptiveDataSet.Factory(
+                SIMULATION_CHUNK_DURATION_US, /* bitratePercentStdDev= */ 0),
+            dataSourceFactory));
+  }
+}
@@ -26,6 +26,7 @@ import android.telephony.TelephonyManager;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
 import com.google.android.exoplayer2.testutil.FakeClock;
 import com.google.android.exoplayer2.testutil.FakeDataSource;
 import java.util.Random;
@@ -541,6 +542,99 @@ public final class DefaultBandwidthMeterTest {
     assertThat(bitrateEstimatesAfterReset).isEqualTo(bitrateEstimatesWithNewInstance);
   }
 
+  @Test
+  public void bandwidthEstimator_receivesThroughputAndTimeToFirstByteSamples() {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    TimeToFirstByteAwareBandwidthEstimator bandwidthEstimator =
+        new TimeToFirstByteAwareBandwidthEstimator(
+            new SlidingPercentileBandwidthEstimator(),
+            /* referenceTransferBytes= */ 1_000_000,
+            /* latencySmoothingFactor= */ 1);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthEstimator(bandwidthEstimator)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://dummy.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(500);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(1000);
+    bandwidthMeter.onBytesTransferred(
+        dataSource, dataSpec, /* isNetwork= */ true, /* bytes= */ 1_000_000);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthEstimator.getTimeToFirstByteEstimateMs()).isEqualTo(500);
+    assertThat(bandwidthEstimator.getThroughputEstimate()).isEqualTo(8_000_000);
+    // 1 MB takes 0.5 s to first byte and 1 s to transfer.
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(5_333_333);
+  }
+
+  @Test
+  public void bandwidthPriorStore_seedsInitialEstimateOfNextBandwidthMeter() throws Exception {
+    setActiveNetworkInfo(networkInfoWifi);
+    ExoDatabaseProvider databaseProvider =
+        new ExoDatabaseProvider(ApplicationProvider.getApplicationContext());
+    DefaultBandwidthPriorStore bandwidthPriorStore =
+        new DefaultBandwidthPriorStore(databaseProvider);
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthPriorStore(bandwidthPriorStore, Runnable::run)
+            .setClock(clock)
+            .build();
+    DataSource dataSource = new FakeDataSource();
+    DataSpec dataSpec = new DataSpec(Uri.parse("https://dummy.com"));
+
+    bandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(200);
+    bandwidthMeter.onTransferStart(dataSource, dataSpec, /* isNetwork= */ true);
+    clock.advanceTime(1000);
+    bandwidthMeter.onBytesTransferred(
+        dataSource, dataSpec, /* isNetwork= */ true, /* bytes= */ 1_000_000);
+    bandwidthMeter.onTransferEnd(dataSource, dataSpec, /* isNetwork= */ true);
+    DefaultBandwidthMeter nextBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthPriorStore(bandwidthPriorStore, Runnable::run)
+            .build();
+    nextBandwidthMeter.onTransferInitializing(dataSource, dataSpec, /* isNetwork= */ true);
+
+    assertThat(bandwidthPriorStore.get(C.NETWORK_TYPE_WIFI, "dummy.com"))
+        .isEqualTo(
+            new BandwidthPriorStore.Prior(
+                /* bitrateEstimate= */ 8_000_000, /* timeToFirstByteMs= */ 200));
+    assertThat(nextBandwidthMeter.getBitrateEstimate()).isEqualTo(8_000_000);
+    databaseProvider.close();
+  }
+
+  @Test
+  public void bandwidthPriorStore_withPriorForOtherHost_keepsInitialEstimate() throws Exception {
+    setActiveNetworkInfo(networkInfoWifi);
+    ExoDatabaseProvider databaseProvider =
+        new ExoDatabaseProvider(ApplicationProvider.getApplicationContext());
+    DefaultBandwidthPriorStore bandwidthPriorStore =
+        new DefaultBandwidthPriorStore(databaseProvider);
+    bandwidthPriorStore.put(
+        C.NETWORK_TYPE_WIFI,
+        "other.com",
+        new BandwidthPriorStore.Prior(/* bitrateEstimate= */ 123_456, C.TIME_UNSET));
+    DefaultBandwidthMeter bandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setBandwidthPriorStore(bandwidthPriorStore, Runnable::run)
+            .build();
+    long initialEstimate = bandwidthMeter.getBitrateEstimate();
+
+    bandwidthMeter.onTransferInitializing(
+        new FakeDataSource(),
+        new DataSpec(Uri.parse("https://dummy.com")),
+        /* isNetwork= */ true);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(initialEstimate);
+    databaseProvider.close();
+  }
+
   @Test
   @SuppressWarnings("deprecation")
   public void defaultInitialBitrateEstimate_withoutContext_isReasonable() {
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.BandwidthPriorStore.Prior;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultBandwidthPriorStore}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultBandwidthPriorStoreTest {
+
+  private ExoDatabaseProvider databaseProvider;
+
+  @Before
+  public void setUp() {
+    databaseProvider = new ExoDatabaseProvider(ApplicationProvider.getApplicationContext());
+  }
+
+  @After
+  public void tearDown() {
+    databaseProvider.close();
+  }
+
+  @Test
+  public void get_nonExistingPrior_returnsNull() throws IOException {
+    DefaultBandwidthPriorStore store = new DefaultBandwidthPriorStore(databaseProvider);
+
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "example.test")).isNull();
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "example.test")).isNull();
+  }
+
+  @Test
+  public void putAndGet_isKeyedByNetworkTypeAndHost() throws IOException {
+    DefaultBandwidthPriorStore store = new DefaultBandwidthPriorStore(databaseProvider);
+    Prior wifiPrior = new Prior(/* bitrateEstimate= */ 8_000_000, /* timeToFirstByteMs= */ 50);
+    Prior cellularPrior = new Prior(/* bitrateEstimate= */ 2_000_000, /* timeToFirstByteMs= */ 200);
+
+    store.put(C.NETWORK_TYPE_WIFI, "example.test", wifiPrior);
+    store.put(C.NETWORK_TYPE_4G, "example.test", cellularPrior);
+
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "example.test")).isEqualTo(wifiPrior);
+    assertThat(store.get(C.NETWORK_TYPE_4G, "example.test")).isEqualTo(cellularPrior);
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "other.test")).isNull();
+  }
+
+  @Test
+  public void put_existingPrior_replacesPrior() throws IOException {
+    DefaultBandwidthPriorStore store = new DefaultBandwidthPriorStore(databaseProvider);
+    Prior prior = new Prior(/* bitrateEstimate= */ 4_000_000, C.TIME_UNSET);
+
+    store.put(
+        C.NETWORK_TYPE_WIFI,
+        "example.test",
+        new Prior(/* bitrateEstimate= */ 8_000_000, /* timeToFirstByteMs= */ 50));
+    store.put(C.NETWORK_TYPE_WIFI, "example.test", prior);
+
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "example.test")).isEqualTo(prior);
+  }
+
+  @Test
+  public void put_exceedingMaxEntryCount_removesLeastRecentlyUpdatedPrior() throws IOException {
+    DefaultBandwidthPriorStore store =
+        new DefaultBandwidthPriorStore(
+            databaseProvider,
+            /* name= */ "",
+            /* maxEntryCount= */ 1,
+            DefaultBandwidthPriorStore.DEFAULT_MAX_AGE_MS);
+    Prior prior = new Prior(/* bitrateEstimate= */ 2_000_000, /* timeToFirstByteMs= */ 100);
+
+    store.put(
+        C.NETWORK_TYPE_WIFI,
+        "first.test",
+        new Prior(/* bitrateEstimate= */ 1_000_000, /* timeToFirstByteMs= */ 100));
+    store.put(C.NETWORK_TYPE_WIFI, "second.test", prior);
+
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "first.test")).isNull();
+    assertThat(store.get(C.NETWORK_TYPE_WIFI, "second.test")).isEqualTo(prior);
+  }
+}
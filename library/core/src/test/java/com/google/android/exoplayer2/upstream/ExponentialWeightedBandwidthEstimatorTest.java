@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ExponentialWeightedBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExponentialWeightedBandwidthEstimatorTest {
+
+  @Test
+  public void getBandwidthEstimate_withConstantThroughput_returnsThroughput() {
+    ExponentialWeightedBandwidthEstimator estimator = new ExponentialWeightedBandwidthEstimator();
+
+    // 1 MB per second.
+    estimator.addSample(/* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1000);
+    estimator.addSample(/* bytesTransferred= */ 500_000, /* elapsedTimeMs= */ 500);
+
+    assertThat(estimator.getBandwidthEstimate()).isWithin(1).of(8_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_afterThroughputDrop_followsFastAverage() {
+    ExponentialWeightedBandwidthEstimator estimator =
+        new ExponentialWeightedBandwidthEstimator(
+            /* fastHalfLifeMs= */ 1000, /* slowHalfLifeMs= */ 10_000);
+    estimator.addSample(/* bytesTransferred= */ 10_000_000, /* elapsedTimeMs= */ 10_000);
+
+    // Throughput drops to a tenth for one fast half-life.
+    estimator.addSample(/* bytesTransferred= */ 100_000, /* elapsedTimeMs= */ 1000);
+
+    // The fast average is halfway between the old and new throughput.
+    assertThat(estimator.getBandwidthEstimate()).isWithin(10_000).of(4_400_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_afterThroughputBurst_followsSlowAverage() {
+    ExponentialWeightedBandwidthEstimator estimator =
+        new ExponentialWeightedBandwidthEstimator(
+            /* fastHalfLifeMs= */ 1000, /* slowHalfLifeMs= */ 10_000);
+    estimator.addSample(/* bytesTransferred= */ 10_000_000, /* elapsedTimeMs= */ 10_000);
+
+    // Throughput rises tenfold for one fast half-life.
+    estimator.addSample(/* bytesTransferred= */ 10_000_000, /* elapsedTimeMs= */ 1000);
+
+    // The fast average is at 44 Mbps, but the slow average has only risen to 17 Mbps.
+    assertThat(estimator.getBandwidthEstimate()).isWithin(10_000).of(17_040_000);
+  }
+
+  @Test
+  public void reset_discardsSamples() {
+    ExponentialWeightedBandwidthEstimator estimator = new ExponentialWeightedBandwidthEstimator();
+    estimator.addSample(/* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1000);
+
+    estimator.reset();
+    estimator.addSample(/* bytesTransferred= */ 250_000, /* elapsedTimeMs= */ 1000);
+
+    assertThat(estimator.getBandwidthEstimate()).isWithin(1).of(2_000_000);
+  }
+}
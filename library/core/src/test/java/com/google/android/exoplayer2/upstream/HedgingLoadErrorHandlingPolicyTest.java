@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.Handler;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HedgingLoadErrorHandlingPolicy}. */
+@RunWith(AndroidJUnit4.class)
+public final class HedgingLoadErrorHandlingPolicyTest {
+
+  private static final long MIN_HEDGE_DELAY_MS = 500;
+  private static final long MAX_HEDGE_DELAY_MS = 5000;
+
+  @Test
+  public void getHedgeDelayMsFor_manifest_returnsTimeUnset() {
+    HedgingLoadErrorHandlingPolicy policy = createPolicy(/* bitrateEstimate= */ 1_000_000);
+
+    assertThat(
+            policy.getHedgeDelayMsFor(
+                C.DATA_TYPE_MANIFEST, /* expectedLength= */ 1000, /* bufferedDurationUs= */ 0))
+        .isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void getHedgeDelayMsFor_media_spendsFractionOfBufferSlack() {
+    HedgingLoadErrorHandlingPolicy policy = createPolicy(/* bitrateEstimate= */ 1_000_000);
+
+    // Transferring 250000 bytes at 1 Mbps takes 2 seconds, leaving 6 seconds of slack.
+    long hedgeDelayMs =
+        policy.getHedgeDelayMsFor(
+            C.DATA_TYPE_MEDIA,
+            /* expectedLength= */ 250_000,
+            /* bufferedDurationUs= */ 8_000_000);
+
+    assertThat(hedgeDelayMs).isEqualTo(3000);
+  }
+
+  @Test
+  public void getHedgeDelayMsFor_nearlyEmptyBuffer_returnsMinimumDelay() {
+    HedgingLoadErrorHandlingPolicy policy = createPolicy(/* bitrateEstimate= */ 1_000_000);
+
+    long hedgeDelayMs =
+        policy.getHedgeDelayMsFor(
+            C.DATA_TYPE_MEDIA,
+            /* expectedLength= */ 250_000,
+            /* bufferedDurationUs= */ 1_000_000);
+
+    assertThat(hedgeDelayMs).isEqualTo(MIN_HEDGE_DELAY_MS);
+  }
+
+  @Test
+  public void getHedgeDelayMsFor_largeBufferWithUnknownLength_returnsMaximumDelay() {
+    HedgingLoadErrorHandlingPolicy policy = createPolicy(/* bitrateEstimate= */ 1_000_000);
+
+    long hedgeDelayMs =
+        policy.getHedgeDelayMsFor(
+            C.DATA_TYPE_MEDIA, C.LENGTH_UNSET, /* bufferedDurationUs= */ 30_000_000);
+
+    assertThat(hedgeDelayMs).isEqualTo(MAX_HEDGE_DELAY_MS);
+  }
+
+  private static HedgingLoadErrorHandlingPolicy createPolicy(long bitrateEstimate) {
+    return new HedgingLoadErrorHandlingPolicy(
+        new FixedBandwidthMeter(bitrateEstimate),
+        MIN_HEDGE_DELAY_MS,
+        MAX_HEDGE_DELAY_MS,
+        /* slackFraction= */ 0.5f);
+  }
+
+  private static final class FixedBandwidthMeter implements BandwidthMeter {
+
+    private final long bitrateEstimate;
+
+    public FixedBandwidthMeter(long bitrateEstimate) {
+      this.bitrateEstimate = bitrateEstimate;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return bitrateEstimate;
+    }
+
+    @Override
+    @Nullable
+    public TransferListener getTransferListener() {
+      return null;
+    }
+
+    @Override
+    public void addEventListener(Handler eventHandler, EventListener eventListener) {
+      // Do nothing.
+    }
+
+    @Override
+    public void removeEventListener(EventListener eventListener) {
+      // Do nothing.
+    }
+  }
+}
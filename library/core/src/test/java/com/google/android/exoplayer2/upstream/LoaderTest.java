@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.ConditionVariable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.DummyMainThread;
+import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link Loader}. */
+@RunWith(AndroidJUnit4.class)
+public final class LoaderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  private DummyMainThread mainThread;
+  private ExecutorService sharedExecutorService;
+
+  @Before
+  public void setUp() {
+    mainThread = new DummyMainThread();
+    sharedExecutorService =
+        Loader.createSharedExecutorService("LoaderTest", /* maxThreadCount= */ 1);
+  }
+
+  @After
+  public void tearDown() {
+    sharedExecutorService.shutdown();
+    mainThread.release();
+  }
+
+  @Test
+  public void startLoading_withSharedExecutorService_completesLoadsOfAllLoaders() throws Exception {
+    Loader loader1 = new Loader("LoaderTest1", sharedExecutorService);
+    Loader loader2 = new Loader("LoaderTest2", sharedExecutorService);
+    CountDownLatch completedLatch = new CountDownLatch(2);
+
+    mainThread.runOnMainThread(
+        () -> {
+          loader1.startLoading(
+              new FakeLoadable(),
+              new CompletionCallback(completedLatch),
+              /* defaultMinRetryCount= */ 0);
+          loader2.startLoading(
+              new FakeLoadable(),
+              new CompletionCallback(completedLatch),
+              /* defaultMinRetryCount= */ 0);
+        });
+
+    assertThat(completedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    mainThread.runOnMainThread(
+        () -> {
+          loader1.release();
+          loader2.release();
+        });
+  }
+
+  @Test
+  public void release_withSharedExecutorService_callsReleaseCallbackAfterCanceledLoadReturns()
+      throws Exception {
+    Loader loader = new Loader("LoaderTest", sharedExecutorService);
+    BlockingLoadable loadable = new BlockingLoadable();
+    ConditionVariable releasedCondition = new ConditionVariable();
+    boolean[] loadReturnedWhenReleased = new boolean[1];
+
+    mainThread.runOnMainThread(
+        () ->
+            loader.startLoading(
+                loadable,
+                new CompletionCallback(new CountDownLatch(1)),
+                /* defaultMinRetryCount= */ 0));
+    assertThat(loadable.loadStarted.block(TIMEOUT_MS)).isTrue();
+    mainThread.runOnMainThread(
+        () ->
+            loader.release(
+                () -> {
+                  loadReturnedWhenReleased[0] = loadable.loadReturned;
+                  releasedCondition.open();
+                }));
+
+    assertThat(releasedCondition.block(TIMEOUT_MS)).isTrue();
+    assertThat(loadReturnedWhenReleased[0]).isTrue();
+    assertThat(sharedExecutorService.isShutdown()).isFalse();
+  }
+
+  @Test
+  public void release_withSharedExecutorService_allowsOtherLoadersToLoad() throws Exception {
+    Loader releasedLoader = new Loader("LoaderTest1", sharedExecutorService);
+    Loader loader = new Loader("LoaderTest2", sharedExecutorService);
+    CountDownLatch completedLatch = new CountDownLatch(1);
+
+    mainThread.runOnMainThread(
+        () -> {
+          releasedLoader.startLoading(
+              new BlockingLoadable(),
+              new CompletionCallback(new CountDownLatch(1)),
+              /* defaultMinRetryCount= */ 0);
+          loader.startLoading(
+              new FakeLoadable(),
+              new CompletionCallback(completedLatch),
+              /* defaultMinRetryCount= */ 0);
+          releasedLoader.release();
+        });
+
+    assertThat(completedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    mainThread.runOnMainThread(loader::release);
+  }
+
+  private static final class FakeLoadable implements Loadable {
+
+    @Override
+    public void cancelLoad() {
+      // Do nothing.
+    }
+
+    @Override
+    public void load() {
+      // Do nothing.
+    }
+  }
+
+  private static final class BlockingLoadable implements Loadable {
+
+    public final ConditionVariable loadStarted;
+
+    private final ConditionVariable loadCanceled;
+
+    public volatile boolean loadReturned;
+
+    public BlockingLoadable() {
+      loadStarted = new ConditionVariable();
+      loadCanceled = new ConditionVariable();
+    }
+
+    @Override
+    public void cancelLoad() {
+      loadCanceled.open();
+    }
+
+    @Override
+    public void load() {
+      loadStarted.open();
+      loadCanceled.block();
+      loadReturned = true;
+    }
+  }
+
+  private static final class CompletionCallback implements Loader.Callback<Loadable> {
+
+    private final CountDownLatch completedLatch;
+
+    public CompletionCallback(CountDownLatch completedLatch) {
+      this.completedLatch = completedLatch;
+    }
+
+    @Override
+    public void onLoadCompleted(Loadable loadable, long elapsedRealtimeMs, long loadDurationMs) {
+      completedLatch.countDown();
+    }
+
+    @Override
+    public void onLoadCanceled(
+        Loadable loadable, long elapsedRealtimeMs, long loadDurationMs, boolean released) {
+      // Do nothing.
+    }
+
+    @Override
+    public Loader.LoadErrorAction onLoadError(
+        Loadable loadable,
+        long elapsedRealtimeMs,
+        long loadDurationMs,
+        IOException error,
+        int errorCount) {
+      return Loader.DONT_RETRY;
+    }
+  }
+}
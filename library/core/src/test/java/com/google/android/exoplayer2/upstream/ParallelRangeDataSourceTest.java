@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelRangeDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelRangeDataSourceTest {
+
+  private static final Uri URI = Uri.parse("https://example.test/media.mp4");
+  private static final int RANGE_LENGTH = 100;
+  private static final int CONNECTION_COUNT = 3;
+
+  private byte[] data;
+  private List<DataSpec> openedDataSpecs;
+
+  @Before
+  public void setUp() {
+    data = TestUtil.buildTestData(10 * RANGE_LENGTH + RANGE_LENGTH / 2);
+    openedDataSpecs = new CopyOnWriteArrayList<>();
+  }
+
+  @Test
+  public void read_withByteRangeSupport_readsDataInRanges() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ true),
+            CONNECTION_COUNT,
+            RANGE_LENGTH);
+
+    assertThat(dataSource.open(new DataSpec(URI))).isEqualTo(data.length);
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+
+    // One primary request, and one request for each range after the first.
+    assertThat(openedDataSpecs).hasSize(11);
+    for (int i = 1; i < openedDataSpecs.size(); i++) {
+      DataSpec rangeDataSpec = openedDataSpecs.get(i);
+      assertThat(rangeDataSpec.position).isEqualTo(i * RANGE_LENGTH);
+      assertThat(rangeDataSpec.length)
+          .isEqualTo(Math.min(RANGE_LENGTH, data.length - i * RANGE_LENGTH));
+    }
+  }
+
+  @Test
+  public void read_fromPosition_readsRemainingDataInRanges() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ true),
+            CONNECTION_COUNT,
+            RANGE_LENGTH);
+    int position = 3 * RANGE_LENGTH + 7;
+
+    dataSource.open(new DataSpec(URI, position, C.LENGTH_UNSET, /* key= */ null));
+
+    assertThat(TestUtil.readToEnd(dataSource))
+        .isEqualTo(Arrays.copyOfRange(data, position, data.length));
+    dataSource.close();
+  }
+
+  @Test
+  public void read_withoutByteRangeSupport_readsDataOverSingleConnection() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ false),
+            CONNECTION_COUNT,
+            RANGE_LENGTH);
+
+    dataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+
+    assertThat(openedDataSpecs).hasSize(1);
+  }
+
+  @Test
+  public void read_withFailingRange_throwsRangeError() throws Exception {
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ true, /* failingPosition= */ 500),
+            CONNECTION_COUNT,
+            RANGE_LENGTH);
+    dataSource.open(new DataSpec(URI));
+
+    try {
+      TestUtil.readToEnd(dataSource);
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessageThat().isEqualTo("Range failed");
+    } finally {
+      dataSource.close();
+    }
+  }
+
+  @Test
+  public void read_withDirectAllocator_readsDataFromAllocations() throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(
+            /* trimOnReset= */ true,
+            /* individualAllocationSize= */ 16,
+            /* initialAllocationCount= */ 0,
+            /* useDirectBuffers= */ true);
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ true),
+            CONNECTION_COUNT,
+            RANGE_LENGTH,
+            allocator,
+            /* executorService= */ null);
+
+    dataSource.open(new DataSpec(URI));
+    assertThat(TestUtil.readToEnd(dataSource)).isEqualTo(data);
+    dataSource.close();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void close_withPendingRanges_releasesAllocations() throws Exception {
+    DefaultAllocator allocator =
+        new DefaultAllocator(/* trimOnReset= */ true, /* individualAllocationSize= */ 16);
+    ExecutorService executorService = Executors.newFixedThreadPool(CONNECTION_COUNT);
+    ParallelRangeDataSource dataSource =
+        new ParallelRangeDataSource(
+            () -> new RangeDataSource(/* acceptsRanges= */ true),
+            CONNECTION_COUNT,
+            RANGE_LENGTH,
+            allocator,
+            executorService);
+    dataSource.open(new DataSpec(URI));
+    // Read into the first fetched range, while the following ranges are pending.
+    assertThat(TestUtil.readExactly(dataSource, RANGE_LENGTH + 1))
+        .isEqualTo(Arrays.copyOf(data, RANGE_LENGTH + 1));
+
+    dataSource.close();
+    executorService.shutdown();
+    assertThat(executorService.awaitTermination(/* timeout= */ 10, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  /** Serves {@link #data}, recording each opened {@link DataSpec}. */
+  private final class RangeDataSource implements DataSource {
+
+    private final boolean acceptsRanges;
+    private final long failingPosition;
+
+    @Nullable private Uri uri;
+    private int readPosition;
+    private int endPosition;
+
+    public RangeDataSource(boolean acceptsRanges) {
+      this(acceptsRanges, /* failingPosition= */ C.POSITION_UNSET);
+    }
+
+    public RangeDataSource(boolean acceptsRanges, long failingPosition) {
+      this.acceptsRanges = acceptsRanges;
+      this.failingPosition = failingPosition;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+      // Do nothing.
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+      openedDataSpecs.add(dataSpec);
+      if (dataSpec.position == failingPosition) {
+        throw new IOException("Range failed");
+      }
+      uri = dataSpec.uri;
+      readPosition = (int) dataSpec.position;
+      endPosition =
+          dataSpec.length == C.LENGTH_UNSET ? data.length : (int) (readPosition + dataSpec.length);
+      return endPosition - readPosition;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) {
+      if (readPosition == endPosition) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = Math.min(readLength, endPosition - readPosition);
+      System.arraycopy(data, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      return bytesToRead;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+      return uri;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+      return acceptsRanges
+          ? Collections.singletonMap("accept-ranges", Collections.singletonList("bytes"))
+          : Collections.emptyMap();
+    }
+
+    @Override
+    public void close() {
+      uri = null;
+    }
+  }
+}
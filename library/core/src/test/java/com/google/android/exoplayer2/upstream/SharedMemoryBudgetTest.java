@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.SharedMemoryBudget.BudgetedAllocator;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedMemoryBudget}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedMemoryBudgetTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+  private static final int TOTAL_BUDGET = 100 * ALLOCATION_SIZE;
+  private static final int HIGH_PRIORITY = 0;
+  private static final int LOW_PRIORITY = -1;
+
+  private SharedMemoryBudget budget;
+
+  @Before
+  public void setUp() {
+    budget = new SharedMemoryBudget(TOTAL_BUDGET, ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void higherPriority_getsShareBeforeLowerPriority() {
+    BudgetedAllocator low = budget.register(LOW_PRIORITY);
+    BudgetedAllocator high = budget.register(HIGH_PRIORITY);
+
+    low.setTargetBufferSize(TOTAL_BUDGET);
+    high.setTargetBufferSize(80 * ALLOCATION_SIZE);
+
+    assertThat(high.getAllocationLimitBytes()).isEqualTo(80 * ALLOCATION_SIZE);
+    assertThat(low.getAllocationLimitBytes()).isEqualTo(20 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void higherPriorityTargetExceedingBudget_leavesMinShareForLowerPriority() {
+    BudgetedAllocator low = budget.register(LOW_PRIORITY);
+    BudgetedAllocator high = budget.register(HIGH_PRIORITY);
+
+    low.setTargetBufferSize(TOTAL_BUDGET);
+    high.setTargetBufferSize(2 * TOTAL_BUDGET);
+
+    int minShare = SharedMemoryBudget.DEFAULT_MIN_SHARE_ALLOCATIONS * ALLOCATION_SIZE;
+    assertThat(low.getAllocationLimitBytes()).isEqualTo(minShare);
+    assertThat(high.getAllocationLimitBytes()).isEqualTo(TOTAL_BUDGET - minShare);
+  }
+
+  @Test
+  public void minShares_exceedingBudget_splitBudgetEvenly() {
+    SharedMemoryBudget budget =
+        new SharedMemoryBudget(
+            /* totalBudgetBytes= */ 2 * ALLOCATION_SIZE,
+            ALLOCATION_SIZE,
+            /* minShareBytes= */ 2 * ALLOCATION_SIZE);
+    BudgetedAllocator low = budget.register(LOW_PRIORITY);
+    BudgetedAllocator high = budget.register(HIGH_PRIORITY);
+
+    low.setTargetBufferSize(TOTAL_BUDGET);
+    high.setTargetBufferSize(TOTAL_BUDGET);
+
+    assertThat(low.getAllocationLimitBytes()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(high.getAllocationLimitBytes()).isEqualTo(ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void equalPriority_splitsBudgetEvenly() {
+    BudgetedAllocator allocator1 = budget.register(HIGH_PRIORITY);
+    BudgetedAllocator allocator2 = budget.register(HIGH_PRIORITY);
+
+    allocator1.setTargetBufferSize(TOTAL_BUDGET);
+    allocator2.setTargetBufferSize(TOTAL_BUDGET);
+
+    assertThat(allocator1.getAllocationLimitBytes()).isEqualTo(TOTAL_BUDGET / 2);
+    assertThat(allocator2.getAllocationLimitBytes()).isEqualTo(TOTAL_BUDGET / 2);
+  }
+
+  @Test
+  public void equalPriority_redistributesUnneededBudget() {
+    BudgetedAllocator small = budget.register(HIGH_PRIORITY);
+    BudgetedAllocator large = budget.register(HIGH_PRIORITY);
+
+    small.setTargetBufferSize(10 * ALLOCATION_SIZE);
+    large.setTargetBufferSize(TOTAL_BUDGET);
+
+    assertThat(small.getAllocationLimitBytes()).isEqualTo(10 * ALLOCATION_SIZE);
+    assertThat(large.getAllocationLimitBytes()).isEqualTo(90 * ALLOCATION_SIZE);
+  }
+
+  @Test
+  public void reset_releasesShareToOtherAllocators() {
+    BudgetedAllocator low = budget.register(LOW_PRIORITY);
+    BudgetedAllocator high = budget.register(HIGH_PRIORITY);
+    low.setTargetBufferSize(TOTAL_BUDGET);
+    high.setTargetBufferSize(TOTAL_BUDGET);
+
+    high.reset();
+
+    assertThat(high.getAllocationLimitBytes()).isEqualTo(0);
+    assertThat(low.getAllocationLimitBytes()).isEqualTo(TOTAL_BUDGET);
+  }
+
+  @Test
+  public void unregister_releasesShareToOtherAllocators() {
+    BudgetedAllocator low = budget.register(LOW_PRIORITY);
+    BudgetedAllocator high = budget.register(HIGH_PRIORITY);
+    low.setTargetBufferSize(TOTAL_BUDGET);
+    high.setTargetBufferSize(TOTAL_BUDGET);
+
+    budget.unregister(high);
+
+    assertThat(low.getAllocationLimitBytes()).isEqualTo(TOTAL_BUDGET);
+    assertThat(budget.getRegisteredAllocators()).containsExactly(low);
+  }
+
+  @Test
+  public void allocate_tracksUsagePerAllocatorAndInTotal() {
+    BudgetedAllocator allocator1 = budget.register(HIGH_PRIORITY);
+    BudgetedAllocator allocator2 = budget.register(LOW_PRIORITY);
+
+    Allocation allocation = allocator1.allocate();
+    allocator1.allocate();
+    allocator2.allocate();
+
+    assertThat(allocator1.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+    assertThat(allocator2.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(budget.getTotalBytesAllocated()).isEqualTo(3 * ALLOCATION_SIZE);
+    allocator1.release(allocation);
+    assertThat(allocator1.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    assertThat(budget.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+  }
+}
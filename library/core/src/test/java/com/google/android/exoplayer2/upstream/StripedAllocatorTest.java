@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link StripedAllocator}. */
+@RunWith(AndroidJUnit4.class)
+public final class StripedAllocatorTest {
+
+  private static final int ALLOCATION_SIZE = 16;
+
+  @Test
+  public void allocate_tracksTotalBytesAllocated() {
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 4);
+
+    Allocation allocation1 = allocator.allocate();
+    Allocation allocation2 = allocator.allocate();
+
+    assertThat(allocation1.data).hasLength(ALLOCATION_SIZE);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(2 * ALLOCATION_SIZE);
+    allocator.release(allocation1);
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(ALLOCATION_SIZE);
+    allocator.release(new Allocation[] {allocation2});
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+
+  @Test
+  public void allocate_afterRelease_reusesAllocation() {
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 4);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void allocate_afterReleaseOnOtherThread_reusesAllocation() throws Exception {
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 64);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+
+    Thread releasingThread = new Thread(() -> allocator.release(allocation));
+    releasingThread.start();
+    releasingThread.join();
+
+    assertThat(allocator.allocate()).isSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void setTargetBufferSize_reduced_discardsExcessAllocations() {
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 4);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    Allocation[] allocations = new Allocation[4];
+    for (int i = 0; i < allocations.length; i++) {
+      allocations[i] = allocator.allocate();
+    }
+    allocator.release(allocations);
+
+    allocator.setTargetBufferSize(ALLOCATION_SIZE);
+
+    // Only one of the released allocations should have been retained.
+    List<Allocation> reallocated = new ArrayList<>();
+    for (int i = 0; i < allocations.length; i++) {
+      reallocated.add(allocator.allocate());
+    }
+    int reusedCount = 0;
+    for (Allocation allocation : allocations) {
+      if (reallocated.contains(allocation)) {
+        reusedCount++;
+      }
+    }
+    assertThat(reusedCount).isEqualTo(1);
+  }
+
+  @Test
+  public void reset_withTrimOnReset_discardsAllAvailableAllocations() {
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 4);
+    allocator.setTargetBufferSize(4 * ALLOCATION_SIZE);
+    Allocation allocation = allocator.allocate();
+    allocator.release(allocation);
+
+    allocator.reset();
+
+    assertThat(allocator.allocate()).isNotSameInstanceAs(allocation);
+  }
+
+  @Test
+  public void allocateAndRelease_withContendingThreads_keepsCountsConsistent() throws Exception {
+    int threadCount = 8;
+    int iterationCount = 10_000;
+    StripedAllocator allocator =
+        new StripedAllocator(/* trimOnReset= */ true, ALLOCATION_SIZE, /* stripeCount= */ 4);
+    allocator.setTargetBufferSize(threadCount * 4 * ALLOCATION_SIZE);
+    CountDownLatch startLatch = new CountDownLatch(1);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    Thread[] threads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      threads[i] =
+          new Thread(
+              () -> {
+                try {
+                  startLatch.await();
+                  Allocation[] allocations = new Allocation[4];
+                  for (int j = 0; j < iterationCount; j++) {
+                    for (int k = 0; k < allocations.length; k++) {
+                      allocations[k] = allocator.allocate();
+                    }
+                    if (j % 2 == 0) {
+                      allocator.release(allocations);
+                    } else {
+                      for (Allocation allocation : allocations) {
+                        allocator.release(allocation);
+                      }
+                    }
+                    if (j % 100 == 0) {
+                      allocator.trim();
+                    }
+                  }
+                } catch (Throwable e) {
+                  error.set(e);
+                }
+              });
+      threads[i].start();
+    }
+
+    startLatch.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(error.get()).isNull();
+    assertThat(allocator.getTotalBytesAllocated()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TimeToFirstByteAwareBandwidthEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public final class TimeToFirstByteAwareBandwidthEstimatorTest {
+
+  private TimeToFirstByteAwareBandwidthEstimator estimator;
+
+  @Before
+  public void setUp() {
+    estimator =
+        new TimeToFirstByteAwareBandwidthEstimator(
+            new SlidingPercentileBandwidthEstimator(),
+            /* referenceTransferBytes= */ 1_000_000,
+            /* latencySmoothingFactor= */ 0.5f);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withoutTimeToFirstByteSamples_returnsThroughput() {
+    estimator.addSample(/* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1000);
+
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(C.TIME_UNSET);
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(8_000_000);
+  }
+
+  @Test
+  public void getBandwidthEstimate_withTimeToFirstByte_includesLatency() {
+    estimator.addSample(/* bytesTransferred= */ 1_000_000, /* elapsedTimeMs= */ 1000);
+    estimator.addTimeToFirstByteSample(1000);
+
+    // The reference transfer takes 1 s to first byte and 1 s to transfer.
+    assertThat(estimator.getBandwidthEstimate()).isEqualTo(4_000_000);
+    assertThat(estimator.getThroughputEstimate()).isEqualTo(8_000_000);
+  }
+
+  @Test
+  public void addTimeToFirstByteSample_smoothsSamples() {
+    estimator.addTimeToFirstByteSample(1000);
+    estimator.addTimeToFirstByteSample(200);
+
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(600);
+  }
+
+  @Test
+  public void reset_discardsTimeToFirstByteEstimate() {
+    estimator.addTimeToFirstByteSample(1000);
+
+    estimator.reset();
+
+    assertThat(estimator.getTimeToFirstByteEstimateMs()).isEqualTo(C.TIME_UNSET);
+  }
+}
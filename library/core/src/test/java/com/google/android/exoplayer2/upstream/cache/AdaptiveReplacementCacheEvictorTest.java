@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.SPAN_LENGTH;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.addCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createMockCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSimpleCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSpan;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link AdaptiveReplacementCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class AdaptiveReplacementCacheEvictorTest {
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testScanDoesNotEvictFrequentlyReadSpan() throws Exception {
+    SimpleCache simpleCache =
+        createSimpleCache(
+            cacheDir, new AdaptiveReplacementCacheEvictor(/* maxBytes= */ 3 * SPAN_LENGTH));
+    addCache(simpleCache, "key1");
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+
+    for (int i = 0; i < 4; i++) {
+      addCache(simpleCache, "scan" + i);
+    }
+
+    // Spans that haven't been read again are evicted first.
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    assertThat(simpleCache.isCached("scan0", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("scan1", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("scan3", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    simpleCache.release();
+  }
+
+  @Test
+  public void testReAddingSpanEvictedFromRecencyListGrowsRecencyList() throws Exception {
+    SimpleCache simpleCache =
+        createSimpleCache(
+            cacheDir, new AdaptiveReplacementCacheEvictor(/* maxBytes= */ 3 * SPAN_LENGTH));
+    addCache(simpleCache, "key1");
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+    addCache(simpleCache, "key2");
+    addCache(simpleCache, "key3");
+    // Evicts key2, the least recently used span of the recency list.
+    addCache(simpleCache, "key4");
+    assertThat(simpleCache.isCached("key2", /* position= */ 0, SPAN_LENGTH)).isFalse();
+
+    // key2 was evicted from the recency list too early, so its target size grows. Adding key2
+    // evicts key3 from the recency list, and adding key5 then evicts from the frequency list.
+    addCache(simpleCache, "key2");
+    addCache(simpleCache, "key5");
+
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("key2", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    assertThat(simpleCache.isCached("key3", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("key4", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    assertThat(simpleCache.isCached("key5", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    simpleCache.release();
+  }
+
+  @Test
+  public void testMovedSpanKeepsPlaceInRecencyList() throws Exception {
+    AdaptiveReplacementCacheEvictor evictor =
+        new AdaptiveReplacementCacheEvictor(/* maxBytes= */ 2 * SPAN_LENGTH);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, createSpan("key2", /* lastTouchTimestamp= */ 0));
+
+    // A move keeps the last touch timestamp, but changes the file.
+    CacheSpan movedSpan1 = createSpan("key1", /* lastTouchTimestamp= */ 0, new File("slab.exo"));
+    evictor.onSpanTouched(cache, span1, movedSpan1);
+    evictor.onStartFile(cache, "key3", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).containsExactly(movedSpan1);
+  }
+
+  @Test
+  public void testAccessedSpanMovesToFrequencyList() throws Exception {
+    AdaptiveReplacementCacheEvictor evictor =
+        new AdaptiveReplacementCacheEvictor(/* maxBytes= */ 2 * SPAN_LENGTH);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    CacheSpan span2 = createSpan("key2", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+
+    evictor.onSpanTouched(cache, span1, createSpan("key1", /* lastTouchTimestamp= */ 1));
+    evictor.onStartFile(cache, "key3", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).containsExactly(span2);
+  }
+}
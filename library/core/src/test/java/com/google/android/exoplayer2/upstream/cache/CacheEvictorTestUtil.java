@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.mockito.Mockito;
+
+/** Fixtures shared by the {@link CacheEvictor} tests. */
+/* package */ final class CacheEvictorTestUtil {
+
+  /** The length of every span created by this class. */
+  public static final int SPAN_LENGTH = 10;
+
+  private CacheEvictorTestUtil() {}
+
+  /**
+   * Returns a mock {@link Cache} of content without metadata, which records the spans removed from
+   * it and reports their removal to {@code evictor}.
+   */
+  public static Cache createMockCache(CacheEvictor evictor, List<CacheSpan> removedSpans)
+      throws CacheException {
+    Cache cache = Mockito.mock(Cache.class);
+    when(cache.getContentMetadata(anyString())).thenReturn(DefaultContentMetadata.EMPTY);
+    doAnswer(
+            invocation -> {
+              CacheSpan span = invocation.getArgument(0);
+              removedSpans.add(span);
+              evictor.onSpanRemoved(cache, span);
+              return null;
+            })
+        .when(cache)
+        .removeSpan(any());
+    return cache;
+  }
+
+  /** Returns a span at the start of {@code key}, held in its own {@code <key>.exo} file. */
+  public static CacheSpan createSpan(String key, long lastTouchTimestamp) {
+    return createSpan(key, lastTouchTimestamp, new File(key + ".exo"));
+  }
+
+  /** Returns a span at the start of {@code key}, held in {@code file}. */
+  public static CacheSpan createSpan(String key, long lastTouchTimestamp, File file) {
+    return new CacheSpan(key, /* position= */ 0, SPAN_LENGTH, lastTouchTimestamp, file);
+  }
+
+  /** Returns a {@link SimpleCache} in {@code cacheDir} backed by an in-memory database. */
+  public static SimpleCache createSimpleCache(File cacheDir, CacheEvictor evictor) {
+    return new SimpleCache(cacheDir, evictor, TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  /** Writes and commits a span of {@link #SPAN_LENGTH} bytes at the start of {@code key}. */
+  public static void addCache(SimpleCache simpleCache, String key) throws Exception {
+    CacheSpan holeSpan = simpleCache.startReadWrite(key, /* position= */ 0);
+    File file = simpleCache.startFile(key, /* position= */ 0, SPAN_LENGTH);
+    writeFile(file);
+    simpleCache.commitFile(file, SPAN_LENGTH);
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
+  private static void writeFile(File file) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(TestUtil.buildTestData(SPAN_LENGTH));
+    }
+  }
+}
@@ -271,6 +271,84 @@ public class CachedContentIndexTest {
     assertStoredAndLoadedEqual(index, newLegacyInstance(key));
   }
 
+  @Test
+  public void testJournalStoreAndLoad() throws Exception {
+    assertStoredAndLoadedEqual(newJournalInstance(), newJournalInstance());
+  }
+
+  @Test
+  public void testJournalStoreAppendsChangesToJournal() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.getOrAdd("key2");
+    index.store();
+    File snapshotFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL_SNAPSHOT);
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    long snapshotLength = snapshotFile.length();
+    long journalLength = journalFile.length();
+
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setContentLength(mutations, 10);
+    index.applyContentMetadataMutations("key2", mutations);
+    index.maybeRemove("key1");
+    index.getOrAdd("key3");
+    index.store();
+
+    assertThat(snapshotFile.length()).isEqualTo(snapshotLength);
+    assertThat(journalFile.length()).isGreaterThan(journalLength);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key2", "key3");
+    assertThat(index2.get("key2")).isEqualTo(index.get("key2"));
+    assertThat(index2.get("key3")).isEqualTo(index.get("key3"));
+  }
+
+  @Test
+  public void testJournalLoadIgnoresPartiallyWrittenRecord() throws Exception {
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+    index.getOrAdd("key1");
+    index.store();
+    index.getOrAdd("key2");
+    index.store();
+    // Simulate a record that was partially written when the process was killed.
+    File journalFile = new File(cacheDir, CachedContentIndex.FILE_NAME_JOURNAL);
+    try (FileOutputStream outputStream = new FileOutputStream(journalFile, /* append= */ true)) {
+      outputStream.write(new byte[] {0, 0, 0, 100, 1, 2, 3});
+    }
+
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    assertThat(index2.getKeys()).containsExactly("key1", "key2");
+
+    // Further changes are stored after the invalid record has been discarded.
+    index2.getOrAdd("key3");
+    index2.store();
+    CachedContentIndex index3 = newJournalInstance();
+    index3.initialize(/* uid= */ 0);
+    assertThat(index3.getKeys()).containsExactly("key1", "key2", "key3");
+  }
+
+  @Test
+  public void testJournalMigratesLegacyIndex() throws Exception {
+    File legacyFile = new File(cacheDir, CachedContentIndex.FILE_NAME_ATOMIC);
+    try (FileOutputStream outputStream = new FileOutputStream(legacyFile)) {
+      outputStream.write(testIndexV2File);
+    }
+
+    CachedContentIndex index = newJournalInstance();
+    index.initialize(/* uid= */ 0);
+
+    assertThat(legacyFile.exists()).isFalse();
+    assertThat(index.assignIdForKey("ABCDE")).isEqualTo(5);
+    assertThat(index.assignIdForKey("KLMNO")).isEqualTo(2);
+    CachedContentIndex index2 = newJournalInstance();
+    index2.initialize(/* uid= */ 0);
+    ContentMetadata metadata = index2.getContentMetadata("ABCDE");
+    assertThat(ContentMetadata.getRedirectedUri(metadata)).isEqualTo(Uri.parse("abcde"));
+  }
+
   @Test
   public void testRemoveEmptyNotLockedCachedContent() {
     CachedContentIndex index = newInstance();
@@ -337,6 +415,10 @@ public class CachedContentIndexTest {
     return new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider());
   }
 
+  private CachedContentIndex newJournalInstance() {
+    return new CachedContentIndex(cacheDir, /* databaseProvider= */ null);
+  }
+
   private CachedContentIndex newLegacyInstance() {
     return newLegacyInstance(null);
   }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.SPAN_LENGTH;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.addCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createMockCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSimpleCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSpan;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link LeastFrequentlyUsedCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class LeastFrequentlyUsedCacheEvictorTest {
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testFrequentlyReadSpanIsKept() throws Exception {
+    SimpleCache simpleCache =
+        createSimpleCache(
+            cacheDir, new LeastFrequentlyUsedCacheEvictor(/* maxBytes= */ 2 * SPAN_LENGTH + 5));
+    addCache(simpleCache, "key1");
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+    addCache(simpleCache, "key2");
+
+    addCache(simpleCache, "key3");
+
+    // key1 is the least recently used span, but has been read more often than key2.
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    assertThat(simpleCache.isCached("key2", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("key3", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    simpleCache.release();
+  }
+
+  @Test
+  public void testFrequentlyReadSpanIsEvictedAfterCacheAges() throws Exception {
+    SimpleCache simpleCache =
+        createSimpleCache(
+            cacheDir, new LeastFrequentlyUsedCacheEvictor(/* maxBytes= */ 2 * SPAN_LENGTH));
+    addCache(simpleCache, "key1");
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+    simpleCache.startReadWrite("key1", /* position= */ 0);
+
+    addCache(simpleCache, "scan0");
+    addCache(simpleCache, "scan1");
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isTrue();
+
+    // Each eviction ages the cache, so that new spans eventually outrank key1 although they have
+    // been read fewer times.
+    addCache(simpleCache, "scan2");
+    addCache(simpleCache, "scan3");
+    addCache(simpleCache, "scan4");
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("scan4", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    simpleCache.release();
+  }
+
+  @Test
+  public void testMovedSpanIsNotCountedAsRead() throws Exception {
+    LeastFrequentlyUsedCacheEvictor evictor =
+        new LeastFrequentlyUsedCacheEvictor(/* maxBytes= */ 2 * SPAN_LENGTH);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    CacheSpan span2 = createSpan("key2", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    evictor.onSpanTouched(cache, span2, createSpan("key2", /* lastTouchTimestamp= */ 1));
+
+    // Moves keep the last touch timestamp, but change the file.
+    CacheSpan movedSpan1 = createSpan("key1", /* lastTouchTimestamp= */ 0, new File("slab1.exo"));
+    evictor.onSpanTouched(cache, span1, movedSpan1);
+    CacheSpan movedAgainSpan1 =
+        createSpan("key1", /* lastTouchTimestamp= */ 0, new File("slab2.exo"));
+    evictor.onSpanTouched(cache, movedSpan1, movedAgainSpan1);
+    evictor.onStartFile(cache, "key3", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).containsExactly(movedAgainSpan1);
+  }
+}
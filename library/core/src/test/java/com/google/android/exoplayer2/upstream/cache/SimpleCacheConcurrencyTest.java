@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Multi-threaded tests for {@link SimpleCache}, in which several threads read and write random
+ * spans of a shared set of keys while a {@link LeastRecentlyUsedCacheEvictor} evicts spans.
+ */
+@RunWith(AndroidJUnit4.class)
+public final class SimpleCacheConcurrencyTest {
+
+  private static final int THREAD_COUNT = 8;
+  private static final int KEY_COUNT = 16;
+  private static final int SPANS_PER_KEY = 8;
+  private static final int SPAN_LENGTH = 1024;
+  private static final int OPERATIONS_PER_THREAD = 200;
+  // Smaller than the data written, so that the evictor removes spans concurrently.
+  private static final long MAX_CACHE_BYTES = KEY_COUNT * SPANS_PER_KEY * SPAN_LENGTH / 4;
+
+  private File cacheDir;
+  private SimpleCache simpleCache;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+    simpleCache =
+        new SimpleCache(
+            cacheDir,
+            new LeastRecentlyUsedCacheEvictor(MAX_CACHE_BYTES),
+            TestUtil.getInMemoryDatabaseProvider());
+  }
+
+  @After
+  public void tearDown() {
+    simpleCache.release();
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testConcurrentReadsAndWritesKeepCacheConsistent() throws Exception {
+    ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+    List<Future<Integer>> writeCounts = new ArrayList<>();
+    try {
+      for (int i = 0; i < THREAD_COUNT; i++) {
+        Random random = new Random(/* seed= */ i);
+        writeCounts.add(executorService.submit(() -> runOperations(random)));
+      }
+      int writeCount = 0;
+      for (Future<Integer> future : writeCounts) {
+        writeCount += future.get();
+      }
+      // Spans are written until the evictor has to remove spans.
+      assertThat((long) writeCount * SPAN_LENGTH).isGreaterThan(MAX_CACHE_BYTES);
+    } finally {
+      executorService.shutdownNow();
+    }
+
+    long cachedBytes = 0;
+    for (String key : simpleCache.getKeys()) {
+      for (CacheSpan span : simpleCache.getCachedSpans(key)) {
+        assertThat(span.file.length()).isEqualTo(span.length);
+        cachedBytes += span.length;
+      }
+    }
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(cachedBytes);
+    assertThat(cachedBytes).isAtMost(MAX_CACHE_BYTES);
+  }
+
+  /**
+   * Starts reads and writes of random spans, writing the data of each span that isn't cached.
+   *
+   * @param random The source of randomness.
+   * @return The number of spans written.
+   */
+  private int runOperations(Random random) throws Exception {
+    byte[] data = new byte[SPAN_LENGTH];
+    int writeCount = 0;
+    for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+      String key = "key" + random.nextInt(KEY_COUNT);
+      long position = (long) random.nextInt(SPANS_PER_KEY) * SPAN_LENGTH;
+      CacheSpan span = simpleCache.startReadWrite(key, position);
+      if (span.isCached) {
+        // Read case. The span may be evicted at any time, so its data isn't read.
+        continue;
+      }
+      try {
+        File file = simpleCache.startFile(key, position, SPAN_LENGTH);
+        writeFile(file, data);
+        simpleCache.commitFile(file, SPAN_LENGTH);
+        writeCount++;
+      } finally {
+        simpleCache.releaseHoleSpan(span);
+      }
+    }
+    return writeCount;
+  }
+
+  private static void writeFile(File file, byte[] data) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(data);
+    }
+  }
+}
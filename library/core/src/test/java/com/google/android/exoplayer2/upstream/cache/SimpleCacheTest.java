@@ -23,6 +23,7 @@ import static org.mockito.Mockito.doAnswer;
 
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.database.DatabaseProvider;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.cache.Cache.CacheException;
 import com.google.android.exoplayer2.util.Util;
@@ -30,9 +31,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.NavigableSet;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -318,6 +324,30 @@ public class SimpleCacheTest {
     simpleCache.releaseHoleSpan(cacheSpan);
   }
 
+  @Test
+  public void testStartReadWriteBlockedOnLockedKeyDoesNotBlockOtherKeys() throws Exception {
+    SimpleCache simpleCache = getSimpleCache();
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      // Blocks until the data of KEY_1 has been written.
+      Future<CacheSpan> readSpanFuture =
+          executorService.submit(() -> simpleCache.startReadWrite(KEY_1, 0));
+
+      CacheSpan otherHoleSpan = simpleCache.startReadWrite(KEY_2, 0);
+      addCache(simpleCache, KEY_2, 0, 15);
+      simpleCache.releaseHoleSpan(otherHoleSpan);
+      assertThat(simpleCache.isCached(KEY_2, 0, 15)).isTrue();
+      assertThat(readSpanFuture.isDone()).isFalse();
+
+      addCache(simpleCache, KEY_1, 0, 15);
+      simpleCache.releaseHoleSpan(holeSpan);
+      assertCachedDataReadCorrect(readSpanFuture.get(/* timeout= */ 10, TimeUnit.SECONDS));
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
   /* Tests https://github.com/google/ExoPlayer/issues/3260 case. */
   @Test
   public void testExceptionDuringEvictionByLeastRecentlyUsedCacheEvictorNotHang() throws Exception {
@@ -325,7 +355,13 @@ public class SimpleCacheTest {
         Mockito.spy(new CachedContentIndex(TestUtil.getInMemoryDatabaseProvider()));
     SimpleCache simpleCache =
         new SimpleCache(
-            cacheDir, new LeastRecentlyUsedCacheEvictor(20), contentIndex, /* fileIndex= */ null);
+            cacheDir,
+            new LeastRecentlyUsedCacheEvictor(20),
+            contentIndex,
+            /* fileIndex= */ null,
+            /* slabStorage= */ null,
+            /* packSmallSpans= */ false,
+            /* loadSpansLazily= */ false);
 
     // Add some content.
     CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
@@ -390,6 +426,165 @@ public class SimpleCacheTest {
     new SimpleCache(cacheDir, new NoOpCacheEvictor());
   }
 
+  @Test
+  public void testLazySpanLoading() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getLazySimpleCache(databaseProvider);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 0, 15);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_2, 0, 10);
+    simpleCache.release();
+
+    simpleCache = getLazySimpleCache(databaseProvider);
+
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_1, 0);
+    assertThat(cacheSpan.length).isEqualTo(15);
+    assertCachedDataReadCorrect(cacheSpan);
+    assertThat(simpleCache.isCached(KEY_2, 0, 10)).isTrue();
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_1, KEY_2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(25);
+  }
+
+  @Test
+  public void testLazySpanLoadingLoadsFilesMissingFromFileIndex() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getLazySimpleCache(databaseProvider);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 0, 15);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_2, 0, 10);
+    long uid = simpleCache.getUid();
+    String fileName = simpleCache.getCachedSpans(KEY_2).first().file.getName();
+    simpleCache.release();
+    CacheFileMetadataIndex fileIndex = new CacheFileMetadataIndex(databaseProvider);
+    fileIndex.initialize(uid);
+    fileIndex.remove(fileName);
+
+    simpleCache = getLazySimpleCache(databaseProvider);
+
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_1, KEY_2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(25);
+    CacheSpan cacheSpan = simpleCache.startReadWrite(KEY_2, 0);
+    assertThat(cacheSpan.length).isEqualTo(10);
+    assertCachedDataReadCorrect(cacheSpan);
+  }
+
+  @Test
+  public void testLazySpanLoadingRemovesMissingFiles() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getLazySimpleCache(databaseProvider);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 0, 15);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_2, 0, 10);
+    File file = simpleCache.getCachedSpans(KEY_1).first().file;
+    simpleCache.release();
+    assertThat(file.delete()).isTrue();
+
+    simpleCache = getLazySimpleCache(databaseProvider);
+
+    assertThat(simpleCache.getCachedSpans(KEY_1)).isEmpty();
+    assertThat(simpleCache.getKeys()).containsExactly(KEY_2);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(10);
+  }
+
+  @Test
+  public void testPackSmallSpans() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getPackingSimpleCache(databaseProvider);
+    int largeSpanLength = (int) CacheSlabStorage.MAX_PACKED_SPAN_LENGTH + 1;
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 0, 15);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 15, 15);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_2, 0, 10);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_2, 10, largeSpanLength);
+
+    NavigableSet<CacheSpan> spans1 = simpleCache.getCachedSpans(KEY_1);
+    NavigableSet<CacheSpan> spans2 = simpleCache.getCachedSpans(KEY_2);
+    File slabFile = spans1.first().file;
+    assertThat(spans1.last().file).isEqualTo(slabFile);
+    assertThat(spans1.last().fileOffset).isEqualTo(15);
+    assertThat(spans2.first().file).isEqualTo(slabFile);
+    assertThat(spans2.first().fileOffset).isEqualTo(30);
+    assertPackedDataReadCorrect(spans1.last());
+    assertPackedDataReadCorrect(spans2.first());
+    // Large spans are stored in their own files.
+    assertThat(spans2.last().file).isNotEqualTo(slabFile);
+    assertCachedDataReadCorrect(spans2.last());
+
+    simpleCache.release();
+    simpleCache = getPackingSimpleCache(databaseProvider);
+
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(40 + largeSpanLength);
+    assertPackedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 15));
+  }
+
+  @Test
+  public void testCompactSlab() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getPackingSimpleCache(databaseProvider);
+    for (int i = 0; i < 4; i++) {
+      addCacheAndReleaseHoleSpan(simpleCache, KEY_1, i * 10, 10);
+    }
+    File slabFile = simpleCache.getCachedSpans(KEY_1).first().file;
+    // Spans aren't appended to existing slabs once the cache has been reinitialized.
+    simpleCache.release();
+    simpleCache = getPackingSimpleCache(databaseProvider);
+
+    NavigableSet<CacheSpan> spans = simpleCache.getCachedSpans(KEY_1);
+    for (int i = 0; i < 3; i++) {
+      simpleCache.removeSpan(spans.pollFirst());
+    }
+    // Releasing the cache completes the pending compaction.
+    simpleCache.release();
+
+    assertThat(slabFile.exists()).isFalse();
+    simpleCache = getPackingSimpleCache(databaseProvider);
+    CacheSpan span = simpleCache.startReadWrite(KEY_1, 30);
+    assertThat(span.isCached).isTrue();
+    assertThat(span.file).isNotEqualTo(slabFile);
+    assertPackedDataReadCorrect(span);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(10);
+  }
+
+  @Test
+  public void testFileOfPackedSpanDeletedOnInitialization() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getPackingSimpleCache(databaseProvider);
+    CacheSpan holeSpan = simpleCache.startReadWrite(KEY_1, 0);
+    File file = simpleCache.startFile(KEY_1, 0, 15);
+    byte[] data = generateData(KEY_1, 0, 15);
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(data);
+    }
+    simpleCache.commitFile(file, 15);
+    simpleCache.releaseHoleSpan(holeSpan);
+    simpleCache.release();
+    // Simulate the cache having been released after packing the span, but before deleting its file.
+    try (FileOutputStream fos = new FileOutputStream(file)) {
+      fos.write(data);
+    }
+
+    simpleCache = getPackingSimpleCache(databaseProvider);
+
+    assertThat(file.exists()).isFalse();
+    assertThat(simpleCache.getCachedSpans(KEY_1)).hasSize(1);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(15);
+    assertPackedDataReadCorrect(simpleCache.startReadWrite(KEY_1, 0));
+  }
+
+  @Test
+  public void testSlabsDeletedWithoutPacking() throws Exception {
+    DatabaseProvider databaseProvider = TestUtil.getInMemoryDatabaseProvider();
+    SimpleCache simpleCache = getPackingSimpleCache(databaseProvider);
+    addCacheAndReleaseHoleSpan(simpleCache, KEY_1, 0, 15);
+    File slabFile = simpleCache.getCachedSpans(KEY_1).first().file;
+    simpleCache.release();
+
+    simpleCache = new SimpleCache(cacheDir, new NoOpCacheEvictor(), databaseProvider);
+
+    assertThat(slabFile.exists()).isFalse();
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(0);
+    simpleCache.release();
+    // The slab index has been deleted as well.
+    simpleCache = getPackingSimpleCache(databaseProvider);
+    assertThat(simpleCache.getCacheSpace()).isEqualTo(0);
+  }
+
   private SimpleCache getSimpleCache() {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor());
   }
@@ -398,6 +593,32 @@ public class SimpleCacheTest {
     return new SimpleCache(cacheDir, new NoOpCacheEvictor(), secretKey);
   }
 
+  private SimpleCache getLazySimpleCache(DatabaseProvider databaseProvider) {
+    return new SimpleCache(
+        cacheDir,
+        new NoOpCacheEvictor(),
+        databaseProvider,
+        /* useJournalIndex= */ false,
+        /* loadSpansLazily= */ true);
+  }
+
+  private SimpleCache getPackingSimpleCache(DatabaseProvider databaseProvider) {
+    return new SimpleCache(
+        cacheDir,
+        new NoOpCacheEvictor(),
+        databaseProvider,
+        /* useJournalIndex= */ false,
+        /* loadSpansLazily= */ false,
+        /* packSmallSpans= */ true);
+  }
+
+  private static void addCacheAndReleaseHoleSpan(
+      SimpleCache simpleCache, String key, int position, int length) throws Exception {
+    CacheSpan holeSpan = simpleCache.startReadWrite(key, position);
+    addCache(simpleCache, key, position, length);
+    simpleCache.releaseHoleSpan(holeSpan);
+  }
+
   private static void addCache(SimpleCache simpleCache, String key, int position, int length)
       throws IOException {
     File file = simpleCache.startFile(key, position, length);
@@ -415,6 +636,17 @@ public class SimpleCacheTest {
     }
   }
 
+  private static void assertPackedDataReadCorrect(CacheSpan cacheSpan) throws IOException {
+    assertThat(cacheSpan.isCached).isTrue();
+    byte[] expected = generateData(cacheSpan.key, (int) cacheSpan.position, (int) cacheSpan.length);
+    byte[] data = new byte[(int) cacheSpan.length];
+    try (RandomAccessFile file = new RandomAccessFile(cacheSpan.file, "r")) {
+      file.seek(cacheSpan.fileOffset);
+      file.readFully(data);
+    }
+    assertThat(data).isEqualTo(expected);
+  }
+
   private static void assertNoCacheFiles(File dir) {
     File[] files = dir.listFiles();
     if (files == null) {
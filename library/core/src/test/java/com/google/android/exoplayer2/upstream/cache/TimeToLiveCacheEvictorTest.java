@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream.cache;
+
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.SPAN_LENGTH;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.addCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createMockCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSimpleCache;
+import static com.google.android.exoplayer2.upstream.cache.CacheEvictorTestUtil.createSpan;
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link TimeToLiveCacheEvictor}. */
+@RunWith(AndroidJUnit4.class)
+public class TimeToLiveCacheEvictorTest {
+
+  private File cacheDir;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir =
+        Util.createTempDirectory(ApplicationProvider.getApplicationContext(), "ExoPlayerTest");
+  }
+
+  @After
+  public void tearDown() {
+    Util.recursiveDelete(cacheDir);
+  }
+
+  @Test
+  public void testExpiredContentIsRemoved() throws Exception {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    SimpleCache simpleCache =
+        createSimpleCache(
+            cacheDir,
+            new TimeToLiveCacheEvictor(
+                new NoOpCacheEvictor(), /* defaultTimeToLiveMs= */ C.TIME_UNSET, clock));
+    ContentMetadataMutations mutations = new ContentMetadataMutations();
+    ContentMetadataMutations.setExpiryTimeMs(mutations, /* expiryTimeMs= */ 1000);
+    simpleCache.applyContentMetadataMutations("key1", mutations);
+    addCache(simpleCache, "key1");
+    addCache(simpleCache, "key2");
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isTrue();
+
+    clock.advanceTime(1000);
+    addCache(simpleCache, "key3");
+
+    assertThat(simpleCache.isCached("key1", /* position= */ 0, SPAN_LENGTH)).isFalse();
+    assertThat(simpleCache.isCached("key2", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    assertThat(simpleCache.isCached("key3", /* position= */ 0, SPAN_LENGTH)).isTrue();
+    simpleCache.release();
+  }
+
+  @Test
+  public void testDefaultTimeToLiveRemovesSpansNotTouchedSinceExpiry() throws Exception {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    TimeToLiveCacheEvictor evictor =
+        new TimeToLiveCacheEvictor(
+            new NoOpCacheEvictor(), /* defaultTimeToLiveMs= */ 1000, clock);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    CacheSpan span2 = createSpan("key2", /* lastTouchTimestamp= */ 500);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+
+    clock.advanceTime(1000);
+    evictor.onStartFile(cache, "key3", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).containsExactly(span1);
+  }
+
+  @Test
+  public void testTouchRemovesOtherExpiredSpansAndKeepsExpiryTime() throws Exception {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    TimeToLiveCacheEvictor evictor =
+        new TimeToLiveCacheEvictor(
+            new NoOpCacheEvictor(), /* defaultTimeToLiveMs= */ 1000, clock);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span1 = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    CacheSpan span2 = createSpan("key2", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, span1);
+    evictor.onSpanAdded(cache, span2);
+    clock.advanceTime(1000);
+
+    // span1 has expired, but is being read, so it's only removed once another span is written.
+    CacheSpan touchedSpan1 = createSpan("key1", /* lastTouchTimestamp= */ 1000);
+    evictor.onSpanTouched(cache, span1, touchedSpan1);
+    assertThat(removedSpans).containsExactly(span2);
+    evictor.onStartFile(cache, "key3", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).containsExactly(span2, touchedSpan1).inOrder();
+  }
+
+  @Test
+  public void testTouchOfUnexpiredSpanExtendsDefaultTimeToLive() throws Exception {
+    FakeClock clock = new FakeClock(/* initialTimeMs= */ 0);
+    TimeToLiveCacheEvictor evictor =
+        new TimeToLiveCacheEvictor(
+            new NoOpCacheEvictor(), /* defaultTimeToLiveMs= */ 1000, clock);
+    List<CacheSpan> removedSpans = new ArrayList<>();
+    Cache cache = createMockCache(evictor, removedSpans);
+    CacheSpan span = createSpan("key1", /* lastTouchTimestamp= */ 0);
+    evictor.onSpanAdded(cache, span);
+    clock.advanceTime(500);
+    evictor.onSpanTouched(cache, span, createSpan("key1", /* lastTouchTimestamp= */ 500));
+
+    clock.advanceTime(500);
+    evictor.onStartFile(cache, "key2", /* position= */ 0, SPAN_LENGTH);
+
+    assertThat(removedSpans).isEmpty();
+  }
+}
@@ -56,6 +56,28 @@ public final class NalUnitUtilTest {
     assertThat(result).isEqualTo(data.length);
   }
 
+  @Test
+  public void testFindNalUnitInLongData() {
+    byte[] data = new byte[256];
+    Arrays.fill(data, (byte) 0xFF);
+    // Insert incomplete NAL unit start codes and zero bytes, some straddling eight byte words.
+    data[7] = 0;
+    data[8] = 0;
+    data[63] = 0;
+    data[100] = 0;
+    data[101] = 0;
+    data[102] = 3;
+    // Insert a complete NAL unit start code straddling two eight byte words.
+    data[150] = 0;
+    data[151] = 0;
+    data[152] = 1;
+
+    assertThat(NalUnitUtil.findNalUnit(data, 0, data.length, null)).isEqualTo(150);
+    assertThat(NalUnitUtil.findNalUnit(data, 3, 153, null)).isEqualTo(153);
+    assertThat(NalUnitUtil.findNalUnit(data, 3, 154, null)).isEqualTo(150);
+    assertThat(NalUnitUtil.findNalUnit(data, 151, data.length, null)).isEqualTo(data.length);
+  }
+
   @Test
   public void testFindNalUnitWithPrefix() {
     byte[] data = buildTestData();
@@ -150,6 +172,15 @@ public final class NalUnitUtilTest {
     assertUnescapeMatchesExpected("0000030200000300", "000002000000");
   }
 
+  @Test
+  public void testUnescapeLongBuffers() {
+    String padding = "FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF";
+    assertUnescapeDoesNotModify(padding + "0000" + padding + "000004" + padding);
+    assertUnescapeMatchesExpected(
+        padding + "FF00000301" + padding + "00000300" + padding + "000003",
+        padding + "FF000001" + padding + "000000" + padding + "0000");
+  }
+
   @Test
   public void testDiscardToSps() {
     assertDiscardToSpsMatchesExpected("", "");
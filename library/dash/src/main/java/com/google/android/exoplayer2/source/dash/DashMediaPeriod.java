@@ -45,6 +45,7 @@ import com.google.android.exoplayer2.source.dash.manifest.Period;
 import com.google.android.exoplayer2.source.dash.manifest.Representation;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
@@ -58,6 +59,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
@@ -85,6 +87,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final IdentityHashMap<ChunkSampleStream<DashChunkSource>, PlayerTrackEmsgHandler>
       trackEmsgHandlerBySampleStream;
   private final EventDispatcher eventDispatcher;
+  @Nullable private final ExecutorService loaderExecutorService;
+  private final int chunkPipelineDepth;
+  @Nullable private final DataSource.Factory hedgeDataSourceFactory;
 
   @Nullable private Callback callback;
   private ChunkSampleStream<DashChunkSource>[] sampleStreams;
@@ -108,7 +113,10 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       LoaderErrorThrower manifestLoaderErrorThrower,
       Allocator allocator,
       CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory,
-      PlayerEmsgCallback playerEmsgCallback) {
+      PlayerEmsgCallback playerEmsgCallback,
+      @Nullable ExecutorService loaderExecutorService,
+      int chunkPipelineDepth,
+      @Nullable DataSource.Factory hedgeDataSourceFactory) {
     this.id = id;
     this.manifest = manifest;
     this.periodIndex = periodIndex;
@@ -121,6 +129,12 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderExecutorService = loaderExecutorService;
+    this.chunkPipelineDepth = chunkPipelineDepth;
+    this.hedgeDataSourceFactory =
+        hedgeDataSourceFactory == null
+            ? null
+            : createHedgeDataSourceFactory(hedgeDataSourceFactory, transferListener);
     playerEmsgHandler = new PlayerEmsgHandler(manifest, playerEmsgCallback, allocator);
     sampleStreams = newSampleStreamArray(0);
     eventSampleStreams = new EventSampleStream[0];
@@ -479,6 +493,17 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     return C.INDEX_UNSET;
   }
 
+  private static DataSource.Factory createHedgeDataSourceFactory(
+      DataSource.Factory hedgeDataSourceFactory, @Nullable TransferListener transferListener) {
+    return () -> {
+      DataSource dataSource = hedgeDataSourceFactory.createDataSource();
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      return dataSource;
+    };
+  }
+
   private static Pair<TrackGroupArray, TrackGroupInfo[]> buildTrackGroups(
       DrmSessionManager<?> drmSessionManager,
       List<AdaptationSet> adaptationSets,
@@ -730,7 +755,10 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
             positionUs,
             drmSessionManager,
             loadErrorHandlingPolicy,
-            eventDispatcher);
+            eventDispatcher,
+            loaderExecutorService,
+            chunkPipelineDepth,
+            hedgeDataSourceFactory);
     synchronized (this) {
       // The map is also accessed on the loading thread so synchronize access.
       trackEmsgHandlerBySampleStream.put(stream, trackPlayerEmsgHandler);
@@ -65,6 +65,7 @@ import java.text.SimpleDateFormat;
 import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -93,6 +94,9 @@ public final class DashMediaSource extends BaseMediaSource {
     private long liveDurationMs;
     private long liveStartMs;
     private boolean livePresentationDelayOverridesManifest;
+    @Nullable private ExecutorService loaderExecutorService;
+    private int chunkPipelineDepth;
+    @Nullable private DataSource.Factory hedgeDataSourceFactory;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -123,6 +127,7 @@ public final class DashMediaSource extends BaseMediaSource {
       drmSessionManager = DrmSessionManager.getDummyDrmSessionManager();
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       livePresentationDelayMs = DEFAULT_LIVE_PRESENTATION_DELAY_MS;
+      chunkPipelineDepth = 1;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
     }
 
@@ -189,6 +194,57 @@ public final class DashMediaSource extends BaseMediaSource {
       return this;
     }
 
+    /**
+     * Sets an {@link ExecutorService} on which manifests and chunks are loaded, which may be shared
+     * with other media sources. See {@link Loader#Loader(String, ExecutorService)}. The default
+     * value is {@code null}, in which case each loader loads on its own thread.
+     *
+     * @param loaderExecutorService The {@link ExecutorService}, or {@code null}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderExecutorService(@Nullable ExecutorService loaderExecutorService) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderExecutorService = loaderExecutorService;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of media chunk requests that each stream keeps in flight. Requests
+     * for upcoming chunks are issued while the current chunk loads, which hides request latency on
+     * high round-trip-time networks. Chunks are still written to the buffer in order. The default
+     * value is 1, which disables pipelining.
+     *
+     * @param chunkPipelineDepth The maximum number of media chunk requests to keep in flight.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setChunkPipelineDepth(int chunkPipelineDepth) {
+      Assertions.checkState(!isCreateCalled);
+      Assertions.checkArgument(chunkPipelineDepth > 0);
+      this.chunkPipelineDepth = chunkPipelineDepth;
+      return this;
+    }
+
+    /**
+     * Sets the factory for the {@link DataSource DataSources} used to make hedged requests. If a
+     * media chunk request hasn't responded within the delay given by {@link
+     * LoadErrorHandlingPolicy#getHedgeDelayMsFor}, a duplicate request is made using a source from
+     * this factory, and the chunk is loaded from whichever request responds first. A {@link
+     * com.google.android.exoplayer2.upstream.ResolvingDataSource.Factory} can be used to direct
+     * hedged requests to an alternate base URL. The default value is null, which disables hedging.
+     *
+     * @param hedgeDataSourceFactory A factory for the {@link DataSource DataSources} used to make
+     *     hedged requests, or null to disable hedging.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setHedgeDataSourceFactory(@Nullable DataSource.Factory hedgeDataSourceFactory) {
+      Assertions.checkState(!isCreateCalled);
+      this.hedgeDataSourceFactory = hedgeDataSourceFactory;
+      return this;
+    }
+
     /** @deprecated Use {@link #setLivePresentationDelayMs(long, boolean)}. */
     @Deprecated
     @SuppressWarnings("deprecation")
@@ -282,7 +338,10 @@ public final class DashMediaSource extends BaseMediaSource {
           livePresentationDelayOverridesManifest,
           liveDurationMs,
           liveStartMs,
-          tag);
+          tag,
+          loaderExecutorService,
+          chunkPipelineDepth,
+          hedgeDataSourceFactory);
     }
 
     /**
@@ -360,7 +419,10 @@ public final class DashMediaSource extends BaseMediaSource {
           livePresentationDelayOverridesManifest,
           liveDurationMs,
           liveStartMs,
-          tag);
+          tag,
+          loaderExecutorService,
+          chunkPipelineDepth,
+          hedgeDataSourceFactory);
     }
 
     @Override
@@ -419,6 +481,9 @@ public final class DashMediaSource extends BaseMediaSource {
   private final PlayerEmsgCallback playerEmsgCallback;
   private final LoaderErrorThrower manifestLoadErrorThrower;
   @Nullable private final Object tag;
+  @Nullable private final ExecutorService loaderExecutorService;
+  private final int chunkPipelineDepth;
+  @Nullable private final DataSource.Factory hedgeDataSourceFactory;
 
   private DataSource dataSource;
   private Loader loader;
@@ -500,7 +565,10 @@ public final class DashMediaSource extends BaseMediaSource {
         /* livePresentationDelayOverridesManifest= */ false,
         liveProgramDurationMs,
         liveProgramStartMs,
-        /* tag= */ null);
+        /* tag= */ null,
+        /* loaderExecutorService= */ null,
+        /* chunkPipelineDepth= */ 1,
+        /* hedgeDataSourceFactory= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
     }
@@ -628,7 +696,10 @@ public final class DashMediaSource extends BaseMediaSource {
         livePresentationDelayMs != DEFAULT_LIVE_PRESENTATION_DELAY_PREFER_MANIFEST_MS,
         liveProgramDurationMs,
         liveProgramStartMs,
-        /* tag= */ null);
+        /* tag= */ null,
+        /* loaderExecutorService= */ null,
+        /* chunkPipelineDepth= */ 1,
+        /* hedgeDataSourceFactory= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
     }
@@ -647,7 +718,10 @@ public final class DashMediaSource extends BaseMediaSource {
       boolean livePresentationDelayOverridesManifest,
       long liveProgramDurationMs,
       long liveProgramStartMs,
-      @Nullable Object tag) {
+      @Nullable Object tag,
+      @Nullable ExecutorService loaderExecutorService,
+      int chunkPipelineDepth,
+      @Nullable DataSource.Factory hedgeDataSourceFactory) {
     this.initialManifestUri = manifestUri;
     this.manifest = manifest;
     this.manifestUri = manifestUri;
@@ -662,6 +736,9 @@ public final class DashMediaSource extends BaseMediaSource {
     this.livePresentationDelayOverridesManifest = livePresentationDelayOverridesManifest;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
     this.tag = tag;
+    this.loaderExecutorService = loaderExecutorService;
+    this.chunkPipelineDepth = chunkPipelineDepth;
+    this.hedgeDataSourceFactory = hedgeDataSourceFactory;
     sideloadedManifest = manifest != null;
     manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
     manifestUriLock = new Object();
@@ -710,7 +787,7 @@ public final class DashMediaSource extends BaseMediaSource {
       processManifest(false);
     } else {
       dataSource = manifestDataSourceFactory.createDataSource();
-      loader = new Loader("Loader:DashMediaSource");
+      loader = new Loader("Loader:DashMediaSource", loaderExecutorService);
       handler = new Handler();
       startLoadingManifest();
     }
@@ -741,7 +818,10 @@ public final class DashMediaSource extends BaseMediaSource {
             manifestLoadErrorThrower,
             allocator,
             compositeSequenceableLoaderFactory,
-            playerEmsgCallback);
+            playerEmsgCallback,
+            loaderExecutorService,
+            chunkPipelineDepth,
+            hedgeDataSourceFactory);
     periodsById.put(mediaPeriod.id, mediaPeriod);
     return mediaPeriod;
   }
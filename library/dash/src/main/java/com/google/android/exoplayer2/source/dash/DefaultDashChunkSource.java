@@ -88,10 +88,14 @@ public class DefaultDashChunkSource implements DashChunkSource {
         List<Format> closedCaptionFormats,
         @Nullable PlayerTrackEmsgHandler playerEmsgHandler,
         @Nullable TransferListener transferListener) {
-      DataSource dataSource = dataSourceFactory.createDataSource();
-      if (transferListener != null) {
-        dataSource.addTransferListener(transferListener);
-      }
+      DataSource.Factory listenedDataSourceFactory =
+          () -> {
+            DataSource dataSource = dataSourceFactory.createDataSource();
+            if (transferListener != null) {
+              dataSource.addTransferListener(transferListener);
+            }
+            return dataSource;
+          };
       return new DefaultDashChunkSource(
           manifestLoaderErrorThrower,
           manifest,
@@ -99,12 +103,13 @@ public class DefaultDashChunkSource implements DashChunkSource {
           adaptationSetIndices,
           trackSelection,
           trackType,
-          dataSource,
+          listenedDataSourceFactory.createDataSource(),
           elapsedRealtimeOffsetMs,
           maxSegmentsPerLoad,
           enableEventMessageTrack,
           closedCaptionFormats,
-          playerEmsgHandler);
+          playerEmsgHandler,
+          /* prefetchDataSourceFactory= */ listenedDataSourceFactory);
     }
 
   }
@@ -113,6 +118,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
   private final int[] adaptationSetIndices;
   private final int trackType;
   private final DataSource dataSource;
+  @Nullable private final DataSource.Factory prefetchDataSourceFactory;
   private final long elapsedRealtimeOffsetMs;
   private final int maxSegmentsPerLoad;
   @Nullable private final PlayerTrackEmsgHandler playerTrackEmsgHandler;
@@ -158,12 +164,65 @@ public class DefaultDashChunkSource implements DashChunkSource {
       boolean enableEventMessageTrack,
       List<Format> closedCaptionFormats,
       @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        periodIndex,
+        adaptationSetIndices,
+        trackSelection,
+        trackType,
+        dataSource,
+        elapsedRealtimeOffsetMs,
+        maxSegmentsPerLoad,
+        enableEventMessageTrack,
+        closedCaptionFormats,
+        playerTrackEmsgHandler,
+        /* prefetchDataSourceFactory= */ null);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param periodIndex The index of the period in the manifest.
+   * @param adaptationSetIndices The indices of the adaptation sets in the period.
+   * @param trackSelection The track selection.
+   * @param trackType The type of the tracks in the selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param elapsedRealtimeOffsetMs If known, an estimate of the instantaneous difference between
+   *     server-side unix time and {@link SystemClock#elapsedRealtime()} in milliseconds, specified
+   *     as the server's unix time minus the local elapsed time. If unknown, set to 0.
+   * @param maxSegmentsPerLoad The maximum number of segments to combine into a single request. Note
+   *     that segments will only be combined if their {@link Uri}s are the same and if their data
+   *     ranges are adjacent.
+   * @param enableEventMessageTrack Whether to output an event message track.
+   * @param closedCaptionFormats The {@link Format Formats} of closed caption tracks to be output.
+   * @param playerTrackEmsgHandler The {@link PlayerTrackEmsgHandler} instance to handle emsg
+   *     messages targeting the player. Maybe null if this is not necessary.
+   * @param prefetchDataSourceFactory A factory for the {@link DataSource DataSources} of chunks
+   *     that are requested before their load starts, or null if chunks must not be requested
+   *     ahead of their load.
+   */
+  public DefaultDashChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      DashManifest manifest,
+      int periodIndex,
+      int[] adaptationSetIndices,
+      TrackSelection trackSelection,
+      int trackType,
+      DataSource dataSource,
+      long elapsedRealtimeOffsetMs,
+      int maxSegmentsPerLoad,
+      boolean enableEventMessageTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler,
+      @Nullable DataSource.Factory prefetchDataSourceFactory) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.adaptationSetIndices = adaptationSetIndices;
     this.trackSelection = trackSelection;
     this.trackType = trackType;
     this.dataSource = dataSource;
+    this.prefetchDataSourceFactory = prefetchDataSourceFactory;
     this.periodIndex = periodIndex;
     this.elapsedRealtimeOffsetMs = elapsedRealtimeOffsetMs;
     this.maxSegmentsPerLoad = maxSegmentsPerLoad;
@@ -227,6 +286,12 @@ public class DefaultDashChunkSource implements DashChunkSource {
     this.trackSelection = trackSelection;
   }
 
+  @Override
+  @Nullable
+  public DataSource createPrefetchDataSource() {
+    return prefetchDataSourceFactory != null ? prefetchDataSourceFactory.createDataSource() : null;
+  }
+
   @Override
   public void maybeThrowError() throws IOException {
     if (fatalError != null) {
@@ -128,7 +128,10 @@ public final class DashMediaPeriodTest {
                 mock(LoaderErrorThrower.class),
                 mock(Allocator.class),
                 mock(CompositeSequenceableLoaderFactory.class),
-                mock(PlayerEmsgCallback.class));
+                mock(PlayerEmsgCallback.class),
+                /* loaderExecutorService= */ null,
+                /* chunkPipelineDepth= */ 1,
+                /* hedgeDataSourceFactory= */ null);
 
     // Ignore embedded metadata as we don't want to select primary group just to get embedded track.
     MediaPeriodAsserts.assertGetStreamKeysAndManifestFilterIntegration(
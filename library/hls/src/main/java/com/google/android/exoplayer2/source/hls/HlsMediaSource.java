@@ -47,12 +47,14 @@ import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /** An HLS {@link MediaSource}. */
 public final class HlsMediaSource extends BaseMediaSource
@@ -99,6 +101,7 @@ public final class HlsMediaSource extends BaseMediaSource
     private boolean allowChunklessPreparation;
     @MetadataType private int metadataType;
     private boolean useSessionKeys;
+    @Nullable private ExecutorService loaderExecutorService;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -224,6 +227,24 @@ public final class HlsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets an {@link ExecutorService} on which playlists are loaded, which may be shared with other
+     * media sources. See {@link Loader#Loader(String, ExecutorService)}. It's only used if the
+     * playlist tracker factory is {@link DefaultHlsPlaylistTracker#FACTORY}. Segments are always
+     * loaded on a dedicated thread for each stream, since their loads may block until another
+     * stream has initialized their timestamp adjuster. The default value is {@code null}, in which
+     * case each playlist loader loads on its own thread.
+     *
+     * @param loaderExecutorService The {@link ExecutorService}, or {@code null}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderExecutorService(@Nullable ExecutorService loaderExecutorService) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderExecutorService = loaderExecutorService;
+      return this;
+    }
+
     /**
      * Sets the factory to create composite {@link SequenceableLoader}s for when this media source
      * loads data from multiple streams (video, audio etc...). The default is an instance of {@link
@@ -339,6 +360,19 @@ public final class HlsMediaSource extends BaseMediaSource
         playlistParserFactory =
             new FilteringHlsPlaylistParserFactory(playlistParserFactory, streamKeys);
       }
+      HlsPlaylistTracker.Factory playlistTrackerFactory = this.playlistTrackerFactory;
+      if (loaderExecutorService != null
+          && playlistTrackerFactory == DefaultHlsPlaylistTracker.FACTORY) {
+        ExecutorService loaderExecutorService = this.loaderExecutorService;
+        playlistTrackerFactory =
+            (dataSourceFactory, loadErrorHandlingPolicy, playlistParserFactory) ->
+                new DefaultHlsPlaylistTracker(
+                    dataSourceFactory,
+                    loadErrorHandlingPolicy,
+                    playlistParserFactory,
+                    DefaultHlsPlaylistTracker.DEFAULT_PLAYLIST_STUCK_TARGET_DURATION_COEFFICIENT,
+                    loaderExecutorService);
+      }
       return new HlsMediaSource(
           playlistUri,
           hlsDataSourceFactory,
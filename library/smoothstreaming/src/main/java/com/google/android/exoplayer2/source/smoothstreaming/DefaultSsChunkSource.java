@@ -62,12 +62,21 @@ public class DefaultSsChunkSource implements SsChunkSource {
         int elementIndex,
         TrackSelection trackSelection,
         @Nullable TransferListener transferListener) {
-      DataSource dataSource = dataSourceFactory.createDataSource();
-      if (transferListener != null) {
-        dataSource.addTransferListener(transferListener);
-      }
+      DataSource.Factory listenedDataSourceFactory =
+          () -> {
+            DataSource dataSource = dataSourceFactory.createDataSource();
+            if (transferListener != null) {
+              dataSource.addTransferListener(transferListener);
+            }
+            return dataSource;
+          };
       return new DefaultSsChunkSource(
-          manifestLoaderErrorThrower, manifest, elementIndex, trackSelection, dataSource);
+          manifestLoaderErrorThrower,
+          manifest,
+          elementIndex,
+          trackSelection,
+          listenedDataSourceFactory.createDataSource(),
+          /* prefetchDataSourceFactory= */ listenedDataSourceFactory);
     }
 
   }
@@ -76,6 +85,7 @@ public class DefaultSsChunkSource implements SsChunkSource {
   private final int streamElementIndex;
   private final ChunkExtractorWrapper[] extractorWrappers;
   private final DataSource dataSource;
+  @Nullable private final DataSource.Factory prefetchDataSourceFactory;
 
   private TrackSelection trackSelection;
   private SsManifest manifest;
@@ -96,11 +106,38 @@ public class DefaultSsChunkSource implements SsChunkSource {
       int streamElementIndex,
       TrackSelection trackSelection,
       DataSource dataSource) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        streamElementIndex,
+        trackSelection,
+        dataSource,
+        /* prefetchDataSourceFactory= */ null);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param streamElementIndex The index of the stream element in the manifest.
+   * @param trackSelection The track selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param prefetchDataSourceFactory A factory for the {@link DataSource DataSources} of chunks
+   *     that are requested before their load starts, or null if chunks must not be requested
+   *     ahead of their load.
+   */
+  public DefaultSsChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      SsManifest manifest,
+      int streamElementIndex,
+      TrackSelection trackSelection,
+      DataSource dataSource,
+      @Nullable DataSource.Factory prefetchDataSourceFactory) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.streamElementIndex = streamElementIndex;
     this.trackSelection = trackSelection;
     this.dataSource = dataSource;
+    this.prefetchDataSourceFactory = prefetchDataSourceFactory;
 
     StreamElement streamElement = manifest.streamElements[streamElementIndex];
     extractorWrappers = new ChunkExtractorWrapper[trackSelection.length()];
@@ -165,6 +202,12 @@ public class DefaultSsChunkSource implements SsChunkSource {
 
   // ChunkSource implementation.
 
+  @Override
+  @Nullable
+  public DataSource createPrefetchDataSource() {
+    return prefetchDataSourceFactory != null ? prefetchDataSourceFactory.createDataSource() : null;
+  }
+
   @Override
   public void maybeThrowError() throws IOException {
     if (fatalError != null) {
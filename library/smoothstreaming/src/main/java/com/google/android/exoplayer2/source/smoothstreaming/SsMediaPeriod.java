@@ -32,12 +32,14 @@ import com.google.android.exoplayer2.source.chunk.ChunkSampleStream;
 import com.google.android.exoplayer2.source.smoothstreaming.manifest.SsManifest;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
 
 /** A SmoothStreaming {@link MediaPeriod}. */
@@ -53,6 +55,9 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
   private final Allocator allocator;
   private final TrackGroupArray trackGroups;
   private final CompositeSequenceableLoaderFactory compositeSequenceableLoaderFactory;
+  @Nullable private final ExecutorService loaderExecutorService;
+  private final int chunkPipelineDepth;
+  @Nullable private final DataSource.Factory hedgeDataSourceFactory;
 
   @Nullable private Callback callback;
   private SsManifest manifest;
@@ -69,7 +74,10 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       EventDispatcher eventDispatcher,
       LoaderErrorThrower manifestLoaderErrorThrower,
-      Allocator allocator) {
+      Allocator allocator,
+      @Nullable ExecutorService loaderExecutorService,
+      int chunkPipelineDepth,
+      @Nullable DataSource.Factory hedgeDataSourceFactory) {
     this.manifest = manifest;
     this.chunkSourceFactory = chunkSourceFactory;
     this.transferListener = transferListener;
@@ -79,6 +87,12 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
     this.eventDispatcher = eventDispatcher;
     this.allocator = allocator;
     this.compositeSequenceableLoaderFactory = compositeSequenceableLoaderFactory;
+    this.loaderExecutorService = loaderExecutorService;
+    this.chunkPipelineDepth = chunkPipelineDepth;
+    this.hedgeDataSourceFactory =
+        hedgeDataSourceFactory == null
+            ? null
+            : createHedgeDataSourceFactory(hedgeDataSourceFactory, transferListener);
     trackGroups = buildTrackGroups(manifest, drmSessionManager);
     sampleStreams = newSampleStreamArray(0);
     compositeSequenceableLoader =
@@ -255,7 +269,21 @@ import org.checkerframework.checker.nullness.compatqual.NullableType;
         positionUs,
         drmSessionManager,
         loadErrorHandlingPolicy,
-        eventDispatcher);
+        eventDispatcher,
+        loaderExecutorService,
+        chunkPipelineDepth,
+        hedgeDataSourceFactory);
+  }
+
+  private static DataSource.Factory createHedgeDataSourceFactory(
+      DataSource.Factory hedgeDataSourceFactory, @Nullable TransferListener transferListener) {
+    return () -> {
+      DataSource dataSource = hedgeDataSourceFactory.createDataSource();
+      if (transferListener != null) {
+        dataSource.addTransferListener(transferListener);
+      }
+      return dataSource;
+    };
   }
 
   private static TrackGroupArray buildTrackGroups(
@@ -53,6 +53,7 @@ import com.google.android.exoplayer2.util.Assertions;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /** A SmoothStreaming {@link MediaSource}. */
 public final class SsMediaSource extends BaseMediaSource
@@ -74,6 +75,9 @@ public final class SsMediaSource extends BaseMediaSource
     private DrmSessionManager<?> drmSessionManager;
     private LoadErrorHandlingPolicy loadErrorHandlingPolicy;
     private long livePresentationDelayMs;
+    @Nullable private ExecutorService loaderExecutorService;
+    private int chunkPipelineDepth;
+    @Nullable private DataSource.Factory hedgeDataSourceFactory;
     private boolean isCreateCalled;
     @Nullable private Object tag;
 
@@ -104,6 +108,7 @@ public final class SsMediaSource extends BaseMediaSource
       drmSessionManager = DrmSessionManager.getDummyDrmSessionManager();
       loadErrorHandlingPolicy = new DefaultLoadErrorHandlingPolicy();
       livePresentationDelayMs = DEFAULT_LIVE_PRESENTATION_DELAY_MS;
+      chunkPipelineDepth = 1;
       compositeSequenceableLoaderFactory = new DefaultCompositeSequenceableLoaderFactory();
     }
 
@@ -155,6 +160,57 @@ public final class SsMediaSource extends BaseMediaSource
       return this;
     }
 
+    /**
+     * Sets an {@link ExecutorService} on which manifests and chunks are loaded, which may be shared
+     * with other media sources. See {@link Loader#Loader(String, ExecutorService)}. The default
+     * value is {@code null}, in which case each loader loads on its own thread.
+     *
+     * @param loaderExecutorService The {@link ExecutorService}, or {@code null}.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setLoaderExecutorService(@Nullable ExecutorService loaderExecutorService) {
+      Assertions.checkState(!isCreateCalled);
+      this.loaderExecutorService = loaderExecutorService;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of media chunk requests that each stream keeps in flight. Requests
+     * for upcoming chunks are issued while the current chunk loads, which hides request latency on
+     * high round-trip-time networks. Chunks are still written to the buffer in order. The default
+     * value is 1, which disables pipelining.
+     *
+     * @param chunkPipelineDepth The maximum number of media chunk requests to keep in flight.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setChunkPipelineDepth(int chunkPipelineDepth) {
+      Assertions.checkState(!isCreateCalled);
+      Assertions.checkArgument(chunkPipelineDepth > 0);
+      this.chunkPipelineDepth = chunkPipelineDepth;
+      return this;
+    }
+
+    /**
+     * Sets the factory for the {@link DataSource DataSources} used to make hedged requests. If a
+     * media chunk request hasn't responded within the delay given by {@link
+     * LoadErrorHandlingPolicy#getHedgeDelayMsFor}, a duplicate request is made using a source from
+     * this factory, and the chunk is loaded from whichever request responds first. A {@link
+     * com.google.android.exoplayer2.upstream.ResolvingDataSource.Factory} can be used to direct
+     * hedged requests to an alternate base URL. The default value is null, which disables hedging.
+     *
+     * @param hedgeDataSourceFactory A factory for the {@link DataSource DataSources} used to make
+     *     hedged requests, or null to disable hedging.
+     * @return This factory, for convenience.
+     * @throws IllegalStateException If one of the {@code create} methods has already been called.
+     */
+    public Factory setHedgeDataSourceFactory(@Nullable DataSource.Factory hedgeDataSourceFactory) {
+      Assertions.checkState(!isCreateCalled);
+      this.hedgeDataSourceFactory = hedgeDataSourceFactory;
+      return this;
+    }
+
     /**
      * Sets the duration in milliseconds by which the default start position should precede the end
      * of the live window for live playbacks. The default value is {@link
@@ -227,7 +283,10 @@ public final class SsMediaSource extends BaseMediaSource
           drmSessionManager,
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
-          tag);
+          tag,
+          loaderExecutorService,
+          chunkPipelineDepth,
+          hedgeDataSourceFactory);
     }
 
     /**
@@ -302,7 +361,10 @@ public final class SsMediaSource extends BaseMediaSource
           drmSessionManager,
           loadErrorHandlingPolicy,
           livePresentationDelayMs,
-          tag);
+          tag,
+          loaderExecutorService,
+          chunkPipelineDepth,
+          hedgeDataSourceFactory);
     }
 
     @Override
@@ -346,6 +408,9 @@ public final class SsMediaSource extends BaseMediaSource
   private final ParsingLoadable.Parser<? extends SsManifest> manifestParser;
   private final ArrayList<SsMediaPeriod> mediaPeriods;
   @Nullable private final Object tag;
+  @Nullable private final ExecutorService loaderExecutorService;
+  private final int chunkPipelineDepth;
+  @Nullable private final DataSource.Factory hedgeDataSourceFactory;
 
   private DataSource manifestDataSource;
   private Loader manifestLoader;
@@ -408,7 +473,10 @@ public final class SsMediaSource extends BaseMediaSource
         DrmSessionManager.getDummyDrmSessionManager(),
         new DefaultLoadErrorHandlingPolicy(minLoadableRetryCount),
         DEFAULT_LIVE_PRESENTATION_DELAY_MS,
-        /* tag= */ null);
+        /* tag= */ null,
+        /* loaderExecutorService= */ null,
+        /* chunkPipelineDepth= */ 1,
+        /* hedgeDataSourceFactory= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
     }
@@ -509,7 +577,10 @@ public final class SsMediaSource extends BaseMediaSource
         DrmSessionManager.getDummyDrmSessionManager(),
         new DefaultLoadErrorHandlingPolicy(minLoadableRetryCount),
         livePresentationDelayMs,
-        /* tag= */ null);
+        /* tag= */ null,
+        /* loaderExecutorService= */ null,
+        /* chunkPipelineDepth= */ 1,
+        /* hedgeDataSourceFactory= */ null);
     if (eventHandler != null && eventListener != null) {
       addEventListener(eventHandler, eventListener);
     }
@@ -525,7 +596,10 @@ public final class SsMediaSource extends BaseMediaSource
       DrmSessionManager<?> drmSessionManager,
       LoadErrorHandlingPolicy loadErrorHandlingPolicy,
       long livePresentationDelayMs,
-      @Nullable Object tag) {
+      @Nullable Object tag,
+      @Nullable ExecutorService loaderExecutorService,
+      int chunkPipelineDepth,
+      @Nullable DataSource.Factory hedgeDataSourceFactory) {
     Assertions.checkState(manifest == null || !manifest.isLive);
     this.manifest = manifest;
     this.manifestUri = manifestUri == null ? null : SsUtil.fixManifestUri(manifestUri);
@@ -538,6 +612,9 @@ public final class SsMediaSource extends BaseMediaSource
     this.livePresentationDelayMs = livePresentationDelayMs;
     this.manifestEventDispatcher = createEventDispatcher(/* mediaPeriodId= */ null);
     this.tag = tag;
+    this.loaderExecutorService = loaderExecutorService;
+    this.chunkPipelineDepth = chunkPipelineDepth;
+    this.hedgeDataSourceFactory = hedgeDataSourceFactory;
     sideloadedManifest = manifest != null;
     mediaPeriods = new ArrayList<>();
   }
@@ -559,7 +636,7 @@ public final class SsMediaSource extends BaseMediaSource
       processManifest();
     } else {
       manifestDataSource = manifestDataSourceFactory.createDataSource();
-      manifestLoader = new Loader("Loader:Manifest");
+      manifestLoader = new Loader("Loader:Manifest", loaderExecutorService);
       manifestLoaderErrorThrower = manifestLoader;
       manifestRefreshHandler = new Handler();
       startLoadingManifest();
@@ -584,7 +661,10 @@ public final class SsMediaSource extends BaseMediaSource
             loadErrorHandlingPolicy,
             eventDispatcher,
             manifestLoaderErrorThrower,
-            allocator);
+            allocator,
+            loaderExecutorService,
+            chunkPipelineDepth,
+            hedgeDataSourceFactory);
     mediaPeriods.add(period);
     return period;
   }
@@ -75,7 +75,10 @@ public class SsMediaPeriodTest {
                         /* mediaPeriodId= */ new MediaPeriodId(/* periodUid= */ new Object()),
                         /* mediaTimeOffsetMs= */ 0),
                 mock(LoaderErrorThrower.class),
-                mock(Allocator.class));
+                mock(Allocator.class),
+                /* loaderExecutorService= */ null,
+                /* chunkPipelineDepth= */ 1,
+                /* hedgeDataSourceFactory= */ null);
 
     MediaPeriodAsserts.assertGetStreamKeysAndManifestFilterIntegration(
         mediaPeriodFactory, testManifest);
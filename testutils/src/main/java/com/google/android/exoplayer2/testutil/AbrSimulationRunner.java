@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import android.content.Context;
+import android.util.Pair;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.analytics.AnalyticsListener.EventTime;
+import com.google.android.exoplayer2.analytics.PlaybackStats;
+import com.google.android.exoplayer2.analytics.PlaybackStatsListener;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.util.Clock;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Plays media over a {@link SimulatedNetwork} and reports quality of experience metrics, so that
+ * adaptive bitrate and buffering behavior can be evaluated offline and faster than real time.
+ *
+ * <p>The media is loaded from {@link FakeDataSource}s created by the simulated network. For
+ * synthetic adaptive media, create a {@link FakeAdaptiveMediaSource} whose {@link FakeChunkSource}
+ * uses the provided data source factory. To play DASH or HLS test manifests, put the manifest and
+ * its media segments into a {@link FakeDataSet}, set it on the provided data source factory and
+ * pass the factory to the media source of the respective format.
+ */
+public final class AbrSimulationRunner {
+
+  /** Creates the {@link MediaSource} to play. */
+  public interface MediaSourceFactory {
+
+    /**
+     * Creates the {@link MediaSource} to play.
+     *
+     * @param dataSourceFactory A {@link FakeDataSource.Factory} whose data sources are throttled by
+     *     the simulated network. All media data should be loaded from these data sources.
+     * @return The {@link MediaSource} to play.
+     */
+    MediaSource createMediaSource(FakeDataSource.Factory dataSourceFactory);
+  }
+
+  /** Builder to set up an {@link AbrSimulationRunner}. */
+  public static final class Builder {
+
+    private final SimulatedNetwork network;
+    private final MediaSourceFactory mediaSourceFactory;
+
+    @Nullable private Format[] supportedFormats;
+    @Nullable private TrackSelection.Factory trackSelectionFactory;
+    @Nullable private LoadControl loadControl;
+    @Nullable private BandwidthMeter bandwidthMeter;
+
+    /**
+     * Creates a builder.
+     *
+     * @param network The {@link SimulatedNetwork} over which the media is loaded.
+     * @param mediaSourceFactory The {@link MediaSourceFactory} creating the media to play.
+     */
+    public Builder(SimulatedNetwork network, MediaSourceFactory mediaSourceFactory) {
+      this.network = network;
+      this.mediaSourceFactory = mediaSourceFactory;
+    }
+
+    /**
+     * Sets the {@link Format}s supported by the fake renderer consuming the media. The default is
+     * the format set by {@link ExoPlayerTestRunner.Builder}.
+     *
+     * @param supportedFormats The supported {@link Format}s.
+     * @return This builder.
+     */
+    public Builder setSupportedFormats(Format... supportedFormats) {
+      this.supportedFormats = supportedFormats;
+      return this;
+    }
+
+    /**
+     * Sets the {@link TrackSelection.Factory} under evaluation. The default is an {@link
+     * AdaptiveTrackSelection.Factory} with default parameters, using the clock of the simulated
+     * network.
+     *
+     * @param trackSelectionFactory The {@link TrackSelection.Factory}.
+     * @return This builder.
+     */
+    public Builder setTrackSelectionFactory(TrackSelection.Factory trackSelectionFactory) {
+      this.trackSelectionFactory = trackSelectionFactory;
+      return this;
+    }
+
+    /**
+     * Sets the {@link LoadControl} under evaluation. The default is a {@link DefaultLoadControl}.
+     *
+     * @param loadControl The {@link LoadControl}.
+     * @return This builder.
+     */
+    public Builder setLoadControl(LoadControl loadControl) {
+      this.loadControl = loadControl;
+      return this;
+    }
+
+    /**
+     * Sets the {@link BandwidthMeter}. It must measure time using the clock of the simulated
+     * network. The default is a {@link DefaultBandwidthMeter} using this clock, which doesn't reset
+     * on network type changes.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter}.
+     * @return This builder.
+     */
+    public Builder setBandwidthMeter(BandwidthMeter bandwidthMeter) {
+      this.bandwidthMeter = bandwidthMeter;
+      return this;
+    }
+
+    /**
+     * Builds an {@link AbrSimulationRunner} using the provided values or their defaults.
+     *
+     * @param context The context.
+     * @return The built {@link AbrSimulationRunner}.
+     */
+    public AbrSimulationRunner build(Context context) {
+      Clock clock = network.getClock();
+      if (trackSelectionFactory == null) {
+        trackSelectionFactory =
+            new AdaptiveTrackSelection.Factory(
+                AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+                AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+                AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE,
+                AdaptiveTrackSelection.DEFAULT_MIN_TIME_BETWEEN_BUFFER_REEVALUTATION_MS,
+                clock);
+      }
+      if (loadControl == null) {
+        loadControl = new DefaultLoadControl();
+      }
+      if (bandwidthMeter == null) {
+        bandwidthMeter =
+            new DefaultBandwidthMeter.Builder(context)
+                .setClock(clock)
+                .setResetOnNetworkTypeChange(false)
+                .build();
+      }
+      PlaybackStatsListener playbackStatsListener =
+          new PlaybackStatsListener(/* keepHistory= */ true, /* callback= */ null);
+      ExoPlayerTestRunner.Builder testRunnerBuilder =
+          new ExoPlayerTestRunner.Builder()
+              .setClock(clock)
+              .setMediaSource(
+                  mediaSourceFactory.createMediaSource(network.createDataSourceFactory()))
+              .setTrackSelector(new DefaultTrackSelector(context, trackSelectionFactory))
+              .setLoadControl(loadControl)
+              .setBandwidthMeter(bandwidthMeter)
+              .setAnalyticsListener(playbackStatsListener);
+      if (supportedFormats != null) {
+        testRunnerBuilder.setSupportedFormats(supportedFormats);
+      }
+      return new AbrSimulationRunner(testRunnerBuilder.build(context), playbackStatsListener);
+    }
+  }
+
+  /** Quality of experience metrics of a simulated playback. */
+  public static final class Result {
+
+    /** The {@link PlaybackStats} of the playback, including its full history. */
+    public final PlaybackStats playbackStats;
+    /**
+     * The time taken to start the playback, in milliseconds, or {@link
+     * com.google.android.exoplayer2.C#TIME_UNSET} if playback never started.
+     */
+    public final long startupTimeMs;
+    /** The ratio of the time spent rebuffering to the time spent playing and waiting. */
+    public final float rebufferRatio;
+    /** The number of times playback rebuffered. */
+    public final int rebufferCount;
+    /**
+     * The mean bitrate of the played video formats weighted by their playback time, in bits per
+     * second, or {@link com.google.android.exoplayer2.C#LENGTH_UNSET} if no video was played.
+     */
+    public final int averageVideoBitrate;
+    /** The number of times the played video format changed. */
+    public final int switchCount;
+
+    private Result(PlaybackStats playbackStats) {
+      this.playbackStats = playbackStats;
+      startupTimeMs = playbackStats.getMeanJoinTimeMs();
+      rebufferRatio = playbackStats.getRebufferTimeRatio();
+      rebufferCount = playbackStats.totalRebufferCount;
+      averageVideoBitrate = playbackStats.getMeanVideoFormatBitrate();
+      int switchCount = 0;
+      @Nullable Format previousFormat = null;
+      for (Pair<EventTime, @NullableType Format> entry : playbackStats.videoFormatHistory) {
+        @Nullable Format format = entry.second;
+        if (previousFormat != null && format != null && !format.equals(previousFormat)) {
+          switchCount++;
+        }
+        if (format != null) {
+          previousFormat = format;
+        }
+      }
+      this.switchCount = switchCount;
+    }
+  }
+
+  private final ExoPlayerTestRunner testRunner;
+  private final PlaybackStatsListener playbackStatsListener;
+
+  private AbrSimulationRunner(
+      ExoPlayerTestRunner testRunner, PlaybackStatsListener playbackStatsListener) {
+    this.testRunner = testRunner;
+    this.playbackStatsListener = playbackStatsListener;
+  }
+
+  /**
+   * Plays the media until it ends and returns the quality of experience metrics of the playback.
+   *
+   * @param timeoutMs The maximum real time to wait for the playback to end, in milliseconds.
+   * @return The {@link Result} of the simulation.
+   * @throws Exception If an error occurred during playback, or due to a timeout.
+   */
+  public Result run(long timeoutMs) throws Exception {
+    testRunner.start().blockUntilEnded(timeoutMs);
+    return new Result(playbackStatsListener.getCombinedPlaybackStats());
+  }
+}
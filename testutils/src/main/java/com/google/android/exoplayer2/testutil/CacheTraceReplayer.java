@@ -0,0 +1,433 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadataMutations;
+import com.google.android.exoplayer2.upstream.cache.DefaultContentMetadata;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Util;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Replays a trace of cache requests against {@link CacheEvictor}s and reports their hit ratios, so
+ * that eviction policies can be compared offline.
+ *
+ * <p>Each request reads a whole span. It's a hit if the span is cached and its content hasn't
+ * expired, and a miss otherwise, in which case the span is written to the cache as if it had been
+ * loaded from the network. Content without an expiry time may be given a default time to live,
+ * which should match that of any {@link
+ * com.google.android.exoplayer2.upstream.cache.TimeToLiveCacheEvictor} under evaluation. Requests
+ * are replayed against an in-memory {@link Cache} that only keeps track of spans and content
+ * metadata, and that notifies its evictor in the same way as {@link
+ * com.google.android.exoplayer2.upstream.cache.SimpleCache}. Spans are touched at the time of the
+ * request, so evictors that order spans by their last touch timestamp can't distinguish requests
+ * made at the same time.
+ */
+public final class CacheTraceReplayer {
+
+  /** Creates the {@link CacheEvictor} under evaluation. */
+  public interface EvictorFactory {
+
+    /**
+     * Creates the {@link CacheEvictor} under evaluation.
+     *
+     * @param clock The {@link Clock} of the replay, which evictors that need the current time
+     *     should use.
+     * @return The {@link CacheEvictor}.
+     */
+    CacheEvictor createEvictor(Clock clock);
+  }
+
+  /** A request in a cache trace. */
+  public static final class Request {
+
+    /** The wall clock time of the request, in milliseconds. */
+    public final long timeMs;
+    /** The cache key of the requested content. */
+    public final String key;
+    /** The position of the requested span in the content. */
+    public final long position;
+    /** The length of the requested span. */
+    public final long length;
+    /**
+     * The expiry time of the content if the request is loaded from the network, as a wall clock
+     * time in milliseconds, or {@link C#TIME_UNSET} if the content doesn't expire.
+     */
+    public final long expiryTimeMs;
+
+    /**
+     * Creates a request for a span of content that doesn't expire.
+     *
+     * @param timeMs The wall clock time of the request, in milliseconds.
+     * @param key The cache key of the requested content.
+     * @param position The position of the requested span in the content.
+     * @param length The length of the requested span. Must be positive.
+     */
+    public Request(long timeMs, String key, long position, long length) {
+      this(timeMs, key, position, length, /* expiryTimeMs= */ C.TIME_UNSET);
+    }
+
+    /**
+     * Creates a request.
+     *
+     * @param timeMs The wall clock time of the request, in milliseconds.
+     * @param key The cache key of the requested content.
+     * @param position The position of the requested span in the content.
+     * @param length The length of the requested span. Must be positive.
+     * @param expiryTimeMs The expiry time of the content if the request is loaded from the network,
+     *     as a wall clock time in milliseconds, or {@link C#TIME_UNSET} if the content doesn't
+     *     expire.
+     */
+    public Request(long timeMs, String key, long position, long length, long expiryTimeMs) {
+      Assertions.checkArgument(length > 0);
+      this.timeMs = timeMs;
+      this.key = key;
+      this.position = position;
+      this.length = length;
+      this.expiryTimeMs = expiryTimeMs;
+    }
+  }
+
+  /** The hits and misses of a replay. */
+  public static final class Result {
+
+    /** The number of requests. */
+    public final int requestCount;
+    /** The number of requests that were served from the cache. */
+    public final int hitCount;
+    /** The number of requested bytes. */
+    public final long requestedBytes;
+    /** The number of requested bytes that were served from the cache. */
+    public final long hitBytes;
+
+    private Result(int requestCount, int hitCount, long requestedBytes, long hitBytes) {
+      this.requestCount = requestCount;
+      this.hitCount = hitCount;
+      this.requestedBytes = requestedBytes;
+      this.hitBytes = hitBytes;
+    }
+
+    /** Returns the fraction of requests that were served from the cache. */
+    public double getHitRatio() {
+      return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    /** Returns the fraction of requested bytes that were served from the cache. */
+    public double getByteHitRatio() {
+      return requestedBytes == 0 ? 0 : (double) hitBytes / requestedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return "hitRatio=" + getHitRatio() + ", byteHitRatio=" + getByteHitRatio();
+    }
+  }
+
+  private CacheTraceReplayer() {}
+
+  /**
+   * Parses a trace from its text representation. Each non-empty line describes one request as
+   * whitespace separated values: the time of the request in milliseconds, the cache key, the
+   * position and the length of the requested span and, optionally, the expiry time of the content
+   * in milliseconds. Lines starting with {@code #} are ignored.
+   *
+   * @param trace The text representation of the trace.
+   * @return The parsed requests.
+   * @throws IllegalArgumentException If the trace is malformed.
+   */
+  public static List<Request> parseTrace(String trace) {
+    List<Request> requests = new ArrayList<>();
+    for (String line : Util.split(trace, "\n")) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] values = line.split("\\s+");
+      if (values.length != 4 && values.length != 5) {
+        throw new IllegalArgumentException("Malformed trace line: " + line);
+      }
+      requests.add(
+          new Request(
+              Long.parseLong(values[0]),
+              values[1],
+              Long.parseLong(values[2]),
+              Long.parseLong(values[3]),
+              values.length == 5 ? Long.parseLong(values[4]) : C.TIME_UNSET));
+    }
+    return requests;
+  }
+
+  /**
+   * Replays a trace against the evictors created by each of the given factories, for content that
+   * doesn't expire unless it has an expiry time.
+   *
+   * @param trace The requests to replay, in order of non-decreasing time.
+   * @param evictorFactories The factories creating the evictors to compare, by name.
+   * @return The {@link Result} of each evictor, by name, in the order of {@code evictorFactories}.
+   */
+  public static Map<String, Result> compare(
+      List<Request> trace, Map<String, EvictorFactory> evictorFactories) {
+    return compare(trace, evictorFactories, /* defaultTimeToLiveMs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Replays a trace against the evictors created by each of the given factories.
+   *
+   * @param trace The requests to replay, in order of non-decreasing time.
+   * @param evictorFactories The factories creating the evictors to compare, by name.
+   * @param defaultTimeToLiveMs The time after which content without an expiry time expires, counted
+   *     from the time its span was last touched, or {@link C#TIME_UNSET} if such content never
+   *     expires.
+   * @return The {@link Result} of each evictor, by name, in the order of {@code evictorFactories}.
+   */
+  public static Map<String, Result> compare(
+      List<Request> trace, Map<String, EvictorFactory> evictorFactories, long defaultTimeToLiveMs) {
+    Map<String, Result> results = new LinkedHashMap<>();
+    for (Map.Entry<String, EvictorFactory> entry : evictorFactories.entrySet()) {
+      results.put(entry.getKey(), replay(trace, entry.getValue(), defaultTimeToLiveMs));
+    }
+    return results;
+  }
+
+  /**
+   * Replays a trace against the evictor created by the given factory, for content that doesn't
+   * expire unless it has an expiry time.
+   *
+   * @param trace The requests to replay, in order of non-decreasing time.
+   * @param evictorFactory The factory creating the evictor under evaluation.
+   * @return The {@link Result} of the replay.
+   */
+  public static Result replay(List<Request> trace, EvictorFactory evictorFactory) {
+    return replay(trace, evictorFactory, /* defaultTimeToLiveMs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Replays a trace against the evictor created by the given factory.
+   *
+   * @param trace The requests to replay, in order of non-decreasing time.
+   * @param evictorFactory The factory creating the evictor under evaluation.
+   * @param defaultTimeToLiveMs The time after which content without an expiry time expires, counted
+   *     from the time its span was last touched, or {@link C#TIME_UNSET} if such content never
+   *     expires.
+   * @return The {@link Result} of the replay.
+   */
+  public static Result replay(
+      List<Request> trace, EvictorFactory evictorFactory, long defaultTimeToLiveMs) {
+    long initialTimeMs = trace.isEmpty() ? 0 : trace.get(0).timeMs;
+    FakeClock clock = new FakeClock(initialTimeMs);
+    ReplayCache cache = new ReplayCache(evictorFactory.createEvictor(clock), defaultTimeToLiveMs);
+    int hitCount = 0;
+    long requestedBytes = 0;
+    long hitBytes = 0;
+    for (Request request : trace) {
+      long timeDiffMs = request.timeMs - clock.currentTimeMillis();
+      Assertions.checkArgument(timeDiffMs >= 0);
+      clock.advanceTime(timeDiffMs);
+      requestedBytes += request.length;
+      if (cache.request(request)) {
+        hitCount++;
+        hitBytes += request.length;
+      }
+    }
+    return new Result(trace.size(), hitCount, requestedBytes, hitBytes);
+  }
+
+  /** In-memory cache of span metadata, against which requests are replayed. */
+  private static final class ReplayCache implements Cache {
+
+    private final CacheEvictor evictor;
+    private final long defaultTimeToLiveMs;
+    private final HashMap<String, TreeMap<Long, CacheSpan>> spans;
+    private final HashMap<String, DefaultContentMetadata> contentMetadata;
+
+    private long cacheSpace;
+
+    public ReplayCache(CacheEvictor evictor, long defaultTimeToLiveMs) {
+      this.evictor = evictor;
+      this.defaultTimeToLiveMs = defaultTimeToLiveMs;
+      spans = new HashMap<>();
+      contentMetadata = new HashMap<>();
+      evictor.onCacheInitialized();
+    }
+
+    /** Replays a request, returning whether it was a hit. */
+    public boolean request(Request request) {
+      @Nullable CacheSpan span = getSpan(request.key, request.position);
+      if (span != null && span.length == request.length && !isExpired(span, request.timeMs)) {
+        if (evictor.requiresCacheSpanTouches()) {
+          CacheSpan newSpan =
+              new CacheSpan(span.key, span.position, span.length, request.timeMs, span.file);
+          getSpans(request.key).put(request.position, newSpan);
+          evictor.onSpanTouched(this, span, newSpan);
+        }
+        return true;
+      }
+      if (span != null) {
+        removeSpan(span);
+      }
+      applyContentMetadataMutations(
+          request.key,
+          ContentMetadataMutations.setExpiryTimeMs(
+              new ContentMetadataMutations(), request.expiryTimeMs));
+      evictor.onStartFile(this, request.key, request.position, request.length);
+      File file = new File(request.key + "." + request.position);
+      CacheSpan newSpan =
+          new CacheSpan(request.key, request.position, request.length, request.timeMs, file);
+      getSpans(request.key).put(request.position, newSpan);
+      cacheSpace += newSpan.length;
+      evictor.onSpanAdded(this, newSpan);
+      return false;
+    }
+
+    @Override
+    public long getUid() {
+      return 0;
+    }
+
+    @Override
+    public void release() {
+      // Do nothing.
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> addListener(String key, Listener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeListener(String key, Listener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public NavigableSet<CacheSpan> getCachedSpans(String key) {
+      @Nullable TreeMap<Long, CacheSpan> keySpans = spans.get(key);
+      return keySpans == null ? new TreeSet<>() : new TreeSet<>(keySpans.values());
+    }
+
+    @Override
+    public Set<String> getKeys() {
+      return new TreeSet<>(spans.keySet());
+    }
+
+    @Override
+    public long getCacheSpace() {
+      return cacheSpace;
+    }
+
+    @Override
+    public CacheSpan startReadWrite(String key, long position) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Nullable
+    public CacheSpan startReadWriteNonBlocking(String key, long position) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public File startFile(String key, long position, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void commitFile(File file, long length) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void releaseHoleSpan(CacheSpan holeSpan) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeSpan(CacheSpan span) {
+      @Nullable TreeMap<Long, CacheSpan> keySpans = spans.get(span.key);
+      @Nullable CacheSpan removedSpan = keySpans == null ? null : keySpans.remove(span.position);
+      if (removedSpan == null) {
+        return;
+      }
+      if (keySpans.isEmpty()) {
+        spans.remove(span.key);
+      }
+      cacheSpace -= removedSpan.length;
+      evictor.onSpanRemoved(this, removedSpan);
+    }
+
+    @Override
+    public boolean isCached(String key, long position, long length) {
+      @Nullable CacheSpan span = getSpan(key, position);
+      return span != null && span.length >= length;
+    }
+
+    @Override
+    public long getCachedLength(String key, long position, long length) {
+      @Nullable CacheSpan span = getSpan(key, position);
+      return span == null ? -length : Math.min(span.length, length);
+    }
+
+    @Override
+    public void applyContentMetadataMutations(String key, ContentMetadataMutations mutations) {
+      contentMetadata.put(key, getContentMetadata(key).copyWithMutationsApplied(mutations));
+    }
+
+    @Override
+    public DefaultContentMetadata getContentMetadata(String key) {
+      @Nullable DefaultContentMetadata metadata = contentMetadata.get(key);
+      return metadata == null ? DefaultContentMetadata.EMPTY : metadata;
+    }
+
+    private boolean isExpired(CacheSpan span, long timeMs) {
+      long expiryTimeMs = ContentMetadata.getExpiryTimeMs(getContentMetadata(span.key));
+      if (expiryTimeMs == C.TIME_UNSET && defaultTimeToLiveMs != C.TIME_UNSET) {
+        expiryTimeMs = span.lastTouchTimestamp + defaultTimeToLiveMs;
+      }
+      return expiryTimeMs != C.TIME_UNSET && expiryTimeMs <= timeMs;
+    }
+
+    @Nullable
+    private CacheSpan getSpan(String key, long position) {
+      @Nullable TreeMap<Long, CacheSpan> keySpans = spans.get(key);
+      return keySpans == null ? null : keySpans.get(position);
+    }
+
+    private TreeMap<Long, CacheSpan> getSpans(String key) {
+      @Nullable TreeMap<Long, CacheSpan> keySpans = spans.get(key);
+      if (keySpans == null) {
+        keySpans = new TreeMap<>();
+        spans.put(key, keySpans);
+      }
+      return keySpans;
+    }
+  }
+}
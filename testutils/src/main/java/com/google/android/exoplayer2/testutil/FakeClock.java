@@ -62,6 +62,15 @@ public class FakeClock implements Clock {
     }
   }
 
+  /**
+   * Returns the current time in milliseconds since the Unix epoch, assuming that the device booted
+   * at the epoch, so that this time equals {@link #elapsedRealtime()}.
+   */
+  @Override
+  public long currentTimeMillis() {
+    return elapsedRealtime();
+  }
+
   @Override
   public synchronized long elapsedRealtime() {
     return currentTimeMs;
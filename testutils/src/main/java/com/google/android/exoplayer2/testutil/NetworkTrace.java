@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+
+/**
+ * A recorded or synthetic network trace, describing the bandwidth and latency of a network link
+ * over time. The trace is a sequence of segments of constant bandwidth and latency, and repeats
+ * itself once its end is reached.
+ */
+public final class NetworkTrace {
+
+  /** Builder for {@link NetworkTrace} instances. */
+  public static final class Builder {
+
+    private final ArrayList<long[]> segments;
+
+    /** Creates a builder for an empty trace. */
+    public Builder() {
+      segments = new ArrayList<>();
+    }
+
+    /**
+     * Appends a segment of constant bandwidth and latency to the trace.
+     *
+     * @param durationMs The duration of the segment, in milliseconds. Must be positive.
+     * @param bitrate The bandwidth of the link during the segment, in bits per second. May be zero
+     *     to simulate a network outage.
+     * @param latencyMs The time taken for a request started during the segment to receive its first
+     *     byte, in milliseconds.
+     * @return This builder.
+     */
+    public Builder addSegment(long durationMs, long bitrate, long latencyMs) {
+      Assertions.checkArgument(durationMs > 0 && bitrate >= 0 && latencyMs >= 0);
+      segments.add(new long[] {durationMs, bitrate, latencyMs});
+      return this;
+    }
+
+    /**
+     * Builds the trace. At least one segment with a non-zero bitrate must have been added.
+     *
+     * @return The built {@link NetworkTrace}.
+     */
+    public NetworkTrace build() {
+      int segmentCount = segments.size();
+      long[] startTimesMs = new long[segmentCount];
+      long[] bitrates = new long[segmentCount];
+      long[] latenciesMs = new long[segmentCount];
+      long timeMs = 0;
+      boolean hasBandwidth = false;
+      for (int i = 0; i < segmentCount; i++) {
+        long[] segment = segments.get(i);
+        startTimesMs[i] = timeMs;
+        bitrates[i] = segment[1];
+        latenciesMs[i] = segment[2];
+        timeMs += segment[0];
+        hasBandwidth |= bitrates[i] > 0;
+      }
+      Assertions.checkState(hasBandwidth);
+      return new NetworkTrace(startTimesMs, bitrates, latenciesMs, /* durationMs= */ timeMs);
+    }
+  }
+
+  private final long[] startTimesMs;
+  private final long[] bitrates;
+  private final long[] latenciesMs;
+  private final long durationMs;
+
+  private NetworkTrace(long[] startTimesMs, long[] bitrates, long[] latenciesMs, long durationMs) {
+    this.startTimesMs = startTimesMs;
+    this.bitrates = bitrates;
+    this.latenciesMs = latenciesMs;
+    this.durationMs = durationMs;
+  }
+
+  /**
+   * Parses a trace from its text representation. Each non-empty line describes one segment as
+   * three whitespace separated integers: the duration of the segment in milliseconds, the bitrate
+   * in bits per second and the latency in milliseconds. Lines starting with {@code #} are ignored.
+   *
+   * @param trace The text representation of the trace.
+   * @return The parsed {@link NetworkTrace}.
+   * @throws IllegalArgumentException If the trace is malformed.
+   */
+  public static NetworkTrace parse(String trace) {
+    Builder builder = new Builder();
+    for (String line : Util.split(trace, "\n")) {
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] values = line.split("\\s+");
+      if (values.length != 3) {
+        throw new IllegalArgumentException("Malformed trace line: " + line);
+      }
+      builder.addSegment(
+          Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+    }
+    return builder.build();
+  }
+
+  /** Returns the duration of the trace before it repeats itself, in milliseconds. */
+  public long getDurationMs() {
+    return durationMs;
+  }
+
+  /**
+   * Returns the bandwidth of the link at the given time, in bits per second.
+   *
+   * @param timeMs The time, in milliseconds since the start of the trace.
+   */
+  public long getBitrate(long timeMs) {
+    return bitrates[getSegmentIndex(timeMs)];
+  }
+
+  /**
+   * Returns the latency of a request started at the given time, in milliseconds.
+   *
+   * @param timeMs The time, in milliseconds since the start of the trace.
+   */
+  public long getLatencyMs(long timeMs) {
+    return latenciesMs[getSegmentIndex(timeMs)];
+  }
+
+  /**
+   * Returns the time at which a transfer of {@code byteCount} bytes over the link completes, if it
+   * starts at {@code startTimeMs} and has the link to itself.
+   *
+   * @param startTimeMs The time at which the transfer starts, in milliseconds since the start of
+   *     the trace.
+   * @param byteCount The number of bytes to transfer.
+   * @return The time at which the transfer completes, in milliseconds since the start of the trace.
+   */
+  public long getTransferEndTimeMs(long startTimeMs, long byteCount) {
+    // Work in bit milliseconds to avoid rounding errors accumulating across segments.
+    long remainingBitMs = byteCount * 8 * 1000;
+    long timeMs = startTimeMs;
+    while (remainingBitMs > 0) {
+      int segmentIndex = getSegmentIndex(timeMs);
+      long segmentEndTimeMs =
+          timeMs
+              - getTimeInTraceMs(timeMs)
+              + (segmentIndex + 1 < startTimesMs.length
+                  ? startTimesMs[segmentIndex + 1]
+                  : durationMs);
+      long bitrate = bitrates[segmentIndex];
+      long availableBitMs = bitrate * (segmentEndTimeMs - timeMs);
+      if (remainingBitMs <= availableBitMs) {
+        return timeMs + (remainingBitMs + bitrate - 1) / bitrate;
+      }
+      remainingBitMs -= availableBitMs;
+      timeMs = segmentEndTimeMs;
+    }
+    return timeMs;
+  }
+
+  private int getSegmentIndex(long timeMs) {
+    return Util.binarySearchFloor(
+        startTimesMs, getTimeInTraceMs(timeMs), /* inclusive= */ true, /* stayInBounds= */ true);
+  }
+
+  private long getTimeInTraceMs(long timeMs) {
+    return timeMs % durationMs;
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+import java.util.HashMap;
+
+/**
+ * Simulates a network link whose bandwidth and latency follow a {@link NetworkTrace}, on a fake
+ * {@link Clock} that runs faster than real time.
+ *
+ * <p>Network transfers are throttled by registering the simulated network as a {@link
+ * TransferListener} of their data sources, which is done automatically for data sources created by
+ * {@link #createDataSourceFactory()}. The listener blocks the loading thread at the start of each
+ * transfer for the latency given by the trace, and after each read until the trace would have
+ * delivered the bytes read. Concurrent transfers share the bandwidth of the link.
+ *
+ * <p>The clock returned by {@link #getClock()} advances automatically in the same way as {@link
+ * AutoAdvancingFakeClock}, except that it doesn't advance while a throttled transfer is running
+ * rather than waiting for the link. This keeps the simulation close to what would happen in real
+ * time. Media sources whose loaders block in the middle of a transfer, such as progressive media
+ * sources with a full buffer, slow the simulation down, so the simulation is best suited to
+ * chunked media.
+ */
+public final class SimulatedNetwork implements TransferListener {
+
+  /**
+   * The maximum real time for which the clock waits for running transfers to block, in
+   * milliseconds.
+   */
+  private static final long MAX_TRANSFER_WAIT_MS = 100;
+
+  private final NetworkTrace trace;
+  private final SimulationClock clock;
+  private final HashMap<DataSource, Long> transferTimesMs;
+  private final HashMap<DataSource, Long> waitingTransferEndTimesMs;
+
+  private long linkAvailableTimeMs;
+
+  /**
+   * Creates a simulated network.
+   *
+   * @param trace The {@link NetworkTrace} followed by the bandwidth and latency of the network.
+   */
+  public SimulatedNetwork(NetworkTrace trace) {
+    this.trace = trace;
+    clock = new SimulationClock();
+    transferTimesMs = new HashMap<>();
+    waitingTransferEndTimesMs = new HashMap<>();
+  }
+
+  /**
+   * Returns the {@link Clock} on which the network is simulated. It should be used by the player
+   * and by all components measuring time, such as bandwidth meters and track selections.
+   */
+  public Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Returns a {@link FakeDataSource.Factory} whose data sources are network data sources throttled
+   * by this simulated network.
+   */
+  public FakeDataSource.Factory createDataSourceFactory() {
+    return new ThrottledDataSourceFactory();
+  }
+
+  // TransferListener implementation.
+
+  @Override
+  public void onTransferInitializing(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (isNetwork) {
+      long nowMs = clock.elapsedRealtime();
+      waitUntil(/* source= */ null, nowMs + trace.getLatencyMs(nowMs));
+    }
+  }
+
+  @Override
+  public synchronized void onTransferStart(
+      DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    if (isNetwork) {
+      transferTimesMs.put(source, clock.elapsedRealtime());
+    }
+  }
+
+  @Override
+  public synchronized void onBytesTransferred(
+      DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+    @Nullable Long transferTimeMs = transferTimesMs.get(source);
+    if (!isNetwork || transferTimeMs == null) {
+      return;
+    }
+    // Continue from the time at which the previous read completed, so that the time taken by the
+    // loading thread between reads doesn't reduce the throughput of the transfer.
+    long startTimeMs = Math.max(transferTimeMs, linkAvailableTimeMs);
+    long endTimeMs = trace.getTransferEndTimeMs(startTimeMs, bytesTransferred);
+    linkAvailableTimeMs = endTimeMs;
+    transferTimesMs.put(source, endTimeMs);
+    waitUntil(source, endTimeMs);
+  }
+
+  @Override
+  public synchronized void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+    transferTimesMs.remove(source);
+    notifyAll();
+  }
+
+  // Internal methods.
+
+  private synchronized void waitUntil(@Nullable DataSource source, long timeMs) {
+    if (source != null) {
+      waitingTransferEndTimesMs.put(source, timeMs);
+      // The clock may be waiting for this transfer to block.
+      notifyAll();
+    }
+    try {
+      while (clock.elapsedRealtime() < timeMs) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      // The load has been canceled.
+      Thread.currentThread().interrupt();
+    } finally {
+      if (source != null) {
+        waitingTransferEndTimesMs.remove(source);
+      }
+    }
+  }
+
+  private synchronized void blockUntilTransfersWaiting() {
+    long nowMs = clock.elapsedRealtime();
+    long deadlineNs = System.nanoTime() + MAX_TRANSFER_WAIT_MS * 1000000;
+    try {
+      while (!areTransfersWaiting(nowMs)) {
+        long remainingMs = (deadlineNs - System.nanoTime()) / 1000000;
+        if (remainingMs <= 0) {
+          return;
+        }
+        wait(remainingMs);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private boolean areTransfersWaiting(long nowMs) {
+    for (DataSource source : transferTimesMs.keySet()) {
+      @Nullable Long waitingEndTimeMs = waitingTransferEndTimesMs.get(source);
+      if (waitingEndTimeMs == null || waitingEndTimeMs <= nowMs) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private synchronized void onClockAdvanced() {
+    notifyAll();
+  }
+
+  /**
+   * {@link FakeClock} that advances time whenever its first handler enqueues a message at a future
+   * time, once all running transfers are waiting for the link.
+   */
+  private final class SimulationClock extends FakeClock {
+
+    @Nullable private HandlerWrapper autoAdvancingHandler;
+
+    public SimulationClock() {
+      super(/* initialTimeMs= */ 0);
+    }
+
+    // Not synchronized, so that transfers can read the time while the clock waits for them.
+    @Override
+    protected boolean addHandlerMessageAtTime(HandlerWrapper handler, int message, long timeMs) {
+      if (!isAutoAdvancingHandler(handler, timeMs)) {
+        return super.addHandlerMessageAtTime(handler, message, timeMs);
+      }
+      blockUntilTransfersWaiting();
+      boolean result = super.addHandlerMessageAtTime(handler, message, timeMs);
+      long currentTimeMs = elapsedRealtime();
+      if (currentTimeMs < timeMs) {
+        advanceTime(timeMs - currentTimeMs);
+      }
+      onClockAdvanced();
+      return result;
+    }
+
+    private synchronized boolean isAutoAdvancingHandler(HandlerWrapper handler, long timeMs) {
+      if (timeMs <= elapsedRealtime()) {
+        return false;
+      }
+      if (autoAdvancingHandler == null) {
+        autoAdvancingHandler = handler;
+      }
+      return autoAdvancingHandler == handler;
+    }
+  }
+
+  private final class ThrottledDataSourceFactory extends FakeDataSource.Factory {
+
+    @Override
+    public FakeDataSource createDataSource() {
+      FakeDataSource dataSource = new FakeDataSource(fakeDataSet, /* isNetwork= */ true);
+      dataSource.addTransferListener(SimulatedNetwork.this);
+      return dataSource;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.LooperMode;
+
+/** Unit test for {@link AbrSimulationRunner}. */
+@RunWith(AndroidJUnit4.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public final class AbrSimulationRunnerTest {
+
+  private static final long TIMEOUT_MS = 30000;
+  private static final long CHUNK_DURATION_US = 2 * C.MICROS_PER_SECOND;
+
+  private static final Format FORMAT_1 = createVideoFormat(/* bitrate= */ 500000);
+  private static final Format FORMAT_2 = createVideoFormat(/* bitrate= */ 1000000);
+  private static final Format FORMAT_3 = createVideoFormat(/* bitrate= */ 2000000);
+
+  @Test
+  public void run_withFastNetwork_playsHighBitrateWithoutRebuffering() throws Exception {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 20000000, /* latencyMs= */ 20)
+            .build();
+
+    AbrSimulationRunner.Result result = runSimulation(trace, /* durationSec= */ 40);
+
+    assertThat(result.startupTimeMs).isLessThan(1000);
+    assertThat(result.rebufferCount).isEqualTo(0);
+    assertThat(result.rebufferRatio).isEqualTo(0f);
+    assertThat(result.averageVideoBitrate).isGreaterThan(1000000);
+  }
+
+  @Test
+  public void run_withHighLatency_delaysStartup() throws Exception {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 20000000, /* latencyMs= */ 1000)
+            .build();
+
+    AbrSimulationRunner.Result result = runSimulation(trace, /* durationSec= */ 20);
+
+    // Starting playback requires two chunks, each of which waits for the latency.
+    assertThat(result.startupTimeMs).isAtLeast(2000);
+  }
+
+  @Test
+  public void run_withNetworkOutage_rebuffers() throws Exception {
+    // Too slow to buffer all media before the outage, even at the lowest bitrate.
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 10000, /* bitrate= */ 2000000, /* latencyMs= */ 50)
+            .addSegment(/* durationMs= */ 60000, /* bitrate= */ 0, /* latencyMs= */ 50)
+            .build();
+
+    AbrSimulationRunner.Result result = runSimulation(trace, /* durationSec= */ 60);
+
+    assertThat(result.rebufferCount).isAtLeast(1);
+    assertThat(result.rebufferRatio).isGreaterThan(0f);
+    assertThat(result.playbackStats.endedCount).isEqualTo(1);
+  }
+
+  private static AbrSimulationRunner.Result runSimulation(NetworkTrace trace, int durationSec)
+      throws Exception {
+    return new AbrSimulationRunner.Builder(
+            new SimulatedNetwork(trace),
+            dataSourceFactory ->
+                createAdaptiveMediaSource(dataSourceFactory, durationSec * C.MICROS_PER_SECOND))
+        .setSupportedFormats(FORMAT_1, FORMAT_2, FORMAT_3)
+        .build(ApplicationProvider.getApplicationContext())
+        .run(TIMEOUT_MS);
+  }
+
+  private static MediaSource createAdaptiveMediaSource(
+      FakeDataSource.Factory dataSourceFactory, long durationUs) {
+    return new FakeAdaptiveMediaSource(
+        new FakeTimeline(
+            new TimelineWindowDefinition(
+                /* isSeekable= */ true, /* isDynamic= */ false, durationUs)),
+        new TrackGroupArray(new TrackGroup(FORMAT_1, FORMAT_2, FORMAT_3)),
+        new FakeChunkSource.Factory(
+            new FakeAdaptiveDataSet.Factory(CHUNK_DURATION_US, /* bitratePercentStdDev= */ 0),
+            dataSourceFactory));
+  }
+
+  private static Format createVideoFormat(int bitrate) {
+    return Format.createVideoSampleFormat(
+        /* id= */ null,
+        MimeTypes.VIDEO_H264,
+        /* codecs= */ null,
+        bitrate,
+        /* maxInputSize= */ Format.NO_VALUE,
+        /* width= */ Format.NO_VALUE,
+        /* height= */ Format.NO_VALUE,
+        /* frameRate= */ Format.NO_VALUE,
+        /* initializationData= */ null,
+        /* drmInitData= */ null);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.CacheTraceReplayer.EvictorFactory;
+import com.google.android.exoplayer2.testutil.CacheTraceReplayer.Request;
+import com.google.android.exoplayer2.testutil.CacheTraceReplayer.Result;
+import com.google.android.exoplayer2.upstream.cache.AdaptiveReplacementCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.LeastFrequentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.TimeToLiveCacheEvictor;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link CacheTraceReplayer}. */
+@RunWith(AndroidJUnit4.class)
+public final class CacheTraceReplayerTest {
+
+  private static final int SPAN_LENGTH = 100;
+  private static final long MAX_BYTES = 10 * SPAN_LENGTH;
+  private static final int HOT_KEY_COUNT = 6;
+  private static final int SCAN_LENGTH = 10;
+  private static final int ROUND_COUNT = 20;
+  private static final long REQUEST_INTERVAL_MS = 1000;
+
+  @Test
+  public void parseTrace_returnsRequests() {
+    List<Request> trace =
+        CacheTraceReplayer.parseTrace("# time key position length\n0 a 0 10\n\n5 b 10 20 100\n");
+
+    assertThat(trace).hasSize(2);
+    assertThat(trace.get(0).key).isEqualTo("a");
+    assertThat(trace.get(0).length).isEqualTo(10);
+    assertThat(trace.get(1).timeMs).isEqualTo(5);
+    assertThat(trace.get(1).position).isEqualTo(10);
+    assertThat(trace.get(1).expiryTimeMs).isEqualTo(100);
+  }
+
+  @Test
+  public void replay_countsHitsAndMisses() {
+    List<Request> trace =
+        CacheTraceReplayer.parseTrace(
+            "0 a 0 100 5\n1 b 0 200\n2 a 0 100\n3 c 0 200\n4 a 0 100\n5 b 0 200\n6 a 0 100");
+
+    Result result =
+        CacheTraceReplayer.replay(trace, clock -> new LeastRecentlyUsedCacheEvictor(400));
+
+    // "b" is evicted when "c" is added, and "c" when "b" is added again. "a" hits twice, but has
+    // expired at the time of the last request.
+    assertThat(result.requestCount).isEqualTo(7);
+    assertThat(result.hitCount).isEqualTo(2);
+    assertThat(result.requestedBytes).isEqualTo(1000);
+    assertThat(result.hitBytes).isEqualTo(200);
+  }
+
+  @Test
+  public void replay_withDefaultTimeToLive_countsExpiredSpansAsMisses() {
+    List<Request> trace = CacheTraceReplayer.parseTrace("0 a 0 100\n500 a 0 100\n1600 a 0 100");
+
+    Result result =
+        CacheTraceReplayer.replay(
+            trace,
+            clock -> new LeastRecentlyUsedCacheEvictor(400),
+            /* defaultTimeToLiveMs= */ 1000);
+
+    // The hit at 500 extends the time to live of "a" until 1500, so the last request misses.
+    assertThat(result.hitCount).isEqualTo(1);
+  }
+
+  @Test
+  public void compare_withScans_frequencyAwareEvictorsKeepHotSpans() {
+    List<Request> trace = new ArrayList<>();
+    long timeMs = 0;
+    for (int round = 0; round < ROUND_COUNT; round++) {
+      for (int i = 0; i < HOT_KEY_COUNT; i++) {
+        trace.add(new Request(timeMs, "hot" + i, /* position= */ 0, SPAN_LENGTH));
+        timeMs += REQUEST_INTERVAL_MS;
+      }
+      for (int i = 0; i < SCAN_LENGTH; i++) {
+        trace.add(new Request(timeMs, "scan" + round + "." + i, /* position= */ 0, SPAN_LENGTH));
+        timeMs += REQUEST_INTERVAL_MS;
+      }
+    }
+    Map<String, EvictorFactory> evictorFactories = new LinkedHashMap<>();
+    evictorFactories.put("LRU", clock -> new LeastRecentlyUsedCacheEvictor(MAX_BYTES));
+    evictorFactories.put("LFU", clock -> new LeastFrequentlyUsedCacheEvictor(MAX_BYTES));
+    evictorFactories.put("ARC", clock -> new AdaptiveReplacementCacheEvictor(MAX_BYTES));
+
+    Map<String, Result> results = CacheTraceReplayer.compare(trace, evictorFactories);
+
+    // Each scan is longer than the cache space left by the hot spans, so LRU never hits.
+    assertThat(results.get("LRU").hitCount).isEqualTo(0);
+    assertThat(results.get("LFU").getHitRatio()).isGreaterThan(0.3);
+    assertThat(results.get("ARC").getHitRatio()).isGreaterThan(0.3);
+  }
+
+  @Test
+  public void compare_withExpiringContent_timeToLiveEvictorFreesSpaceEarly() {
+    List<Request> trace = new ArrayList<>();
+    long timeMs = 0;
+    for (int round = 0; round < ROUND_COUNT; round++) {
+      for (int i = 0; i < HOT_KEY_COUNT; i++) {
+        trace.add(new Request(timeMs, "hot" + i, /* position= */ 0, SPAN_LENGTH));
+        timeMs += REQUEST_INTERVAL_MS;
+      }
+      for (int i = 0; i < SCAN_LENGTH; i++) {
+        // Live segments, which expire before the next request.
+        trace.add(
+            new Request(
+                timeMs,
+                "live" + round + "." + i,
+                /* position= */ 0,
+                SPAN_LENGTH,
+                /* expiryTimeMs= */ timeMs + REQUEST_INTERVAL_MS / 2));
+        timeMs += REQUEST_INTERVAL_MS;
+      }
+    }
+    Map<String, EvictorFactory> evictorFactories = new LinkedHashMap<>();
+    evictorFactories.put("LRU", clock -> new LeastRecentlyUsedCacheEvictor(MAX_BYTES));
+    evictorFactories.put(
+        "TTL",
+        clock ->
+            new TimeToLiveCacheEvictor(
+                new LeastRecentlyUsedCacheEvictor(MAX_BYTES),
+                /* defaultTimeToLiveMs= */ C.TIME_UNSET,
+                clock));
+
+    Map<String, Result> results = CacheTraceReplayer.compare(trace, evictorFactories);
+
+    assertThat(results.get("LRU").hitCount).isEqualTo(0);
+    // All requests for hot spans after the first round hit.
+    assertThat(results.get("TTL").hitCount).isEqualTo((ROUND_COUNT - 1) * HOT_KEY_COUNT);
+  }
+}
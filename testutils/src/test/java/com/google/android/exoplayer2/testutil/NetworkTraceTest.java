@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link NetworkTrace}. */
+@RunWith(AndroidJUnit4.class)
+public final class NetworkTraceTest {
+
+  @Test
+  public void getBitrateAndLatency_returnValuesOfSegmentAndRepeat() {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 8000, /* latencyMs= */ 10)
+            .addSegment(/* durationMs= */ 2000, /* bitrate= */ 16000, /* latencyMs= */ 20)
+            .build();
+
+    assertThat(trace.getDurationMs()).isEqualTo(3000);
+    assertThat(trace.getBitrate(/* timeMs= */ 999)).isEqualTo(8000);
+    assertThat(trace.getLatencyMs(/* timeMs= */ 1000)).isEqualTo(20);
+    assertThat(trace.getBitrate(/* timeMs= */ 2999)).isEqualTo(16000);
+    assertThat(trace.getBitrate(/* timeMs= */ 3500)).isEqualTo(8000);
+    assertThat(trace.getLatencyMs(/* timeMs= */ 4000)).isEqualTo(20);
+  }
+
+  @Test
+  public void getTransferEndTimeMs_withinSegment_returnsTransferTime() {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 10000, /* bitrate= */ 8000, /* latencyMs= */ 0)
+            .build();
+
+    // 1000 bytes at 1000 bytes per second.
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 500, /* byteCount= */ 1000))
+        .isEqualTo(1500);
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 500, /* byteCount= */ 1))
+        .isEqualTo(501);
+  }
+
+  @Test
+  public void getTransferEndTimeMs_acrossSegmentsAndOutage_accumulatesBandwidth() {
+    NetworkTrace trace =
+        new NetworkTrace.Builder()
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 8000, /* latencyMs= */ 0)
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 0, /* latencyMs= */ 0)
+            .addSegment(/* durationMs= */ 1000, /* bitrate= */ 16000, /* latencyMs= */ 0)
+            .build();
+
+    // 1000 bytes in the first segment, none during the outage and 1000 bytes in the third segment.
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 0, /* byteCount= */ 2000))
+        .isEqualTo(2500);
+    // The trace repeats, so the transfer continues in the first segment of the next repetition.
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 2000, /* byteCount= */ 2500))
+        .isEqualTo(3500);
+  }
+
+  @Test
+  public void parse_returnsSegments() {
+    NetworkTrace trace =
+        NetworkTrace.parse("# duration bitrate latency\n1000 8000 10\n\n500 0 30\n");
+
+    assertThat(trace.getDurationMs()).isEqualTo(1500);
+    assertThat(trace.getBitrate(/* timeMs= */ 0)).isEqualTo(8000);
+    assertThat(trace.getLatencyMs(/* timeMs= */ 0)).isEqualTo(10);
+    assertThat(trace.getBitrate(/* timeMs= */ 1200)).isEqualTo(0);
+    assertThat(trace.getLatencyMs(/* timeMs= */ 1200)).isEqualTo(30);
+  }
+}